@@ -3,27 +3,85 @@ package ollama;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import context.ContextStore;
 import okhttp3.Headers;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import ollama.models.chat.ChatBatch;
 import ollama.models.chat.ChatModel;
 import ollama.models.chat.ChatResponse;
+import ollama.models.chat.NativeChatResponse;
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+import ollama.models.embedding.EmbeddingModel;
+import ollama.models.embedding.EmbeddingResponse;
 import retrofit2.Call;
 import retrofit2.Response;
-import utils.mapping.MappingUtilities;
 import ollama.models.inference.InferenceModel;
 import ollama.models.inference.InferenceResponse;
+import ollama.retrieval.VectorIndex;
+import ollama.streaming.CancellationStats;
+import ollama.streaming.ChunkParser;
+import ollama.streaming.Deadline;
+import ollama.streaming.Generation;
+import ollama.streaming.StreamListener;
+import ollama.streaming.StreamPublisher;
+import ollama.conversation.ConversationCompactor;
+import ollama.conversation.ConversationStore;
+import ollama.logging.RequestLogger;
+import ollama.ratelimit.RateLimiter;
+import ollama.sampling.Aggregation;
+import ollama.sampling.RaceStats;
+import ollama.scheduling.RequestScheduler;
+import ollama.tracing.RequestTrace;
+import ollama.tracing.Tracer;
+import ollama.utilities.JsonBody;
+import ollama.utilities.JsonReaders;
+import ollama.utilities.TokenEstimator;
 import wasapi.WasapiUtilities;
 import wasapi.WasapiClient;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
 /**
  * The {@code Ollama} class provides API utilities for interacting with an external service.
  * It facilitates API communication, request handling, and JSON schema generation.
  */
 public class Ollama extends WasapiUtilities {
 
+    /**
+     * Temperature of samples whose prompt has no options.
+     */
+    static final double SAMPLING_TEMPERATURE = 0.8;
+
     /**
      * Service interface for making API calls.
      */
     OllamaServices ollamaServices;
 
+    /**
+     * Base URL of the node.
+     */
+    String baseUrl;
+
     /**
      * Default model to communicate.
      */
@@ -44,6 +102,89 @@ public class Ollama extends WasapiUtilities {
      */
     int readTimeout;
 
+    /**
+     * Maximum estimated prompt size in tokens. Requests above it are trimmed or rejected before
+     * they are sent. A value of 0 disables the check.
+     */
+    int maxPromptTokens = Integer.parseInt(ContextStore.get("ollama-max-prompt-tokens", "0"));
+
+    /**
+     * Flag to trim oversized prompts instead of rejecting them.
+     */
+    boolean trimsPrompts = Boolean.parseBoolean(ContextStore.get("ollama-prompt-trimming", "false"));
+
+    /**
+     * Estimator used to size prompts locally, calibrated with the token counts of responses.
+     */
+    TokenEstimator tokenEstimator = new TokenEstimator();
+
+    /**
+     * Statistics of cancelled generations.
+     */
+    CancellationStats cancellationStats = new CancellationStats();
+
+    /**
+     * Statistics of model races.
+     */
+    RaceStats raceStats = new RaceStats();
+
+    /**
+     * Compactor of stored conversations, or null to not compact them.
+     */
+    ConversationCompactor conversationCompactor;
+
+    /**
+     * Tracer of the request lifecycles, enabled with {@code ollama-request-tracing}.
+     */
+    Tracer tracer = new Tracer(Boolean.parseBoolean(ContextStore.get("ollama-request-tracing", "false")));
+
+    /**
+     * Maximum number of inputs sent in a single embedding request. Larger batches are split.
+     */
+    int embeddingBatchSize = Integer.parseInt(ContextStore.get("ollama-embedding-batch-size", "64"));
+
+    /**
+     * Maximum number of split embedding requests in flight at the same time.
+     */
+    int embeddingParallelism = Integer.parseInt(ContextStore.get("ollama-embedding-parallelism", "4"));
+
+    /**
+     * Minimum size in bytes of request bodies which are gzip compressed. A value of 0 disables
+     * request compression.
+     */
+    int compressionThreshold = Integer.parseInt(ContextStore.get("ollama-compression-threshold", "0"));
+
+    /**
+     * Maximum number of batch chat requests in flight at the same time.
+     */
+    int batchParallelism = Integer.parseInt(ContextStore.get("ollama-batch-parallelism", "4"));
+
+    /**
+     * Flag to send chat requests to the native {@code api/chat} endpoint instead of the OpenAI
+     * compatible {@code api/chat/completions}, enabled with {@code ollama-native-chat}.
+     */
+    boolean nativeChat = Boolean.parseBoolean(ContextStore.get("ollama-native-chat", "false"));
+
+    /**
+     * Logger writing requests and responses off the requesting threads, enabled with
+     * {@code ollama-async-logging}, and shared by every instance logging to the same file. While it
+     * is set, the request and response logging flags are served by it instead of the synchronous logs.
+     */
+    RequestLogger requestLogger = requestLogger();
+
+    /**
+     * Limiter of the requests and tokens sent with the credential of this instance, shared with every
+     * instance using the same credential. Enabled with {@code ollama-requests-per-second} and
+     * {@code ollama-tokens-per-minute}; instances without a credential are limited per base URL.
+     */
+    RateLimiter rateLimiter;
+
+    /**
+     * Scheduler of the requests sent to the node of this instance, shared with every instance using
+     * the same base URL. Enabled with {@code ollama-max-concurrent-requests}.
+     */
+    RequestScheduler scheduler;
+
     /**
      * Constructs an instance of {@code Ollama} with a specified base URL.
      *
@@ -53,12 +194,15 @@ public class Ollama extends WasapiUtilities {
         this.logsResponses = Boolean.parseBoolean(ContextStore.get("ollama-response-logging", "false"));
         this.logsRequests = Boolean.parseBoolean(ContextStore.get("ollama-request-logging", "false"));
         this.readTimeout = Integer.parseInt(ContextStore.get("ollama-response-timeout", "1200"));
+        this.rateLimiter = rateLimiter(baseUrl);
+        this.baseUrl = baseUrl;
+        this.scheduler = scheduler(baseUrl);
         keepLogs(logsRequests);
         ollamaServices = new WasapiClient.Builder()
                 .baseUrl(baseUrl)
                 .readTimeout(readTimeout)
-                .logRequestBody(logsRequests)
-                .printHeaders(logsRequests)
+                .logRequestBody(logsRequests && requestLogger == null)
+                .printHeaders(logsRequests && requestLogger == null)
                 .build(OllamaServices.class);
     }
 
@@ -72,13 +216,16 @@ public class Ollama extends WasapiUtilities {
         this.logsResponses = Boolean.parseBoolean(ContextStore.get("ollama-response-logging", "false"));
         this.logsRequests = Boolean.parseBoolean(ContextStore.get("ollama-request-logging", "false"));
         this.readTimeout = Integer.parseInt(ContextStore.get("ollama-response-timeout", "1200"));
+        this.rateLimiter = rateLimiter(credential(authorisationHeader));
+        this.baseUrl = baseUrl;
+        this.scheduler = scheduler(baseUrl);
         keepLogs(logsRequests);
         ollamaServices = new WasapiClient.Builder()
                 .baseUrl(baseUrl)
                 .headers(authorisationHeader)
                 .readTimeout(readTimeout)
-                .logRequestBody(logsRequests)
-                .printHeaders(logsRequests)
+                .logRequestBody(logsRequests && requestLogger == null)
+                .printHeaders(logsRequests && requestLogger == null)
                 .build(OllamaServices.class);
     }
 
@@ -94,13 +241,16 @@ public class Ollama extends WasapiUtilities {
         this.logsRequests = Boolean.parseBoolean(ContextStore.get("ollama-request-logging", "false"));
         this.readTimeout = Integer.parseInt(ContextStore.get("ollama-response-timeout", "1200"));
         this.defaultModel = defaultModel;
+        this.rateLimiter = rateLimiter("Bearer " + authorisationKey);
+        this.baseUrl = baseUrl;
+        this.scheduler = scheduler(baseUrl);
         keepLogs(logsRequests);
         ollamaServices = new WasapiClient.Builder()
                 .baseUrl(baseUrl)
                 .headers(Headers.of("Authorization", "Bearer " + authorisationKey))
                 .readTimeout(readTimeout)
-                .logRequestBody(logsRequests)
-                .printHeaders(logsRequests)
+                .logRequestBody(logsRequests && requestLogger == null)
+                .printHeaders(logsRequests && requestLogger == null)
                 .build(OllamaServices.class);
     }
 
@@ -114,13 +264,16 @@ public class Ollama extends WasapiUtilities {
         this.logsResponses = Boolean.parseBoolean(ContextStore.get("ollama-response-logging", "false"));
         this.logsRequests = Boolean.parseBoolean(ContextStore.get("ollama-request-logging", "false"));
         this.readTimeout = Integer.parseInt(ContextStore.get("ollama-response-timeout", "1200"));
+        this.rateLimiter = rateLimiter("Bearer " + authorisationKey);
+        this.baseUrl = baseUrl;
+        this.scheduler = scheduler(baseUrl);
         keepLogs(logsRequests);
         ollamaServices = new WasapiClient.Builder()
                 .baseUrl(baseUrl)
                 .headers(Headers.of("Authorization", "Bearer " + authorisationKey))
                 .readTimeout(readTimeout)
-                .logRequestBody(logsRequests)
-                .printHeaders(logsRequests)
+                .logRequestBody(logsRequests && requestLogger == null)
+                .printHeaders(logsRequests && requestLogger == null)
                 .build(OllamaServices.class);
     }
 
@@ -136,13 +289,16 @@ public class Ollama extends WasapiUtilities {
         this.logsRequests = Boolean.parseBoolean(ContextStore.get("ollama-request-logging", "false"));
         this.readTimeout = Integer.parseInt(ContextStore.get("ollama-response-timeout", "1200"));
         this.defaultModel = defaultModel;
+        this.rateLimiter = rateLimiter(credential(authorisationHeader));
+        this.baseUrl = baseUrl;
+        this.scheduler = scheduler(baseUrl);
         keepLogs(logsRequests);
         ollamaServices = new WasapiClient.Builder()
                 .baseUrl(baseUrl)
                 .headers(authorisationHeader)
                 .readTimeout(readTimeout)
-                .logRequestBody(logsRequests)
-                .printHeaders(logsRequests)
+                .logRequestBody(logsRequests && requestLogger == null)
+                .printHeaders(logsRequests && requestLogger == null)
                 .build(OllamaServices.class);
     }
 
@@ -153,12 +309,61 @@ public class Ollama extends WasapiUtilities {
      * @return A {@code ResponseModel} containing the API response.
      */
     public InferenceResponse inference(InferenceModel prompt) {
+        return inference(prompt, Deadline.NONE);
+    }
+
+    /**
+     * Sends an inference request with a given message, bounded by per-request deadlines.
+     * A request with a first token or idle deadline is streamed under the hood so the deadlines
+     * can be enforced between chunks.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param deadline The deadlines of the request.
+     * @return A {@code ResponseModel} containing the API response.
+     * @throws RuntimeException If a deadline passes, caused by a {@code Deadline.ExceededException}
+     *                          or an {@code InterruptedIOException}.
+     */
+    public InferenceResponse inference(InferenceModel prompt, Deadline deadline) {
+        return inference(prompt, Headers.of(), deadline);
+    }
+
+    /**
+     * Sends an inference request with a given message and additional headers, such as the credentials
+     * of a tenant. Tenants can so share one client and its connections.
+     *
+     * @param prompt  The {@code PromptModel} containing the prompt message.
+     * @param headers The headers of this request, sent along with the headers of the client.
+     * @return A {@code ResponseModel} containing the API response.
+     */
+    public InferenceResponse inference(InferenceModel prompt, Headers headers) {
+        return inference(prompt, headers, Deadline.NONE);
+    }
+
+    /**
+     * Sends an inference request with a given message and additional headers, bounded by per-request
+     * deadlines. An {@code Authorization} header also selects the rate limiter of that credential.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param headers  The headers of this request, sent along with the headers of the client.
+     * @param deadline The deadlines of the request.
+     * @return A {@code ResponseModel} containing the API response.
+     * @throws RuntimeException If a deadline passes, caused by a {@code Deadline.ExceededException}
+     *                          or an {@code InterruptedIOException}.
+     */
+    public InferenceResponse inference(InferenceModel prompt, Headers headers, Deadline deadline) {
+        if (!deadline.isTotalOnly()) return await(inferenceAsync(prompt, headers, deadline));
+        Map<String, String> extraHeaders = headers(headers);
         prompt = new InferenceModel.Builder(prompt)
                 .model(prompt.getModel() == null ? defaultModel : prompt.getModel())
                 .build();
+        prompt = fit(prompt);
         log.info("Inference with " + prompt.getModel() + ".");
-        Call<InferenceResponse> inferenceCall = ollamaServices.generate(prompt);
-        return perform(inferenceCall, true, logsResponses, Response.class);
+        RequestTrace trace = tracer.start("api/generate", prompt.getModel());
+        Call<InferenceResponse> inferenceCall = deadline.applyTo(generateCall(prompt, extraHeaders));
+        InferenceResponse response = execute(inferenceCall, prompt, extraHeaders, trace);
+        calibrate(prompt, response);
+        finish(trace, response);
+        return response;
     }
 
     /**
@@ -169,8 +374,21 @@ public class Ollama extends WasapiUtilities {
      */
     public Object getModels() {
         log.info("Getting models.");
-        Call<Object> inferenceCall = ollamaServices.getModels();
-        return perform(inferenceCall, true, logsResponses, Response.class);
+        Call<Object> modelsCall = nativeChat ? ollamaServices.getTags() : ollamaServices.getModels();
+        return execute(modelsCall, null, Map.of(), null);
+    }
+
+    /**
+     * Retrieves a list of available models from the Ollama server, with additional headers.
+     *
+     * @param headers The headers of this request, sent along with the headers of the client.
+     * @return A list of available models.
+     */
+    public Object getModels(Headers headers) {
+        log.info("Getting models.");
+        Map<String, String> extraHeaders = headers(headers);
+        Call<Object> modelsCall = nativeChat ? ollamaServices.getTags(extraHeaders) : ollamaServices.getModels(extraHeaders);
+        return execute(modelsCall, null, extraHeaders, null);
     }
 
     /**
@@ -180,37 +398,523 @@ public class Ollama extends WasapiUtilities {
      * @return A {@code ResponseModel} containing the API response.
      */
     public ChatResponse chat(ChatModel prompt) {
+        return chat(prompt, Deadline.NONE);
+    }
+
+    /**
+     * Sends a chat message with a given message, bounded by per-request deadlines.
+     * A request with a first token or idle deadline is streamed under the hood so the deadlines
+     * can be enforced between chunks.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param deadline The deadlines of the request.
+     * @return A {@code ResponseModel} containing the API response.
+     * @throws RuntimeException If a deadline passes, caused by a {@code Deadline.ExceededException}
+     *                          or an {@code InterruptedIOException}.
+     */
+    public ChatResponse chat(ChatModel prompt, Deadline deadline) {
+        return chat(prompt, Headers.of(), deadline);
+    }
+
+    /**
+     * Sends a chat message with a given message and additional headers, such as the credentials
+     * of a tenant. Tenants can so share one client and its connections.
+     *
+     * @param prompt  The {@code PromptModel} containing the prompt message.
+     * @param headers The headers of this request, sent along with the headers of the client.
+     * @return A {@code ResponseModel} containing the API response.
+     */
+    public ChatResponse chat(ChatModel prompt, Headers headers) {
+        return chat(prompt, headers, Deadline.NONE);
+    }
+
+    /**
+     * Sends a chat message with a given message and additional headers, bounded by per-request
+     * deadlines. An {@code Authorization} header also selects the rate limiter of that credential.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param headers  The headers of this request, sent along with the headers of the client.
+     * @param deadline The deadlines of the request.
+     * @return A {@code ResponseModel} containing the API response.
+     * @throws RuntimeException If a deadline passes, caused by a {@code Deadline.ExceededException}
+     *                          or an {@code InterruptedIOException}.
+     */
+    public ChatResponse chat(ChatModel prompt, Headers headers, Deadline deadline) {
+        if (!deadline.isTotalOnly()) return await(chatAsync(prompt, headers, deadline));
+        Map<String, String> extraHeaders = headers(headers);
         prompt.setModel(prompt.getModel() == null ? defaultModel : prompt.getModel());
+        ChatModel request = fit(prompt);
         log.info("Messaging " + prompt.getModel() + ".");
-        Call<ChatResponse> inferenceCall = ollamaServices.chat(prompt);
-        return perform(inferenceCall, true, logsResponses, Response.class);
+        RequestTrace trace = tracer.start(chatPath(), request.getModel());
+        ChatResponse response = nativeChat ?
+                execute(deadline.applyTo(nativeChatCall(request, extraHeaders)), request, extraHeaders, trace).toResponse() :
+                execute(deadline.applyTo(chatCall(request, extraHeaders)), request, extraHeaders, trace);
+        calibrate(request, response);
+        finish(trace, response);
+        return response;
     }
 
     /**
-     * Sends an inference request and maps the response to a specified type.
+     * Sends a streamed inference request. Chunks are read from the connection only as fast as the
+     * subscriber requests them, and cancelling the subscription aborts the request on the server.
+     * The final chunk is marked as done and carries the durations and token counts.
      *
-     * @param prompt       The {@code PromptModel} containing the prompt message.
-     * @param responseType  The class type to map the response to.
-     * @param requiredFields Optional required fields for JSON schema generation.
-     * @param <T> The generic response type.
-     * @return The API response mapped to the specified type.
-     * @throws RuntimeException If JSON processing fails.
+     * @param prompt The {@code PromptModel} containing the prompt message.
+     * @return A {@code Flow.Publisher} of response chunks. Every subscription sends its own request.
      */
-    public <T> T inference(InferenceModel prompt, Class<T> responseType, String... requiredFields) {
+    public Flow.Publisher<InferenceResponse> inferenceStream(InferenceModel prompt) {
+        return inferenceStream(prompt, Deadline.NONE);
+    }
+
+    /**
+     * Sends a streamed inference request bounded by per-request deadlines. A passed deadline aborts
+     * the request and fails the subscriber with a {@code Deadline.ExceededException}.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param deadline The deadlines of every subscription.
+     * @return A {@code Flow.Publisher} of response chunks. Every subscription sends its own request.
+     */
+    public Flow.Publisher<InferenceResponse> inferenceStream(InferenceModel prompt, Deadline deadline) {
+        return inferenceStream(prompt, Headers.of(), deadline);
+    }
+
+    /**
+     * Sends a streamed inference request with additional headers, bounded by per-request deadlines.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param headers  The headers of every subscription, sent along with the headers of the client.
+     * @param deadline The deadlines of every subscription.
+     * @return A {@code Flow.Publisher} of response chunks. Every subscription sends its own request.
+     */
+    public Flow.Publisher<InferenceResponse> inferenceStream(InferenceModel prompt, Headers headers, Deadline deadline) {
+        Map<String, String> extraHeaders = headers(headers);
+        InferenceModel request = fit(new InferenceModel.Builder(prompt)
+                .model(prompt.getModel() == null ? defaultModel : prompt.getModel())
+                .stream(true)
+                .build());
+        log.info("Streaming inference with " + request.getModel() + ".");
+        ChunkParser<InferenceResponse> parser = ChunkParser.ndjson(InferenceResponse.class);
+        return new StreamPublisher<>(generateStreamCall(request, extraHeaders), line -> {
+            InferenceResponse chunk = parser.parse(line);
+            if (chunk != null && chunk.isDone()) calibrate(request, chunk);
+            return chunk;
+        }, deadline).listener(() -> StreamListener.combine(
+                StreamListener.combine(scheduling(request), limiting(request, extraHeaders)),
+                StreamListener.combine(
+                        tracer.<InferenceResponse>stream("api/generate", request.getModel(), (trace, chunk) -> {
+                            if (chunk.isDone()) server(trace, chunk);
+                        }),
+                        logging()
+                )
+        ));
+    }
+
+    /**
+     * Sends a streamed chat message. Chunks are read from the connection only as fast as the
+     * subscriber requests them, and cancelling the subscription aborts the request on the server.
+     * The content of each chunk is found in the delta of its choices.
+     *
+     * @param prompt The {@code PromptModel} containing the prompt message.
+     * @return A {@code Flow.Publisher} of response chunks. Every subscription sends its own request.
+     */
+    public Flow.Publisher<ChatResponse> chatStream(ChatModel prompt) {
+        return chatStream(prompt, Deadline.NONE);
+    }
+
+    /**
+     * Sends a streamed chat message bounded by per-request deadlines. A passed deadline aborts
+     * the request and fails the subscriber with a {@code Deadline.ExceededException}.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param deadline The deadlines of every subscription.
+     * @return A {@code Flow.Publisher} of response chunks. Every subscription sends its own request.
+     */
+    public Flow.Publisher<ChatResponse> chatStream(ChatModel prompt, Deadline deadline) {
+        return chatStream(prompt, Headers.of(), deadline);
+    }
+
+    /**
+     * Sends a streamed chat message with additional headers, bounded by per-request deadlines.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param headers  The headers of every subscription, sent along with the headers of the client.
+     * @param deadline The deadlines of every subscription.
+     * @return A {@code Flow.Publisher} of response chunks. Every subscription sends its own request.
+     */
+    public Flow.Publisher<ChatResponse> chatStream(ChatModel prompt, Headers headers, Deadline deadline) {
+        Map<String, String> extraHeaders = headers(headers);
+        String model = prompt.getModel() == null ? defaultModel : prompt.getModel();
+        ChatModel request = fit(prompt.copy(model, prompt.getMessages(), true));
+        log.info("Streaming messages with " + model + ".");
+        ChunkParser<ChatResponse> parser = ChunkParser.sse(ChatResponse.class);
+        if (nativeChat) {
+            ChunkParser<NativeChatResponse> ndjson = ChunkParser.ndjson(NativeChatResponse.class);
+            parser = line -> {
+                NativeChatResponse chunk = ndjson.parse(line);
+                if (chunk == null) return null;
+                ChatResponse response = chunk.toChunk();
+                if (chunk.isDone()) calibrate(request, response);
+                return response;
+            };
+        }
+        return new StreamPublisher<>(chatStreamCall(request, extraHeaders), parser, deadline)
+                .listener(() -> StreamListener.combine(
+                        StreamListener.combine(scheduling(request), limiting(request, extraHeaders)),
+                        StreamListener.combine(
+                                tracer.<ChatResponse>stream(chatPath(), model, (trace, chunk) -> {
+                                    if (chunk.getUsage() != null) server(trace, chunk);
+                                }),
+                                logging()
+                        )
+                ));
+    }
+
+    /**
+     * Starts a cancellable inference request. The response is streamed under the hood and aggregated
+     * into a single {@code InferenceResponse}. Cancelling the returned handle, or interrupting a thread
+     * waiting on it, closes the connection so the server stops generating.
+     *
+     * @param prompt The {@code PromptModel} containing the prompt message.
+     * @return A {@code Generation} handle completing with the aggregated response.
+     */
+    public Generation<InferenceResponse> inferenceAsync(InferenceModel prompt) {
+        return inferenceAsync(prompt, Deadline.NONE);
+    }
+
+    /**
+     * Starts a cancellable inference request bounded by per-request deadlines. A passed deadline
+     * aborts the request and completes the handle exceptionally with a {@code Deadline.ExceededException}.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param deadline The deadlines of the request.
+     * @return A {@code Generation} handle completing with the aggregated response.
+     */
+    public Generation<InferenceResponse> inferenceAsync(InferenceModel prompt, Deadline deadline) {
+        return inferenceAsync(prompt, Headers.of(), deadline);
+    }
+
+    /**
+     * Starts a cancellable inference request with additional headers, bounded by per-request deadlines.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param headers  The headers of the request, sent along with the headers of the client.
+     * @param deadline The deadlines of the request.
+     * @return A {@code Generation} handle completing with the aggregated response.
+     */
+    public Generation<InferenceResponse> inferenceAsync(InferenceModel prompt, Headers headers, Deadline deadline) {
+        String model = prompt.getModel() == null ? defaultModel : prompt.getModel();
+        Generation<InferenceResponse> generation = new Generation<>(
+                model,
+                cancellationStats,
+                InferenceResponse::getResponse,
+                (last, response) -> new InferenceResponse(
+                        last.getModel(),
+                        last.getCreatedAt(),
+                        response,
+                        last.isDone(),
+                        last.getDoneReason(),
+                        last.getContext(),
+                        last.getTotalDuration(),
+                        last.getLoadDuration(),
+                        last.getPromptEvalCount(),
+                        last.getPromptEvalDuration(),
+                        last.getEvalCount(),
+                        last.getEvalDuration()
+                )
+        );
+        inferenceStream(prompt, headers, deadline).subscribe(generation);
+        return generation;
+    }
+
+    /**
+     * Starts a cancellable chat request. The response is streamed under the hood and aggregated
+     * into a single {@code ChatResponse}. Cancelling the returned handle, or interrupting a thread
+     * waiting on it, closes the connection so the server stops generating.
+     *
+     * @param prompt The {@code PromptModel} containing the prompt message.
+     * @return A {@code Generation} handle completing with the aggregated response.
+     */
+    public Generation<ChatResponse> chatAsync(ChatModel prompt) {
+        return chatAsync(prompt, Deadline.NONE);
+    }
+
+    /**
+     * Starts a cancellable chat request bounded by per-request deadlines. A passed deadline
+     * aborts the request and completes the handle exceptionally with a {@code Deadline.ExceededException}.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param deadline The deadlines of the request.
+     * @return A {@code Generation} handle completing with the aggregated response.
+     */
+    public Generation<ChatResponse> chatAsync(ChatModel prompt, Deadline deadline) {
+        return chatAsync(prompt, Headers.of(), deadline);
+    }
+
+    /**
+     * Starts a cancellable chat request with additional headers, bounded by per-request deadlines.
+     *
+     * @param prompt   The {@code PromptModel} containing the prompt message.
+     * @param headers  The headers of the request, sent along with the headers of the client.
+     * @param deadline The deadlines of the request.
+     * @return A {@code Generation} handle completing with the aggregated response.
+     */
+    public Generation<ChatResponse> chatAsync(ChatModel prompt, Headers headers, Deadline deadline) {
+        String model = prompt.getModel() == null ? defaultModel : prompt.getModel();
+        Generation<ChatResponse> generation = new Generation<>(
+                model,
+                cancellationStats,
+                chunk -> chunk.getChoices() == null || chunk.getChoices().isEmpty() || chunk.getChoices().get(0).getDelta() == null ?
+                        null : chunk.getChoices().get(0).getDelta().getContent(),
+                (last, content) -> new ChatResponse(
+                        last.getId(),
+                        last.getCreated(),
+                        last.getModel(),
+                        List.of(new ChatResponse.Choice(
+                                0,
+                                last.getChoices() == null || last.getChoices().isEmpty() ? null : last.getChoices().get(0).getFinish_reason(),
+                                new Message(Role.assistant, content)
+                        )),
+                        "chat.completion",
+                        last.getUsage()
+                )
+        );
+        chatStream(prompt, headers, deadline).subscribe(generation);
+        return generation;
+    }
+
+    /**
+     * Sends a retrieval-augmented chat message. The last message of the conversation is embedded with
+     * the model of the index, the {@code k} closest documents are looked up, and they are passed to the
+     * model as a system message placed right before the last message.
+     *
+     * @param prompt The {@code ChatModel} containing the conversation.
+     * @param index  The {@code VectorIndex} to retrieve context from.
+     * @param k      The number of documents to retrieve.
+     * @return A {@code ChatResponse} containing the API response.
+     */
+    public ChatResponse chat(ChatModel prompt, VectorIndex index, int k) {
+        List<Message> messages = new ArrayList<>(prompt.getMessages());
+        Message question = messages.get(messages.size() - 1);
+        float[] query = embed(new EmbeddingModel.Builder()
+                .model(index.getModel())
+                .input(question.getContent())
+                .build()
+        ).getEmbeddings()[0];
+
+        StringBuilder context = new StringBuilder("Use the following context to answer.\n");
+        for (VectorIndex.Match match : index.search(query, k)) context.append("\n").append(match.document()).append("\n");
+        messages.add(messages.size() - 1, new Message(Role.system, context.toString()));
+
+        return chat(prompt.copy(prompt.getModel(), messages, prompt.isStream()));
+    }
+
+    /**
+     * Continues a stored conversation with a message. The conversation is read from the store, the
+     * message is sent along with it, and the message and the reply are appended to the store once
+     * the reply arrives, so a failed request leaves the conversation unchanged. If a conversation
+     * compactor is set, the conversation is then compacted in the background once it grows too long.
+     *
+     * @param store        The {@code ConversationStore} holding the conversation.
+     * @param conversation The conversation ID. A new conversation is created if it does not exist.
+     * @param message      The new message.
+     * @return A {@code ChatResponse} containing the API response.
+     */
+    public ChatResponse chat(ConversationStore store, String conversation, Message message) {
+        List<Message> messages = store.messages(conversation);
+        messages.add(message);
+        ChatResponse response = chat(new ChatModel(defaultModel, messages, false));
+        Message reply = response.getChoices() == null || response.getChoices().isEmpty() ? null : response.getChoices().get(0).getMessage();
+        store.append(conversation, reply == null ? List.of(message) : List.of(message, reply));
+        if (conversationCompactor != null) conversationCompactor.compactAsync(store, conversation, defaultModel);
+        return response;
+    }
+
+    /**
+     * Sends a batch of chat requests sharing the same leading messages. The shared prefix is
+     * serialized once for the whole batch. The first request is sent alone, so the server evaluates
+     * the prefix once and caches it, then the remaining requests are sent in parallel, bounded by
+     * the batch parallelism, in an order that keeps similar suffixes together.
+     *
+     * @param batch The {@code ChatBatch} containing the prefix and the suffixes.
+     * @return One {@code ChatResponse} per suffix, in input order.
+     * @throws RuntimeException If any of the requests fails.
+     */
+    public List<ChatResponse> chat(ChatBatch batch) {
+        return chat(batch, Headers.of());
+    }
+
+    /**
+     * Sends a batch of chat requests sharing the same leading messages, with additional headers
+     * sent along with every request of the batch.
+     *
+     * @param batch   The {@code ChatBatch} containing the prefix and the suffixes.
+     * @param headers The headers of the requests, sent along with the headers of the client.
+     * @return One {@code ChatResponse} per suffix, in input order.
+     * @throws RuntimeException If any of the requests fails.
+     */
+    public List<ChatResponse> chat(ChatBatch batch, Headers headers) {
+        Map<String, String> extraHeaders = headers(headers);
+        String model = batch.getModel() == null ? defaultModel : batch.getModel();
+        Buffer head = head(batch, model);
+        log.info("Messaging " + model + " with a batch of " + batch.size() + " requests.");
+
+        List<Integer> order = batch.order();
+        ChatResponse[] responses = new ChatResponse[batch.size()];
+        responses[order.get(0)] = chat(batch, model, head, order.get(0), extraHeaders);
+        if (order.size() == 1) return Arrays.asList(responses);
+
+        List<Callable<ChatResponse>> requests = new ArrayList<>();
+        RequestScheduler.Scope scope = RequestScheduler.current();
+        for (int index : order.subList(1, order.size())) requests.add(scope.wrap(() -> chat(batch, model, head, index, extraHeaders)));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(batchParallelism, requests.size()));
         try {
-            log.info("Inference with " + prompt.getModel() + ".");
-            prompt = new InferenceModel.Builder(prompt)
-                    .model(prompt.getModel() == null ? defaultModel : prompt.getModel())
-                    .format(responseType, requiredFields)
-                    .build();
-            Call<InferenceResponse> inferenceCall = ollamaServices.generate(prompt);
-            String response = ((InferenceResponse) perform(
-                    inferenceCall,
-                    true,
-                    logsResponses,
-                    Response.class)
-            ).getResponse();
-            return MappingUtilities.Json.fromJsonString(response, responseType);
+            List<Future<ChatResponse>> futures = executor.invokeAll(requests);
+            for (int i = 0; i < futures.size(); i++) responses[order.get(i + 1)] = futures.get(i).get();
+            return Arrays.asList(responses);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends a single request of a chat batch. The body is the serialized prefix followed by the
+     * suffix, unless the conversation had to be trimmed to fit the prompt token limit.
+     *
+     * @param batch   The batch.
+     * @param model   The model of the batch.
+     * @param head    The serialized start of the body, up to and including the prefix messages.
+     * @param index   The index of the request.
+     * @param headers Additional headers of the request.
+     * @return The response.
+     */
+    ChatResponse chat(ChatBatch batch, String model, Buffer head, int index, Map<String, String> headers) {
+        ChatModel prompt = new ChatModel(model, batch.messages(index), false);
+        ChatModel request = fit(prompt);
+        JsonBody json = null;
+        if (request == prompt) json = JsonBody.of(body(batch, head, index), compressionThreshold);
+
+        RequestTrace trace = tracer.start(chatPath(), model);
+        ChatResponse response;
+        if (nativeChat) response = execute(json == null ? nativeChatCall(request, headers) : ollamaServices.nativeChat(merge(headers, json.headers()), json),
+                request, headers, trace).toResponse();
+        else response = execute(json == null ? chatCall(request, headers) : ollamaServices.chat(merge(headers, json.headers()), json),
+                request, headers, trace);
+        calibrate(request, response);
+        finish(trace, response);
+        return response;
+    }
+
+    /**
+     * Serializes the start of the bodies of a chat batch, up to and including the prefix messages.
+     *
+     * @param batch The batch.
+     * @param model The model of the batch.
+     * @return The serialized start of the bodies, with the messages array left open.
+     */
+    static Buffer head(ChatBatch batch, String model) {
+        Buffer head = new Buffer()
+                .writeUtf8("{\"model\":").write(json(model))
+                .writeUtf8(",\"stream\":false,\"messages\":[");
+        for (int i = 0; i < batch.getPrefix().size(); i++) {
+            if (i > 0) head.writeByte(',');
+            head.write(json(batch.getPrefix().get(i)));
+        }
+        return head;
+    }
+
+    /**
+     * Serializes the body of a single request of a chat batch, the serialized prefix followed by
+     * the suffix of the request.
+     *
+     * @param batch The batch.
+     * @param head  The serialized start of the bodies, which is left untouched.
+     * @param index The index of the request.
+     * @return The serialized body.
+     */
+    static Buffer body(ChatBatch batch, Buffer head, int index) {
+        Buffer body = head.clone();
+        boolean first = batch.getPrefix().isEmpty();
+        for (Message message : batch.getSuffixes().get(index)) {
+            if (!first) body.writeByte(',');
+            body.write(json(message));
+            first = false;
+        }
+        return body.writeUtf8("]}");
+    }
+
+    private static RequestScheduler scheduler(String baseUrl) {
+        return RequestScheduler.forNode(
+                baseUrl,
+                Integer.parseInt(ContextStore.get("ollama-max-concurrent-requests", "0")),
+                Integer.parseInt(ContextStore.get("ollama-max-queued-requests", "1000"))
+        );
+    }
+
+    /**
+     * Returns the rate limiter of a request, the one of its own credential if it has one. Limiters of
+     * request credentials are looked up for every request, so the registry may drop them once idle.
+     *
+     * @param headers The additional headers of the request.
+     * @return The rate limiter, or null if the request is not rate limited.
+     */
+    RateLimiter rateLimiter(Map<String, String> headers) {
+        String credential = headers.get("Authorization");
+        return credential == null ? rateLimiter : RateLimiter.forRequest(
+                credential,
+                Double.parseDouble(ContextStore.get("ollama-requests-per-second", "0")),
+                Double.parseDouble(ContextStore.get("ollama-tokens-per-minute", "0"))
+        );
+    }
+
+    private static Map<String, String> headers(Headers headers) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String name : headers.names()) map.put(name, headers.get(name));
+        return map;
+    }
+
+    private static Map<String, String> merge(Map<String, String> first, Map<String, String> second) {
+        if (first.isEmpty()) return second;
+        if (second.isEmpty()) return first;
+        Map<String, String> merged = new LinkedHashMap<>(first);
+        merged.putAll(second);
+        return merged;
+    }
+
+    private static RateLimiter rateLimiter(String credential) {
+        return RateLimiter.forKey(
+                credential,
+                Double.parseDouble(ContextStore.get("ollama-requests-per-second", "0")),
+                Double.parseDouble(ContextStore.get("ollama-tokens-per-minute", "0"))
+        );
+    }
+
+    private static String credential(Headers headers) {
+        String authorization = headers.get("Authorization");
+        return authorization != null ? authorization : headers.toString();
+    }
+
+    private static RequestLogger requestLogger() {
+        if (!Boolean.parseBoolean(ContextStore.get("ollama-async-logging", "false"))) return null;
+        String file = ContextStore.get("ollama-log-file", "");
+        return RequestLogger.forFile(
+                file.isEmpty() ? null : Path.of(file),
+                Integer.parseInt(ContextStore.get("ollama-log-buffer-size", "1024")),
+                Double.parseDouble(ContextStore.get("ollama-log-sample-rate", "1")),
+                Integer.parseInt(ContextStore.get("ollama-log-max-field-length", "1000"))
+        );
+    }
+
+    private static byte[] json(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
         }
         catch (JsonProcessingException e) {
             throw new RuntimeException(e);
@@ -218,23 +922,1101 @@ public class Ollama extends WasapiUtilities {
     }
 
     /**
-     * Gets the read timeout in milliseconds.  This timeout applies to network
-     * operations when communicating with the Ollama server.
+     * Embeds a batch of inputs. Batches larger than the embedding batch size are split into
+     * several requests which are sent in parallel, and the vectors are merged back in input order.
      *
-     * @return The read timeout in milliseconds.
+     * @param request The {@code EmbeddingModel} containing the inputs.
+     * @return An {@code EmbeddingResponse} holding one vector per input. Durations and token counts
+     *         are summed across the split requests.
      */
-    public int getReadTimeout() {
-        return readTimeout;
+    public EmbeddingResponse embed(EmbeddingModel request) {
+        return embed(request, Headers.of());
     }
 
     /**
-     * Sets the read timeout in milliseconds.  This timeout applies to network
-     * operations when communicating with the Ollama server.
+     * Embeds a batch of inputs with additional headers, sent along with every split request.
      *
-     * @param readTimeout The read timeout in milliseconds.
+     * @param request The {@code EmbeddingModel} containing the inputs.
+     * @param headers The headers of the requests, sent along with the headers of the client.
+     * @return An {@code EmbeddingResponse} holding one vector per input. Durations and token counts
+     *         are summed across the split requests.
      */
-    public void setReadTimeout(int readTimeout) {
-        this.readTimeout = readTimeout;
+    public EmbeddingResponse embed(EmbeddingModel request, Headers headers) {
+        Map<String, String> extraHeaders = headers(headers);
+        if (request.getModel() == null) request = new EmbeddingModel.Builder(request).model(defaultModel).build();
+        List<String> input = request.getInput();
+        if (input.size() <= embeddingBatchSize) {
+            log.info("Embedding " + input.size() + " inputs with " + request.getModel() + ".");
+            return checked(request, execute(embedCall(request, extraHeaders), request, extraHeaders, null));
+        }
+
+        List<Callable<EmbeddingResponse>> batches = new ArrayList<>();
+        RequestScheduler.Scope scope = RequestScheduler.current();
+        for (int from = 0; from < input.size(); from += embeddingBatchSize) {
+            EmbeddingModel batch = new EmbeddingModel.Builder(request)
+                    .input(input.subList(from, Math.min(from + embeddingBatchSize, input.size())))
+                    .build();
+            batches.add(scope.wrap(() -> checked(batch, execute(embedCall(batch, extraHeaders), batch, extraHeaders, null))));
+        }
+        log.info("Embedding " + input.size() + " inputs in " + batches.size() + " batches with " + request.getModel() + ".");
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(embeddingParallelism, batches.size()));
+        try {
+            float[][] embeddings = new float[input.size()][];
+            long totalDuration = 0;
+            long loadDuration = 0;
+            int promptEvalCount = 0;
+            int index = 0;
+            for (Future<EmbeddingResponse> future : executor.invokeAll(batches)) {
+                EmbeddingResponse response = future.get();
+                for (float[] vector : response.getEmbeddings()) embeddings[index++] = vector;
+                totalDuration += response.getTotalDuration();
+                loadDuration += response.getLoadDuration();
+                promptEvalCount += response.getPromptEvalCount();
+            }
+            return new EmbeddingResponse(request.getModel(), embeddings, totalDuration, loadDuration, promptEvalCount);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks that an embedding response holds one vector per input, so merged batches cannot shift
+     * vectors onto the wrong inputs.
+     *
+     * @param request  The embedding request.
+     * @param response The response to the request.
+     * @return The response.
+     * @throws RuntimeException If the number of vectors differs from the number of inputs.
+     */
+    private static EmbeddingResponse checked(EmbeddingModel request, EmbeddingResponse response) {
+        int received = response.getEmbeddings() == null ? 0 : response.getEmbeddings().length;
+        if (received != request.getInput().size())
+            throw new RuntimeException("Expected " + request.getInput().size() + " embeddings but received " + received + ".");
+        return response;
+    }
+
+    /**
+     * Embeds a batch of inputs with the default model.
+     *
+     * @param input The inputs to be embedded.
+     * @return One primitive vector per input, in input order.
+     */
+    public float[][] embed(List<String> input) {
+        return embed(input, Headers.of());
+    }
+
+    /**
+     * Embeds a batch of inputs with the default model and additional headers.
+     *
+     * @param input   The inputs to be embedded.
+     * @param headers The headers of the requests, sent along with the headers of the client.
+     * @return One primitive vector per input, in input order.
+     */
+    public float[][] embed(List<String> input, Headers headers) {
+        return embed(new EmbeddingModel.Builder().model(defaultModel).input(input).build(), headers).getEmbeddings();
+    }
+
+    /**
+     * Sends an inference request and maps the response to a specified type.
+     *
+     * @param prompt       The {@code PromptModel} containing the prompt message.
+     * @param responseType  The class type to map the response to.
+     * @param requiredFields Optional required fields for JSON schema generation.
+     * @param <T> The generic response type.
+     * @return The API response mapped to the specified type.
+     * @throws RuntimeException If JSON processing fails.
+     */
+    public <T> T inference(InferenceModel prompt, Class<T> responseType, String... requiredFields) {
+        return inference(prompt, Headers.of(), responseType, requiredFields);
+    }
+
+    /**
+     * Sends an inference request with additional headers and maps the response to a specified type.
+     *
+     * @param prompt         The {@code PromptModel} containing the prompt message.
+     * @param headers        The headers of this request, sent along with the headers of the client.
+     * @param responseType   The class type to map the response to.
+     * @param requiredFields Optional required fields for JSON schema generation.
+     * @param <T>            The generic response type.
+     * @return The API response mapped to the specified type.
+     * @throws RuntimeException If JSON processing fails.
+     */
+    public <T> T inference(InferenceModel prompt, Headers headers, Class<T> responseType, String... requiredFields) {
+        Map<String, String> extraHeaders = headers(headers);
+        RequestTrace trace = null;
+        try {
+            log.info("Inference with " + prompt.getModel() + ".");
+            prompt = new InferenceModel.Builder(prompt)
+                    .model(prompt.getModel() == null ? defaultModel : prompt.getModel())
+                    .format(responseType, requiredFields)
+                    .build();
+            prompt = fit(prompt);
+            trace = tracer.start("api/generate", prompt.getModel());
+            Call<InferenceResponse> inferenceCall = generateCall(prompt, extraHeaders);
+            InferenceResponse response = execute(inferenceCall, prompt, extraHeaders, trace);
+            calibrate(prompt, response);
+            T result = JsonReaders.read(response.getResponse(), responseType);
+            if (trace != null) trace.mark(RequestTrace.Phase.MAPPED);
+            finish(trace, response);
+            return result;
+        }
+        catch (IOException e) {
+            if (trace != null) tracer.finish(trace.fail(e));
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sends a typed inference request several times in parallel with different seeds, and
+     * aggregates the samples that match the response type. Once the aggregation decides, the
+     * remaining samples are cancelled so the server stops generating them.
+     *
+     * @param prompt         The {@code PromptModel} containing the prompt message. Its seed is the
+     *                       seed of the first sample, the following samples use the next seeds.
+     * @param samples        The number of samples.
+     * @param responseType   The class type to map the samples to.
+     * @param aggregation    Combines the samples into the result, such as {@code Aggregation.majority(3)}.
+     * @param requiredFields Optional required fields for JSON schema generation.
+     * @param <T>            The generic response type.
+     * @return The aggregated result.
+     * @throws RuntimeException If no sample is valid.
+     */
+    public <T> T sample(InferenceModel prompt, int samples, Class<T> responseType, Aggregation<T> aggregation, String... requiredFields) {
+        InferenceModel typed = new InferenceModel.Builder(prompt)
+                .format(responseType, requiredFields)
+                .build();
+        return sample(typed, samples, response -> {
+            try {
+                return JsonReaders.read(response, responseType);
+            }
+            catch (IOException e) {
+                log.warning("Discarded a sample not matching " + responseType.getSimpleName() + ": " + e.getMessage());
+                return null;
+            }
+        }, aggregation);
+    }
+
+    /**
+     * Sends an inference request several times in parallel with different seeds, and aggregates
+     * the generated texts. Once the aggregation decides, the remaining samples are cancelled.
+     *
+     * @param prompt      The {@code PromptModel} containing the prompt message.
+     * @param samples     The number of samples.
+     * @param aggregation Combines the trimmed texts into the result.
+     * @return The aggregated result.
+     * @throws RuntimeException If every sample fails.
+     */
+    public String sample(InferenceModel prompt, int samples, Aggregation<String> aggregation) {
+        return sample(prompt, samples, String::strip, aggregation);
+    }
+
+    /**
+     * Sends the samples of a request and aggregates them as they complete. Prompts without a
+     * temperature, such as options with only a seed, are sampled at the default sampling temperature,
+     * since samples decoded greedily at temperature 0 are identical.
+     *
+     * @param prompt      The request.
+     * @param samples     The number of samples.
+     * @param parser      Converts a generated text into a sample, or null if it is not valid.
+     * @param aggregation Combines the samples into the result.
+     * @param <T>         The sample type.
+     * @return The aggregated result.
+     * @throws IllegalArgumentException If the number of samples is not positive.
+     * @throws RuntimeException If no sample is valid.
+     */
+    <T> T sample(InferenceModel prompt, int samples, Function<String, T> parser, Aggregation<T> aggregation) {
+        if (samples <= 0) throw new IllegalArgumentException("Number of samples must be positive.");
+        InferenceModel.Options options = prompt.getOptions();
+        double temperature = options == null || options.getTemperature() <= 0 ? SAMPLING_TEMPERATURE : options.getTemperature();
+        int seed = options == null ? 0 : options.getSeed();
+        log.info("Sampling " + (prompt.getModel() == null ? defaultModel : prompt.getModel()) + " " + samples + " times.");
+
+        BlockingQueue<Generation<InferenceResponse>> completed = new LinkedBlockingQueue<>();
+        List<Generation<InferenceResponse>> generations = new ArrayList<>();
+        try {
+            for (int i = 0; i < samples; i++) {
+                Generation<InferenceResponse> generation = inferenceAsync(new InferenceModel.Builder(prompt)
+                        .options(new InferenceModel.Options(temperature, seed + i))
+                        .build());
+                generations.add(generation);
+                generation.whenComplete((response, failure) -> completed.add(generation));
+            }
+            List<T> valid = new ArrayList<>();
+            Throwable failure = null;
+            for (int received = 0; received < samples; received++) {
+                T sample;
+                try {
+                    sample = parser.apply(completed.take().join().getResponse());
+                }
+                catch (CompletionException e) {
+                    failure = e.getCause();
+                    continue;
+                }
+                if (sample == null) continue;
+                valid.add(sample);
+                T decided = aggregation.decide(valid, samples);
+                if (decided != null) {
+                    log.info("Decided after " + (received + 1) + " of " + samples + " samples.");
+                    return decided;
+                }
+            }
+            if (valid.isEmpty()) throw new RuntimeException("None of the " + samples + " samples is valid.", failure);
+            return aggregation.finish(valid);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        finally {
+            for (Generation<InferenceResponse> generation : generations) generation.cancel(true);
+        }
+    }
+
+    /**
+     * Sends an inference request to several models at once and returns the first answer that
+     * passes a validator. The other requests are cancelled, so the server stops generating them.
+     * Wins, latencies and generation speeds are recorded in the race statistics.
+     *
+     * @param prompt    The {@code PromptModel} containing the prompt message. Its model is ignored.
+     * @param models    The models to race, such as a small and a large one.
+     * @param validator Accepts the answers which may win.
+     * @return The winning answer.
+     * @throws RuntimeException If no answer passes the validator.
+     */
+    public InferenceResponse race(InferenceModel prompt, List<String> models, Predicate<InferenceResponse> validator) {
+        return firstAccepted(prompt, models, response -> validator.test(response) ? response : null);
+    }
+
+    /**
+     * Sends a typed inference request to several models at once and returns the first answer that
+     * maps to the response type. The other requests are cancelled.
+     *
+     * @param prompt         The {@code PromptModel} containing the prompt message. Its model is ignored.
+     * @param models         The models to race, such as a small and a large one.
+     * @param responseType   The class type to map the response to.
+     * @param requiredFields Optional required fields for JSON schema generation.
+     * @param <T>            The generic response type.
+     * @return The winning answer mapped to the response type.
+     * @throws RuntimeException If no answer maps to the response type.
+     */
+    public <T> T race(InferenceModel prompt, List<String> models, Class<T> responseType, String... requiredFields) {
+        InferenceModel typed = new InferenceModel.Builder(prompt)
+                .format(responseType, requiredFields)
+                .build();
+        return firstAccepted(typed, models, response -> {
+            try {
+                return JsonReaders.read(response.getResponse(), responseType);
+            }
+            catch (IOException e) {
+                log.warning("Rejected an answer of " + response.getModel() + " not matching " + responseType.getSimpleName() + ".");
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Races the models and returns the first answer the parser accepts.
+     *
+     * @param prompt The request.
+     * @param models The models to race.
+     * @param parser Converts an answer into the result, or null if it is not acceptable.
+     * @param <T>    The result type.
+     * @return The result of the winning answer.
+     * @throws IllegalArgumentException If no model is given.
+     * @throws RuntimeException If no answer is accepted.
+     */
+    <T> T firstAccepted(InferenceModel prompt, List<String> models, Function<InferenceResponse, T> parser) {
+        if (models.isEmpty()) throw new IllegalArgumentException("No models to race.");
+        log.info("Racing " + String.join(", ", models) + ".");
+        long start = System.nanoTime();
+        BlockingQueue<Integer> completed = new LinkedBlockingQueue<>();
+        List<Generation<InferenceResponse>> generations = new ArrayList<>();
+        try {
+            for (int i = 0; i < models.size(); i++) {
+                int index = i;
+                raceStats.entered(models.get(i));
+                Generation<InferenceResponse> generation = inferenceAsync(new InferenceModel.Builder(prompt)
+                        .model(models.get(i))
+                        .build());
+                generations.add(generation);
+                generation.whenComplete((response, failure) -> completed.add(index));
+            }
+            Throwable failure = null;
+            for (int received = 0; received < models.size(); received++) {
+                int index = completed.take();
+                String model = models.get(index);
+                InferenceResponse response;
+                try {
+                    response = generations.get(index).join();
+                }
+                catch (CompletionException e) {
+                    raceStats.failed(model);
+                    failure = e.getCause();
+                    continue;
+                }
+                T result = parser.apply(response);
+                raceStats.answered(model, System.nanoTime() - start, response, result != null);
+                if (result != null) {
+                    log.info(model + " won the race in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+                    return result;
+                }
+            }
+            throw new RuntimeException("None of " + String.join(", ", models) + " gave an acceptable answer.", failure);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        finally {
+            for (Generation<InferenceResponse> generation : generations) generation.cancel(true);
+        }
+    }
+
+    /**
+     * Creates an inference call, with a compressed body if request compression is enabled.
+     *
+     * @param request The inference request.
+     * @param headers Additional headers of the request.
+     * @return The call.
+     */
+    Call<InferenceResponse> generateCall(InferenceModel request, Map<String, String> headers) {
+        if (compressionThreshold <= 0 && headers.isEmpty()) return ollamaServices.generate(request);
+        JsonBody body = JsonBody.of(request, compressionThreshold);
+        return ollamaServices.generate(merge(headers, body.headers()), body);
+    }
+
+    /**
+     * Creates a chat call, with a compressed body if request compression is enabled.
+     *
+     * @param request The chat request.
+     * @param headers Additional headers of the request.
+     * @return The call.
+     */
+    Call<ChatResponse> chatCall(ChatModel request, Map<String, String> headers) {
+        if (compressionThreshold <= 0 && headers.isEmpty()) return ollamaServices.chat(request);
+        JsonBody body = JsonBody.of(request, compressionThreshold);
+        return ollamaServices.chat(merge(headers, body.headers()), body);
+    }
+
+    /**
+     * Creates a streamed inference call, with a compressed body if request compression is enabled.
+     *
+     * @param request The inference request, with streaming enabled.
+     * @param headers Additional headers of the request.
+     * @return The call.
+     */
+    Call<ResponseBody> generateStreamCall(InferenceModel request, Map<String, String> headers) {
+        if (compressionThreshold <= 0 && headers.isEmpty()) return ollamaServices.generateStream(request);
+        JsonBody body = JsonBody.of(request, compressionThreshold);
+        return ollamaServices.generateStream(merge(headers, body.headers()), body);
+    }
+
+    /**
+     * Creates a streamed chat call, with a compressed body if request compression is enabled.
+     *
+     * @param request The chat request, with streaming enabled.
+     * @param headers Additional headers of the request.
+     * @return The call.
+     */
+    Call<ResponseBody> chatStreamCall(ChatModel request, Map<String, String> headers) {
+        if (compressionThreshold <= 0 && headers.isEmpty())
+            return nativeChat ? ollamaServices.nativeChatStream(request) : ollamaServices.chatStream(request);
+        JsonBody body = JsonBody.of(request, compressionThreshold);
+        return nativeChat ?
+                ollamaServices.nativeChatStream(merge(headers, body.headers()), body) :
+                ollamaServices.chatStream(merge(headers, body.headers()), body);
+    }
+
+    /**
+     * Creates a native chat call, with a compressed body if request compression is enabled.
+     *
+     * @param request The chat request.
+     * @param headers Additional headers of the request.
+     * @return The call.
+     */
+    Call<NativeChatResponse> nativeChatCall(ChatModel request, Map<String, String> headers) {
+        if (compressionThreshold <= 0 && headers.isEmpty()) return ollamaServices.nativeChat(request);
+        JsonBody body = JsonBody.of(request, compressionThreshold);
+        return ollamaServices.nativeChat(merge(headers, body.headers()), body);
+    }
+
+    /**
+     * Returns the path chat requests are sent to, as recorded on their traces.
+     *
+     * @return The path of the native or the OpenAI compatible chat endpoint.
+     */
+    String chatPath() {
+        return nativeChat ? "api/chat" : "api/chat/completions";
+    }
+
+    /**
+     * Creates an embedding call, with a compressed body if request compression is enabled.
+     *
+     * @param request The embedding request.
+     * @param headers Additional headers of the request.
+     * @return The call.
+     */
+    Call<EmbeddingResponse> embedCall(EmbeddingModel request, Map<String, String> headers) {
+        if (compressionThreshold <= 0 && headers.isEmpty()) return ollamaServices.embed(request);
+        JsonBody body = JsonBody.of(request, compressionThreshold);
+        return ollamaServices.embed(merge(headers, body.headers()), body);
+    }
+
+    /**
+     * Performs a call, recording its lifecycle on a trace and passing it to the request logger.
+     * The call waits for the request scheduler and the rate limiter first, which the trace records
+     * as local queueing. The request is built ahead of sending it, so its serialization is timed
+     * separately from the exchange.
+     *
+     * @param call  The call to perform.
+     * @param body    The request body, logged by the request logger.
+     * @param headers The additional headers of the request, whose credential selects the rate limiter.
+     * @param trace   The trace, or null if the request is not traced.
+     * @param <T>     The response type.
+     * @return The response.
+     */
+    <T> T execute(Call<T> call, Object body, Map<String, String> headers, RequestTrace trace) {
+        RateLimiter limiter = rateLimiter(headers);
+        if (trace == null && requestLogger == null && limiter == null && scheduler == null)
+            return perform(call, true, logsResponses, Response.class);
+        int reserved = limiter == null && scheduler == null ? 0 : estimate(body);
+        RequestScheduler.Permit permit = null;
+        boolean limited = false;
+        String endpoint = null;
+        long start = System.nanoTime();
+        try {
+            if (scheduler != null) permit = scheduler.acquire(RequestScheduler.current(), reserved);
+            if (limiter != null) {
+                limiter.acquire(reserved);
+                limited = true;
+            }
+            if (trace != null) trace.mark(RequestTrace.Phase.DISPATCHED);
+            endpoint = call.request().url().encodedPath();
+            if (trace != null) trace.mark(RequestTrace.Phase.SERIALIZED);
+            boolean sampled = requestLogger != null && requestLogger.sample();
+            if (sampled && logsRequests) requestLogger.request(endpoint, call.request().body());
+            start = System.nanoTime();
+
+            T response = perform(call, true, logsResponses && requestLogger == null, Response.class);
+            if (trace != null) trace.mark(RequestTrace.Phase.RESPONDED);
+            if (limited) limiter.settle(reserved, charged(reserved, usedTokens(response)));
+            if (sampled && logsResponses) requestLogger.response(endpoint, response, System.nanoTime() - start);
+            return response;
+        }
+        catch (RuntimeException e) {
+            // A failed request keeps its estimated reservation, as the server may have counted it
+            if (endpoint != null && requestLogger != null && (logsRequests || logsResponses))
+                requestLogger.failure(endpoint, e, System.nanoTime() - start);
+            if (trace != null) tracer.finish(trace.fail(e));
+            throw e;
+        }
+        finally {
+            if (permit != null) permit.close();
+        }
+    }
+
+    /**
+     * Creates a stream listener holding one subscription back until the request scheduler
+     * dispatches it, in the scope current when the subscription is made. Cancelling the
+     * subscription while it is queued withdraws it from the queue.
+     *
+     * @param body The request body.
+     * @param <T>  The chunk type.
+     * @return The listener, or null if requests are not scheduled.
+     */
+    <T> StreamListener<T> scheduling(Object body) {
+        RequestScheduler scheduler = this.scheduler;
+        if (scheduler == null) return null;
+        RequestScheduler.Scope scope = RequestScheduler.current();
+        int cost = estimate(body);
+        return new StreamListener<>() {
+            private volatile RequestScheduler.Permit permit;
+            private volatile boolean cancelled;
+
+            @Override
+            public void onStart() {
+                RequestScheduler.Permit queued = scheduler.enqueue(scope, cost);
+                permit = queued;
+                if (cancelled) queued.close();
+                queued.await();
+            }
+
+            @Override
+            public void onCancel() {
+                cancelled = true;
+                RequestScheduler.Permit queued = permit;
+                if (queued != null) queued.close();
+            }
+
+            @Override
+            public void onEnd(Throwable failure) {
+                RequestScheduler.Permit queued = permit;
+                if (queued != null) queued.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a stream listener holding one subscription back until the rate limiter lets it through,
+     * and settling its reservation with the token counts of its last chunk. Streams reporting no
+     * token counts keep their estimated reservation.
+     *
+     * @param body    The request body.
+     * @param headers The additional headers of the request, whose credential selects the rate limiter.
+     * @param <T>     The chunk type.
+     * @return The listener, or null if requests are not rate limited.
+     */
+    <T> StreamListener<T> limiting(Object body, Map<String, String> headers) {
+        RateLimiter limiter = rateLimiter(headers);
+        if (limiter == null) return null;
+        int reserved = estimate(body);
+        return new StreamListener<>() {
+            private boolean acquired;
+            private int used;
+
+            @Override
+            public void onStart() {
+                limiter.acquire(reserved);
+                acquired = true;
+            }
+
+            @Override
+            public void onChunk(T chunk) {
+                used = Math.max(used, usedTokens(chunk));
+            }
+
+            @Override
+            public void onEnd(Throwable failure) {
+                if (acquired) limiter.settle(reserved, charged(reserved, used));
+            }
+        };
+    }
+
+    /**
+     * Returns the tokens a request is charged for. A response without token counts, such as a failed
+     * request or a stream whose chunks carry no usage, is charged its estimate.
+     *
+     * @param reserved The estimated tokens reserved for the request.
+     * @param used     The tokens reported by the server, 0 if unknown.
+     * @return The tokens to settle the reservation with.
+     */
+    static int charged(int reserved, int used) {
+        return used > 0 ? used : reserved;
+    }
+
+    /**
+     * Estimates the prompt tokens of a request body.
+     *
+     * @param body The request body.
+     * @return The estimated number of tokens, 0 for unknown bodies.
+     */
+    int estimate(Object body) {
+        if (body instanceof InferenceModel prompt) return tokenEstimator.estimate(prompt.getModel(), prompt.getPrompt());
+        if (body instanceof ChatModel chat) return tokenEstimator.estimate(chat.getModel(), chat.getMessages());
+        if (body instanceof EmbeddingModel embedding) {
+            int units = 0;
+            for (String input : embedding.getInput()) units += TokenEstimator.units(input);
+            return tokenEstimator.toTokens(embedding.getModel(), units);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the prompt and output tokens reported in a response, or in the last chunk of a stream.
+     *
+     * @param response The response.
+     * @return The number of tokens, 0 if the response reports none.
+     */
+    static int usedTokens(Object response) {
+        if (response instanceof InferenceResponse inference) return inference.getPromptEvalCount() + inference.getEvalCount();
+        if (response instanceof ChatResponse chat && chat.getUsage() != null) {
+            ChatResponse.Usage usage = chat.getUsage();
+            if (usage.getTotal_tokens() > 0) return usage.getTotal_tokens();
+            return usage.getPrompt_tokens() + usage.getCompletion_tokens();
+        }
+        if (response instanceof NativeChatResponse chat) return chat.getPromptEvalCount() + chat.getEvalCount();
+        if (response instanceof EmbeddingResponse embedding) return embedding.getPromptEvalCount();
+        return 0;
+    }
+
+    /**
+     * Creates a stream listener passing one subscription to the request logger. The serialized body
+     * of the request is logged as the request, and the last chunk as the response.
+     *
+     * @param <T> The chunk type.
+     * @return The listener, or null if the subscription is not logged.
+     */
+    <T> StreamListener<T> logging() {
+        RequestLogger logger = requestLogger;
+        if (logger == null || !(logsRequests || logsResponses)) return null;
+        boolean sampled = logger.sample();
+        return new StreamListener<>() {
+            private String endpoint;
+            private long start;
+            private T last;
+
+            @Override
+            public void onRequest(Request request) {
+                endpoint = request.url().encodedPath();
+                start = System.nanoTime();
+                if (sampled && logsRequests) logger.request(endpoint, request.body());
+            }
+
+            @Override
+            public void onChunk(T chunk) {
+                last = chunk;
+            }
+
+            @Override
+            public void onEnd(Throwable failure) {
+                if (endpoint == null) return;
+                if (failure != null) logger.failure(endpoint, failure, System.nanoTime() - start);
+                else if (sampled && logsResponses) logger.response(endpoint, last, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Records the server side durations of an inference response on a trace, and finishes it.
+     *
+     * @param trace    The trace, or null if the request is not traced.
+     * @param response The response.
+     */
+    void finish(RequestTrace trace, InferenceResponse response) {
+        if (trace == null) return;
+        if (response != null) server(trace, response);
+        tracer.finish(trace);
+    }
+
+    /**
+     * Records the server side durations of a chat response on a trace, and finishes it.
+     *
+     * @param trace    The trace, or null if the request is not traced.
+     * @param response The response.
+     */
+    void finish(RequestTrace trace, ChatResponse response) {
+        if (trace == null) return;
+        if (response != null && response.getUsage() != null) server(trace, response);
+        tracer.finish(trace);
+    }
+
+    private static void server(RequestTrace trace, InferenceResponse response) {
+        trace.server(
+                response.getLoadDuration(),
+                response.getPromptEvalDuration(),
+                response.getEvalDuration(),
+                response.getTotalDuration(),
+                response.getPromptEvalCount(),
+                response.getEvalCount()
+        );
+    }
+
+    private static void server(RequestTrace trace, ChatResponse response) {
+        ChatResponse.Usage usage = response.getUsage();
+        trace.server(
+                usage.getLoad_duration(),
+                usage.getPrompt_eval_duration(),
+                usage.getEval_duration(),
+                usage.getTotal_duration(),
+                usage.getPrompt_tokens() > 0 ? usage.getPrompt_tokens() : usage.getPrompt_eval_count(),
+                usage.getCompletion_tokens() > 0 ? usage.getCompletion_tokens() : usage.getEval_count()
+        );
+    }
+
+    /**
+     * Waits for a generation to complete, unwrapping its failure.
+     *
+     * @param generation The generation to wait for.
+     * @param <T> The response type.
+     * @return The response.
+     * @throws RuntimeException If the generation failed, or the thread was interrupted, which cancels it.
+     */
+    <T> T await(Generation<T> generation) {
+        try {
+            return generation.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Checks the estimated size of a prompt against the prompt token limit. Oversized prompts
+     * lose their start if trimming is enabled, and are rejected otherwise.
+     *
+     * @param prompt The inference request.
+     * @return The request to send.
+     * @throws IllegalArgumentException If the prompt is oversized and trimming is disabled.
+     */
+    InferenceModel fit(InferenceModel prompt) {
+        if (maxPromptTokens <= 0) return prompt;
+        int tokens = tokenEstimator.estimate(prompt.getModel(), prompt.getPrompt());
+        if (tokens <= maxPromptTokens) return prompt;
+        if (!trimsPrompts)
+            throw new IllegalArgumentException("Prompt of ~" + tokens + " tokens exceeds the limit of " + maxPromptTokens + " tokens.");
+        log.warning("Trimming prompt of ~" + tokens + " tokens to " + maxPromptTokens + " tokens.");
+        return new InferenceModel.Builder(prompt)
+                .prompt(tokenEstimator.trim(prompt.getModel(), prompt.getPrompt(), maxPromptTokens))
+                .build();
+    }
+
+    /**
+     * Checks the estimated size of a conversation against the prompt token limit. Oversized
+     * conversations lose their oldest non-system messages if trimming is enabled, and are
+     * rejected otherwise. The last message is always kept.
+     *
+     * @param prompt The chat request.
+     * @return The request to send, the given one is not modified.
+     * @throws IllegalArgumentException If the conversation is oversized and cannot be trimmed to fit.
+     */
+    ChatModel fit(ChatModel prompt) {
+        if (maxPromptTokens <= 0) return prompt;
+        String model = prompt.getModel();
+        int units = TokenEstimator.units(prompt.getMessages());
+        int tokens = tokenEstimator.toTokens(model, units);
+        if (tokens <= maxPromptTokens) return prompt;
+
+        if (trimsPrompts) {
+            List<Message> messages = new ArrayList<>(prompt.getMessages());
+            for (int i = 0; i < messages.size() - 1 && tokenEstimator.toTokens(model, units) > maxPromptTokens;) {
+                if (messages.get(i).getRole() == Role.system) i++;
+                else units -= TokenEstimator.units(messages.remove(i).getContent()) + TokenEstimator.MESSAGE_OVERHEAD;
+            }
+            if (tokenEstimator.toTokens(model, units) <= maxPromptTokens) {
+                log.warning("Trimmed conversation of ~" + tokens + " tokens to " + messages.size() + " messages.");
+                return prompt.copy(model, messages, prompt.isStream());
+            }
+        }
+        throw new IllegalArgumentException("Conversation of ~" + tokens + " tokens exceeds the limit of " + maxPromptTokens + " tokens.");
+    }
+
+    /**
+     * Calibrates the token estimator with the prompt token count reported for an inference request.
+     *
+     * @param prompt   The inference request that was sent.
+     * @param response The response of the request.
+     */
+    void calibrate(InferenceModel prompt, InferenceResponse response) {
+        if (response == null) return;
+        tokenEstimator.observe(prompt.getModel(), TokenEstimator.units(prompt.getPrompt()), response.getPromptEvalCount());
+    }
+
+    /**
+     * Calibrates the token estimator with the prompt token count reported for a chat request.
+     *
+     * @param prompt   The chat request that was sent.
+     * @param response The response of the request.
+     */
+    void calibrate(ChatModel prompt, ChatResponse response) {
+        if (response == null || response.getUsage() == null) return;
+        ChatResponse.Usage usage = response.getUsage();
+        int tokens = usage.getPrompt_tokens() > 0 ? usage.getPrompt_tokens() : usage.getPrompt_eval_count();
+        tokenEstimator.observe(prompt.getModel(), TokenEstimator.units(prompt.getMessages()), tokens);
+    }
+
+    /**
+     * Gets the read timeout in milliseconds.  This timeout applies to network
+     * operations when communicating with the Ollama server.
+     *
+     * @return The read timeout in milliseconds.
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the read timeout in milliseconds.  This timeout applies to network
+     * operations when communicating with the Ollama server. The client is built
+     * at construction, so the new value does not reach it; use a {@code Deadline}
+     * to bound individual requests instead.
+     *
+     * @param readTimeout The read timeout in milliseconds.
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Gets the maximum estimated prompt size in tokens.
+     *
+     * @return The prompt token limit, 0 if disabled.
+     */
+    public int getMaxPromptTokens() {
+        return maxPromptTokens;
+    }
+
+    /**
+     * Sets the maximum estimated prompt size in tokens. Requests above it are trimmed or rejected
+     * before they are sent.
+     *
+     * @param maxPromptTokens The prompt token limit, 0 to disable.
+     */
+    public void setMaxPromptTokens(int maxPromptTokens) {
+        this.maxPromptTokens = maxPromptTokens;
+    }
+
+    /**
+     * Checks if oversized prompts are trimmed instead of rejected.
+     *
+     * @return True if oversized prompts are trimmed, false otherwise.
+     */
+    public boolean isTrimsPrompts() {
+        return trimsPrompts;
+    }
+
+    /**
+     * Enables or disables trimming of oversized prompts. When disabled, oversized prompts are rejected.
+     *
+     * @param trimsPrompts True to trim oversized prompts, false to reject them.
+     */
+    public void setTrimsPrompts(boolean trimsPrompts) {
+        this.trimsPrompts = trimsPrompts;
+    }
+
+    /**
+     * Gets the token estimator used to size prompts.
+     *
+     * @return The token estimator.
+     */
+    public TokenEstimator getTokenEstimator() {
+        return tokenEstimator;
+    }
+
+    /**
+     * Sets the token estimator used to size prompts. Estimators can be shared between clients
+     * so they calibrate together.
+     *
+     * @param tokenEstimator The token estimator.
+     */
+    public void setTokenEstimator(TokenEstimator tokenEstimator) {
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    /**
+     * Gets the tracer of the request lifecycles, to enable tracing or register trace listeners.
+     *
+     * @return The tracer.
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Gets the statistics of cancelled generations.
+     *
+     * @return The cancellation statistics.
+     */
+    public CancellationStats getCancellationStats() {
+        return cancellationStats;
+    }
+
+    /**
+     * Gets the compactor of stored conversations.
+     *
+     * @return The conversation compactor, or null if conversations are not compacted.
+     */
+    public ConversationCompactor getConversationCompactor() {
+        return conversationCompactor;
+    }
+
+    /**
+     * Sets the compactor of the conversations continued with {@link #chat(ConversationStore, String, Message)}.
+     *
+     * @param conversationCompactor The conversation compactor, or null to not compact conversations.
+     */
+    public void setConversationCompactor(ConversationCompactor conversationCompactor) {
+        this.conversationCompactor = conversationCompactor;
+    }
+
+    /**
+     * Gets the statistics of model races, such as the win rate and latency of every model.
+     *
+     * @return The race statistics.
+     */
+    public RaceStats getRaceStats() {
+        return raceStats;
+    }
+
+    /**
+     * Sets the statistics model races are recorded to. Statistics can be shared between clients.
+     *
+     * @param raceStats The race statistics.
+     */
+    public void setRaceStats(RaceStats raceStats) {
+        this.raceStats = raceStats;
+    }
+
+    /**
+     * Gets the base URL of the node of this instance.
+     *
+     * @return The base URL.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Gets the request scheduler of the node of this instance.
+     *
+     * @return The request scheduler, or null if requests are not scheduled.
+     */
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Sets the request scheduler, such as one obtained with {@link RequestScheduler#forNode(String, int, int)}.
+     *
+     * @param scheduler The request scheduler, or null to send requests as soon as they are made.
+     */
+    public void setScheduler(RequestScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Gets the rate limiter of the credential of this instance.
+     *
+     * @return The rate limiter, or null if requests are not rate limited.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter, such as one obtained with {@link RateLimiter#forKey(String, double, double)}.
+     *
+     * @param rateLimiter The rate limiter, or null to send requests without limits.
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Gets the asynchronous request logger.
+     *
+     * @return The request logger, or null if asynchronous logging is disabled.
+     */
+    public RequestLogger getRequestLogger() {
+        return requestLogger;
+    }
+
+    /**
+     * Sets the asynchronous request logger. Requests sent by clients created afterwards no longer
+     * log their bodies synchronously; existing clients keep doing so if request logging is enabled.
+     *
+     * @param requestLogger The request logger, or null to log synchronously.
+     */
+    public void setRequestLogger(RequestLogger requestLogger) {
+        this.requestLogger = requestLogger;
+    }
+
+    /**
+     * Gets the minimum size in bytes of request bodies which are gzip compressed.
+     *
+     * @return The compression threshold, 0 if request compression is disabled.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the minimum size in bytes of request bodies which are gzip compressed. The server, or a
+     * gateway in front of it, must accept {@code Content-Encoding: gzip}. Compressed responses are
+     * requested and decompressed by the HTTP client regardless of this setting.
+     *
+     * @param compressionThreshold The compression threshold, or 0 to disable request compression.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Gets the maximum number of batch chat requests in flight at the same time.
+     *
+     * @return The batch parallelism.
+     */
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * Sets the maximum number of batch chat requests in flight at the same time.
+     *
+     * @param batchParallelism The batch parallelism.
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * Checks if chat requests are sent to the native chat endpoint.
+     *
+     * @return True if chat requests use {@code api/chat}, false if they use the OpenAI compatible endpoint.
+     */
+    public boolean isNativeChat() {
+        return nativeChat;
+    }
+
+    /**
+     * Sets whether chat requests are sent to the native chat endpoint. The native endpoint reports
+     * the load, prompt evaluation and generation durations, streams newline delimited JSON, and
+     * honors the response format and keep alive of the chat model. The models are then listed from
+     * {@code api/tags}.
+     *
+     * @param nativeChat True to use {@code api/chat}, false to use the OpenAI compatible endpoint.
+     */
+    public void setNativeChat(boolean nativeChat) {
+        this.nativeChat = nativeChat;
+    }
+
+    /**
+     * Gets the maximum number of inputs sent in a single embedding request.
+     *
+     * @return The embedding batch size.
+     */
+    public int getEmbeddingBatchSize() {
+        return embeddingBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of inputs sent in a single embedding request.
+     * Larger batches are split into several requests.
+     *
+     * @param embeddingBatchSize The embedding batch size.
+     */
+    public void setEmbeddingBatchSize(int embeddingBatchSize) {
+        this.embeddingBatchSize = embeddingBatchSize;
+    }
+
+    /**
+     * Gets the maximum number of split embedding requests in flight at the same time.
+     *
+     * @return The embedding parallelism.
+     */
+    public int getEmbeddingParallelism() {
+        return embeddingParallelism;
+    }
+
+    /**
+     * Sets the maximum number of split embedding requests in flight at the same time.
+     *
+     * @param embeddingParallelism The embedding parallelism.
+     */
+    public void setEmbeddingParallelism(int embeddingParallelism) {
+        this.embeddingParallelism = embeddingParallelism;
     }
 
     /**
@@ -2,13 +2,23 @@ package ollama;
 
 import ollama.models.chat.ChatModel;
 import ollama.models.chat.ChatResponse;
+import ollama.models.chat.NativeChatResponse;
+import ollama.models.embedding.EmbeddingModel;
+import ollama.models.embedding.EmbeddingResponse;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.HeaderMap;
 import retrofit2.http.POST;
+import retrofit2.http.Streaming;
+import retrofit2.http.Url;
 import ollama.models.inference.InferenceModel;
 import ollama.models.inference.InferenceResponse;
 
+import java.util.Map;
+
 /**
  * Service interface for interacting with the Ollama API.
  */
@@ -35,6 +45,89 @@ public interface OllamaServices {
     @POST("api/chat/completions")
     Call<ChatResponse> chat(@Body ChatModel requestBody);
 
+    /**
+     * Sends a POST request to generate a streamed response based on the provided prompt.
+     * The response body is newline delimited JSON and is not buffered.
+     *
+     * @param requestBody The request body containing the prompt model, with streaming enabled.
+     * @return A call object containing the raw response body.
+     */
+    @Streaming
+    @POST("api/generate")
+    Call<ResponseBody> generateStream(@Body InferenceModel requestBody);
+
+    /**
+     * Sends a POST request to generate a streamed chat response based on the provided prompt.
+     * The response body is a stream of server-sent events and is not buffered.
+     *
+     * @param requestBody The request body containing the chat model, with streaming enabled.
+     * @return A call object containing the raw response body.
+     */
+    @Streaming
+    @POST("api/chat/completions")
+    Call<ResponseBody> chatStream(@Body ChatModel requestBody);
+
+    /**
+     * Sends a POST request to embed a batch of inputs.
+     *
+     * @param requestBody The request body containing the embedding model and inputs.
+     * @return A call object containing the embedding vectors.
+     */
+    @POST("api/embed")
+    Call<EmbeddingResponse> embed(@Body EmbeddingModel requestBody);
+
+    /**
+     * Sends a POST request to generate a response out of an already serialized prompt model.
+     *
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the prompt model.
+     * @return A call object containing the API response.
+     */
+    @POST("api/generate")
+    Call<InferenceResponse> generate(@HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
+    /**
+     * Sends a POST request to generate a chat response out of an already serialized chat model.
+     *
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the chat model.
+     * @return A call object containing the API response.
+     */
+    @POST("api/chat/completions")
+    Call<ChatResponse> chat(@HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
+    /**
+     * Sends a POST request to generate a streamed response out of an already serialized prompt model.
+     *
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the prompt model, with streaming enabled.
+     * @return A call object containing the raw response body.
+     */
+    @Streaming
+    @POST("api/generate")
+    Call<ResponseBody> generateStream(@HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
+    /**
+     * Sends a POST request to generate a streamed chat response out of an already serialized chat model.
+     *
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the chat model, with streaming enabled.
+     * @return A call object containing the raw response body.
+     */
+    @Streaming
+    @POST("api/chat/completions")
+    Call<ResponseBody> chatStream(@HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
+    /**
+     * Sends a POST request to embed an already serialized batch of inputs.
+     *
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the embedding model.
+     * @return A call object containing the embedding vectors.
+     */
+    @POST("api/embed")
+    Call<EmbeddingResponse> embed(@HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
     /**
      * Retrieves the list of available models from the API.
      *
@@ -42,4 +135,94 @@ public interface OllamaServices {
      */
     @GET("api/models")
     Call<Object> getModels();
+
+    /**
+     * Retrieves the list of available models from the API, with additional headers.
+     *
+     * @param headers Additional headers of the request, such as per-request credentials.
+     * @return A call object containing the list of models.
+     */
+    @GET("api/models")
+    Call<Object> getModels(@HeaderMap Map<String, String> headers);
+
+    /**
+     * Sends a POST request to the native chat endpoint, which reports the durations measured by the
+     * server and honors the response format and keep alive of the chat model.
+     *
+     * @param requestBody The request body containing the chat model.
+     * @return A call object containing the API response.
+     */
+    @POST("api/chat")
+    Call<NativeChatResponse> nativeChat(@Body ChatModel requestBody);
+
+    /**
+     * Sends a POST request to the native chat endpoint out of an already serialized chat model.
+     *
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the chat model.
+     * @return A call object containing the API response.
+     */
+    @POST("api/chat")
+    Call<NativeChatResponse> nativeChat(@HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
+    /**
+     * Sends a POST request to the native chat endpoint, streaming the response as newline delimited JSON.
+     *
+     * @param requestBody The request body containing the chat model, with streaming enabled.
+     * @return A call object containing the raw response body.
+     */
+    @Streaming
+    @POST("api/chat")
+    Call<ResponseBody> nativeChatStream(@Body ChatModel requestBody);
+
+    /**
+     * Sends a POST request to the native chat endpoint out of an already serialized chat model,
+     * streaming the response as newline delimited JSON.
+     *
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the chat model, with streaming enabled.
+     * @return A call object containing the raw response body.
+     */
+    @Streaming
+    @POST("api/chat")
+    Call<ResponseBody> nativeChatStream(@HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
+    /**
+     * Retrieves the list of locally available models from the native API.
+     *
+     * @return A call object containing the list of models.
+     */
+    @GET("api/tags")
+    Call<Object> getTags();
+
+    /**
+     * Retrieves the list of locally available models from the native API, with additional headers.
+     *
+     * @param headers Additional headers of the request, such as per-request credentials.
+     * @return A call object containing the list of models.
+     */
+    @GET("api/tags")
+    Call<Object> getTags(@HeaderMap Map<String, String> headers);
+
+    /**
+     * Sends a POST request to an endpoint, keeping the response body as it was received, such as to
+     * record the exact payloads of the typed methods.
+     *
+     * @param endpoint    The relative path of the endpoint.
+     * @param headers     Additional headers of the request, such as its content encoding or credentials.
+     * @param requestBody The JSON body of the request.
+     * @return A call object containing the raw response body.
+     */
+    @POST
+    Call<ResponseBody> post(@Url String endpoint, @HeaderMap Map<String, String> headers, @Body RequestBody requestBody);
+
+    /**
+     * Sends a GET request to an endpoint, keeping the response body as it was received.
+     *
+     * @param endpoint The relative path of the endpoint.
+     * @param headers  Additional headers of the request, such as per-request credentials.
+     * @return A call object containing the raw response body.
+     */
+    @GET
+    Call<ResponseBody> get(@Url String endpoint, @HeaderMap Map<String, String> headers);
 }
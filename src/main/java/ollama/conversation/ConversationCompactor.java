@@ -0,0 +1,293 @@
+package ollama.conversation;
+
+import ollama.Ollama;
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+import ollama.models.inference.InferenceModel;
+import ollama.utilities.PromptTemplate;
+import utils.Printer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps stored conversations short by replacing their older turns with a summary. Once the
+ * estimated prompt of a conversation passes a token threshold, its older user and assistant
+ * messages are summarized by a cheap model in the background, and replaced by a single system
+ * message holding the summary. The leading system messages and the most recent messages, from a
+ * user turn on, are kept as they are, so no tool result is separated from its tool call. An earlier
+ * summary is folded into the next one, so the prompt evaluated on every turn stays roughly the same
+ * size however long the conversation grows.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ollama.setConversationCompactor(new ConversationCompactor.Builder(ollama)
+ *                 .model("llama3.2:1b")
+ *                 .maxTokens(4000)
+ *                 .build());
+ * ollama.chat(store, "user-42", new Message(Role.user, "Hello!"));
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class ConversationCompactor {
+
+    private static final Printer log = new Printer(ConversationCompactor.class);
+
+    /** Start of the system messages holding a summary. */
+    public static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+
+    private final Ollama ollama;
+    private final String model;
+    private final int maxTokens;
+    private final int keepRecent;
+    private final PromptTemplate prompt;
+    private final ExecutorService executor;
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a new ConversationCompactor with the provided configuration.
+     *
+     * @param builder The builder object containing the configuration details.
+     */
+    private ConversationCompactor(Builder builder) {
+        this.ollama = builder.ollama;
+        this.model = builder.model == null ? builder.ollama.getDefaultModel() : builder.model;
+        this.maxTokens = builder.maxTokens;
+        this.keepRecent = builder.keepRecent;
+        this.prompt = builder.prompt;
+        this.executor = Executors.newFixedThreadPool(builder.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "ollama-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Compacts a conversation sent to the default model of the client in the background, if its
+     * estimated prompt passes the threshold.
+     *
+     * @param store        The store holding the conversation.
+     * @param conversation The conversation ID.
+     * @return A future completing with true once the conversation was compacted, or with false if
+     *         it did not need compaction or is already being compacted.
+     */
+    public CompletableFuture<Boolean> compactAsync(ConversationStore store, String conversation) {
+        return compactAsync(store, conversation, ollama.getDefaultModel());
+    }
+
+    /**
+     * Compacts a conversation in the background if its estimated prompt passes the threshold.
+     * A conversation is compacted by one task at a time.
+     *
+     * @param store        The store holding the conversation.
+     * @param conversation The conversation ID.
+     * @param chatModel    The model the conversation is sent to, whose calibration sizes the prompt.
+     * @return A future completing with true once the conversation was compacted, or with false if
+     *         it did not need compaction or is already being compacted.
+     */
+    public CompletableFuture<Boolean> compactAsync(ConversationStore store, String conversation, String chatModel) {
+        String key = System.identityHashCode(store) + "/" + conversation;
+        if (!running.add(key)) return CompletableFuture.completedFuture(false);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return compact(store, conversation, chatModel);
+                }
+                catch (RuntimeException e) {
+                    log.warning("Could not compact conversation " + conversation + ": " + e.getMessage());
+                    throw e;
+                }
+                finally {
+                    running.remove(key);
+                }
+            }, executor);
+        }
+        catch (RuntimeException e) {
+            running.remove(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Compacts a conversation sent to the default model of the client, if its estimated prompt
+     * passes the threshold.
+     *
+     * @param store        The store holding the conversation.
+     * @param conversation The conversation ID.
+     * @return True if the conversation was compacted.
+     * @throws RuntimeException If the summary cannot be generated.
+     */
+    public boolean compact(ConversationStore store, String conversation) {
+        return compact(store, conversation, ollama.getDefaultModel());
+    }
+
+    /**
+     * Compacts a conversation if its estimated prompt passes the threshold. The older messages are
+     * cut at a user turn, and only their user and assistant turns and earlier summaries are written
+     * into the summarization prompt.
+     *
+     * @param store        The store holding the conversation.
+     * @param conversation The conversation ID.
+     * @param chatModel    The model the conversation is sent to, whose calibration sizes the prompt.
+     * @return True if the conversation was compacted.
+     * @throws RuntimeException If the summary cannot be generated.
+     */
+    public boolean compact(ConversationStore store, String conversation, String chatModel) {
+        ConversationStore.Snapshot snapshot = store.snapshot(conversation);
+        List<Message> messages = snapshot.messages();
+        if (ollama.getTokenEstimator().estimate(chatModel, messages) <= maxTokens) return false;
+
+        int pinned = 0;
+        while (pinned < messages.size() && messages.get(pinned).getRole() == Role.system && !isSummary(messages.get(pinned))) pinned++;
+        int end = messages.size() - keepRecent;
+        // The kept messages start at a user turn, so a tool result never loses its tool call
+        while (end > pinned && end < messages.size() && messages.get(end).getRole() != Role.user) end--;
+        if (end - pinned < 2) return false;
+
+        StringBuilder transcript = new StringBuilder();
+        for (Message message : messages.subList(pinned, end)) {
+            if (isSummary(message)) transcript.append(message.getContent().substring(SUMMARY_PREFIX.length())).append("\n\n");
+            else if (isTurn(message)) transcript.append(message.getRole()).append(": ").append(message.getContent()).append("\n\n");
+        }
+        String summary = ollama.inference(new InferenceModel.Builder()
+                .model(model)
+                .prompt(prompt, Map.of("conversation", transcript.toString().strip()))
+                .build()).getResponse().strip();
+
+        List<Message> replacement = new ArrayList<>(messages.subList(0, pinned));
+        replacement.add(new Message(Role.system, SUMMARY_PREFIX + summary));
+        boolean compacted = store.replacePrefix(conversation, snapshot.version(), end, replacement);
+        if (compacted) log.info("Compacted " + (end - pinned) + " messages of conversation " + conversation + " into a summary.");
+        return compacted;
+    }
+
+    /**
+     * Checks if a message is a summary written by a compactor.
+     *
+     * @param message The message.
+     * @return True if the message is a summary.
+     */
+    public static boolean isSummary(Message message) {
+        return message.getRole() == Role.system && message.getContent() != null && message.getContent().startsWith(SUMMARY_PREFIX);
+    }
+
+    /**
+     * Checks if a message is a user or assistant turn with text, as opposed to system and tool
+     * messages, or assistant messages carrying only tool calls.
+     */
+    private static boolean isTurn(Message message) {
+        return (message.getRole() == Role.user || message.getRole() == Role.assistant)
+                && message.getContent() != null && !message.getContent().isBlank();
+    }
+
+    /**
+     * Returns the token threshold of compaction.
+     *
+     * @return The estimated prompt tokens above which conversations are compacted.
+     */
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * Builder class for constructing ConversationCompactor objects.
+     */
+    public static class Builder {
+        private final Ollama ollama;
+        private String model;
+        private int maxTokens = 4000;
+        private int keepRecent = 6;
+        private int parallelism = 1;
+        private PromptTemplate prompt = PromptTemplate.compile(
+                "Summarize the following conversation between a user and an assistant. Keep every fact, decision, "
+                        + "preference and open question which later turns may rely on. Write only the summary.\n\n{{conversation}}");
+
+        /**
+         * Constructs a builder for a client.
+         *
+         * @param ollama The client sending the summarization prompts, whose token estimator and
+         *               default model size the conversations.
+         */
+        public Builder(Ollama ollama) {
+            this.ollama = ollama;
+        }
+
+        /**
+         * Sets the model writing the summaries.
+         *
+         * @param model The name of a cheap model, the default model of the client if not set.
+         * @return The Builder object for method chaining.
+         */
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * Sets the token threshold of compaction.
+         *
+         * @param maxTokens The estimated prompt tokens above which conversations are compacted, 4000 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        /**
+         * Sets the number of most recent messages kept as they are.
+         *
+         * @param keepRecent The number of messages, 6 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder keepRecent(int keepRecent) {
+            this.keepRecent = keepRecent;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of conversations compacted at the same time.
+         *
+         * @param parallelism The parallelism, 1 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the summarization prompt.
+         *
+         * @param prompt The template of the prompt, with the older turns as {@code {{conversation}}}.
+         * @return The Builder object for method chaining.
+         */
+        public Builder prompt(String prompt) {
+            this.prompt = PromptTemplate.compile(prompt);
+            return this;
+        }
+
+        /**
+         * Builds the ConversationCompactor.
+         *
+         * @return The constructed ConversationCompactor.
+         * @throws IllegalArgumentException If a setting is out of range or the prompt has no
+         *                                  {@code {{conversation}}} variable.
+         */
+        public ConversationCompactor build() {
+            if (maxTokens <= 0 || keepRecent < 0 || parallelism <= 0)
+                throw new IllegalArgumentException("Threshold and parallelism must be positive.");
+            if (!prompt.getVariables().contains("conversation"))
+                throw new IllegalArgumentException("Prompt must contain a {{conversation}} variable.");
+            return new ConversationCompactor(this);
+        }
+    }
+}
@@ -0,0 +1,705 @@
+package ollama.conversation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import ollama.models.chat.Message;
+import ollama.utilities.JsonReaders;
+import utils.Printer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * A durable store of conversations, kept in an append-only log of memory-mapped segment files.
+ * Only an index entry per conversation is held on the heap: the position of its latest record and
+ * its size. Every record points back to the previous record of its conversation, so the messages
+ * of a conversation are read lazily from the mapped segments, newest first, and loading the last
+ * turns of a long conversation does not read the older ones.
+ *
+ * <p> Replacing or deleting a conversation appends a reset or delete record, which makes its
+ * earlier records garbage. {@link #compact()} rewrites the live conversations into new segments,
+ * commits them with a manifest and deletes the old ones. Every record is checksummed, so a record torn by a crash is detected and
+ * dropped when the store is opened again.
+ *
+ * <p> Example usage:
+ * <pre>
+ * try (ConversationStore store = new ConversationStore(Path.of("conversations"))) {
+ *     store.append("user-42", new Message(Role.user, "Hello!"));
+ *     List&lt;Message&gt; history = store.messages("user-42");
+ * }
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class ConversationStore implements Closeable {
+
+    private static final Printer log = new Printer(ConversationStore.class);
+
+    /** Default size of a segment file. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    /** Record holding a message. */
+    private static final byte MESSAGE = 1;
+
+    /** Record dropping every earlier record of its conversation. */
+    private static final byte RESET = 2;
+
+    /** Record deleting its conversation. */
+    private static final byte DELETE = 3;
+
+    /** Length, checksum, type and back pointer, followed by the key length. */
+    private static final int HEADER = 4 + 4 + 1 + 8 + 2;
+
+    private static final String SUFFIX = ".log";
+    private static final String COMPACTING = ".compacting";
+
+    /** File committing a compaction, holding the number of its first segment. */
+    private static final String MANIFEST = "compaction";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean syncWrites;
+    private final TreeMap<Integer, MappedByteBuffer> segments = new TreeMap<>();
+    private final Map<String, Head> index = new HashMap<>();
+    private int segment;
+    private int offset;
+    private long totalBytes;
+    private long liveBytes;
+    private boolean compacting;
+    private boolean closed;
+    private boolean failed;
+
+    /**
+     * The messages of a conversation as read at a version.
+     *
+     * @param messages The messages, oldest first.
+     * @param version  The version of the conversation.
+     */
+    public record Snapshot(List<Message> messages, long version) {}
+
+    /**
+     * The index entry of a conversation.
+     */
+    private static final class Head {
+        long last = -1;
+        int size;
+        long bytes;
+    }
+
+    /**
+     * Opens a store with the default segment size, creating it if the directory is empty.
+     *
+     * @param directory The directory of the segment files.
+     * @throws IOException If the segments cannot be read or created.
+     */
+    public ConversationStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    /**
+     * Opens a store, creating it if the directory is empty. The segments are replayed to rebuild
+     * the index, and a torn record at the end of the log is dropped. A compaction interrupted after
+     * its commit is finished first, and the segments of an uncommitted one are deleted.
+     *
+     * @param directory   The directory of the segment files.
+     * @param segmentSize The size of a segment file, which bounds the size of a message.
+     * @param syncWrites  True to force every write to the disk before returning, false to leave
+     *                    flushing to the operating system and {@link #flush()}.
+     * @throws IOException If the segments cannot be read or created.
+     * @throws IllegalArgumentException If the segment size is too small.
+     */
+    public ConversationStore(Path directory, int segmentSize, boolean syncWrites) throws IOException {
+        if (segmentSize < 4096) throw new IllegalArgumentException("Segment size must be at least 4096 bytes.");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncWrites = syncWrites;
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(MANIFEST + ".tmp"));
+        if (Files.exists(directory.resolve(MANIFEST))) {
+            int first = Integer.parseInt(Files.readString(directory.resolve(MANIFEST)).trim());
+            finish(first);
+            log.info("Finished a compaction interrupted after its commit.");
+        }
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(files::add);
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(COMPACTING)) Files.delete(file);
+            else if (name.endsWith(SUFFIX)) segments.put(number(name, SUFFIX), map(file));
+        }
+        if (segments.isEmpty()) segments.put(0, map(file(0)));
+        for (Map.Entry<Integer, MappedByteBuffer> entry : segments.entrySet()) replay(entry.getKey(), entry.getValue());
+        log.info("Opened " + index.size() + " conversations in " + segments.size() + " segments.");
+    }
+
+    /**
+     * Appends a message to a conversation, creating the conversation if it does not exist.
+     *
+     * @param conversation The conversation ID.
+     * @param message      The message.
+     * @throws RuntimeException If the message cannot be written.
+     * @throws IllegalArgumentException If the message does not fit in a segment.
+     */
+    public void append(String conversation, Message message) {
+        append(conversation, List.of(message));
+    }
+
+    /**
+     * Appends messages to a conversation, creating the conversation if it does not exist.
+     *
+     * @param conversation The conversation ID.
+     * @param messages     The messages, in order.
+     * @throws RuntimeException If the messages cannot be written.
+     * @throws IllegalArgumentException If a message does not fit in a segment.
+     */
+    public void append(String conversation, List<Message> messages) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Head head = index.computeIfAbsent(conversation, key -> new Head());
+            for (Message message : messages) write(conversation, head, MESSAGE, json(message));
+            sync();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the messages of a conversation, such as with a summary of its older turns.
+     *
+     * @param conversation The conversation ID.
+     * @param messages     The new messages of the conversation.
+     * @throws RuntimeException If the messages cannot be written.
+     */
+    public void replace(String conversation, List<Message> messages) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Head head = reset(conversation);
+            index.put(conversation, head);
+            for (Message message : messages) write(conversation, head, MESSAGE, json(message));
+            sync();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the first messages of a conversation, keeping the messages after them, such as
+     * older turns replaced by their summary. The replacement only happens if the conversation still
+     * holds the messages of a snapshot, possibly followed by messages appended since; those are kept,
+     * since the check and the replacement happen atomically. A conversation replaced, deleted or
+     * recreated since the snapshot, or a store compacted since, is left as it is.
+     *
+     * @param conversation The conversation ID.
+     * @param version      The version of the snapshot the first messages were read from.
+     * @param count        The number of leading messages to replace.
+     * @param replacement  The messages replacing them.
+     * @return True if the messages were replaced, false if the conversation changed since the snapshot.
+     * @throws RuntimeException If the messages cannot be written.
+     */
+    public boolean replacePrefix(String conversation, long version, int count, List<Message> replacement) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Head current = index.get(conversation);
+            if (current == null || version < 0) return false;
+            int appended = 0;
+            for (long position = current.last; position != version; appended++) {
+                if (position < 0) return false;
+                ByteBuffer record = record(position);
+                if (record.get(8) == RESET) return false;
+                position = record.getLong(9);
+            }
+            if (current.size - appended < count) return false;
+            List<Message> kept = recent(conversation, current.size - count);
+            Head head = reset(conversation);
+            index.put(conversation, head);
+            for (Message message : replacement) write(conversation, head, MESSAGE, json(message));
+            for (Message message : kept) write(conversation, head, MESSAGE, json(message));
+            sync();
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes a conversation. Its records are reclaimed by the next compaction.
+     *
+     * @param conversation The conversation ID.
+     * @return True if the conversation existed.
+     * @throws RuntimeException If the deletion cannot be written.
+     */
+    public boolean delete(String conversation) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Head previous = index.remove(conversation);
+            if (previous == null) return false;
+            liveBytes -= previous.bytes;
+            Head deleted = new Head();
+            write(conversation, deleted, DELETE, new byte[0]);
+            liveBytes -= deleted.bytes;
+            sync();
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the messages of a conversation.
+     *
+     * @param conversation The conversation ID.
+     * @return The messages, oldest first, or an empty list if the conversation does not exist.
+     */
+    public List<Message> messages(String conversation) {
+        return recent(conversation, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the messages of a conversation along with their version, for a later
+     * {@link #replacePrefix(String, long, int, List)}.
+     *
+     * @param conversation The conversation ID.
+     * @return The messages, oldest first, and the version, which is the position of the latest
+     *         record of the conversation and is never reused; -1 if the conversation does not exist.
+     */
+    public Snapshot snapshot(String conversation) {
+        lock.readLock().lock();
+        try {
+            Head head = index.get(conversation);
+            return new Snapshot(messages(conversation), head == null ? -1 : head.last);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the latest messages of a conversation, without reading the older ones.
+     *
+     * @param conversation The conversation ID.
+     * @param count        The maximum number of messages.
+     * @return The messages, oldest first, or an empty list if the conversation does not exist.
+     */
+    public List<Message> recent(String conversation, int count) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            Head head = index.get(conversation);
+            if (head == null) return new ArrayList<>();
+            List<Message> messages = new ArrayList<>(Math.min(count, head.size));
+            for (long position = head.last; position >= 0 && messages.size() < count;) {
+                ByteBuffer record = record(position);
+                if (record.get(8) == RESET) break;
+                messages.add(message(record));
+                position = record.getLong(9);
+            }
+            Collections.reverse(messages);
+            return messages;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages of a conversation.
+     *
+     * @param conversation The conversation ID.
+     * @return The number of messages, 0 if the conversation does not exist.
+     */
+    public int size(String conversation) {
+        lock.readLock().lock();
+        try {
+            Head head = index.get(conversation);
+            return head == null ? 0 : head.size;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a conversation exists.
+     *
+     * @param conversation The conversation ID.
+     * @return True if the conversation has been created and not deleted.
+     */
+    public boolean contains(String conversation) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(conversation);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of conversations.
+     *
+     * @return The conversation count.
+     */
+    public int getConversationCount() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the share of the log taken by replaced and deleted records.
+     *
+     * @return The garbage ratio, from 0 to 1.
+     */
+    public double getGarbageRatio() {
+        lock.readLock().lock();
+        try {
+            return totalBytes == 0 ? 0 : 1 - (double) liveBytes / totalBytes;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the live conversations into new segments and deletes the old ones. The new segments
+     * are written next to the old ones and committed by a manifest naming the first of them, so a
+     * crash before the commit leaves the old log, and a crash after it is finished when the store
+     * is opened again. If the rewrite fails, the store keeps using the old segments.
+     *
+     * @throws IOException If the new segments cannot be written, in which case the store is left as
+     *                     it was, or the old ones cannot be deleted, in which case the store rejects
+     *                     further use and has to be opened again.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            TreeMap<Integer, MappedByteBuffer> old = new TreeMap<>(segments);
+            Map<String, Head> live = new HashMap<>(index);
+            int oldSegment = segment;
+            int oldOffset = offset;
+            long oldTotalBytes = totalBytes;
+            long oldLiveBytes = liveBytes;
+            int first = segment + 1;
+            compacting = true;
+            try {
+                segments.clear();
+                index.clear();
+                segment = first;
+                offset = 0;
+                totalBytes = 0;
+                liveBytes = 0;
+                segments.put(segment, map(compactingFile(segment)));
+                for (Map.Entry<String, Head> entry : live.entrySet()) {
+                    List<byte[]> payloads = new ArrayList<>(entry.getValue().size);
+                    for (long position = entry.getValue().last; position >= 0;) {
+                        ByteBuffer record = record(old, position);
+                        if (record.get(8) == RESET) break;
+                        byte[] payload = new byte[record.getInt(0) - payloadOffset(record)];
+                        record.get(payloadOffset(record), payload);
+                        payloads.add(payload);
+                        position = record.getLong(9);
+                    }
+                    Collections.reverse(payloads);
+                    Head head = reset(entry.getKey());
+                    index.put(entry.getKey(), head);
+                    for (byte[] payload : payloads) write(entry.getKey(), head, MESSAGE, payload);
+                }
+                for (MappedByteBuffer buffer : segments.values()) buffer.force();
+                commit(first);
+            }
+            catch (IOException | RuntimeException e) {
+                segments.clear();
+                segments.putAll(old);
+                index.clear();
+                index.putAll(live);
+                segment = oldSegment;
+                offset = oldOffset;
+                totalBytes = oldTotalBytes;
+                liveBytes = oldLiveBytes;
+                discard(first, e);
+                throw e;
+            }
+            finally {
+                compacting = false;
+            }
+            try {
+                finish(first);
+            }
+            catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+            log.info("Compacted " + old.size() + " segments into " + segments.size() + ".");
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the written records to the disk.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            segments.get(segment).force();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the written records and closes the store.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            segments.get(segment).force();
+            closed = true;
+            segments.clear();
+            index.clear();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a reset record for a conversation and returns its new, empty index entry.
+     */
+    private Head reset(String conversation) {
+        Head previous = index.remove(conversation);
+        if (previous != null) liveBytes -= previous.bytes;
+        Head head = new Head();
+        write(conversation, head, RESET, new byte[0]);
+        return head;
+    }
+
+    /**
+     * Appends a record, rolling over to a new segment if it does not fit in the current one.
+     */
+    private void write(String conversation, Head head, byte type, byte[] payload) {
+        byte[] key = conversation.getBytes(StandardCharsets.UTF_8);
+        if (key.length > Short.MAX_VALUE) throw new IllegalArgumentException("Conversation ID is too long.");
+        int length = HEADER + key.length + payload.length;
+        if (length > segmentSize) throw new IllegalArgumentException("Record of " + length + " bytes exceeds the segment size.");
+        if (offset + length > segmentSize) roll();
+
+        ByteBuffer buffer = segments.get(segment).duplicate();
+        buffer.position(offset + 8);
+        buffer.put(type).putLong(type == RESET ? -1 : head.last).putShort((short) key.length).put(key).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(offset + 8).limit(offset + length));
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, length);
+
+        head.last = (long) segment * segmentSize + offset;
+        if (type == MESSAGE) head.size++;
+        head.bytes += length;
+        offset += length;
+        totalBytes += length;
+        liveBytes += length;
+    }
+
+    private void roll() {
+        try {
+            segments.get(segment).force();
+            segment++;
+            offset = 0;
+            segments.put(segment, map(compacting ? compactingFile(segment) : file(segment)));
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void sync() {
+        if (syncWrites) segments.get(segment).force();
+    }
+
+    /**
+     * Rebuilds the index out of a segment, stopping at the first torn or empty record.
+     */
+    private void replay(int number, MappedByteBuffer buffer) {
+        int position = 0;
+        while (position + HEADER <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length < HEADER || position + length > segmentSize || !valid(buffer, position, length)) break;
+            ByteBuffer record = buffer.slice(position, length);
+            String conversation = key(record);
+            byte type = record.get(8);
+            long start = (long) number * segmentSize + position;
+            totalBytes += length;
+            position += length;
+            if (type != MESSAGE) {
+                Head previous = index.remove(conversation);
+                if (previous != null) liveBytes -= previous.bytes;
+                if (type == DELETE) continue;
+                index.put(conversation, new Head());
+            }
+            Head head = index.computeIfAbsent(conversation, key -> new Head());
+            head.last = start;
+            if (type == MESSAGE) head.size++;
+            head.bytes += length;
+            liveBytes += length;
+        }
+        if (number == segments.lastKey()) {
+            segment = number;
+            offset = position;
+        }
+        if (position + HEADER <= segmentSize && buffer.getInt(position) != 0)
+            log.warning("Dropped a torn record at " + position + " of segment " + number + ".");
+    }
+
+    private static boolean valid(ByteBuffer buffer, int position, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position + 8, length - 8));
+        return buffer.getInt(position + 4) == (int) crc.getValue();
+    }
+
+    private ByteBuffer record(long position) {
+        return record(segments, position);
+    }
+
+    private ByteBuffer record(Map<Integer, MappedByteBuffer> segments, long position) {
+        MappedByteBuffer buffer = segments.get((int) (position / segmentSize));
+        int start = (int) (position % segmentSize);
+        return buffer.slice(start, buffer.getInt(start));
+    }
+
+    private static String key(ByteBuffer record) {
+        byte[] key = new byte[record.getShort(17)];
+        record.get(19, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static int payloadOffset(ByteBuffer record) {
+        return HEADER + record.getShort(17);
+    }
+
+    private static Message message(ByteBuffer record) {
+        byte[] payload = new byte[record.getInt(0) - payloadOffset(record)];
+        record.get(payloadOffset(record), payload);
+        try {
+            return JsonReaders.readerFor(Message.class).readValue(payload);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] json(Message message) {
+        try {
+            return mapper.writeValueAsBytes(message);
+        }
+        catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path file(int number) {
+        return directory.resolve(String.format("%08d", number) + SUFFIX);
+    }
+
+    private Path compactingFile(int number) {
+        return directory.resolve(String.format("%08d", number) + COMPACTING);
+    }
+
+    /**
+     * Commits a compaction by atomically moving its manifest into place.
+     */
+    private void commit(int first) throws IOException {
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(Integer.toString(first).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Finishes a committed compaction: renames the new segments, deletes the old ones and then the manifest.
+     */
+    private void finish(int first) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(files::add);
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(COMPACTING))
+                Files.move(file, file(number(name, COMPACTING)), StandardCopyOption.ATOMIC_MOVE);
+            else if (name.endsWith(SUFFIX) && number(name, SUFFIX) < first)
+                Files.delete(file);
+        }
+        Files.delete(directory.resolve(MANIFEST));
+    }
+
+    /**
+     * Deletes the new segments of a failed compaction, keeping the failure as the reported error.
+     */
+    private void discard(int first, Exception failure) {
+        for (int number = first; Files.exists(compactingFile(number)); number++) {
+            try {
+                Files.deleteIfExists(compactingFile(number));
+            }
+            catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private static int number(String name, String suffix) {
+        return Integer.parseInt(name.substring(0, name.length() - suffix.length()));
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("Conversation store is closed.");
+        if (failed) throw new IllegalStateException("Conversation store failed to finish a compaction and has to be opened again.");
+    }
+}
@@ -0,0 +1,341 @@
+package ollama.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import ollama.utilities.JsonBody;
+import utils.Printer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Logs requests and responses without blocking the requesting threads on the log. Request bodies
+ * are kept as the JSON already serialized for the request, and responses, which the client does
+ * not change, as they are. Entries are put in a bounded buffer, then parsed, redacted and written
+ * by a background thread, so no JSON tree is built on the requesting thread. When the buffer is
+ * full the oldest entry is dropped, so a slow log never slows requests down.
+ *
+ * <p> Before an entry is written, the {@code images} and {@code context} fields are replaced by a
+ * summary of their size, and strings longer than the maximum field length are truncated. Entries
+ * are written as newline delimited JSON to a file if one is given, and to the console otherwise.
+ * Loggers obtained with {@link #forFile(Path, int, double, int)} are shared by every user of the
+ * same file, so their lines never interleave.
+ */
+public class RequestLogger implements Closeable {
+
+    private static final Printer log = new Printer(RequestLogger.class);
+
+    /** Fields replaced by a summary of their size. */
+    private static final Set<String> REDACTED = Set.of("images", "context");
+
+    /** Shared loggers per file, the console logger under an empty key. */
+    private static final Map<String, RequestLogger> loggers = new ConcurrentHashMap<>();
+
+    /** Entry telling the background thread to write what is left and stop. */
+    private static final Entry CLOSE = new Entry(null, "close", null, null, -1, null);
+
+    private final BlockingQueue<Entry> buffer;
+    private final double sampleRate;
+    private final int maxFieldLength;
+    private final BufferedWriter writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread drainer;
+    private volatile boolean closed;
+    private String key;
+
+    /**
+     * An entry of the log.
+     *
+     * @param time     The time the entry was logged.
+     * @param kind     The kind of the entry: request, response or failure.
+     * @param endpoint The endpoint of the request.
+     * @param body     The serialized request, or the response.
+     * @param duration Nanoseconds since the request was sent, or -1 for requests.
+     * @param error    The failure message, or null.
+     */
+    record Entry(Instant time, String kind, String endpoint, Object body, long duration, String error) {}
+
+    /**
+     * Constructs a logger.
+     *
+     * @param capacity       The number of entries buffered before the oldest ones are dropped.
+     * @param sampleRate     The share of exchanges logged, from 0 to 1. Failures are always logged.
+     * @param maxFieldLength The length strings are truncated to.
+     * @param file           The file entries are appended to, or null to log to the console.
+     * @throws IOException If the file cannot be opened.
+     * @throws IllegalArgumentException If the capacity is not positive or the sample rate is out of range.
+     */
+    public RequestLogger(int capacity, double sampleRate, int maxFieldLength, Path file) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("Log buffer capacity must be positive.");
+        if (sampleRate < 0 || sampleRate > 1) throw new IllegalArgumentException("Sample rate must be between 0 and 1.");
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.sampleRate = sampleRate;
+        this.maxFieldLength = maxFieldLength;
+        this.writer = file == null ? null : Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.drainer = new Thread(this::drain, "ollama-logger");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Returns the logger shared by every user of a file, creating it with the given settings if it
+     * does not exist yet. Later calls with the same file get the existing logger until it is closed.
+     *
+     * @param file           The file entries are appended to, or null to log to the console.
+     * @param capacity       The number of entries buffered before the oldest ones are dropped.
+     * @param sampleRate     The share of exchanges logged, from 0 to 1.
+     * @param maxFieldLength The length strings are truncated to.
+     * @return The shared logger.
+     * @throws RuntimeException If the file cannot be opened.
+     */
+    public static RequestLogger forFile(Path file, int capacity, double sampleRate, int maxFieldLength) {
+        String key = file == null ? "" : file.toAbsolutePath().normalize().toString();
+        return loggers.computeIfAbsent(key, ignored -> {
+            try {
+                RequestLogger logger = new RequestLogger(capacity, sampleRate, maxFieldLength, file);
+                logger.key = key;
+                return logger;
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Decides whether an exchange is logged, according to the sample rate.
+     *
+     * @return True if the exchange should be logged.
+     */
+    public boolean sample() {
+        return sampleRate >= 1 || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Logs a request. Pass the body of the HTTP request, such as a {@code JsonBody}, so the JSON
+     * serialized for sending is logged as it is. Other objects are serialized when they are logged,
+     * so later changes by the caller do not reach the log.
+     *
+     * @param endpoint The endpoint of the request.
+     * @param body     The request body.
+     */
+    public void request(String endpoint, Object body) {
+        if (closed) return;
+        offer(new Entry(Instant.now(), "request", endpoint, snapshot(body), -1, null));
+    }
+
+    /**
+     * Logs a response. The response is serialized by the background thread, so it must not be
+     * changed afterwards.
+     *
+     * @param endpoint The endpoint of the request.
+     * @param body     The response body.
+     * @param duration Nanoseconds since the request was sent.
+     */
+    public void response(String endpoint, Object body, long duration) {
+        if (closed) return;
+        offer(new Entry(Instant.now(), "response", endpoint, body, duration, null));
+    }
+
+    /**
+     * Logs a failed request.
+     *
+     * @param endpoint The endpoint of the request.
+     * @param failure  The failure.
+     * @param duration Nanoseconds since the request was sent.
+     */
+    public void failure(String endpoint, Throwable failure, long duration) {
+        offer(new Entry(Instant.now(), "failure", endpoint, null, duration, String.valueOf(failure)));
+    }
+
+    /**
+     * Returns the number of entries dropped because the buffer was full.
+     *
+     * @return The number of dropped entries.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the share of exchanges logged.
+     *
+     * @return The sample rate, from 0 to 1.
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Writes the buffered entries and stops the background thread. A shared logger is removed from
+     * the registry, so the next user of its file gets a new one.
+     *
+     * @throws IOException If the log file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        if (key != null) loggers.remove(key, this);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                buffer.put(CLOSE);
+                drainer.join();
+                break;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (writer != null) writer.close();
+    }
+
+    /**
+     * Takes a snapshot of a request body on the requesting thread. Serialized bodies are immutable
+     * and kept as they are, other request bodies are copied as bytes, and objects are serialized
+     * into JSON, so later changes of the object by the caller do not reach the log.
+     *
+     * @param body The body.
+     * @return The snapshot, or null if the body cannot be read.
+     */
+    private static Object snapshot(Object body) {
+        if (body == null || body instanceof JsonBody) return body;
+        try {
+            if (!(body instanceof RequestBody request)) return JsonBody.of(body, 0);
+            if (request.isOneShot()) return null;
+            Buffer json = new Buffer();
+            request.writeTo(json);
+            return JsonBody.of(json, 0);
+        }
+        catch (IOException | RuntimeException e) {
+            log.warning("Could not serialize a logged body: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void offer(Entry entry) {
+        if (closed) return;
+        while (!buffer.offer(entry)) {
+            if (buffer.poll() != null) dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        List<Entry> entries = new ArrayList<>();
+        while (true) {
+            try {
+                entries.add(buffer.take());
+            }
+            catch (InterruptedException e) {
+                continue;
+            }
+            buffer.drainTo(entries);
+            boolean stop = false;
+            for (Entry entry : entries) {
+                if (entry == CLOSE) stop = true;
+                else write(entry);
+            }
+            entries.clear();
+            flush();
+            if (stop) return;
+        }
+    }
+
+    private void write(Entry entry) {
+        try {
+            ObjectNode json = mapper.createObjectNode()
+                    .put("time", entry.time().toString())
+                    .put("kind", entry.kind())
+                    .put("endpoint", entry.endpoint());
+            if (entry.duration() >= 0) json.put("duration_ms", entry.duration() / 1_000_000.0);
+            if (entry.error() != null) json.put("error", truncate(entry.error()));
+            if (entry.body() != null) json.set("body", redact(tree(entry.body())));
+            if (writer == null) log.info(json.toString());
+            else {
+                writer.write(json.toString());
+                writer.newLine();
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            log.warning("Could not log " + entry.kind() + " of " + entry.endpoint() + ": " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+        }
+        catch (IOException e) {
+            log.warning("Could not flush the request log: " + e.getMessage());
+        }
+    }
+
+    private static JsonNode tree(Object body) throws IOException {
+        if (body instanceof JsonBody json) return mapper.readTree(json.utf8());
+        if (body instanceof JsonNode node) return node;
+        return mapper.valueToTree(body);
+    }
+
+    /**
+     * Replaces redacted fields by a summary of their size and truncates long strings, in place.
+     *
+     * @param node The node.
+     * @return The redacted node.
+     */
+    private JsonNode redact(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode value = field.getValue();
+                if (REDACTED.contains(field.getKey()) && value instanceof ArrayNode array) field.setValue(summary(array));
+                else field.setValue(redact(value));
+            }
+        }
+        else if (node instanceof ArrayNode array) {
+            for (int i = 0; i < array.size(); i++) array.set(i, redact(array.get(i)));
+        }
+        else if (node.isTextual() && node.textValue().length() > maxFieldLength) {
+            return TextNode.valueOf(truncate(node.textValue()));
+        }
+        return node;
+    }
+
+    private static TextNode summary(ArrayNode array) {
+        long chars = 0;
+        for (JsonNode element : array) if (element.isTextual()) chars += element.textValue().length();
+        return TextNode.valueOf("[" + array.size() + " elements" + (chars > 0 ? ", " + chars + " chars" : "") + " redacted]");
+    }
+
+    private String truncate(String text) {
+        if (text.length() <= maxFieldLength) return text;
+        return text.substring(0, maxFieldLength) + "...(" + (text.length() - maxFieldLength) + " more chars)";
+    }
+}
@@ -0,0 +1,217 @@
+package ollama.models.chat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Represents a batch of chat requests sharing the same leading messages, such as a long system
+ * prompt sent with many different user inputs. Every request of the batch is the shared prefix
+ * followed by its own suffix.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ChatBatch batch = new ChatBatch.Builder()
+ *                 .model("llama3.2")
+ *                 .system("Classify the sentiment of the message as positive or negative.")
+ *                 .inputs(List.of("I love it", "I hate it"))
+ *                 .build();
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class ChatBatch {
+
+    /** Orders message contents, which are null for assistant messages carrying only tool calls. */
+    private static final Comparator<String> CONTENTS = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /** The name of the model, or null to use the default model. */
+    private final String model;
+
+    /** The messages shared by every request of the batch. */
+    private final List<Message> prefix;
+
+    /** The messages following the prefix, one list per request. */
+    private final List<List<Message>> suffixes;
+
+    /**
+     * Constructs a new ChatBatch with the provided configuration.
+     *
+     * @param builder The builder object containing the configuration details.
+     */
+    private ChatBatch(Builder builder) {
+        this.model = builder.model;
+        this.prefix = List.copyOf(builder.prefix);
+        this.suffixes = List.copyOf(builder.suffixes);
+    }
+
+    /**
+     * Returns the model name.
+     *
+     * @return The model name, or null to use the default model.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the messages shared by every request of the batch.
+     *
+     * @return The prefix messages.
+     */
+    public List<Message> getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the messages following the prefix, one list per request.
+     *
+     * @return The suffixes, in input order.
+     */
+    public List<List<Message>> getSuffixes() {
+        return suffixes;
+    }
+
+    /**
+     * Returns the number of requests in the batch.
+     *
+     * @return The number of suffixes.
+     */
+    public int size() {
+        return suffixes.size();
+    }
+
+    /**
+     * Returns the full conversation of a request, the prefix followed by the suffix.
+     *
+     * @param index The index of the request.
+     * @return The messages of the request.
+     */
+    public List<Message> messages(int index) {
+        List<Message> messages = new ArrayList<>(prefix.size() + suffixes.get(index).size());
+        messages.addAll(prefix);
+        messages.addAll(suffixes.get(index));
+        return messages;
+    }
+
+    /**
+     * Returns the order in which the requests should be sent. Suffixes are sorted by their messages,
+     * so requests which share more than the prefix, such as the same few-shot examples, are sent one
+     * after another and can reuse the prompt cache of the server.
+     *
+     * @return The request indices, in sending order.
+     */
+    public List<Integer> order() {
+        List<Integer> order = new ArrayList<>(suffixes.size());
+        for (int i = 0; i < suffixes.size(); i++) order.add(i);
+        order.sort(Comparator.comparing(suffixes::get, ChatBatch::compare));
+        return order;
+    }
+
+    private static int compare(List<Message> first, List<Message> second) {
+        for (int i = 0; i < Math.min(first.size(), second.size()); i++) {
+            int roles = first.get(i).getRole().compareTo(second.get(i).getRole());
+            if (roles != 0) return roles;
+            int contents = CONTENTS.compare(first.get(i).getContent(), second.get(i).getContent());
+            if (contents != 0) return contents;
+        }
+        return Integer.compare(first.size(), second.size());
+    }
+
+    /**
+     * A builder class for creating ChatBatch objects.
+     */
+    public static class Builder {
+        private String model;
+        private final List<Message> prefix = new ArrayList<>();
+        private final List<List<Message>> suffixes = new ArrayList<>();
+
+        /**
+         * Default constructor for the Builder.
+         */
+        public Builder() {}
+
+        /**
+         * Sets the model name for every request of the batch.
+         *
+         * @param model The model name.
+         * @return The builder instance for method chaining.
+         */
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * Adds a system message to the shared prefix.
+         *
+         * @param content The content of the system message.
+         * @return The builder instance for method chaining.
+         */
+        public Builder system(String content) {
+            this.prefix.add(new Message(Role.system, content));
+            return this;
+        }
+
+        /**
+         * Adds messages to the shared prefix.
+         *
+         * @param messages The messages shared by every request.
+         * @return The builder instance for method chaining.
+         */
+        public Builder prefix(List<Message> messages) {
+            this.prefix.addAll(messages);
+            return this;
+        }
+
+        /**
+         * Adds a request whose suffix is a single user message.
+         *
+         * @param input The content of the user message.
+         * @return The builder instance for method chaining.
+         */
+        public Builder input(String input) {
+            this.suffixes.add(List.of(new Message(Role.user, input)));
+            return this;
+        }
+
+        /**
+         * Adds one request per input, each with a single user message as its suffix.
+         *
+         * @param inputs The contents of the user messages.
+         * @return The builder instance for method chaining.
+         */
+        public Builder inputs(List<String> inputs) {
+            for (String input : inputs) input(input);
+            return this;
+        }
+
+        /**
+         * Adds a request with the given messages as its suffix.
+         *
+         * @param messages The messages following the prefix.
+         * @return The builder instance for method chaining.
+         */
+        public Builder suffix(List<Message> messages) {
+            this.suffixes.add(List.copyOf(messages));
+            return this;
+        }
+
+        /**
+         * Builds and returns a new ChatBatch object.
+         *
+         * @return A new ChatBatch object.
+         * @throws IllegalArgumentException if there are no requests, or if a request has no messages.
+         */
+        public ChatBatch build() {
+            if (suffixes.isEmpty())
+                throw new IllegalArgumentException("Batch must contain at least one input.");
+
+            if (prefix.isEmpty() && suffixes.stream().anyMatch(List::isEmpty))
+                throw new IllegalArgumentException("Every request of the batch must contain at least one message.");
+
+            return new ChatBatch(this);
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package ollama.models.chat;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.List;
 
+import static ollama.utilities.Utilities.getCachedSchema;
+
 /**
  * Represents a chat model with its associated messages and streaming option.
  * This class is used to configure and send chat requests to an Ollama model.
@@ -26,6 +31,25 @@ public class ChatModel {
      */
     private boolean stream;
 
+    /**
+     * The format of the response, such as a JSON schema. Only honored by the native chat endpoint.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Object format;
+
+    /**
+     * How long the model stays loaded after the request, such as "5m". Only honored by the native chat endpoint.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("keep_alive")
+    private String keepAlive;
+
+    /**
+     * The tools the model may call.
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<Tool> tools;
+
     /**
      * Constructs a ChatModel with the specified model, messages, and streaming option.
      *
@@ -77,6 +101,23 @@ public class ChatModel {
         return this;
     }
 
+    /**
+     * Creates a copy of the request with another model, conversation and streaming option. The
+     * response format, keep alive and tools are kept.
+     *
+     * @param model    The name of the model to use.
+     * @param messages The list of messages in the conversation.
+     * @param stream   Whether to stream the response.
+     * @return The new ChatModel instance.
+     */
+    public ChatModel copy(String model, List<Message> messages, boolean stream) {
+        ChatModel copy = new ChatModel(model, messages, stream);
+        copy.format = format;
+        copy.keepAlive = keepAlive;
+        copy.tools = tools;
+        return copy;
+    }
+
     /**
      * Gets the model name.
      *
@@ -130,4 +171,71 @@ public class ChatModel {
     public void setStream(boolean stream) {
         this.stream = stream;
     }
+
+    /**
+     * Gets the format of the response.
+     *
+     * @return The response format, or null if the response is free text.
+     */
+    public Object getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the format of the response. Only honored by the native chat endpoint.
+     *
+     * @param format The response format, such as "json" or a JSON schema.
+     */
+    public void setFormat(Object format) {
+        this.format = format;
+    }
+
+    /**
+     * Sets the format of the response to the JSON schema of a class. The schema of each class is
+     * generated once and reused. Only honored by the native chat endpoint.
+     *
+     * @param responseType   The class of the response.
+     * @param requiredFields The fields marked as required, all fields if none are given.
+     * @param <T>            The response type.
+     */
+    public <T> void setSchema(Class<T> responseType, String... requiredFields) {
+        this.format = getCachedSchema(responseType, requiredFields);
+    }
+
+    /**
+     * Gets how long the model stays loaded after the request.
+     *
+     * @return The keep alive duration, or null for the default of the server.
+     */
+    public String getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Sets how long the model stays loaded after the request. Only honored by the native chat endpoint.
+     *
+     * @param keepAlive The keep alive duration, such as "5m", "0" to unload the model right away,
+     *                  or "-1" to keep it loaded.
+     */
+    public void setKeepAlive(String keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Gets the tools the model may call.
+     *
+     * @return The tools, or null if none are offered.
+     */
+    public List<Tool> getTools() {
+        return tools;
+    }
+
+    /**
+     * Sets the tools the model may call. The calls are found in the tool calls of the reply.
+     *
+     * @param tools The tools to offer.
+     */
+    public void setTools(List<Tool> tools) {
+        this.tools = tools;
+    }
 }
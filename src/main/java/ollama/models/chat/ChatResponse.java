@@ -1,5 +1,6 @@
 package ollama.models.chat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
@@ -18,6 +19,30 @@ public class ChatResponse {
     String object;
     Usage usage;
 
+    /**
+     * Default constructor for creating an empty ChatResponse instance.
+     */
+    public ChatResponse() {}
+
+    /**
+     * Constructs a ChatResponse with all response parameters.
+     *
+     * @param id      The response ID.
+     * @param created The creation timestamp.
+     * @param model   The model name.
+     * @param choices The choices generated by the model.
+     * @param object  The object type.
+     * @param usage   The usage statistics.
+     */
+    public ChatResponse(String id, long created, String model, List<Choice> choices, String object, Usage usage) {
+        this.id = id;
+        this.created = created;
+        this.model = model;
+        this.choices = choices;
+        this.object = object;
+        this.usage = usage;
+    }
+
     /**
      * Gets the unique identifier for the response.
      *
@@ -80,6 +105,25 @@ public class ChatResponse {
         Object logprobs;
         String finish_reason;
         Message message;
+        Message delta;
+
+        /**
+         * Default constructor for creating an empty Choice instance.
+         */
+        public Choice() {}
+
+        /**
+         * Constructs a Choice with a complete message.
+         *
+         * @param index         The choice index.
+         * @param finish_reason The reason why the generation finished.
+         * @param message       The message generated by the model.
+         */
+        public Choice(int index, String finish_reason, Message message) {
+            this.index = index;
+            this.finish_reason = finish_reason;
+            this.message = message;
+        }
 
         /**
          * Gets the index of the choice in the list of choices.
@@ -116,6 +160,25 @@ public class ChatResponse {
         public Message getMessage() {
             return message;
         }
+
+        /**
+         * Gets the message fragment of a streamed chunk.
+         *
+         * @return The {@link Message} fragment, or null if the response is not streamed.
+         */
+        public Message getDelta() {
+            return delta;
+        }
+
+        /**
+         * Gets the tools the model calls in this choice.
+         *
+         * @return The tool calls, empty if the model answered without calling tools.
+         */
+        @JsonIgnore
+        public List<ToolCall> getToolCalls() {
+            return message == null ? List.of() : message.getToolCalls();
+        }
     }
 
     /**
@@ -1,5 +1,10 @@
 package ollama.models.chat;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
 /**
  * Represents a message in a chat conversation.  This class encapsulates the role of the sender
  * and the content of the message.
@@ -11,6 +16,21 @@ public class Message {
     Role role;
     String content;
 
+    /** The tools the assistant calls, only set on assistant messages. */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonProperty("tool_calls")
+    List<ToolCall> toolCalls;
+
+    /** The ID of the answered call, as expected by the OpenAI compatible endpoint. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("tool_call_id")
+    String toolCallId;
+
+    /** The name of the answered tool, as expected by the native endpoint. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("tool_name")
+    String toolName;
+
     /**
      * Constructs a new Message object with the specified role and content.
      *
@@ -22,6 +42,20 @@ public class Message {
         this.role = role;
     }
 
+    /**
+     * Creates a message answering a tool call with its result.
+     *
+     * @param call    The answered call.
+     * @param content The result of the call.
+     * @return The tool message.
+     */
+    public static Message tool(ToolCall call, String content) {
+        Message message = new Message(Role.tool, content);
+        message.toolCallId = call.getId();
+        message.toolName = call.getName();
+        return message;
+    }
+
     /**
      * Default constructor for the Message class.  Useful for deserialization or creating
      * an empty message object.
@@ -64,4 +98,31 @@ public class Message {
     public String getContent() {
         return content;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the tools the assistant calls.
+     *
+     * @return The tool calls, empty if the message calls no tools.
+     */
+    public List<ToolCall> getToolCalls() {
+        return toolCalls == null ? List.of() : toolCalls;
+    }
+
+    /**
+     * Gets the ID of the tool call a tool message answers.
+     *
+     * @return The call ID, or null.
+     */
+    public String getToolCallId() {
+        return toolCallId;
+    }
+
+    /**
+     * Gets the name of the tool a tool message answers.
+     *
+     * @return The tool name, or null.
+     */
+    public String getToolName() {
+        return toolName;
+    }
+}
@@ -0,0 +1,200 @@
+package ollama.models.chat;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Represents the response of the native {@code api/chat} endpoint of Ollama, or a chunk of its
+ * streamed response. Unlike the OpenAI compatible endpoint, it reports the durations measured by
+ * the server, which are mapped onto the usage of a {@link ChatResponse} by {@link #toResponse()}
+ * and {@link #toChunk()}.
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class NativeChatResponse {
+    /** The name of the model used for the chat. */
+    private String model;
+
+    /** The timestamp when the response was generated. */
+    private String created_at;
+
+    /** The message generated by the model, or a fragment of it in a streamed chunk. */
+    private Message message;
+
+    /** Indicates whether the response has completed. */
+    private boolean done;
+
+    /** The reason for the completion of the response. */
+    private String done_reason;
+
+    /** The total duration of the request in nanoseconds. */
+    private long total_duration;
+
+    /** The time taken to load the model in nanoseconds. */
+    private long load_duration;
+
+    /** The number of tokens processed in the conversation. */
+    private int prompt_eval_count;
+
+    /** The time taken to evaluate the conversation in nanoseconds. */
+    private long prompt_eval_duration;
+
+    /** The number of tokens generated in the response. */
+    private int eval_count;
+
+    /** The time taken to generate the response in nanoseconds. */
+    private long eval_duration;
+
+    /**
+     * Default constructor for creating an empty NativeChatResponse instance.
+     */
+    public NativeChatResponse() {}
+
+    /**
+     * Converts a complete response into a {@code ChatResponse}, with the message as its only choice
+     * and the durations and token counts as its usage.
+     *
+     * @return The chat response.
+     */
+    public ChatResponse toResponse() {
+        return new ChatResponse(null, created(), model, List.of(new ChatResponse.Choice(0, done_reason, message)), "chat.completion", usage());
+    }
+
+    /**
+     * Converts a streamed chunk into a {@code ChatResponse} chunk, with the message fragment as the
+     * delta of its only choice. Only the final chunk carries a usage.
+     *
+     * @return The chat response chunk.
+     */
+    public ChatResponse toChunk() {
+        ChatResponse.Choice choice = new ChatResponse.Choice(0, done_reason, null);
+        choice.delta = message;
+        return new ChatResponse(null, created(), model, List.of(choice), "chat.completion.chunk", done ? usage() : null);
+    }
+
+    private long created() {
+        try {
+            return created_at == null ? 0 : OffsetDateTime.parse(created_at).toEpochSecond();
+        }
+        catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private ChatResponse.Usage usage() {
+        ChatResponse.Usage usage = new ChatResponse.Usage();
+        usage.total_duration = total_duration;
+        usage.load_duration = load_duration;
+        usage.prompt_eval_count = prompt_eval_count;
+        usage.prompt_tokens = prompt_eval_count;
+        usage.prompt_eval_duration = prompt_eval_duration;
+        usage.eval_count = eval_count;
+        usage.completion_tokens = eval_count;
+        usage.eval_duration = eval_duration;
+        usage.total_tokens = prompt_eval_count + eval_count;
+        if (prompt_eval_duration > 0) usage.prompt_token_s = prompt_eval_count * 1e9 / prompt_eval_duration;
+        if (eval_duration > 0) usage.response_token_s = eval_count * 1e9 / eval_duration;
+        return usage;
+    }
+
+    /**
+     * Returns the name of the model used for the chat.
+     *
+     * @return The model name.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the timestamp when the response was generated.
+     *
+     * @return The creation timestamp.
+     */
+    public String getCreatedAt() {
+        return created_at;
+    }
+
+    /**
+     * Returns the message generated by the model.
+     *
+     * @return The message, or a fragment of it in a streamed chunk.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Indicates whether the response has completed.
+     *
+     * @return True if this is the complete response or the final chunk.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Returns the reason for the completion of the response.
+     *
+     * @return The completion reason, such as "stop" or "length".
+     */
+    public String getDoneReason() {
+        return done_reason;
+    }
+
+    /**
+     * Returns the total duration of the request.
+     *
+     * @return The total duration in nanoseconds.
+     */
+    public long getTotalDuration() {
+        return total_duration;
+    }
+
+    /**
+     * Returns the time taken to load the model.
+     *
+     * @return The load duration in nanoseconds.
+     */
+    public long getLoadDuration() {
+        return load_duration;
+    }
+
+    /**
+     * Returns the number of tokens processed in the conversation.
+     *
+     * @return The prompt evaluation count.
+     */
+    public int getPromptEvalCount() {
+        return prompt_eval_count;
+    }
+
+    /**
+     * Returns the time taken to evaluate the conversation.
+     *
+     * @return The prompt evaluation duration in nanoseconds.
+     */
+    public long getPromptEvalDuration() {
+        return prompt_eval_duration;
+    }
+
+    /**
+     * Returns the number of tokens generated in the response.
+     *
+     * @return The evaluation count.
+     */
+    public int getEvalCount() {
+        return eval_count;
+    }
+
+    /**
+     * Returns the time taken to generate the response.
+     *
+     * @return The evaluation duration in nanoseconds.
+     */
+    public long getEvalDuration() {
+        return eval_duration;
+    }
+}
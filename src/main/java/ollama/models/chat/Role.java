@@ -3,7 +3,7 @@ package ollama.models.chat;
 /**
  * Defines the possible roles for a message in a chat conversation.
  * This enum represents who sent the message: the user, the assistant (e.g., the AI model),
- * or the system (e.g., initial instructions).
+ * the system (e.g., initial instructions), or a tool answering a call of the assistant.
  *
  * @author Umut Ay Bora
  * @version 0.0.3
@@ -23,5 +23,10 @@ public enum Role {
     /**
      * Represents a message sent by the user.
      */
-    user
+    user,
+
+    /**
+     * Represents the result of a tool call, sent back to the model.
+     */
+    tool
 }
\ No newline at end of file
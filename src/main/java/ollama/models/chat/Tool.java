@@ -0,0 +1,117 @@
+package ollama.models.chat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static ollama.utilities.Utilities.getSchema;
+
+/**
+ * Represents a tool a model may call during a chat, described by its name, its purpose and the
+ * JSON schema of its arguments. Tools are sent along with the chat model, in the function format
+ * shared by the native and the OpenAI compatible chat endpoints.
+ *
+ * <p> Example usage:
+ * <pre>
+ * Tool weather = Tool.of("get_weather", "Returns the current weather of a city.", WeatherQuery.class);
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class Tool {
+
+    /** The type of the tool, always "function". */
+    private final String type = "function";
+
+    /** The function the model may call. */
+    private final Function function;
+
+    /**
+     * Constructs a Tool with the given function.
+     *
+     * @param function The function the model may call.
+     */
+    public Tool(Function function) {
+        this.function = function;
+    }
+
+    /**
+     * Creates a tool whose arguments are described by the JSON schema of a class.
+     *
+     * @param name           The name the model calls the tool by.
+     * @param description    What the tool does, which the model reads to decide when to call it.
+     * @param arguments      The class of the arguments.
+     * @param requiredFields The fields marked as required, all fields if none are given.
+     * @param <T>            The arguments type.
+     * @return The tool.
+     */
+    public static <T> Tool of(String name, String description, Class<T> arguments, String... requiredFields) {
+        return new Tool(new Function(name, description, getSchema(arguments, requiredFields)));
+    }
+
+    /**
+     * Gets the type of the tool.
+     *
+     * @return The tool type, "function".
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the function the model may call.
+     *
+     * @return The function.
+     */
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Represents the description of a function.
+     */
+    public static class Function {
+        private final String name;
+        private final String description;
+        private final JsonNode parameters;
+
+        /**
+         * Constructs a Function with its name, description and argument schema.
+         *
+         * @param name        The name the model calls the function by.
+         * @param description What the function does.
+         * @param parameters  The JSON schema of the arguments.
+         */
+        public Function(String name, String description, JsonNode parameters) {
+            this.name = name;
+            this.description = description;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Gets the name of the function.
+         *
+         * @return The function name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the description of the function.
+         *
+         * @return The function description.
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Gets the JSON schema of the arguments.
+         *
+         * @return The argument schema.
+         */
+        public JsonNode getParameters() {
+            return parameters;
+        }
+    }
+}
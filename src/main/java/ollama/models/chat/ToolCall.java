@@ -0,0 +1,123 @@
+package ollama.models.chat;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import ollama.utilities.JsonReaders;
+
+import java.io.IOException;
+
+/**
+ * Represents a call of a tool requested by a model, found in the tool calls of an assistant
+ * message. The native chat endpoint sends the arguments as a JSON object, while the OpenAI
+ * compatible endpoint sends them as a JSON encoded string; both are read by {@link #getArguments()}.
+ * The arguments are kept as received, so the call can be sent back to the endpoint it came from.
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ToolCall {
+
+    /** The ID of the call, only set by the OpenAI compatible endpoint. */
+    String id;
+
+    /** The type of the call, "function". */
+    String type;
+
+    /** The called function and its arguments. */
+    Function function;
+
+    /**
+     * Default constructor for creating an empty ToolCall instance.
+     */
+    public ToolCall() {}
+
+    /**
+     * Gets the ID of the call.
+     *
+     * @return The call ID, or null if the endpoint does not identify calls.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the type of the call.
+     *
+     * @return The call type.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the called function.
+     *
+     * @return The function and its arguments as received.
+     */
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Gets the name of the called tool.
+     *
+     * @return The tool name.
+     */
+    @JsonIgnore
+    public String getName() {
+        return function == null ? null : function.name;
+    }
+
+    /**
+     * Gets the arguments of the call as a JSON object, decoding them if they were sent as a string.
+     *
+     * @return The arguments.
+     * @throws IllegalArgumentException If the arguments are not valid JSON.
+     */
+    @JsonIgnore
+    public JsonNode getArguments() {
+        JsonNode arguments = function == null ? null : function.arguments;
+        if (arguments == null || arguments.isNull()) return JsonNodeFactory.instance.objectNode();
+        if (!arguments.isTextual()) return arguments;
+        try {
+            return JsonReaders.read(arguments.asText(), JsonNode.class);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Invalid arguments for tool " + getName() + ": " + arguments.asText(), e);
+        }
+    }
+
+    /**
+     * Represents the called function and its arguments.
+     */
+    public static class Function {
+        String name;
+        JsonNode arguments;
+
+        /**
+         * Default constructor for creating an empty Function instance.
+         */
+        public Function() {}
+
+        /**
+         * Gets the name of the function.
+         *
+         * @return The function name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the arguments as received, a JSON object or a JSON encoded string.
+         *
+         * @return The raw arguments.
+         */
+        public JsonNode getArguments() {
+            return arguments;
+        }
+    }
+}
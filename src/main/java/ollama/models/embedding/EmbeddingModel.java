@@ -0,0 +1,152 @@
+package ollama.models.embedding;
+
+import java.util.List;
+
+/**
+ * Represents a data model for sending embedding requests to the {@code api/embed} endpoint.
+ * A single request carries a batch of inputs, each of which is embedded into one vector.
+ *
+ * <p> Example usage:
+ * <pre>
+ * EmbeddingModel request = new EmbeddingModel.Builder()
+ *                 .model("nomic-embed-text")
+ *                 .input(List.of("first chunk", "second chunk"))
+ *                 .build();
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class EmbeddingModel {
+    /** The name of the model used for embedding. */
+    private final String model;
+
+    /** The batch of inputs to be embedded. */
+    private final List<String> input;
+
+    /** Indicates whether inputs exceeding the model context should be truncated. */
+    private final boolean truncate;
+
+    /**
+     * Constructs a new EmbeddingModel with the provided configuration.
+     *
+     * @param builder The builder object containing the configuration details.
+     */
+    private EmbeddingModel(Builder builder) {
+        this.model = builder.model;
+        this.input = builder.input;
+        this.truncate = builder.truncate;
+    }
+
+    /**
+     * Returns the model name.
+     *
+     * @return The model name as a String.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the batch of inputs to be embedded.
+     *
+     * @return The inputs as a list of Strings.
+     */
+    public List<String> getInput() {
+        return input;
+    }
+
+    /**
+     * Returns whether inputs exceeding the model context are truncated.
+     *
+     * @return True if truncation is enabled, false otherwise.
+     */
+    public boolean isTruncate() {
+        return truncate;
+    }
+
+    /**
+     * A builder class for creating EmbeddingModel objects.
+     */
+    public static class Builder {
+        private String model;
+        private List<String> input;
+        private boolean truncate = true;
+
+        /**
+         * Default constructor for the Builder.
+         */
+        public Builder() {}
+
+        /**
+         * Constructs a builder out of an existing embedding model.
+         *
+         * @param model The embedding model to copy.
+         */
+        public Builder(EmbeddingModel model) {
+            this.model = model.getModel();
+            this.input = model.getInput();
+            this.truncate = model.isTruncate();
+        }
+
+        /**
+         * Sets the model name for the embedding request.
+         *
+         * @param model The model name.
+         * @return The builder instance for method chaining.
+         */
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * Sets the batch of inputs for the embedding request.
+         *
+         * @param input The inputs to be embedded.
+         * @return The builder instance for method chaining.
+         */
+        public Builder input(List<String> input) {
+            this.input = input;
+            return this;
+        }
+
+        /**
+         * Sets a single input for the embedding request.
+         *
+         * @param input The input to be embedded.
+         * @return The builder instance for method chaining.
+         */
+        public Builder input(String input) {
+            this.input = List.of(input);
+            return this;
+        }
+
+        /**
+         * Enables or disables truncation of inputs exceeding the model context.
+         *
+         * @param truncate True to truncate, false to fail on oversized inputs.
+         * @return The builder instance for method chaining.
+         */
+        public Builder truncate(boolean truncate) {
+            this.truncate = truncate;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new EmbeddingModel object.
+         *
+         * @return A new EmbeddingModel object.
+         * @throws IllegalArgumentException if the model is null or empty, or if there are no inputs.
+         */
+        public EmbeddingModel build() {
+            if (model == null || model.isEmpty())
+                throw new IllegalArgumentException("Model name cannot be null or empty.");
+
+            if (input == null || input.isEmpty())
+                throw new IllegalArgumentException("Input cannot be null or empty.");
+
+            return new EmbeddingModel(this);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ollama.models.embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Represents the response received from an Ollama embedding request.
+ * Vectors are decoded straight into primitive {@code float[]} arrays, one per input,
+ * in the same order as the inputs of the request.
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class EmbeddingResponse {
+    /** The name of the model used for embedding. */
+    private String model;
+
+    /** The embedding vectors, one per input. */
+    private float[][] embeddings;
+
+    /** The total duration of the embedding process in nanoseconds. */
+    private long total_duration;
+
+    /** The time taken to load the model in nanoseconds. */
+    private long load_duration;
+
+    /** The number of tokens processed across all inputs. */
+    private int prompt_eval_count;
+
+    /**
+     * Default constructor for creating an empty EmbeddingResponse instance.
+     */
+    public EmbeddingResponse() {}
+
+    /**
+     * Constructs an EmbeddingResponse with all response parameters.
+     *
+     * @param model             The model name used for embedding.
+     * @param embeddings        The embedding vectors, one per input.
+     * @param total_duration    The total duration of the embedding process in nanoseconds.
+     * @param load_duration     The time taken to load the model in nanoseconds.
+     * @param prompt_eval_count The number of tokens processed across all inputs.
+     */
+    public EmbeddingResponse(String model, float[][] embeddings, long total_duration, long load_duration, int prompt_eval_count) {
+        this.model = model;
+        this.embeddings = embeddings;
+        this.total_duration = total_duration;
+        this.load_duration = load_duration;
+        this.prompt_eval_count = prompt_eval_count;
+    }
+
+    /**
+     * Returns the name of the model used for embedding.
+     *
+     * @return The model name.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the embedding vectors, one per input.
+     *
+     * @return The embedding vectors.
+     */
+    public float[][] getEmbeddings() {
+        return embeddings;
+    }
+
+    /**
+     * Returns the dimension of the embedding vectors.
+     *
+     * @return The vector dimension, or 0 if the response holds no vectors.
+     */
+    public int getDimensions() {
+        return embeddings == null || embeddings.length == 0 ? 0 : embeddings[0].length;
+    }
+
+    /**
+     * Returns the total duration of the embedding process in nanoseconds.
+     *
+     * @return The total duration.
+     */
+    public long getTotalDuration() {
+        return total_duration;
+    }
+
+    /**
+     * Returns the time taken to load the model in nanoseconds.
+     *
+     * @return The load duration.
+     */
+    public long getLoadDuration() {
+        return load_duration;
+    }
+
+    /**
+     * Returns the number of tokens processed across all inputs.
+     *
+     * @return The number of prompt tokens evaluated.
+     */
+    public int getPromptEvalCount() {
+        return prompt_eval_count;
+    }
+
+    /**
+     * Packs all vectors row by row into a single contiguous, off-heap buffer.
+     * Vector {@code i} occupies positions {@code [i * dimensions, (i + 1) * dimensions)}.
+     *
+     * @return A direct {@code FloatBuffer} holding every vector of this response.
+     */
+    public FloatBuffer toBuffer() {
+        int dimensions = getDimensions();
+        int count = embeddings == null ? 0 : embeddings.length;
+        FloatBuffer buffer = ByteBuffer.allocateDirect(count * dimensions * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        for (int i = 0; i < count; i++) buffer.put(embeddings[i]);
+        return buffer.flip();
+    }
+}
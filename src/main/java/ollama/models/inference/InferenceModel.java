@@ -1,10 +1,12 @@
 package ollama.models.inference;
 
+import ollama.utilities.PromptTemplate;
 import utils.FileUtilities;
 
 import java.util.List;
+import java.util.Map;
 
-import static ollama.utilities.Utilities.getSchema;
+import static ollama.utilities.Utilities.getCachedSchema;
 
 /**
  * Represents a data model for sending prompt requests to an inference engine.
@@ -243,6 +245,18 @@ public class InferenceModel {
             return this;
         }
 
+        /**
+         * Sets the prompt for the inference request by rendering a precompiled template.
+         *
+         * @param template The prompt template.
+         * @param values   The template variable values.
+         * @return The builder instance for method chaining.
+         */
+        public Builder prompt(PromptTemplate template, Map<String, ?> values) {
+            this.prompt = template.render(values);
+            return this;
+        }
+
         /**
          * Enables or disables streaming for the response.
          *
@@ -319,13 +333,13 @@ public class InferenceModel {
         }
 
         /**
-         * Sets the format of the response.
+         * Sets the format of the response. The schema of each class is generated once and reused.
          *
          * @param format The response format, such as JSON schema.
          * @return The builder instance for method chaining.
          */
         public <T> Builder format(Class<T> format, String... requiredFields) {
-            this.format = getSchema(format, requiredFields);
+            this.format = getCachedSchema(format, requiredFields);
             return this;
         }
 
@@ -0,0 +1,419 @@
+package ollama.packing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ollama.Ollama;
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import ollama.utilities.JsonReaders;
+import ollama.utilities.PromptTemplate;
+import ollama.utilities.TokenEstimator;
+import utils.Printer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static ollama.utilities.Utilities.getCachedSchema;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Packs many small typed prompts into a single request. Prompts submitted within a short window
+ * are numbered and sent together, with a response format requiring an array holding one result
+ * per prompt, and every element of the array completes the future of its prompt. Workloads made
+ * of thousands of tiny prompts, such as tagging, then pay the request overhead and the scheduling
+ * of the server once per batch instead of once per prompt.
+ *
+ * <p> A batch is sent as soon as its prompts reach the item or token limit, or once the window of
+ * its first prompt passes. A packed prompt over the prompt token limit of the client, or a packed
+ * response which is cut off or cannot be read, is split in halves which are sent again, and prompts
+ * whose result is missing or invalid are sent on their own. A batch whose request fails, such as
+ * with a connection error, fails the futures of all its prompts without being retried.
+ *
+ * <p> Example usage:
+ * <pre>
+ * try (PromptPacker&lt;Tags&gt; packer = new PromptPacker.Builder&lt;&gt;(ollama, Tags.class)
+ *                 .model("llama3.2")
+ *                 .window(Duration.ofMillis(20))
+ *                 .maxItems(32)
+ *                 .build()) {
+ *     CompletableFuture&lt;Tags&gt; tags = packer.submit("Tag this review: " + review);
+ * }
+ * </pre>
+ *
+ * @param <T> The result type of every prompt.
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class PromptPacker<T> implements AutoCloseable {
+
+    private static final Printer log = new Printer(PromptPacker.class);
+
+    /**
+     * A submitted prompt and the future of its result.
+     *
+     * @param prompt The prompt.
+     * @param tokens The estimated tokens of the prompt.
+     * @param result The future of the result.
+     */
+    private record Item<T>(String prompt, int tokens, CompletableFuture<T> result) {}
+
+    private final Ollama ollama;
+    private final Class<T> responseType;
+    private final String[] requiredFields;
+    private final String model;
+    private final Duration window;
+    private final int maxItems;
+    private final int maxTokens;
+    private final PromptTemplate prompt;
+    private final ObjectNode itemSchema;
+    private final ObjectReader reader;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService executor;
+
+    private List<Item<T>> pending = new ArrayList<>();
+    private int pendingTokens;
+    private ScheduledFuture<?> flush;
+    private boolean closed;
+
+    /**
+     * Constructs a new PromptPacker with the provided configuration.
+     *
+     * @param builder The builder object containing the configuration details.
+     */
+    private PromptPacker(Builder<T> builder) {
+        this.ollama = builder.ollama;
+        this.responseType = builder.responseType;
+        this.requiredFields = builder.requiredFields;
+        this.model = builder.model == null ? builder.ollama.getDefaultModel() : builder.model;
+        this.window = builder.window;
+        this.maxItems = builder.maxItems;
+        this.maxTokens = builder.maxTokens;
+        this.prompt = builder.prompt;
+        this.reader = JsonReaders.readerFor(responseType);
+
+        itemSchema = mapper.createObjectNode().put("type", "object");
+        ObjectNode properties = itemSchema.putObject("properties");
+        properties.putObject("id").put("type", "integer");
+        properties.set("result", getCachedSchema(responseType, requiredFields));
+        itemSchema.putArray("required").add("id").add("result");
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> thread(runnable, "ollama-packer-timer"));
+        this.executor = Executors.newFixedThreadPool(builder.parallelism, runnable -> thread(runnable, "ollama-packer"));
+    }
+
+    private static Thread thread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Submits a prompt to be sent in the next batch.
+     *
+     * @param prompt The prompt.
+     * @return A future completing with the result of the prompt, or exceptionally if the request of
+     *         its batch fails, or it fails on its own.
+     * @throws IllegalStateException If the packer is closed.
+     */
+    public CompletableFuture<T> submit(String prompt) {
+        // The prompts share the template overhead of the packed prompt, so only their text is counted.
+        int tokens = (int) Math.ceil(TokenEstimator.units(prompt) * ollama.getTokenEstimator().ratio(model));
+        Item<T> item = new Item<>(prompt, tokens, new CompletableFuture<>());
+        List<Item<T>> full = null;
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("Prompt packer is closed.");
+            if (!pending.isEmpty() && pendingTokens + item.tokens() > maxTokens) full = take();
+            pending.add(item);
+            pendingTokens += item.tokens();
+            if (pending.size() >= maxItems) {
+                if (full != null) send(full);
+                full = take();
+            }
+            else if (pending.size() == 1) flush = timer.schedule(this::flush, window.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (full != null) send(full);
+        return item.result();
+    }
+
+    /**
+     * Sends the pending prompts right away, without waiting for their window.
+     */
+    public void flush() {
+        List<Item<T>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            batch = take();
+        }
+        send(batch);
+    }
+
+    /**
+     * Takes the pending prompts. Must be called while holding the monitor.
+     *
+     * @return The pending prompts.
+     */
+    private List<Item<T>> take() {
+        List<Item<T>> batch = pending;
+        pending = new ArrayList<>();
+        pendingTokens = 0;
+        if (flush != null) flush.cancel(false);
+        flush = null;
+        return batch;
+    }
+
+    private void send(List<Item<T>> batch) {
+        executor.execute(() -> run(batch));
+    }
+
+    /**
+     * Sends a batch, splitting it if it is too large to pack or its packed response cannot be used,
+     * and sending the prompts whose result is missing on their own.
+     *
+     * @param batch The batch.
+     */
+    void run(List<Item<T>> batch) {
+        if (batch.size() == 1) {
+            single(batch.get(0));
+            return;
+        }
+        Map<Integer, JsonNode> results;
+        try {
+            results = packed(batch);
+        }
+        catch (Unpackable e) {
+            log.warning("Splitting a packed batch of " + batch.size() + " prompts: " + e.getMessage());
+            int half = batch.size() / 2;
+            run(batch.subList(0, half));
+            run(batch.subList(half, batch.size()));
+            return;
+        }
+        catch (RuntimeException e) {
+            log.warning("Packed batch of " + batch.size() + " prompts failed: " + e.getMessage());
+            for (Item<T> item : batch) item.result().completeExceptionally(e);
+            return;
+        }
+        int retried = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Item<T> item = batch.get(i);
+            JsonNode result = results.get(i);
+            try {
+                if (result != null) {
+                    item.result().complete(reader.readValue(result));
+                    continue;
+                }
+            }
+            catch (IOException ignored) {}
+            retried++;
+            single(item);
+        }
+        if (retried > 0) log.warning("Sent " + retried + " of " + batch.size() + " packed prompts on their own.");
+    }
+
+    /**
+     * Sends the prompts of a batch in a single request.
+     *
+     * @param batch The batch.
+     * @return The results by prompt index.
+     * @throws Unpackable If the packed prompt is over the prompt token limit, or its response is cut
+     *                    off or cannot be read.
+     * @throws RuntimeException If the request fails.
+     */
+    private Map<Integer, JsonNode> packed(List<Item<T>> batch) {
+        StringBuilder tasks = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) tasks.append("Task ").append(i).append(":\n").append(batch.get(i).prompt()).append("\n\n");
+
+        ObjectNode format = mapper.createObjectNode().put("type", "object");
+        format.putObject("properties").putObject("results")
+                .put("type", "array")
+                .put("minItems", batch.size())
+                .put("maxItems", batch.size())
+                .set("items", itemSchema);
+        format.putArray("required").add("results");
+
+        InferenceModel request = new InferenceModel.Builder()
+                .model(model)
+                .prompt(prompt, Map.of("count", batch.size(), "tasks", tasks.toString().strip()))
+                .format(format)
+                .build();
+        // Checked here, since the client would trim the packed prompt and lose its first tasks.
+        int tokens = ollama.getTokenEstimator().estimate(model, request.getPrompt());
+        if (ollama.getMaxPromptTokens() > 0 && tokens > ollama.getMaxPromptTokens())
+            throw new Unpackable("Packed prompt of ~" + tokens + " tokens exceeds the limit of " + ollama.getMaxPromptTokens() + " tokens.");
+        InferenceResponse response = ollama.inference(request);
+        if ("length".equals(response.getDoneReason())) throw new Unpackable("Packed response was cut off.");
+
+        Map<Integer, JsonNode> results = new HashMap<>();
+        try {
+            for (JsonNode element : JsonReaders.read(response.getResponse(), JsonNode.class).path("results")) {
+                int id = element.path("id").asInt(-1);
+                if (id >= 0 && id < batch.size() && element.has("result")) results.putIfAbsent(id, element.get("result"));
+            }
+        }
+        catch (IOException e) {
+            throw new Unpackable("Packed response is not valid JSON.");
+        }
+        return results;
+    }
+
+    /**
+     * Signals that a batch cannot be sent or answered as a whole, and is to be split.
+     */
+    private static class Unpackable extends RuntimeException {
+        Unpackable(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Sends a prompt on its own.
+     *
+     * @param item The prompt.
+     */
+    private void single(Item<T> item) {
+        try {
+            item.result().complete(ollama.inference(new InferenceModel.Builder().model(model).prompt(item.prompt()).build(),
+                    responseType, requiredFields));
+        }
+        catch (RuntimeException e) {
+            item.result().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Sends the pending prompts and stops accepting new ones. Batches already sent complete in the background.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        executor.shutdown();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Builder class for constructing PromptPacker objects.
+     *
+     * @param <T> The result type of every prompt.
+     */
+    public static class Builder<T> {
+        private final Ollama ollama;
+        private final Class<T> responseType;
+        private final String[] requiredFields;
+        private String model;
+        private Duration window = Duration.ofMillis(20);
+        private int maxItems = 32;
+        private int maxTokens = 2000;
+        private int parallelism = 2;
+        private PromptTemplate prompt = PromptTemplate.compile(
+                "Complete each of the following {{count}} tasks independently. Answer with one result per task, "
+                        + "in task order, each with the number of its task as its id.\n\n{{tasks}}");
+
+        /**
+         * Constructs a builder for a client and a result type.
+         *
+         * @param ollama         The client sending the packed prompts.
+         * @param responseType   The class type of the result of every prompt.
+         * @param requiredFields Optional required fields for JSON schema generation.
+         */
+        public Builder(Ollama ollama, Class<T> responseType, String... requiredFields) {
+            this.ollama = ollama;
+            this.responseType = responseType;
+            this.requiredFields = requiredFields;
+        }
+
+        /**
+         * Sets the model answering the prompts.
+         *
+         * @param model The name of the model, the default model of the client if not set.
+         * @return The Builder object for method chaining.
+         */
+        public Builder<T> model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * Sets how long the first prompt of a batch waits for others.
+         *
+         * @param window The window, 20 milliseconds by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder<T> window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of prompts of a batch.
+         *
+         * @param maxItems The item limit, 32 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder<T> maxItems(int maxItems) {
+            this.maxItems = maxItems;
+            return this;
+        }
+
+        /**
+         * Sets the maximum estimated tokens of the prompts of a batch. A prompt above it is sent alone.
+         *
+         * @param maxTokens The token limit, 2000 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder<T> maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of batches in flight at the same time.
+         *
+         * @param parallelism The parallelism, 2 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder<T> parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the packed prompt.
+         *
+         * @param prompt The template of the prompt, with the number of prompts as {@code {{count}}}
+         *               and the numbered prompts as {@code {{tasks}}}.
+         * @return The Builder object for method chaining.
+         */
+        public Builder<T> prompt(String prompt) {
+            this.prompt = PromptTemplate.compile(prompt);
+            return this;
+        }
+
+        /**
+         * Builds the PromptPacker.
+         *
+         * @return The constructed PromptPacker.
+         * @throws IllegalArgumentException If a setting is out of range or the prompt has no
+         *                                  {@code {{tasks}}} variable.
+         */
+        public PromptPacker<T> build() {
+            if (maxItems <= 0 || maxTokens <= 0 || parallelism <= 0 || window.isNegative())
+                throw new IllegalArgumentException("Limits and parallelism must be positive.");
+            if (!prompt.getVariables().contains("tasks"))
+                throw new IllegalArgumentException("Prompt must contain a {{tasks}} variable.");
+            return new PromptPacker<>(this);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ollama.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests per second and the tokens per minute sent with a credential, so callers
+ * queue on the client instead of exceeding the quota of a gateway. Limiters are shared by every
+ * {@code Ollama} instance using the same credential.
+ *
+ * <p> Tokens are reserved before a request is sent, using the estimated prompt size, and settled
+ * with the token counts of the response once it arrives. A request whose reservation overdraws a
+ * limit waits until the limit has recovered.
+ *
+ * <p> Limiters of per-request credentials are dropped from the registry once they have been idle
+ * for {@link #EXPIRY} and have fully recovered, as a new limiter would then behave the same. This
+ * keeps the registry bounded by the credentials in recent use when a client serves many tenants.
+ */
+public class RateLimiter {
+
+    /** Time after its last request before the limiter of a per-request credential may be dropped. */
+    static final long EXPIRY = TimeUnit.MINUTES.toNanos(10);
+
+    /** Limiters per credential. */
+    private static final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /** Time of the next sweep of expired limiters. */
+    private static final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + EXPIRY);
+
+    private final TokenBucket requests;
+    private final TokenBucket tokens;
+    private final double requestsPerSecond;
+    private final double tokensPerMinute;
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong waitedNanos = new AtomicLong();
+    private volatile long lastUsed = System.nanoTime();
+    private volatile boolean pinned;
+
+    /**
+     * Constructs a limiter.
+     *
+     * @param requestsPerSecond The maximum number of requests per second, or 0 for no limit.
+     * @param tokensPerMinute   The maximum number of prompt and output tokens per minute, or 0 for no limit.
+     */
+    public RateLimiter(double requestsPerSecond, double tokensPerMinute) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.tokensPerMinute = tokensPerMinute;
+        this.requests = requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond, TimeUnit.SECONDS.toNanos(1)) : null;
+        this.tokens = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute, TimeUnit.MINUTES.toNanos(1)) : null;
+    }
+
+    /**
+     * Returns the limiter shared by every user of a credential, creating it with the given limits
+     * if it does not exist yet. Later calls with the same credential get the existing limiter, which
+     * stays registered for the lifetime of the process, as clients hold on to it.
+     *
+     * @param credential        The credential, such as an API key or an authorization header.
+     * @param requestsPerSecond The maximum number of requests per second, or 0 for no limit.
+     * @param tokensPerMinute   The maximum number of tokens per minute, or 0 for no limit.
+     * @return The shared limiter, or null if neither limit is set.
+     */
+    public static RateLimiter forKey(String credential, double requestsPerSecond, double tokensPerMinute) {
+        RateLimiter limiter = lookup(credential, requestsPerSecond, tokensPerMinute);
+        if (limiter != null) limiter.pinned = true;
+        return limiter;
+    }
+
+    /**
+     * Returns the limiter shared by every user of a credential, like {@link #forKey(String, double, double)},
+     * for a single request. The limiter is dropped from the registry once it expired, unless it is
+     * also used through {@link #forKey(String, double, double)}, so look it up for every request
+     * instead of holding on to it.
+     *
+     * @param credential        The credential of the request, such as its authorization header.
+     * @param requestsPerSecond The maximum number of requests per second, or 0 for no limit.
+     * @param tokensPerMinute   The maximum number of tokens per minute, or 0 for no limit.
+     * @return The shared limiter, or null if neither limit is set.
+     */
+    public static RateLimiter forRequest(String credential, double requestsPerSecond, double tokensPerMinute) {
+        return lookup(credential, requestsPerSecond, tokensPerMinute);
+    }
+
+    private static RateLimiter lookup(String credential, double requestsPerSecond, double tokensPerMinute) {
+        if (requestsPerSecond <= 0 && tokensPerMinute <= 0) return null;
+        long now = System.nanoTime();
+        long sweep = nextSweep.get();
+        if (now - sweep >= 0 && nextSweep.compareAndSet(sweep, now + EXPIRY)) sweep(now);
+        // Marked as used inside the map operation, so a concurrent sweep cannot drop it before it is used
+        return limiters.compute(credential, (key, limiter) -> {
+            if (limiter == null) limiter = new RateLimiter(requestsPerSecond, tokensPerMinute);
+            limiter.lastUsed = now;
+            return limiter;
+        });
+    }
+
+    /**
+     * Drops the expired limiters from the registry.
+     *
+     * @param now The current time in nanoseconds.
+     */
+    static void sweep(long now) {
+        for (String credential : limiters.keySet())
+            limiters.computeIfPresent(credential, (key, limiter) -> limiter.isExpired(now) ? null : limiter);
+    }
+
+    /**
+     * Returns the number of registered limiters.
+     *
+     * @return The number of credentials with a shared limiter.
+     */
+    public static int getRegisteredCount() {
+        return limiters.size();
+    }
+
+    /**
+     * Checks whether the limiter can be replaced by a new one without changing the limits: it is
+     * not held by a client, was not used for {@link #EXPIRY}, and has fully recovered.
+     */
+    private boolean isExpired(long now) {
+        return !pinned
+                && now - lastUsed >= EXPIRY
+                && (requests == null || requests.isFull())
+                && (tokens == null || tokens.isFull());
+    }
+
+    /**
+     * Waits until a request may be sent, reserving its estimated tokens.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request.
+     * @throws RuntimeException If the thread is interrupted while waiting.
+     */
+    public void acquire(int estimatedTokens) {
+        lastUsed = System.nanoTime();
+        long wait = 0;
+        if (requests != null) wait = requests.reserve(1);
+        if (tokens != null) wait = Math.max(wait, tokens.reserve(estimatedTokens));
+        if (wait <= 0) return;
+        throttled.incrementAndGet();
+        waitedNanos.addAndGet(wait);
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Settles the reservation of a request with the tokens it actually used. Requests which used
+     * more than reserved delay the following ones, while unused tokens are given back.
+     *
+     * @param estimatedTokens The number of tokens reserved by {@link #acquire(int)}.
+     * @param usedTokens      The number of prompt and output tokens reported by the server, or the
+     *                        estimate if the server did not report them. Only settle reservations
+     *                        taken by a completed {@link #acquire(int)}.
+     */
+    public void settle(int estimatedTokens, int usedTokens) {
+        lastUsed = System.nanoTime();
+        if (tokens != null) tokens.adjust(usedTokens - estimatedTokens);
+    }
+
+    /**
+     * Returns the maximum number of requests per second.
+     *
+     * @return The request limit, 0 if requests are not limited.
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * Returns the maximum number of tokens per minute.
+     *
+     * @return The token limit, 0 if tokens are not limited.
+     */
+    public double getTokensPerMinute() {
+        return tokensPerMinute;
+    }
+
+    /**
+     * Returns the number of requests which had to wait.
+     *
+     * @return The number of throttled requests.
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * Returns the total time requests waited.
+     *
+     * @return The waiting time in nanoseconds.
+     */
+    public long getWaitedNanos() {
+        return waitedNanos.get();
+    }
+}
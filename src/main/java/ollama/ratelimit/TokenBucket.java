@@ -0,0 +1,65 @@
+package ollama.ratelimit;
+
+/**
+ * A token bucket which hands out reservations rather than refusals. A reservation is taken from the
+ * bucket immediately, even if it overdraws it, and the caller waits until the debt is refilled.
+ * Every reservation therefore pushes back the ones after it, so waiting callers are served in
+ * order and at a steady rate.
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double available;
+    private long refilled = System.nanoTime();
+
+    /**
+     * Constructs a full bucket.
+     *
+     * @param capacity The number of tokens the bucket holds, refilled over one period.
+     * @param periodNanos The period in nanoseconds.
+     */
+    TokenBucket(double capacity, long periodNanos) {
+        this.capacity = capacity;
+        this.refillPerNano = capacity / periodNanos;
+        this.available = capacity;
+    }
+
+    /**
+     * Takes tokens out of the bucket.
+     *
+     * @param amount The number of tokens.
+     * @return Nanoseconds to wait until the reservation is covered, 0 if it is covered already.
+     */
+    synchronized long reserve(double amount) {
+        refill();
+        available -= amount;
+        return available >= 0 ? 0 : (long) Math.ceil(-available / refillPerNano);
+    }
+
+    /**
+     * Takes tokens out of the bucket, or returns them if the amount is negative, without waiting.
+     *
+     * @param amount The number of tokens.
+     */
+    synchronized void adjust(double amount) {
+        refill();
+        available = Math.min(capacity, available - amount);
+    }
+
+    /**
+     * Checks whether the bucket has refilled completely, so a new bucket would behave the same.
+     *
+     * @return True if no tokens are missing.
+     */
+    synchronized boolean isFull() {
+        refill();
+        return available >= capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - refilled) * refillPerNano);
+        refilled = now;
+    }
+}
@@ -0,0 +1,117 @@
+package ollama.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * A recorded request and its response, stored as one line of a recording.
+ *
+ * @param method   The name of the {@code OllamaServices} method that was called.
+ * @param endpoint The endpoint of the request.
+ * @param request  The request body.
+ * @param status   The HTTP status code of the response.
+ * @param latency  Nanoseconds from sending the request until the response arrived.
+ * @param body     The response body of a buffered call as it was received, or null.
+ * @param error    The error body of an unsuccessful response, or null.
+ * @param chunks   The lines of a streamed response body, or null if the call was not streamed.
+ */
+public record Exchange(
+        String method,
+        String endpoint,
+        JsonNode request,
+        int status,
+        long latency,
+        String body,
+        String error,
+        List<Chunk> chunks
+) {
+
+    /**
+     * A line of a streamed response body.
+     *
+     * @param delay Nanoseconds between the previous line, or the response headers, and this line.
+     * @param line  The line, without its line terminator.
+     */
+    public record Chunk(long delay, String line) {}
+
+    /**
+     * Checks if the exchange was streamed.
+     *
+     * @return True if the response body was recorded line by line.
+     */
+    public boolean isStreamed() {
+        return chunks != null;
+    }
+
+    /**
+     * Returns the key identifying requests with the same method and body.
+     *
+     * @return The key.
+     */
+    String key() {
+        return method + " " + request;
+    }
+
+    /**
+     * Converts the exchange into a JSON object.
+     *
+     * @return The JSON object.
+     */
+    ObjectNode toJson() {
+        ObjectNode json = mapper.createObjectNode()
+                .put("method", method)
+                .put("endpoint", endpoint)
+                .put("status", status)
+                .put("latency", latency);
+        json.set("request", request);
+        if (body != null) json.put("body", body);
+        if (error != null) json.put("error", error);
+        if (chunks != null) {
+            ArrayNode lines = json.putArray("chunks");
+            for (Chunk chunk : chunks) lines.addArray().add(chunk.delay()).add(chunk.line());
+        }
+        return json;
+    }
+
+    /**
+     * Reads an exchange from a JSON object.
+     *
+     * @param json The JSON object.
+     * @return The exchange.
+     */
+    static Exchange fromJson(JsonNode json) {
+        List<Chunk> chunks = null;
+        if (json.hasNonNull("chunks")) {
+            chunks = new ArrayList<>();
+            for (JsonNode chunk : json.get("chunks")) chunks.add(new Chunk(chunk.get(0).asLong(), chunk.get(1).asText()));
+        }
+        return new Exchange(
+                json.get("method").asText(),
+                json.get("endpoint").asText(),
+                json.get("request"),
+                json.get("status").asInt(),
+                json.get("latency").asLong(),
+                body(json.get("body")),
+                json.hasNonNull("error") ? json.get("error").asText() : null,
+                chunks
+        );
+    }
+
+    /**
+     * Reads a recorded response body. Bodies are recorded as text, older recordings hold them as
+     * JSON, which is serialized again.
+     *
+     * @param body The recorded body.
+     * @return The body, or null if none was recorded.
+     */
+    private static String body(JsonNode body) {
+        if (body == null || body.isNull()) return null;
+        return body.isTextual() ? body.textValue() : body.toString();
+    }
+}
@@ -0,0 +1,187 @@
+package ollama.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A call which records its exchange once the response arrives, or, for streamed calls, once the
+ * response body is exhausted or closed. Buffered calls receive the raw response body, which is
+ * recorded as it is and then mapped to the response type of the service method.
+ *
+ * @param <T> The response type.
+ */
+class RecordingCall<T> implements Call<T> {
+
+    private final TrafficRecorder recorder;
+    private final Call<ResponseBody> delegate;
+    private final Method method;
+    private final JsonNode request;
+    private final Class<?> responseType;
+
+    /**
+     * Constructs a recording call.
+     *
+     * @param recorder     The recorder.
+     * @param delegate     The call receiving the raw response body.
+     * @param method       The service method that was called.
+     * @param request      The request body.
+     * @param responseType The type the response body is mapped to, or null if the call is streamed.
+     */
+    RecordingCall(TrafficRecorder recorder, Call<ResponseBody> delegate, Method method, JsonNode request, Class<?> responseType) {
+        this.recorder = recorder;
+        this.delegate = delegate;
+        this.method = method;
+        this.request = request;
+        this.responseType = responseType;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        long start = System.nanoTime();
+        return record(delegate.execute(), start);
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        long start = System.nanoTime();
+        delegate.enqueue(new Callback<>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                Response<T> recorded;
+                try {
+                    recorded = record(response, start);
+                }
+                catch (IOException e) {
+                    callback.onFailure(RecordingCall.this, e);
+                    return;
+                }
+                callback.onResponse(RecordingCall.this, recorded);
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable failure) {
+                callback.onFailure(RecordingCall.this, failure);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Response<T> record(Response<ResponseBody> response, long start) throws IOException {
+        long latency = System.nanoTime() - start;
+        String endpoint = TrafficRecorder.endpoint(method);
+        if (!response.isSuccessful()) {
+            ResponseBody errorBody = response.errorBody();
+            String error = errorBody == null ? "" : errorBody.string();
+            recorder.write(new Exchange(method.getName(), endpoint, request, response.code(), latency, null, error, null));
+            ResponseBody copy = ResponseBody.create(error, errorBody == null ? null : errorBody.contentType());
+            return Response.error(copy, response.raw());
+        }
+        if (responseType == null && response.body() != null) {
+            ResponseBody body = response.body();
+            RecordingSource source = new RecordingSource(body, endpoint, response.code(), latency);
+            ResponseBody recorded = ResponseBody.create(Okio.buffer(source), body.contentType(), body.contentLength());
+            return (Response<T>) Response.success(recorded, response.raw());
+        }
+        String body;
+        try (ResponseBody raw = response.body()) {
+            body = raw == null ? null : raw.string();
+        }
+        recorder.write(new Exchange(method.getName(), endpoint, request, response.code(), latency, body, null, null));
+        return Response.success(TrafficRecorder.read(body, responseType), response.raw());
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return delegate.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        delegate.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return delegate.isCanceled();
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new RecordingCall<>(recorder, delegate.clone(), method, request, responseType);
+    }
+
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+
+    @Override
+    public Timeout timeout() {
+        return delegate.timeout();
+    }
+
+    /**
+     * Splits a streamed response body into lines as it is read, timing every line.
+     */
+    private class RecordingSource extends ForwardingSource {
+
+        private final Buffer pending = new Buffer();
+        private final List<Exchange.Chunk> chunks = new ArrayList<>();
+        private final String endpoint;
+        private final int status;
+        private final long latency;
+        private long last = System.nanoTime();
+        private boolean recorded;
+
+        RecordingSource(ResponseBody body, String endpoint, int status, long latency) {
+            super(body.source());
+            this.endpoint = endpoint;
+            this.status = status;
+            this.latency = latency;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read == -1) {
+                record();
+                return -1;
+            }
+            sink.copyTo(pending, sink.size() - read, read);
+            for (long newline; (newline = pending.indexOf((byte) '\n')) != -1;) {
+                String line = pending.readUtf8(newline);
+                pending.skip(1);
+                long now = System.nanoTime();
+                chunks.add(new Exchange.Chunk(now - last, line.endsWith("\r") ? line.substring(0, line.length() - 1) : line));
+                last = now;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            record();
+        }
+
+        private void record() {
+            if (recorded) return;
+            recorded = true;
+            if (pending.size() > 0) chunks.add(new Exchange.Chunk(System.nanoTime() - last, pending.readUtf8()));
+            recorder.write(new Exchange(method.getName(), endpoint, request, status, latency, null, null, chunks));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package ollama.replay;
+
+import com.fasterxml.jackson.databind.node.NullNode;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ollama.utilities.JsonBody.JSON;
+
+/**
+ * A call answered from a recorded exchange. Waits can be cut short by cancelling the call, and
+ * the wait for the response is bounded by the timeout of the call.
+ *
+ * @param <T> The response type.
+ */
+class ReplayCall<T> implements Call<T> {
+
+    private final Exchange exchange;
+    private final Class<?> responseType;
+    private final double speed;
+    private final AtomicBoolean executed = new AtomicBoolean();
+    private final Timeout timeout = new Timeout();
+    private final Object lock = new Object();
+    private volatile boolean canceled;
+
+    ReplayCall(Exchange exchange, Class<?> responseType, double speed) {
+        this.exchange = exchange;
+        this.responseType = responseType;
+        this.speed = speed;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Response<T> execute() throws IOException {
+        if (!executed.compareAndSet(false, true)) throw new IllegalStateException("Already executed.");
+        long latency = scale(exchange.latency());
+        if (timeout.timeoutNanos() > 0 && timeout.timeoutNanos() < latency) {
+            pause(timeout.timeoutNanos());
+            throw new InterruptedIOException("timeout");
+        }
+        pause(latency);
+
+        if (exchange.status() < 200 || exchange.status() >= 300)
+            return Response.error(exchange.status(), ResponseBody.create(exchange.error() == null ? "" : exchange.error(), JSON));
+        if (exchange.isStreamed())
+            return (Response<T>) Response.success(ResponseBody.create(Okio.buffer(new ReplaySource()), JSON, -1));
+        if (exchange.body() == null) return Response.success(null);
+        return Response.success(TrafficRecorder.read(exchange.body(), responseType));
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        Thread thread = new Thread(() -> {
+            Response<T> response;
+            try {
+                response = execute();
+            }
+            catch (Throwable failure) {
+                callback.onFailure(this, failure);
+                return;
+            }
+            callback.onResponse(this, response);
+        }, "ollama-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private long scale(long nanos) {
+        return (long) (nanos / speed);
+    }
+
+    /**
+     * Waits for a duration, unless the call is cancelled.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @throws IOException If the call is cancelled, or the thread is interrupted.
+     */
+    private void pause(long nanos) throws IOException {
+        long end = System.nanoTime() + nanos;
+        synchronized (lock) {
+            try {
+                for (long remaining; !canceled && (remaining = end - System.nanoTime()) > 0;)
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Replay interrupted.");
+            }
+        }
+        if (canceled) throw new IOException("Canceled");
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return executed.get();
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new ReplayCall<>(exchange, responseType, speed);
+    }
+
+    @Override
+    public Request request() {
+        boolean bodyless = exchange.request() == null || exchange.request() instanceof NullNode;
+        return new Request.Builder()
+                .url("http://replay/" + exchange.endpoint())
+                .method(bodyless ? "GET" : "POST", bodyless ? null : RequestBody.create(exchange.request().toString(), JSON))
+                .build();
+    }
+
+    @Override
+    public Timeout timeout() {
+        return timeout;
+    }
+
+    /**
+     * Emits the recorded lines of a streamed response, each after its recorded delay.
+     */
+    private class ReplaySource implements Source {
+
+        private final Buffer buffer = new Buffer();
+        private int next;
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            if (buffer.size() == 0) {
+                if (next == exchange.chunks().size()) return -1;
+                Exchange.Chunk chunk = exchange.chunks().get(next++);
+                pause(scale(chunk.delay()));
+                buffer.writeUtf8(chunk.line()).writeByte('\n');
+            }
+            return buffer.read(sink, Math.min(byteCount, buffer.size()));
+        }
+
+        @Override
+        public Timeout timeout() {
+            return timeout;
+        }
+
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+}
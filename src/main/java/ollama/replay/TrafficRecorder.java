@@ -0,0 +1,203 @@
+package ollama.replay;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import ollama.OllamaServices;
+import ollama.utilities.JsonBody;
+import ollama.utilities.JsonReaders;
+import retrofit2.Call;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+import retrofit2.http.Streaming;
+import utils.Printer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Records the traffic of an {@code OllamaServices} instance into a newline delimited JSON file,
+ * one {@link Exchange} per line. Buffered responses are fetched as raw bodies and recorded as they
+ * were received, before they are mapped, so recorded payloads keep their original size. Streamed
+ * responses are recorded line by line, along with the delay before every line, so they can be
+ * replayed with their original pacing by a {@link TrafficReplayer}.
+ *
+ * <p> Example usage:
+ * <pre>
+ * try (TrafficRecorder recorder = new TrafficRecorder(ollama.getOllamaServices(), Path.of("traffic.ndjson"))) {
+ *     ollama.setOllamaServices(recorder.services());
+ *     ...
+ * }
+ * </pre>
+ */
+public class TrafficRecorder implements Closeable {
+
+    private static final Printer log = new Printer(TrafficRecorder.class);
+
+    private final OllamaServices delegate;
+    private final BufferedWriter writer;
+
+    /**
+     * Constructs a recorder appending to a file.
+     *
+     * @param delegate The services performing the actual requests.
+     * @param file     The recording file, created if it does not exist.
+     * @throws IOException If the file cannot be opened.
+     */
+    public TrafficRecorder(OllamaServices delegate, Path file) throws IOException {
+        this.delegate = delegate;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Returns services which perform requests through the delegate and record them.
+     *
+     * @return The recording services.
+     */
+    @SuppressWarnings("unchecked")
+    public OllamaServices services() {
+        return (OllamaServices) Proxy.newProxyInstance(
+                OllamaServices.class.getClassLoader(),
+                new Class<?>[]{OllamaServices.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+                    boolean streamed = method.isAnnotationPresent(Streaming.class);
+                    // Raw calls made directly are passed through, as only their caller knows the endpoint
+                    if (!streamed && responseType(method) == ResponseBody.class) return invoke(method, args);
+                    if (streamed)
+                        return new RecordingCall<>(this, (Call<ResponseBody>) invoke(method, args), method, request(args), null);
+                    return new RecordingCall<>(this, raw(method, args), method, request(args), responseType(method));
+                }
+        );
+    }
+
+    private Object invoke(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Creates the call of a buffered service method which keeps the response body as it was
+     * received, sent to the same endpoint with the same headers and body.
+     *
+     * @param method The service method.
+     * @param args   The arguments of the call.
+     * @return The raw call.
+     */
+    @SuppressWarnings("unchecked")
+    private Call<ResponseBody> raw(Method method, Object[] args) {
+        Map<String, String> headers = Map.of();
+        Object body = null;
+        if (args != null) for (Object arg : args) {
+            if (arg instanceof Map<?, ?> map) headers = (Map<String, String>) map;
+            else body = arg;
+        }
+        if (method.isAnnotationPresent(GET.class)) return delegate.get(endpoint(method), headers);
+        return delegate.post(endpoint(method), headers, body instanceof RequestBody requestBody ? requestBody : JsonBody.of(body, 0));
+    }
+
+    /**
+     * Writes an exchange to the recording. Failures are logged, so recording never fails a request.
+     *
+     * @param exchange The exchange.
+     */
+    synchronized void write(Exchange exchange) {
+        try {
+            writer.write(exchange.toJson().toString());
+            writer.newLine();
+            writer.flush();
+        }
+        catch (IOException e) {
+            log.warning("Could not record exchange: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the recording file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Returns the endpoint of a service method.
+     *
+     * @param method The service method.
+     * @return The relative path of the endpoint.
+     */
+    static String endpoint(Method method) {
+        POST post = method.getAnnotation(POST.class);
+        if (post != null) return post.value();
+        GET get = method.getAnnotation(GET.class);
+        return get != null ? get.value() : method.getName();
+    }
+
+    /**
+     * Returns the type a service method maps its response to.
+     *
+     * @param method The service method.
+     * @return The response type.
+     */
+    static Class<?> responseType(Method method) {
+        ParameterizedType call = (ParameterizedType) method.getGenericReturnType();
+        return call.getActualTypeArguments()[0] instanceof Class<?> type ? type : Object.class;
+    }
+
+    /**
+     * Maps a recorded response body to the response type of a service method. Unknown fields are
+     * ignored, as the body holds everything the server sent.
+     *
+     * @param body The response body.
+     * @param type The response type.
+     * @param <T>  The response type.
+     * @return The response, or null if the body is empty.
+     * @throws IOException If the body does not match the type.
+     */
+    static <T> T read(String body, Class<?> type) throws IOException {
+        if (body == null || body.isEmpty()) return null;
+        return JsonReaders.readerFor(type).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).readValue(body);
+    }
+
+    /**
+     * Converts the body argument of a service call, its last argument, into JSON. Headers are not
+     * recorded, so credentials never end up in a recording.
+     *
+     * @param args The arguments of the call.
+     * @return The request body, or a null node if the call has no body.
+     * @throws IOException If a serialized body cannot be read.
+     */
+    static JsonNode request(Object[] args) throws IOException {
+        if (args == null || args.length == 0 || args[args.length - 1] == null) return NullNode.getInstance();
+        Object body = args[args.length - 1];
+        if (body instanceof Map) return NullNode.getInstance();
+        if (body instanceof JsonBody json) return mapper.readTree(json.utf8());
+        if (body instanceof RequestBody requestBody) {
+            Buffer buffer = new Buffer();
+            requestBody.writeTo(buffer);
+            return mapper.readTree(buffer.readUtf8());
+        }
+        return mapper.valueToTree(body);
+    }
+}
@@ -0,0 +1,119 @@
+package ollama.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import ollama.OllamaServices;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Replays a recording made by a {@link TrafficRecorder} without a server. Every call is answered
+ * with a recorded exchange of the same method, preferring exchanges with an identical request body,
+ * after the recorded latency. Streamed responses are replayed line by line with the recorded delays.
+ * Recorded exchanges are reused in a round robin once they run out, so a short recording can drive
+ * a long benchmark.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ollama.setOllamaServices(new TrafficReplayer(Path.of("traffic.ndjson"), 10).services());
+ * </pre>
+ */
+public class TrafficReplayer {
+
+    private final List<Exchange> exchanges = new ArrayList<>();
+    private final Map<String, List<Exchange>> byRequest = new HashMap<>();
+    private final Map<String, List<Exchange>> byMethod = new HashMap<>();
+    private final Map<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+    private final double speed;
+
+    /**
+     * Constructs a replayer with the original timing of a recording.
+     *
+     * @param file The recording file.
+     * @throws IOException If the recording cannot be read.
+     */
+    public TrafficReplayer(Path file) throws IOException {
+        this(file, 1);
+    }
+
+    /**
+     * Constructs a replayer with accelerated timing.
+     *
+     * @param file  The recording file.
+     * @param speed The speed up of latencies and delays, such as 2 for twice as fast, or
+     *              {@code Double.POSITIVE_INFINITY} to replay without any delay.
+     * @throws IOException If the recording cannot be read.
+     * @throws IllegalArgumentException If the speed is not positive.
+     */
+    public TrafficReplayer(Path file, double speed) throws IOException {
+        if (!(speed > 0)) throw new IllegalArgumentException("Replay speed must be positive.");
+        this.speed = speed;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null;) {
+                if (line.isBlank()) continue;
+                Exchange exchange = Exchange.fromJson(mapper.readTree(line));
+                exchanges.add(exchange);
+                byRequest.computeIfAbsent(exchange.key(), key -> new ArrayList<>()).add(exchange);
+                byMethod.computeIfAbsent(exchange.method(), key -> new ArrayList<>()).add(exchange);
+            }
+        }
+    }
+
+    /**
+     * Returns services answering every call from the recording.
+     *
+     * @return The replaying services.
+     */
+    public OllamaServices services() {
+        return (OllamaServices) Proxy.newProxyInstance(
+                OllamaServices.class.getClassLoader(),
+                new Class<?>[]{OllamaServices.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+                    Exchange exchange = next(method, TrafficRecorder.request(args));
+                    return new ReplayCall<>(exchange, TrafficRecorder.responseType(method), speed);
+                }
+        );
+    }
+
+    /**
+     * Returns the recorded exchanges, in recording order.
+     *
+     * @return The exchanges.
+     */
+    public List<Exchange> getExchanges() {
+        return exchanges;
+    }
+
+    /**
+     * Returns the speed up of the replay.
+     *
+     * @return The speed up, 1 for the original timing.
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    private Exchange next(Method method, JsonNode request) {
+        String key = method.getName() + " " + request;
+        List<Exchange> candidates = byRequest.get(key);
+        if (candidates == null) candidates = byMethod.get(key = method.getName());
+        if (candidates == null)
+            throw new IllegalStateException("No recorded exchange for " + method.getName() + ".");
+        int cursor = cursors.computeIfAbsent(key, ignored -> new AtomicInteger()).getAndIncrement();
+        return candidates.get(Math.floorMod(cursor, candidates.size()));
+    }
+}
@@ -0,0 +1,384 @@
+package ollama.retrieval;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-process vector index for nearest-neighbour lookup over embeddings.
+ * Vectors are kept row by row in a single contiguous {@code float[]}, and top-k queries are
+ * answered with an exact scan which is split across the fork-join pool for larger indexes.
+ *
+ * <p> Example usage:
+ * <pre>
+ * VectorIndex index = new VectorIndex("nomic-embed-text", 768, VectorIndex.Metric.COSINE);
+ * index.addAll(documents, ollama.embed(documents));
+ * List&lt;VectorIndex.Match&gt; matches = index.search(ollama.embed(List.of(question))[0], 5);
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class VectorIndex {
+
+    /**
+     * Similarity metric used to score vectors against a query.
+     */
+    public enum Metric {
+        /**
+         * Raw dot product.
+         */
+        DOT,
+
+        /**
+         * Cosine similarity. Vectors are normalised on insertion, so queries are scored with a dot product.
+         */
+        COSINE
+    }
+
+    /**
+     * A single search result.
+     *
+     * @param index    The position of the vector in the index.
+     * @param document The document stored alongside the vector.
+     * @param score    The similarity score, higher is closer.
+     */
+    public record Match(int index, String document, float score) {}
+
+    /** File header identifying a saved index. */
+    private static final int MAGIC = 0x4F564958;
+
+    /** Largest array length the JVM reliably allocates. */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /** Largest region of a saved index mapped at once. */
+    private static final int MAX_WINDOW = 1 << 30;
+
+    /** Number of vectors scanned by a single fork-join task before the scan is split further. */
+    private static final int SCAN_THRESHOLD = 4096;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final String model;
+    private final int dimensions;
+    private final Metric metric;
+    private float[] vectors;
+    private String[] documents;
+    private int size;
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param model      The embedding model the vectors are produced with.
+     * @param dimensions The dimension of the vectors.
+     * @param metric     The similarity metric.
+     */
+    public VectorIndex(String model, int dimensions, Metric metric) {
+        if (dimensions <= 0)
+            throw new IllegalArgumentException("Dimensions must be positive.");
+        this.model = model;
+        this.dimensions = dimensions;
+        this.metric = metric;
+        int capacity = Math.min(16, MAX_ARRAY_LENGTH / dimensions);
+        this.vectors = new float[capacity * dimensions];
+        this.documents = new String[capacity];
+    }
+
+    /**
+     * Adds a document and its vector to the index.
+     *
+     * @param document The document to be returned with matches.
+     * @param vector   The embedding vector of the document.
+     * @return The position of the vector in the index.
+     * @throws IllegalStateException If the vectors no longer fit in a single array.
+     */
+    public int add(String document, float[] vector) {
+        if (vector.length != dimensions)
+            throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions, got " + vector.length + ".");
+        lock.writeLock().lock();
+        try {
+            if (size == documents.length) {
+                int capacity = grow(size, dimensions);
+                documents = Arrays.copyOf(documents, capacity);
+                vectors = Arrays.copyOf(vectors, capacity * dimensions);
+            }
+            System.arraycopy(vector, 0, vectors, size * dimensions, dimensions);
+            if (metric == Metric.COSINE) normalise(vectors, size * dimensions, dimensions);
+            documents[size] = document;
+            return size++;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds documents and their vectors to the index.
+     *
+     * @param documents The documents to be returned with matches.
+     * @param vectors   The embedding vectors, in document order.
+     */
+    public void addAll(List<String> documents, float[][] vectors) {
+        if (documents.size() != vectors.length)
+            throw new IllegalArgumentException("Documents and vectors must have the same length.");
+        for (int i = 0; i < vectors.length; i++) add(documents.get(i), vectors[i]);
+    }
+
+    /**
+     * Finds the {@code k} vectors closest to the query.
+     *
+     * @param query The query vector.
+     * @param k     The number of matches to return.
+     * @return Up to {@code k} matches, best first.
+     */
+    public List<Match> search(float[] query, int k) {
+        if (query.length != dimensions)
+            throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions, got " + query.length + ".");
+        if (metric == Metric.COSINE) {
+            query = query.clone();
+            normalise(query, 0, dimensions);
+        }
+        lock.readLock().lock();
+        try {
+            if (size == 0 || k <= 0) return Collections.emptyList();
+            int limit = Math.min(k, size);
+            PriorityQueue<Match> top = size <= SCAN_THRESHOLD ?
+                    new ScanTask(query, limit, 0, size).compute() :
+                    ForkJoinPool.commonPool().invoke(new ScanTask(query, limit, 0, size));
+            List<Match> matches = new ArrayList<>(top);
+            matches.sort((a, b) -> Float.compare(b.score(), a.score()));
+            return matches;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the index to a file.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(metric.ordinal());
+            out.writeInt(dimensions);
+            out.writeInt(size);
+            writeString(out, model);
+            for (int i = 0; i < size * dimensions; i++) out.writeFloat(vectors[i]);
+            for (int i = 0; i < size; i++) writeString(out, documents[i]);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads an index previously written with {@link #save(Path)}. The file is memory-mapped
+     * and the vectors are copied into contiguous heap storage in bulk reads of up to 1 GB.
+     *
+     * @param path The file to read.
+     * @return The loaded index.
+     * @throws IOException If the file cannot be read, is not a saved index, or holds more vectors
+     *                     than fit in a single array.
+     */
+    public static VectorIndex load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), MAX_WINDOW));
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a vector index file: " + path);
+            Metric metric = Metric.values()[buffer.getInt()];
+            int dimensions = buffer.getInt();
+            int size = buffer.getInt();
+            if (dimensions <= 0 || size < 0 || (long) Math.max(size, 1) * dimensions > MAX_ARRAY_LENGTH)
+                throw new IOException("Vector index of " + size + " vectors of " + dimensions + " dimensions does not fit in memory: " + path);
+            VectorIndex index = new VectorIndex(readString(buffer), dimensions, metric);
+            index.vectors = new float[Math.max(size, 1) * dimensions];
+            index.documents = new String[Math.max(size, 1)];
+            long position = buffer.position();
+            for (int copied = 0, total = size * dimensions; copied < total;) {
+                int count = Math.min(total - copied, MAX_WINDOW / Float.BYTES);
+                channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Float.BYTES)
+                        .asFloatBuffer().get(index.vectors, copied, count);
+                position += (long) count * Float.BYTES;
+                copied += count;
+            }
+            if (channel.size() - position > Integer.MAX_VALUE)
+                throw new IOException("Documents of the vector index exceed 2 GB: " + path);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, channel.size() - position);
+            for (int i = 0; i < size; i++) index.documents[i] = readString(buffer);
+            index.size = size;
+            return index;
+        }
+    }
+
+    /**
+     * Returns the embedding model the vectors are produced with.
+     *
+     * @return The model name.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the dimension of the vectors.
+     *
+     * @return The vector dimension.
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Returns the similarity metric.
+     *
+     * @return The metric.
+     */
+    public Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * Returns the number of vectors in the index.
+     *
+     * @return The index size.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of vectors an index grows to once full, doubling it up to the largest
+     * array of vectors the JVM can allocate.
+     *
+     * @param size       The number of vectors.
+     * @param dimensions The dimension of the vectors.
+     * @return The new capacity.
+     * @throws IllegalStateException If the index cannot grow any further.
+     */
+    static int grow(int size, int dimensions) {
+        int maxSize = MAX_ARRAY_LENGTH / dimensions;
+        if (size >= maxSize)
+            throw new IllegalStateException("Vector index is full at " + size + " vectors of " + dimensions + " dimensions.");
+        return (int) Math.min(Math.max(2L * size, 1), maxSize);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes the dot product of the query with a stored vector. The loop is unrolled over
+     * independent accumulators so the JIT can vectorise it.
+     */
+    private static float dot(float[] query, float[] vectors, int offset, int dimensions) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < dimensions; i += 4) {
+            s0 += query[i] * vectors[offset + i];
+            s1 += query[i + 1] * vectors[offset + i + 1];
+            s2 += query[i + 2] * vectors[offset + i + 2];
+            s3 += query[i + 3] * vectors[offset + i + 3];
+        }
+        for (; i < dimensions; i++) s0 += query[i] * vectors[offset + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Scales a vector in place to unit length.
+     */
+    private static void normalise(float[] vector, int offset, int dimensions) {
+        float norm = (float) Math.sqrt(norm(vector, offset, dimensions));
+        for (int i = offset; i < offset + dimensions; i++) vector[i] /= norm;
+    }
+
+    /**
+     * Computes the squared length of a vector stored at an offset.
+     */
+    private static float norm(float[] vector, int offset, int dimensions) {
+        float sum = 0;
+        for (int i = offset; i < offset + dimensions; i++) sum += vector[i] * vector[i];
+        return sum == 0 ? 1 : sum;
+    }
+
+    /**
+     * Scans a range of vectors and keeps the best {@code k} in a min-heap, splitting
+     * large ranges into fork-join subtasks whose heaps are merged.
+     */
+    private class ScanTask extends RecursiveTask<PriorityQueue<Match>> {
+        private final float[] query;
+        private final int k;
+        private final int from;
+        private final int to;
+
+        ScanTask(float[] query, int k, int from, int to) {
+            this.query = query;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PriorityQueue<Match> compute() {
+            if (to - from > SCAN_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                ScanTask left = new ScanTask(query, k, from, middle);
+                left.fork();
+                PriorityQueue<Match> top = new ScanTask(query, k, middle, to).compute();
+                for (Match match : left.join()) offer(top, match);
+                return top;
+            }
+            PriorityQueue<Match> top = new PriorityQueue<>(k + 1, (a, b) -> Float.compare(a.score(), b.score()));
+            for (int i = from; i < to; i++) {
+                float score = dot(query, vectors, i * dimensions, dimensions);
+                if (top.size() < k || score > top.peek().score()) offer(top, new Match(i, documents[i], score));
+            }
+            return top;
+        }
+
+        private void offer(PriorityQueue<Match> top, Match match) {
+            top.offer(match);
+            if (top.size() > k) top.poll();
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package ollama.routing;
+
+import ollama.Ollama;
+import ollama.models.chat.ChatModel;
+import ollama.models.chat.ChatResponse;
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import ollama.scheduling.RequestScheduler;
+import ollama.utilities.TokenEstimator;
+import utils.Printer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Routes every request to one of several models and nodes, picking the route with a
+ * {@link RoutingPolicy} out of live measurements. The router learns the load time, prompt
+ * evaluation speed and generation speed of every route from the timings the server reports, and
+ * the network and server side queueing from the difference with the observed latency. The time to
+ * first token of a request is predicted from these, its estimated prompt size, and the requests
+ * queued or in flight on the node, so traffic moves away from a node as soon as it slows down.
+ *
+ * <p> Routes which failed are avoided for a cooldown. Routes which have not served a request for
+ * the probe interval get the next request, so the router notices when a slow node recovers.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ModelRouter router = new ModelRouter.Builder()
+ *                 .route("llama3.2:3b", new Ollama("http://gpu-small:11434"), 1)
+ *                 .route("llama3.3:70b", new Ollama("http://gpu-large:11434"), 10)
+ *                 .policy(RoutingPolicy.cheapest().maxTimeToFirstToken(Duration.ofSeconds(2)))
+ *                 .build();
+ * ChatResponse response = router.chat(prompt);
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class ModelRouter {
+
+    private static final Printer log = new Printer(ModelRouter.class);
+
+    /** Weight of a new observation in the moving averages. */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * A model served by a node.
+     *
+     * @param model  The model name.
+     * @param node   The client of the node serving the model.
+     * @param cost   The relative cost of the route, compared by cheapest first policies.
+     */
+    public record Route(String model, Ollama node, double cost) {
+
+        @Override
+        public String toString() {
+            return model + "@" + node.getBaseUrl();
+        }
+    }
+
+    /**
+     * Measurements of a route.
+     *
+     * @param requests              The number of requests served.
+     * @param failures              The number of failed requests.
+     * @param inFlight              The number of requests currently in flight.
+     * @param loadMillis            The moving average of the model load time.
+     * @param overheadMillis        The moving average of the latency not spent by the model, such as
+     *                              the network and the queue of the server.
+     * @param promptTokensPerSecond The moving average of the prompt evaluation speed.
+     * @param tokensPerSecond       The moving average of the generation speed.
+     * @param durationMillis        The moving average of the latency of a request.
+     */
+    public record RouteStats(long requests, long failures, int inFlight, double loadMillis, double overheadMillis,
+                             double promptTokensPerSecond, double tokensPerSecond, double durationMillis) {}
+
+    private final List<Route> routes;
+    private final Map<Route, Measurements> measurements = new ConcurrentHashMap<>();
+    private final Map<Ollama, AtomicInteger> nodeLoad = new ConcurrentHashMap<>();
+    private final RoutingPolicy policy;
+    private final Duration cooldown;
+    private final Duration probeInterval;
+
+    /**
+     * Constructs a new ModelRouter with the provided configuration.
+     *
+     * @param builder The builder object containing the configuration details.
+     */
+    private ModelRouter(Builder builder) {
+        this.routes = List.copyOf(builder.routes);
+        this.policy = builder.policy;
+        this.cooldown = builder.cooldown;
+        this.probeInterval = builder.probeInterval;
+        for (Route route : routes) {
+            measurements.put(route, new Measurements());
+            nodeLoad.putIfAbsent(route.node(), new AtomicInteger());
+        }
+    }
+
+    /**
+     * Sends an inference request through the route chosen for it.
+     *
+     * @param prompt The {@code PromptModel} containing the prompt message. Its model is replaced by
+     *               the model of the route.
+     * @return A {@code ResponseModel} containing the API response.
+     * @throws RuntimeException If the request fails.
+     */
+    public InferenceResponse inference(InferenceModel prompt) {
+        Route route = route(TokenEstimator.units(prompt.getPrompt()));
+        return send(route, () -> route.node().inference(new InferenceModel.Builder(prompt).model(route.model()).build()),
+                (measured, latency, response) -> measured.observe(
+                        latency,
+                        response.getLoadDuration(),
+                        response.getTotalDuration(),
+                        rate(response.getPromptEvalCount(), response.getPromptEvalDuration()),
+                        rate(response.getEvalCount(), response.getEvalDuration())));
+    }
+
+    /**
+     * Sends a chat message through the route chosen for it.
+     *
+     * @param prompt The {@code PromptModel} containing the prompt message. Its model is replaced by
+     *               the model of the route.
+     * @return A {@code ResponseModel} containing the API response.
+     * @throws RuntimeException If the request fails.
+     */
+    public ChatResponse chat(ChatModel prompt) {
+        Route route = route(TokenEstimator.units(prompt.getMessages()));
+        return send(route, () -> route.node().chat(prompt.copy(route.model(), prompt.getMessages(), prompt.isStream())),
+                (measured, latency, response) -> {
+                    ChatResponse.Usage usage = response.getUsage();
+                    if (usage == null) return;
+                    measured.observe(
+                            latency,
+                            usage.getLoad_duration(),
+                            usage.getTotal_duration(),
+                            usage.getPrompt_token_s() > 0 ? usage.getPrompt_token_s() : rate(usage.getPrompt_eval_count(), usage.getPrompt_eval_duration()),
+                            usage.getResponse_token_s() > 0 ? usage.getResponse_token_s() : rate(usage.getEval_count(), usage.getEval_duration()));
+                });
+    }
+
+    /**
+     * Predicts how every route would serve a request, in route order.
+     *
+     * @param units The units of the prompt, as counted by {@link TokenEstimator#units(CharSequence)}.
+     * @return The predictions.
+     */
+    public List<RoutingPolicy.Candidate> predict(int units) {
+        List<RoutingPolicy.Candidate> candidates = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            Measurements measured = measurements.get(route);
+            int tokens = route.node().getTokenEstimator().toTokens(route.model(), units);
+            int waiting = nodeLoad.get(route.node()).get();
+            RequestScheduler scheduler = route.node().getScheduler();
+            if (scheduler != null) waiting = Math.max(waiting, scheduler.getInFlight() + scheduler.getQueueDepth());
+            synchronized (measured) {
+                double firstToken = measured.overhead + measured.load
+                        + (measured.promptSpeed > 0 ? tokens * 1000.0 / measured.promptSpeed : 0)
+                        + waiting * measured.duration;
+                candidates.add(new RoutingPolicy.Candidate(route, firstToken, measured.generationSpeed));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the measurements of a route.
+     *
+     * @param route The route.
+     * @return The measurements.
+     * @throws IllegalArgumentException If the route is not one of the router.
+     */
+    public RouteStats getStats(Route route) {
+        Measurements measured = measurements.get(route);
+        if (measured == null) throw new IllegalArgumentException("Unknown route " + route + ".");
+        int inFlight = nodeLoad.get(route.node()).get();
+        synchronized (measured) {
+            return new RouteStats(measured.requests, measured.failures, inFlight, measured.load, measured.overhead,
+                    measured.promptSpeed, measured.generationSpeed, measured.duration);
+        }
+    }
+
+    /**
+     * Returns the routes of the router.
+     *
+     * @return The routes, in the order they were added.
+     */
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Returns the routing policy.
+     *
+     * @return The policy.
+     */
+    public RoutingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Chooses the route of a request: a route due for a probe if there is one, and the choice of
+     * the policy among the routes which are not cooling down otherwise.
+     *
+     * @param units The units of the prompt.
+     * @return The route.
+     */
+    Route route(int units) {
+        long now = System.nanoTime();
+        List<RoutingPolicy.Candidate> available = new ArrayList<>();
+        for (RoutingPolicy.Candidate candidate : predict(units)) {
+            Measurements measured = measurements.get(candidate.route());
+            synchronized (measured) {
+                if (now < measured.coolingUntil) continue;
+                if (measured.requests > 0 && probeInterval != null && now - measured.lastUsed > probeInterval.toNanos()
+                        && nodeLoad.get(candidate.route().node()).get() == 0) {
+                    measured.lastUsed = now;
+                    log.info("Probing " + candidate.route() + ".");
+                    return candidate.route();
+                }
+            }
+            available.add(candidate);
+        }
+        if (available.isEmpty()) available = predict(units);
+        return policy.choose(available).route();
+    }
+
+    /**
+     * Sends a request through a route and updates its measurements.
+     *
+     * @param route    The route.
+     * @param request  Sends the request.
+     * @param observer Updates the measurements with the timings of the response.
+     * @param <T>      The response type.
+     * @return The response.
+     */
+    private <T> T send(Route route, Supplier<T> request, Observer<T> observer) {
+        Measurements measured = measurements.get(route);
+        AtomicInteger load = nodeLoad.get(route.node());
+        load.incrementAndGet();
+        long start = System.nanoTime();
+        synchronized (measured) {
+            measured.lastUsed = start;
+        }
+        try {
+            T response = request.get();
+            long latency = System.nanoTime() - start;
+            synchronized (measured) {
+                measured.requests++;
+                observer.observe(measured, latency, response);
+            }
+            return response;
+        }
+        catch (RuntimeException e) {
+            synchronized (measured) {
+                measured.failures++;
+                measured.coolingUntil = System.nanoTime() + cooldown.toNanos();
+            }
+            log.warning("Route " + route + " failed, avoiding it for " + cooldown.toMillis() + " ms: " + e.getMessage());
+            throw e;
+        }
+        finally {
+            load.decrementAndGet();
+        }
+    }
+
+    private static double rate(int count, long nanos) {
+        return nanos > 0 ? count * 1e9 / nanos : 0;
+    }
+
+    private static double average(double average, double observed) {
+        return average == 0 ? observed : average + SMOOTHING * (observed - average);
+    }
+
+    /**
+     * Updates the measurements of a route with a response.
+     *
+     * @param <T> The response type.
+     */
+    private interface Observer<T> {
+        void observe(Measurements measured, long latency, T response);
+    }
+
+    /**
+     * Mutable measurements of a route, guarded by their own monitor.
+     */
+    private static class Measurements {
+        long requests;
+        long failures;
+        long lastUsed = System.nanoTime();
+        long coolingUntil;
+        double load;
+        double overhead;
+        double promptSpeed;
+        double generationSpeed;
+        double duration;
+
+        /**
+         * Folds the timings of a response into the moving averages.
+         *
+         * @param latency     The observed latency of the request.
+         * @param loadNanos   The load time reported by the server.
+         * @param totalNanos  The total time reported by the server.
+         * @param promptSpeed The prompt evaluation speed, or 0 if not reported.
+         * @param speed       The generation speed, or 0 if not reported.
+         */
+        void observe(long latency, long loadNanos, long totalNanos, double promptSpeed, double speed) {
+            load = average(load, loadNanos / 1e6);
+            overhead = average(overhead, Math.max(0, latency - totalNanos) / 1e6);
+            duration = average(duration, latency / 1e6);
+            if (promptSpeed > 0) this.promptSpeed = average(this.promptSpeed, promptSpeed);
+            if (speed > 0) generationSpeed = average(generationSpeed, speed);
+        }
+    }
+
+    /**
+     * Builder class for constructing ModelRouter objects.
+     */
+    public static class Builder {
+        private final List<Route> routes = new ArrayList<>();
+        private RoutingPolicy policy = RoutingPolicy.fastest();
+        private Duration cooldown = Duration.ofSeconds(10);
+        private Duration probeInterval = Duration.ofSeconds(30);
+
+        /**
+         * Adds a route.
+         *
+         * @param model The model name.
+         * @param node  The client of the node serving the model.
+         * @param cost  The relative cost of the route.
+         * @return The Builder object for method chaining.
+         */
+        public Builder route(String model, Ollama node, double cost) {
+            routes.add(new Route(model, node, cost));
+            return this;
+        }
+
+        /**
+         * Sets the routing policy.
+         *
+         * @param policy The policy, {@link RoutingPolicy#fastest()} by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder policy(RoutingPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Sets how long a route is avoided after a failure.
+         *
+         * @param cooldown The cooldown, 10 seconds by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder cooldown(Duration cooldown) {
+            this.cooldown = cooldown;
+            return this;
+        }
+
+        /**
+         * Sets how long a route may go unused before it gets a request to measure it again.
+         *
+         * @param probeInterval The probe interval, 30 seconds by default, or null to never probe.
+         * @return The Builder object for method chaining.
+         */
+        public Builder probeInterval(Duration probeInterval) {
+            this.probeInterval = probeInterval;
+            return this;
+        }
+
+        /**
+         * Builds the ModelRouter.
+         *
+         * @return The constructed ModelRouter.
+         * @throws IllegalArgumentException If no route was added.
+         */
+        public ModelRouter build() {
+            if (routes.isEmpty()) throw new IllegalArgumentException("A router needs at least one route.");
+            return new ModelRouter(this);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ollama.routing;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides which route serves a request, out of the predictions the router makes for every route.
+ * A policy is an objective, such as the cheapest or the fastest route, and optional service
+ * levels a route must be predicted to meet. Routes meeting the service levels are ranked by the
+ * objective; if none meets them, the route with the earliest predicted first token is taken.
+ *
+ * <p> Example usage:
+ * <pre>
+ * RoutingPolicy policy = RoutingPolicy.cheapest()
+ *                 .maxTimeToFirstToken(Duration.ofSeconds(2))
+ *                 .minTokensPerSecond(20);
+ * </pre>
+ */
+public final class RoutingPolicy {
+
+    /**
+     * What a policy optimizes among the routes meeting its service levels.
+     */
+    public enum Objective {
+        /** The route with the lowest cost. */
+        CHEAPEST,
+        /** The route with the earliest predicted first token. */
+        FASTEST,
+        /** The route with the highest predicted generation speed. */
+        HIGHEST_THROUGHPUT
+    }
+
+    /**
+     * The prediction of how a route would serve a request.
+     *
+     * @param route                  The route.
+     * @param timeToFirstTokenMillis The predicted time to the first token, including queueing.
+     * @param tokensPerSecond        The predicted generation speed, or 0 if the route was not measured yet.
+     */
+    public record Candidate(ModelRouter.Route route, double timeToFirstTokenMillis, double tokensPerSecond) {}
+
+    private final Objective objective;
+    private final Duration maxTimeToFirstToken;
+    private final double minTokensPerSecond;
+
+    private RoutingPolicy(Objective objective, Duration maxTimeToFirstToken, double minTokensPerSecond) {
+        this.objective = objective;
+        this.maxTimeToFirstToken = maxTimeToFirstToken;
+        this.minTokensPerSecond = minTokensPerSecond;
+    }
+
+    /**
+     * Returns a policy taking the cheapest route.
+     *
+     * @return The policy, without service levels.
+     */
+    public static RoutingPolicy cheapest() {
+        return new RoutingPolicy(Objective.CHEAPEST, null, 0);
+    }
+
+    /**
+     * Returns a policy taking the route with the earliest predicted first token.
+     *
+     * @return The policy, without service levels.
+     */
+    public static RoutingPolicy fastest() {
+        return new RoutingPolicy(Objective.FASTEST, null, 0);
+    }
+
+    /**
+     * Returns a policy taking the route with the highest predicted generation speed.
+     *
+     * @return The policy, without service levels.
+     */
+    public static RoutingPolicy highestThroughput() {
+        return new RoutingPolicy(Objective.HIGHEST_THROUGHPUT, null, 0);
+    }
+
+    /**
+     * Returns a copy of the policy only taking routes predicted to produce the first token in time.
+     *
+     * @param maxTimeToFirstToken The time to first token objective.
+     * @return The new policy.
+     */
+    public RoutingPolicy maxTimeToFirstToken(Duration maxTimeToFirstToken) {
+        return new RoutingPolicy(objective, maxTimeToFirstToken, minTokensPerSecond);
+    }
+
+    /**
+     * Returns a copy of the policy only taking routes generating at least a given speed. Routes not
+     * measured yet are assumed to meet it.
+     *
+     * @param minTokensPerSecond The generation speed objective.
+     * @return The new policy.
+     */
+    public RoutingPolicy minTokensPerSecond(double minTokensPerSecond) {
+        return new RoutingPolicy(objective, maxTimeToFirstToken, minTokensPerSecond);
+    }
+
+    /**
+     * Chooses a route.
+     *
+     * @param candidates The predictions for the available routes. Never empty.
+     * @return The chosen candidate.
+     */
+    public Candidate choose(List<Candidate> candidates) {
+        Comparator<Candidate> fastest = Comparator.comparingDouble(Candidate::timeToFirstTokenMillis);
+        Comparator<Candidate> ranking = switch (objective) {
+            case CHEAPEST -> Comparator.<Candidate>comparingDouble(candidate -> candidate.route().cost()).thenComparing(fastest);
+            case FASTEST -> fastest;
+            case HIGHEST_THROUGHPUT -> Comparator.<Candidate>comparingDouble(candidate -> -candidate.tokensPerSecond()).thenComparing(fastest);
+        };
+        return candidates.stream()
+                .filter(this::meets)
+                .min(ranking)
+                .orElseGet(() -> candidates.stream().min(fastest).orElseThrow());
+    }
+
+    /**
+     * Checks if a candidate is predicted to meet the service levels of the policy.
+     *
+     * @param candidate The candidate.
+     * @return True if the candidate meets every service level.
+     */
+    public boolean meets(Candidate candidate) {
+        if (maxTimeToFirstToken != null && candidate.timeToFirstTokenMillis() > maxTimeToFirstToken.toMillis()) return false;
+        return candidate.tokensPerSecond() == 0 || candidate.tokensPerSecond() >= minTokensPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return objective + (maxTimeToFirstToken == null ? "" : " with first token within " + maxTimeToFirstToken.toMillis() + " ms")
+                + (minTokensPerSecond > 0 ? " at " + minTokensPerSecond + " tokens/s or more" : "");
+    }
+}
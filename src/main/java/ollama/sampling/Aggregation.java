@@ -0,0 +1,126 @@
+package ollama.sampling;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Combines the samples of a request sent with different seeds into one result. Samples are offered
+ * one at a time as they complete, and the aggregation may decide before all of them arrived, in
+ * which case the remaining samples are cancelled.
+ *
+ * <p> Example usage:
+ * <pre>
+ * Answer answer = ollama.sample(prompt, 5, Answer.class, Aggregation.majority(3));
+ * </pre>
+ *
+ * @param <T> The type of the samples.
+ */
+public interface Aggregation<T> {
+
+    /**
+     * Decides early, once the samples so far settle the result.
+     *
+     * @param samples The valid samples received so far, in completion order.
+     * @param total   The number of samples requested.
+     * @return The result, or null to wait for more samples.
+     */
+    T decide(List<T> samples, int total);
+
+    /**
+     * Decides once every sample was received.
+     *
+     * @param samples The valid samples, in completion order. Never empty.
+     * @return The result.
+     */
+    T finish(List<T> samples);
+
+    /**
+     * Majority vote over equal samples, deciding as soon as one value has a quorum of votes.
+     * Without a quorum, the most voted value wins, ties going to the value voted first.
+     *
+     * @param quorum The number of equal samples that settles the vote.
+     * @param <T>    The type of the samples, compared with {@code equals}.
+     * @return The aggregation.
+     * @throws IllegalArgumentException If the quorum is not positive.
+     */
+    static <T> Aggregation<T> majority(int quorum) {
+        if (quorum <= 0) throw new IllegalArgumentException("Quorum must be positive.");
+        return new Aggregation<>() {
+            @Override
+            public T decide(List<T> samples, int total) {
+                T latest = samples.get(samples.size() - 1);
+                return votes(samples).get(latest) >= quorum ? latest : null;
+            }
+
+            @Override
+            public T finish(List<T> samples) {
+                Map<T, Integer> votes = votes(samples);
+                T winner = samples.get(0);
+                for (T sample : samples) if (votes.get(sample) > votes.get(winner)) winner = sample;
+                return winner;
+            }
+
+            private Map<T, Integer> votes(List<T> samples) {
+                Map<T, Integer> votes = new HashMap<>();
+                for (T sample : samples) votes.merge(sample, 1, Integer::sum);
+                return votes;
+            }
+        };
+    }
+
+    /**
+     * Takes the first valid sample. Samples which do not match the schema of a typed request are
+     * not valid, so this returns the first sample that parsed.
+     *
+     * @param <T> The type of the samples.
+     * @return The aggregation.
+     */
+    static <T> Aggregation<T> firstValid() {
+        return new Aggregation<>() {
+            @Override
+            public T decide(List<T> samples, int total) {
+                return samples.get(0);
+            }
+
+            @Override
+            public T finish(List<T> samples) {
+                return samples.get(0);
+            }
+        };
+    }
+
+    /**
+     * Takes the sample with the highest score, deciding as soon as a sample reaches a threshold.
+     *
+     * @param score     The scoring function.
+     * @param threshold The score that settles the result, or {@code Double.POSITIVE_INFINITY} to
+     *                  wait for every sample.
+     * @param <T>       The type of the samples.
+     * @return The aggregation.
+     */
+    static <T> Aggregation<T> best(ToDoubleFunction<T> score, double threshold) {
+        return new Aggregation<>() {
+            @Override
+            public T decide(List<T> samples, int total) {
+                T latest = samples.get(samples.size() - 1);
+                return score.applyAsDouble(latest) >= threshold ? latest : null;
+            }
+
+            @Override
+            public T finish(List<T> samples) {
+                T best = samples.get(0);
+                double bestScore = score.applyAsDouble(best);
+                for (T sample : samples) {
+                    double sampleScore = score.applyAsDouble(sample);
+                    if (sampleScore > bestScore) {
+                        best = sample;
+                        bestScore = sampleScore;
+                    }
+                }
+                return best;
+            }
+        };
+    }
+}
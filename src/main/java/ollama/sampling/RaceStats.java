@@ -0,0 +1,136 @@
+package ollama.sampling;
+
+import ollama.models.inference.InferenceResponse;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of model races: how often every model wins, how fast it answers, and how fast it
+ * generates according to the timings the server reports. Latencies and throughputs are moving
+ * averages, so they follow a model that slows down.
+ */
+public class RaceStats {
+
+    /** Weight of a new observation in the moving averages. */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Race metrics of a model.
+     *
+     * @param races                 The number of races the model entered.
+     * @param wins                  The number of races the model won.
+     * @param rejected              The number of answers which did not pass the validator.
+     * @param failures              The number of requests which failed.
+     * @param latencyMillis         The moving average of the time to a complete answer.
+     * @param tokensPerSecond       The moving average of the generation speed, from {@code eval_duration}.
+     * @param promptTokensPerSecond The moving average of the prompt evaluation speed, from {@code prompt_eval_duration}.
+     */
+    public record ModelStats(long races, long wins, long rejected, long failures,
+                             double latencyMillis, double tokensPerSecond, double promptTokensPerSecond) {
+
+        /**
+         * Returns the share of races won.
+         *
+         * @return The win rate, from 0 to 1.
+         */
+        public double winRate() {
+            return races == 0 ? 0 : (double) wins / races;
+        }
+    }
+
+    private final Map<String, Counters> models = new ConcurrentHashMap<>();
+
+    /**
+     * Records a model entering a race.
+     *
+     * @param model The model.
+     */
+    public void entered(String model) {
+        Counters counters = counters(model);
+        synchronized (counters) {
+            counters.races++;
+        }
+    }
+
+    /**
+     * Records a complete answer of a model.
+     *
+     * @param model         The model.
+     * @param latencyNanos  The time from the start of the race to the answer.
+     * @param response      The answer, whose timings update the throughput of the model.
+     * @param won           True if the answer won the race.
+     */
+    public void answered(String model, long latencyNanos, InferenceResponse response, boolean won) {
+        Counters counters = counters(model);
+        synchronized (counters) {
+            if (won) counters.wins++;
+            else counters.rejected++;
+            counters.latency = average(counters.latency, latencyNanos / 1_000_000.0);
+            if (response.getEvalDuration() > 0)
+                counters.tokensPerSecond = average(counters.tokensPerSecond, response.getEvalCount() * 1e9 / response.getEvalDuration());
+            if (response.getPromptEvalDuration() > 0)
+                counters.promptTokensPerSecond = average(counters.promptTokensPerSecond, response.getPromptEvalCount() * 1e9 / response.getPromptEvalDuration());
+        }
+    }
+
+    /**
+     * Records a failed request of a model.
+     *
+     * @param model The model.
+     */
+    public void failed(String model) {
+        Counters counters = counters(model);
+        synchronized (counters) {
+            counters.failures++;
+        }
+    }
+
+    /**
+     * Returns the race metrics of a model.
+     *
+     * @param model The model.
+     * @return The metrics, all zero if the model never raced.
+     */
+    public ModelStats get(String model) {
+        Counters counters = models.get(model);
+        if (counters == null) return new ModelStats(0, 0, 0, 0, 0, 0, 0);
+        synchronized (counters) {
+            return new ModelStats(counters.races, counters.wins, counters.rejected, counters.failures,
+                    counters.latency, counters.tokensPerSecond, counters.promptTokensPerSecond);
+        }
+    }
+
+    /**
+     * Returns the race metrics of every model which raced.
+     *
+     * @return The metrics by model name.
+     */
+    public Map<String, ModelStats> getAll() {
+        Map<String, ModelStats> all = new TreeMap<>();
+        for (String model : models.keySet()) all.put(model, get(model));
+        return all;
+    }
+
+    private Counters counters(String model) {
+        return models.computeIfAbsent(model, name -> new Counters());
+    }
+
+    private static double average(double average, double observed) {
+        return average == 0 ? observed : average + SMOOTHING * (observed - average);
+    }
+
+    /**
+     * Mutable metrics of a model, guarded by their own monitor.
+     */
+    private static class Counters {
+        long races;
+        long wins;
+        long rejected;
+        long failures;
+        double latency;
+        double tokensPerSecond;
+        double promptTokensPerSecond;
+    }
+}
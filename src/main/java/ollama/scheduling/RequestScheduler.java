@@ -0,0 +1,501 @@
+package ollama.scheduling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules the requests sent to an Ollama node, bounding the requests in flight and deciding which
+ * queued request goes next. Requests of a higher priority always go before those of a lower one.
+ * Within a priority, tenants share the node by weighted fair queuing, in proportion to their
+ * weights and the estimated tokens of their requests. When the queue is full, the most recently
+ * queued request of the lowest waiting priority is preempted to make room for a higher priority one.
+ *
+ * <p> The priority and tenant of the requests sent by a thread are set with a scope:
+ * <pre>
+ * try (RequestScheduler.Scope scope = RequestScheduler.scope(RequestScheduler.Priority.BATCH, "reports")) {
+ *     ollama.inference(prompt);
+ * }
+ * </pre>
+ */
+public class RequestScheduler {
+
+    /**
+     * Priority classes, from the highest to the lowest.
+     */
+    public enum Priority {
+        /** Latency sensitive requests, such as chat with a user. */
+        INTERACTIVE,
+        /** Requests without a specific priority. */
+        NORMAL,
+        /** Bulk requests which can wait, such as data generation jobs. */
+        BATCH
+    }
+
+    /**
+     * Scheduling metrics of a priority class.
+     *
+     * @param queued         The number of requests currently queued.
+     * @param dispatched     The number of requests dispatched so far.
+     * @param preempted      The number of queued requests preempted so far.
+     * @param totalWaitNanos The total time dispatched requests spent in the queue.
+     * @param maxWaitNanos   The longest time a dispatched request spent in the queue.
+     */
+    public record Stats(int queued, long dispatched, long preempted, long totalWaitNanos, long maxWaitNanos) {
+
+        /**
+         * Returns the mean time dispatched requests spent in the queue.
+         *
+         * @return The mean wait in milliseconds.
+         */
+        public double meanWaitMillis() {
+            return dispatched == 0 ? 0 : totalWaitNanos / 1_000_000.0 / dispatched;
+        }
+    }
+
+    /**
+     * The priority and tenant of the requests sent by a thread, until the scope is closed.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Priority priority;
+        private final String tenant;
+        private final Scope previous;
+
+        private Scope(Priority priority, String tenant, Scope previous) {
+            this.priority = priority;
+            this.tenant = tenant;
+            this.previous = previous;
+        }
+
+        /**
+         * Returns the priority of the scope.
+         *
+         * @return The priority.
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * Returns the tenant of the scope.
+         *
+         * @return The tenant.
+         */
+        public String getTenant() {
+            return tenant;
+        }
+
+        /**
+         * Wraps a task so it runs in this scope on whichever thread executes it.
+         *
+         * @param task The task.
+         * @param <V>  The result type.
+         * @return The wrapped task.
+         */
+        public <V> Callable<V> wrap(Callable<V> task) {
+            return () -> {
+                try (Scope ignored = scope(priority, tenant)) {
+                    return task.call();
+                }
+            };
+        }
+
+        /**
+         * Restores the scope that was current when this one was opened.
+         */
+        @Override
+        public void close() {
+            if (previous == null) scopes.remove();
+            else scopes.set(previous);
+        }
+    }
+
+    /**
+     * A request handed to the scheduler, queued until it is dispatched. Closing it frees its slot
+     * for the next queued request, or withdraws it from the queue if it was not dispatched yet,
+     * waking up the thread waiting for it.
+     */
+    public final class Permit implements AutoCloseable {
+        private final Condition condition = lock.newCondition();
+        private final long enqueued = System.nanoTime();
+        private final long sequence = RequestScheduler.this.sequence++;
+        private final int priority;
+        private final double start;
+        private final double finish;
+        private State state;
+        private boolean released;
+
+        private Permit(int priority, double start, double finish, State state) {
+            this.priority = priority;
+            this.start = start;
+            this.finish = finish;
+            this.state = state;
+        }
+
+        /**
+         * Waits until the request is dispatched.
+         *
+         * @return This permit, for method chaining.
+         * @throws RejectedExecutionException If the request was preempted while queued.
+         * @throws CancellationException If the permit was closed while queued.
+         * @throws RuntimeException If the thread is interrupted while waiting, which withdraws the request.
+         */
+        public Permit await() {
+            lock.lock();
+            try {
+                while (state == State.WAITING) {
+                    try {
+                        condition.await();
+                    }
+                    catch (InterruptedException e) {
+                        close();
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+                if (state == State.PREEMPTED)
+                    throw new RejectedExecutionException("Preempted by a higher priority request.");
+                if (state == State.CANCELLED)
+                    throw new CancellationException("Request was cancelled while queued.");
+                return this;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Checks if the request was dispatched.
+         *
+         * @return True once the request may be sent.
+         */
+        public boolean isDispatched() {
+            lock.lock();
+            try {
+                return state == State.GRANTED;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Releases the slot of the request, or withdraws it from the queue.
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (released) return;
+                released = true;
+                if (state == State.WAITING) {
+                    queues.get(priority).remove(this);
+                    queued--;
+                    forget(priority);
+                    state = State.CANCELLED;
+                    condition.signalAll();
+                }
+                else if (state == State.GRANTED) {
+                    inFlight--;
+                    dispatch();
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final Scope DEFAULT = new Scope(Priority.NORMAL, "default", null);
+    private static final ThreadLocal<Scope> scopes = new ThreadLocal<>();
+
+    /** Schedulers per node. */
+    private static final Map<String, RequestScheduler> schedulers = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final List<PriorityQueue<Permit>> queues = new ArrayList<>();
+    private final double[] virtualTime = new double[Priority.values().length];
+    /** Finish time of the last request per priority and tenant, kept while it is ahead of the virtual time. */
+    private final List<Map<String, Double>> lastFinish = new ArrayList<>();
+    private final Map<String, Double> weights = new ConcurrentHashMap<>();
+    private final long[] dispatched = new long[Priority.values().length];
+    private final long[] preempted = new long[Priority.values().length];
+    private final long[] totalWait = new long[Priority.values().length];
+    private final long[] maxWait = new long[Priority.values().length];
+    private int inFlight;
+    private int queued;
+    private long sequence;
+
+    /**
+     * Constructs a scheduler.
+     *
+     * @param maxConcurrent The maximum number of requests in flight.
+     * @param maxQueued     The maximum number of queued requests.
+     * @throws IllegalArgumentException If either limit is not positive.
+     */
+    public RequestScheduler(int maxConcurrent, int maxQueued) {
+        if (maxConcurrent <= 0 || maxQueued <= 0)
+            throw new IllegalArgumentException("Scheduler limits must be positive.");
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        for (Priority ignored : Priority.values()) {
+            lastFinish.add(new HashMap<>());
+            queues.add(new PriorityQueue<>((first, second) -> first.finish != second.finish
+                    ? Double.compare(first.finish, second.finish)
+                    : Long.compare(first.sequence, second.sequence)));
+        }
+    }
+
+    /**
+     * Returns the scheduler shared by every user of a node, creating it with the given limits if
+     * it does not exist yet.
+     *
+     * @param node          The base URL of the node.
+     * @param maxConcurrent The maximum number of requests in flight, or 0 to not schedule requests.
+     * @param maxQueued     The maximum number of queued requests.
+     * @return The shared scheduler, or null if requests are not scheduled.
+     */
+    public static RequestScheduler forNode(String node, int maxConcurrent, int maxQueued) {
+        if (maxConcurrent <= 0) return null;
+        return schedulers.computeIfAbsent(node, key -> new RequestScheduler(maxConcurrent, maxQueued));
+    }
+
+    /**
+     * Opens a scope setting the priority and tenant of the requests sent by the current thread.
+     *
+     * @param priority The priority of the requests.
+     * @param tenant   The tenant the requests are sent for.
+     * @return The scope, to be closed once the requests are sent.
+     */
+    public static Scope scope(Priority priority, String tenant) {
+        Scope scope = new Scope(priority, tenant, scopes.get());
+        scopes.set(scope);
+        return scope;
+    }
+
+    /**
+     * Returns the current scope of the thread.
+     *
+     * @return The current scope, or a normal priority scope of the default tenant.
+     */
+    public static Scope current() {
+        Scope scope = scopes.get();
+        return scope == null ? DEFAULT : scope;
+    }
+
+    /**
+     * Sets the share of a tenant relative to the other tenants of the same priority.
+     *
+     * @param tenant The tenant.
+     * @param weight The weight, 1 by default.
+     * @throws IllegalArgumentException If the weight is not positive.
+     */
+    public void setWeight(String tenant, double weight) {
+        if (!(weight > 0)) throw new IllegalArgumentException("Tenant weight must be positive.");
+        weights.put(tenant, weight);
+    }
+
+    /**
+     * Waits until a request of a scope may be sent.
+     *
+     * @param scope The scope of the request.
+     * @param cost  The estimated cost of the request, such as its prompt tokens.
+     * @return The permit of the request, to be closed once the request completes.
+     * @throws RejectedExecutionException If the queue is full, or the request was preempted while queued.
+     * @throws RuntimeException If the thread is interrupted while waiting.
+     */
+    public Permit acquire(Scope scope, double cost) {
+        return enqueue(scope, cost).await();
+    }
+
+    /**
+     * Hands a request of a scope to the scheduler without waiting for it to be dispatched. The
+     * returned permit is awaited by the sending thread, and may be closed by any thread to cancel
+     * the request while it is still queued.
+     *
+     * @param scope The scope of the request.
+     * @param cost  The estimated cost of the request, such as its prompt tokens.
+     * @return The permit of the request, to be awaited and then closed once the request completes.
+     * @throws RejectedExecutionException If the queue is full.
+     */
+    public Permit enqueue(Scope scope, double cost) {
+        int priority = scope.getPriority().ordinal();
+        lock.lock();
+        try {
+            if (inFlight < maxConcurrent && queued == 0) {
+                inFlight++;
+                dispatched[priority]++;
+                return new Permit(priority, 0, 0, State.GRANTED);
+            }
+            if (queued >= maxQueued && !preempt(priority))
+                throw new RejectedExecutionException("Request queue is full.");
+
+            Map<String, Double> finishes = lastFinish.get(priority);
+            double start = Math.max(virtualTime[priority], finishes.getOrDefault(scope.getTenant(), 0.0));
+            Permit permit = new Permit(priority, start, start + Math.max(cost, 1) / weights.getOrDefault(scope.getTenant(), 1.0), State.WAITING);
+            finishes.put(scope.getTenant(), permit.finish);
+            queues.get(priority).add(permit);
+            queued++;
+            dispatch();
+            return permit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the scheduling metrics of a priority class.
+     *
+     * @param priority The priority.
+     * @return The metrics.
+     */
+    public Stats getStats(Priority priority) {
+        int index = priority.ordinal();
+        lock.lock();
+        try {
+            return new Stats(queues.get(index).size(), dispatched[index], preempted[index], totalWait[index], maxWait[index]);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queued requests of all priorities.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of tenants whose finish time is still tracked, of all priorities.
+     *
+     * @return The number of tracked tenants.
+     */
+    int getTrackedTenants() {
+        lock.lock();
+        try {
+            int tracked = 0;
+            for (Map<String, Double> finishes : lastFinish) tracked += finishes.size();
+            return tracked;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests in flight.
+     *
+     * @return The number of dispatched requests which have not completed yet.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum number of requests in flight.
+     *
+     * @return The concurrency limit.
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Returns the maximum number of queued requests.
+     *
+     * @return The queue limit.
+     */
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Dispatches queued requests, highest priority first, while there are free slots.
+     */
+    private void dispatch() {
+        while (inFlight < maxConcurrent && queued > 0) {
+            for (int priority = 0; priority < queues.size(); priority++) {
+                Permit permit = queues.get(priority).poll();
+                if (permit == null) continue;
+                long wait = System.nanoTime() - permit.enqueued;
+                virtualTime[priority] = permit.start;
+                forget(priority);
+                dispatched[priority]++;
+                totalWait[priority] += wait;
+                maxWait[priority] = Math.max(maxWait[priority], wait);
+                permit.state = State.GRANTED;
+                permit.condition.signalAll();
+                inFlight++;
+                queued--;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Forgets the finish times which no longer delay the tenants of a priority, as the tenants would
+     * start from the virtual time anyway. Once the queue of the priority is empty, its virtual time
+     * moves past every finish time, as the next request starts a new busy period.
+     *
+     * @param priority The priority.
+     */
+    private void forget(int priority) {
+        Map<String, Double> finishes = lastFinish.get(priority);
+        if (queues.get(priority).isEmpty()) {
+            for (double finish : finishes.values()) virtualTime[priority] = Math.max(virtualTime[priority], finish);
+            finishes.clear();
+        }
+        else finishes.values().removeIf(finish -> finish <= virtualTime[priority]);
+    }
+
+    /**
+     * Preempts the most recently queued request of the lowest priority below the given one.
+     *
+     * @param priority The priority of the request needing room.
+     * @return True if a request was preempted.
+     */
+    private boolean preempt(int priority) {
+        for (int lower = queues.size() - 1; lower > priority; lower--) {
+            Permit latest = null;
+            for (Permit permit : queues.get(lower))
+                if (latest == null || permit.sequence > latest.sequence) latest = permit;
+            if (latest == null) continue;
+            queues.get(lower).remove(latest);
+            queued--;
+            preempted[lower]++;
+            latest.state = State.PREEMPTED;
+            latest.condition.signalAll();
+            return true;
+        }
+        return false;
+    }
+
+    private enum State { WAITING, GRANTED, PREEMPTED, CANCELLED }
+}
@@ -0,0 +1,95 @@
+package ollama.streaming;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of cancelled generations and of the tokens their cancellation saved.
+ * The saving is estimated as the average length of completed generations of the same model
+ * minus the tokens already generated when the generation was cancelled.
+ */
+public class CancellationStats {
+
+    /** Weight of a new completion in the moving average of generation lengths. */
+    private static final double SMOOTHING = 0.1;
+
+    private final ConcurrentHashMap<String, Double> averageTokens = new ConcurrentHashMap<>();
+    private final AtomicLong completions = new AtomicLong();
+    private final AtomicLong cancellations = new AtomicLong();
+    private final AtomicLong tokensGenerated = new AtomicLong();
+    private final AtomicLong tokensSaved = new AtomicLong();
+
+    /**
+     * Records a generation which ran to completion.
+     *
+     * @param model  The model of the generation.
+     * @param tokens The number of tokens generated.
+     */
+    public void completed(String model, int tokens) {
+        completions.incrementAndGet();
+        if (model == null) return;
+        averageTokens.merge(model, (double) tokens, (average, observed) -> average + SMOOTHING * (observed - average));
+    }
+
+    /**
+     * Records a cancelled generation.
+     *
+     * @param model  The model of the generation.
+     * @param tokens The number of tokens generated before the cancellation.
+     * @return The estimated number of tokens the cancellation saved.
+     */
+    public long cancelled(String model, int tokens) {
+        cancellations.incrementAndGet();
+        tokensGenerated.addAndGet(tokens);
+        Double average = model == null ? null : averageTokens.get(model);
+        long saved = average == null ? 0 : Math.max(0, Math.round(average) - tokens);
+        tokensSaved.addAndGet(saved);
+        return saved;
+    }
+
+    /**
+     * Returns the average number of tokens of completed generations of a model.
+     *
+     * @param model The model name.
+     * @return The average generation length, or 0 if no generation of the model completed yet.
+     */
+    public double getAverageTokens(String model) {
+        return averageTokens.getOrDefault(model, 0.0);
+    }
+
+    /**
+     * Returns the number of generations which ran to completion.
+     *
+     * @return The completion count.
+     */
+    public long getCompletions() {
+        return completions.get();
+    }
+
+    /**
+     * Returns the number of cancelled generations.
+     *
+     * @return The cancellation count.
+     */
+    public long getCancellations() {
+        return cancellations.get();
+    }
+
+    /**
+     * Returns the number of tokens generated by cancelled generations before they were cancelled.
+     *
+     * @return The generated token count.
+     */
+    public long getTokensGenerated() {
+        return tokensGenerated.get();
+    }
+
+    /**
+     * Returns the estimated number of tokens saved by cancellations.
+     *
+     * @return The saved token count.
+     */
+    public long getTokensSaved() {
+        return tokensSaved.get();
+    }
+}
@@ -0,0 +1,56 @@
+package ollama.streaming;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import ollama.utilities.JsonReaders;
+
+import java.io.IOException;
+
+/**
+ * Parses a single line of a streamed response into a chunk.
+ *
+ * @param <T> The chunk type.
+ */
+@FunctionalInterface
+public interface ChunkParser<T> {
+
+    /**
+     * Parses a line of the response body.
+     *
+     * @param line The line, without its line terminator.
+     * @return The parsed chunk, or null if the line carries no chunk.
+     * @throws IOException If the line cannot be parsed.
+     */
+    T parse(String line) throws IOException;
+
+    /**
+     * Creates a parser for newline delimited JSON, as streamed by the native Ollama endpoints.
+     * Unknown properties of the chunks are ignored.
+     *
+     * @param type The chunk type.
+     * @param <T>  The chunk type.
+     * @return The parser.
+     */
+    static <T> ChunkParser<T> ndjson(Class<T> type) {
+        ObjectReader reader = JsonReaders.readerFor(type).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return line -> line.isBlank() ? null : reader.readValue(line);
+    }
+
+    /**
+     * Creates a parser for server-sent events, as streamed by the OpenAI compatible endpoints.
+     * Only {@code data:} lines are parsed, and the closing {@code [DONE]} event is skipped.
+     * Unknown properties of the chunks are ignored.
+     *
+     * @param type The chunk type.
+     * @param <T>  The chunk type.
+     * @return The parser.
+     */
+    static <T> ChunkParser<T> sse(Class<T> type) {
+        ObjectReader reader = JsonReaders.readerFor(type).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return line -> {
+            if (!line.startsWith("data:")) return null;
+            String data = line.substring(5).trim();
+            return data.isEmpty() || data.equals("[DONE]") ? null : reader.readValue(data);
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package ollama.streaming;
+
+import retrofit2.Call;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request deadlines, applied to a single call without rebuilding the HTTP client.
+ * A deadline which is not set does not apply.
+ *
+ * <p> Example usage:
+ * <pre>
+ * Deadline interactive = new Deadline.Builder()
+ *                 .total(Duration.ofSeconds(30))
+ *                 .firstToken(Duration.ofSeconds(2))
+ *                 .idle(Duration.ofMillis(500))
+ *                 .build();
+ * InferenceResponse response = ollama.inference(prompt, interactive);
+ * </pre>
+ */
+public class Deadline {
+
+    /** No deadlines at all. */
+    public static final Deadline NONE = new Builder().build();
+
+    /** Deadline for the whole call, from sending the request to reading the last chunk. */
+    private final Duration total;
+
+    /** Deadline for the first chunk, measured from sending the request. */
+    private final Duration firstToken;
+
+    /** Deadline between two consecutive chunks. */
+    private final Duration idle;
+
+    private Deadline(Builder builder) {
+        this.total = builder.total;
+        this.firstToken = builder.firstToken;
+        this.idle = builder.idle;
+    }
+
+    /**
+     * Returns the deadline for the whole call.
+     *
+     * @return The total deadline, or null if not set.
+     */
+    public Duration getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the deadline for the first chunk.
+     *
+     * @return The time-to-first-token deadline, or null if not set.
+     */
+    public Duration getFirstToken() {
+        return firstToken;
+    }
+
+    /**
+     * Returns the deadline between two consecutive chunks.
+     *
+     * @return The idle deadline, or null if not set.
+     */
+    public Duration getIdle() {
+        return idle;
+    }
+
+    /**
+     * Checks if only the total deadline is set, which can be enforced on a non-streamed call.
+     *
+     * @return True if neither the first token nor the idle deadline is set.
+     */
+    public boolean isTotalOnly() {
+        return firstToken == null && idle == null;
+    }
+
+    /**
+     * Applies the total deadline to a call as its call timeout. The call is aborted with an
+     * {@code InterruptedIOException} when the deadline passes.
+     *
+     * @param call The call, not executed yet.
+     * @param <T>  The response type.
+     * @return The same call, for method chaining.
+     */
+    public <T> Call<T> applyTo(Call<T> call) {
+        if (total != null) call.timeout().timeout(total.toNanos(), TimeUnit.NANOSECONDS);
+        return call;
+    }
+
+    /**
+     * Signals that a deadline passed. The call is aborted when this is raised.
+     */
+    public static class ExceededException extends InterruptedIOException {
+
+        /**
+         * Constructs the exception.
+         *
+         * @param message The name and length of the deadline that passed.
+         */
+        public ExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A builder class for creating Deadline objects.
+     */
+    public static class Builder {
+        private Duration total;
+        private Duration firstToken;
+        private Duration idle;
+
+        /**
+         * Default constructor for the Builder.
+         */
+        public Builder() {}
+
+        /**
+         * Sets the deadline for the whole call.
+         *
+         * @param total The total deadline.
+         * @return The builder instance for method chaining.
+         */
+        public Builder total(Duration total) {
+            this.total = total;
+            return this;
+        }
+
+        /**
+         * Sets the deadline for the first chunk, measured from sending the request.
+         * This covers queueing, model loading and prompt evaluation on the server.
+         *
+         * @param firstToken The time-to-first-token deadline.
+         * @return The builder instance for method chaining.
+         */
+        public Builder firstToken(Duration firstToken) {
+            this.firstToken = firstToken;
+            return this;
+        }
+
+        /**
+         * Sets the deadline between two consecutive chunks.
+         *
+         * @param idle The idle deadline.
+         * @return The builder instance for method chaining.
+         */
+        public Builder idle(Duration idle) {
+            this.idle = idle;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new Deadline object.
+         *
+         * @return A new Deadline object.
+         * @throws IllegalArgumentException if a deadline is zero or negative.
+         */
+        public Deadline build() {
+            for (Duration duration : new Duration[]{total, firstToken, idle})
+                if (duration != null && (duration.isZero() || duration.isNegative()))
+                    throw new IllegalArgumentException("Deadlines must be positive.");
+            return new Deadline(this);
+        }
+    }
+}
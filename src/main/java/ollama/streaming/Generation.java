@@ -0,0 +1,166 @@
+package ollama.streaming;
+
+import utils.Printer;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A handle on a running generation. The generation is streamed under the hood, so the handle knows
+ * how many tokens were produced so far, and cancelling it closes the connection, which makes the
+ * server stop decoding. A thread interrupted while waiting on {@link #get()} cancels the generation
+ * as well, and generations aborted by a {@link Deadline} are recorded as cancellations.
+ *
+ * <p> Example usage:
+ * <pre>
+ * Generation&lt;InferenceResponse&gt; generation = ollama.inferenceAsync(prompt);
+ * ...
+ * generation.cancel(true);
+ * </pre>
+ *
+ * @param <T> The chunk type, which is also the type of the aggregated result.
+ */
+public class Generation<T> extends CompletableFuture<T> implements Flow.Subscriber<T> {
+
+    private static final Printer log = new Printer(Generation.class);
+
+    private final String model;
+    private final CancellationStats stats;
+    private final Function<T, String> text;
+    private final BiFunction<T, String, T> aggregator;
+    private final StringBuilder content = new StringBuilder();
+    private volatile Flow.Subscription subscription;
+    private volatile int tokens;
+    private volatile long tokensSaved;
+    private T last;
+
+    /**
+     * Constructs a generation handle, to be subscribed to a stream of chunks.
+     *
+     * @param model      The model of the generation.
+     * @param stats      The statistics cancellations are recorded to.
+     * @param text       Extracts the generated text of a chunk, may return null.
+     * @param aggregator Builds the result out of the last chunk and the full generated text.
+     */
+    public Generation(String model, CancellationStats stats, Function<T, String> text, BiFunction<T, String, T> aggregator) {
+        this.model = model;
+        this.stats = stats;
+        this.text = text;
+        this.aggregator = aggregator;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (isDone()) subscription.cancel();
+        else subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(T chunk) {
+        String fragment = text.apply(chunk);
+        if (fragment != null && !fragment.isEmpty()) {
+            content.append(fragment);
+            tokens++;
+        }
+        last = chunk;
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (completeExceptionally(throwable) && throwable instanceof Deadline.ExceededException) {
+            tokensSaved = stats.cancelled(model, tokens);
+            log.info("Aborted generation with " + model + " after " + tokens + " tokens: " + throwable.getMessage());
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (last == null) {
+            completeExceptionally(new IllegalStateException("Stream of " + model + " ended without a response."));
+            return;
+        }
+        if (complete(aggregator.apply(last, content.toString()))) stats.completed(model, tokens);
+    }
+
+    /**
+     * Cancels the generation and aborts the request, so the server stops generating.
+     *
+     * @param mayInterruptIfRunning Ignored, the request is always aborted.
+     * @return True if the generation was cancelled by this call.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        // Unlike super.cancel, only true for the call which cancelled, so it is recorded once
+        boolean cancelled = completeExceptionally(new CancellationException());
+        if (cancelled) {
+            Flow.Subscription subscription = this.subscription;
+            if (subscription != null) subscription.cancel();
+            tokensSaved = stats.cancelled(model, tokens);
+            log.info("Cancelled generation with " + model + " after " + tokens + " tokens, saving ~" + tokensSaved + " tokens.");
+        }
+        return cancelled;
+    }
+
+    /**
+     * Waits for the result. If the waiting thread is interrupted, the generation is cancelled.
+     */
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        try {
+            return super.get();
+        }
+        catch (InterruptedException e) {
+            cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the result for at most the given time. If the waiting thread is interrupted,
+     * the generation is cancelled. A timeout leaves the generation running.
+     */
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return super.get(timeout, unit);
+        }
+        catch (InterruptedException e) {
+            cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the model of the generation.
+     *
+     * @return The model name.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the number of tokens generated so far.
+     *
+     * @return The generated token count.
+     */
+    public int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns the estimated number of tokens the cancellation of this generation saved.
+     *
+     * @return The saved token count, 0 if the generation was not cancelled.
+     */
+    public long getTokensSaved() {
+        return tokensSaved;
+    }
+}
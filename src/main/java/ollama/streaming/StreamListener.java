@@ -0,0 +1,100 @@
+package ollama.streaming;
+
+import okhttp3.Request;
+
+/**
+ * Receives the lifecycle events of a single stream subscription, on its reader thread.
+ *
+ * @param <T> The chunk type.
+ */
+public interface StreamListener<T> {
+
+    /**
+     * Called when the reader thread picks up the subscription, before the request is built.
+     */
+    default void onStart() {}
+
+    /**
+     * Called once the request, including its serialized body, is built.
+     *
+     * @param request The request about to be sent.
+     */
+    default void onRequest(Request request) {}
+
+    /**
+     * Called when the response headers are received.
+     *
+     * @param code The HTTP status code.
+     */
+    default void onResponse(int code) {}
+
+    /**
+     * Called for every chunk, before it is passed to the subscriber.
+     *
+     * @param chunk The chunk.
+     */
+    default void onChunk(T chunk) {}
+
+    /**
+     * Called when the stream ends.
+     *
+     * @param failure The failure that ended the stream, or null if it completed or was cancelled.
+     */
+    default void onEnd(Throwable failure) {}
+
+    /**
+     * Called on the cancelling thread when the subscription is cancelled, such as by the subscriber
+     * or a passed deadline, possibly while {@link #onStart()} still blocks the reader thread.
+     */
+    default void onCancel() {}
+
+    /**
+     * Combines two listeners, either of which may be null.
+     *
+     * @param first  The listener notified first.
+     * @param second The listener notified second.
+     * @param <T>    The chunk type.
+     * @return A listener notifying both, one of them if the other is null, or null if both are.
+     */
+    static <T> StreamListener<T> combine(StreamListener<T> first, StreamListener<T> second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        return new StreamListener<>() {
+            @Override
+            public void onStart() {
+                first.onStart();
+                second.onStart();
+            }
+
+            @Override
+            public void onRequest(Request request) {
+                first.onRequest(request);
+                second.onRequest(request);
+            }
+
+            @Override
+            public void onResponse(int code) {
+                first.onResponse(code);
+                second.onResponse(code);
+            }
+
+            @Override
+            public void onChunk(T chunk) {
+                first.onChunk(chunk);
+                second.onChunk(chunk);
+            }
+
+            @Override
+            public void onEnd(Throwable failure) {
+                first.onEnd(failure);
+                second.onEnd(failure);
+            }
+
+            @Override
+            public void onCancel() {
+                first.onCancel();
+                second.onCancel();
+            }
+        };
+    }
+}
@@ -0,0 +1,281 @@
+package ollama.streaming;
+
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A {@code Flow.Publisher} of the chunks of a streamed response.
+ * Every subscription executes its own copy of the call on a reader thread, which reads a line from
+ * the socket only while the subscriber has outstanding demand. A slow subscriber therefore stalls
+ * the socket instead of buffering the response. Cancelling the subscription cancels the HTTP call,
+ * which closes the connection and stops generation on the server. Deadlines are watched on a shared
+ * timer thread, and a passed deadline aborts the call and fails the subscriber with a
+ * {@link Deadline.ExceededException}. While the subscriber has no demand the idle deadline is paused.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ollama.inferenceStream(prompt).subscribe(new Flow.Subscriber&lt;&gt;() { ... });
+ * </pre>
+ *
+ * @param <T> The chunk type.
+ */
+public class StreamPublisher<T> implements Flow.Publisher<T> {
+
+    /** Executor starting a daemon reader thread per subscription. */
+    private static final Executor READER_THREADS = runnable -> {
+        Thread thread = new Thread(runnable, "ollama-stream");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    /** Timer thread watching the deadlines of all subscriptions. */
+    private static final ScheduledExecutorService WATCHDOG = watchdog();
+
+    private final Call<ResponseBody> call;
+    private final ChunkParser<T> parser;
+    private final Executor executor;
+    private final Deadline deadline;
+    private Supplier<? extends StreamListener<T>> listeners = () -> null;
+
+    /**
+     * Constructs a publisher which reads on a new daemon thread per subscription.
+     *
+     * @param call   The streaming call, cloned for every subscription.
+     * @param parser The parser of the response lines.
+     */
+    public StreamPublisher(Call<ResponseBody> call, ChunkParser<T> parser) {
+        this(call, parser, Deadline.NONE);
+    }
+
+    /**
+     * Constructs a publisher with deadlines, which reads on a new daemon thread per subscription.
+     *
+     * @param call     The streaming call, cloned for every subscription.
+     * @param parser   The parser of the response lines.
+     * @param deadline The deadlines applied to every subscription.
+     */
+    public StreamPublisher(Call<ResponseBody> call, ChunkParser<T> parser, Deadline deadline) {
+        this(call, parser, deadline, READER_THREADS);
+    }
+
+    /**
+     * Constructs a publisher.
+     *
+     * @param call     The streaming call, cloned for every subscription.
+     * @param parser   The parser of the response lines.
+     * @param deadline The deadlines applied to every subscription.
+     * @param executor The executor running the blocking reads of each subscription.
+     */
+    public StreamPublisher(Call<ResponseBody> call, ChunkParser<T> parser, Deadline deadline, Executor executor) {
+        this.call = call;
+        this.parser = parser;
+        this.deadline = deadline;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers a factory of listeners. Every subscription gets its own listener.
+     *
+     * @param listeners The listener factory, which may return null to skip a subscription.
+     * @return This publisher, for method chaining.
+     */
+    public StreamPublisher<T> listener(Supplier<? extends StreamListener<T>> listeners) {
+        this.listeners = listeners;
+        return this;
+    }
+
+    private static ScheduledExecutorService watchdog() {
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ollama-stream-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+        return watchdog;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        StreamListener<T> listener = listeners.get();
+        StreamSubscription subscription = new StreamSubscription(
+                subscriber,
+                call.clone(),
+                listener == null ? new StreamListener<>() {} : listener
+        );
+        subscriber.onSubscribe(subscription);
+        executor.execute(subscription);
+    }
+
+    /**
+     * A subscription reading the response of one call.
+     */
+    private class StreamSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Call<ResponseBody> call;
+        private final StreamListener<T> listener;
+        private long demand;
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+        private volatile boolean waiting;
+        private volatile boolean finished;
+        private final AtomicBoolean terminated = new AtomicBoolean();
+        private volatile long started;
+        private volatile long lastChunk;
+        private volatile int chunks;
+
+        StreamSubscription(Flow.Subscriber<? super T> subscriber, Call<ResponseBody> call, StreamListener<T> listener) {
+            this.subscriber = subscriber;
+            this.call = call;
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Requested " + n + " chunks, demand must be positive.");
+                cancel();
+                return;
+            }
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            notifyAll();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            call.cancel();
+            listener.onCancel();
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            Throwable error = null;
+            try {
+                listener.onStart();
+                // Deadlines start once the listeners let the call go, so time spent queued does not count.
+                started = lastChunk = System.nanoTime();
+                watch();
+                listener.onRequest(call.request());
+                Response<ResponseBody> response = call.execute();
+                listener.onResponse(response.code());
+                if (!response.isSuccessful()) {
+                    String message;
+                    try (ResponseBody errorBody = response.errorBody()) {
+                        message = errorBody == null ? "" : errorBody.string();
+                    }
+                    throw new IOException("Stream failed with status " + response.code() + ": " + message);
+                }
+                try (ResponseBody body = response.body()) {
+                    BufferedSource source = body.source();
+                    String line;
+                    while (awaitDemand() && (line = source.readUtf8Line()) != null) {
+                        T chunk = parser.parse(line);
+                        if (chunk == null) continue;
+                        synchronized (this) {
+                            demand--;
+                        }
+                        lastChunk = System.nanoTime();
+                        chunks++;
+                        listener.onChunk(chunk);
+                        subscriber.onNext(chunk);
+                    }
+                }
+            }
+            catch (Throwable throwable) {
+                error = throwable;
+            }
+            finally {
+                finished = true;
+                Throwable outcome = failure != null ? failure : cancelled ? null : error;
+                try {
+                    if (failure != null || !cancelled) terminate(outcome);
+                }
+                finally {
+                    listener.onEnd(outcome);
+                }
+            }
+        }
+
+        /**
+         * Sends the terminal signal of the subscription, completing the subscriber if there is no
+         * failure. Only the first call has an effect, so a subscriber never receives both signals.
+         */
+        private void terminate(Throwable error) {
+            if (!terminated.compareAndSet(false, true)) return;
+            if (error == null) subscriber.onComplete();
+            else subscriber.onError(error);
+        }
+
+        /**
+         * Blocks until the subscriber has outstanding demand.
+         *
+         * @return False if the subscription was cancelled while waiting.
+         * @throws InterruptedException If the reader thread is interrupted, which cancels the call.
+         */
+        private synchronized boolean awaitDemand() throws InterruptedException {
+            if (demand == 0) waiting = true;
+            try {
+                while (demand == 0 && !cancelled) wait();
+            }
+            catch (InterruptedException e) {
+                cancel();
+                throw e;
+            }
+            finally {
+                if (waiting) {
+                    waiting = false;
+                    lastChunk = System.nanoTime();
+                }
+            }
+            return !cancelled;
+        }
+
+        /**
+         * Checks the deadlines, aborting the call if one passed and scheduling the next check otherwise.
+         */
+        private void watch() {
+            if (cancelled || finished) return;
+            long now = System.nanoTime();
+            long next = Long.MAX_VALUE;
+            Duration total = deadline.getTotal();
+            Duration firstToken = deadline.getFirstToken();
+            Duration idle = deadline.getIdle();
+            if (total != null)
+                next = Math.min(next, remaining(total, started, now, "Total"));
+            if (firstToken != null && chunks == 0)
+                next = Math.min(next, waiting ? firstToken.toNanos() : remaining(firstToken, started, now, "First token"));
+            if (idle != null)
+                next = Math.min(next, waiting || chunks == 0 ? idle.toNanos() : remaining(idle, lastChunk, now, "Idle"));
+            if (cancelled || finished || next == Long.MAX_VALUE) return;
+            WATCHDOG.schedule(this::watch, next, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Computes the time left before a deadline, aborting the call if it passed.
+         */
+        private long remaining(Duration limit, long since, long now, String name) {
+            long remaining = limit.toNanos() - (now - since);
+            if (remaining <= 0 && !cancelled && !finished) {
+                failure = new Deadline.ExceededException(name + " deadline of " + limit.toMillis() + " ms exceeded.");
+                cancel();
+            }
+            return Math.max(remaining, 1);
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package ollama.summarization;
+
+import ollama.Ollama;
+import ollama.models.inference.InferenceModel;
+import ollama.scheduling.RequestScheduler;
+import ollama.utilities.PromptTemplate;
+import ollama.utilities.TokenEstimator;
+import utils.Printer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Summarizes documents larger than the context of a model with a map-reduce pipeline. The document
+ * is split into overlapping chunks, every chunk is summarized in parallel, and the partial summaries
+ * are combined level by level, as many at a time as fit in a chunk, until one summary remains.
+ *
+ * <p> Chunks end at paragraph breaks chosen from the content of the paragraphs, so an edit only
+ * moves the chunk boundaries close to it. Combined with a {@link SummaryCache}, re-running the
+ * pipeline on an edited document only sends the prompts of the chunks that changed and of the
+ * reductions above them.
+ *
+ * <p> Example usage:
+ * <pre>
+ * Summarizer summarizer = new Summarizer.Builder(ollama)
+ *                 .model("llama3.2")
+ *                 .chunkTokens(2000)
+ *                 .cache(new SummaryCache(Path.of("summaries.ndjson")))
+ *                 .build();
+ * String summary = summarizer.summarize(document, progress -&gt; System.out.println(progress));
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class Summarizer {
+
+    private static final Printer log = new Printer(Summarizer.class);
+
+    /** Paragraph breaks: a line break followed by a blank line. */
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n[ \\t]*\\n\\s*");
+
+    /** Words and the whitespace after them, used to split paragraphs larger than a chunk. */
+    private static final Pattern WORD = Pattern.compile("\\S+\\s*|\\s+");
+
+    /** Out of how many paragraph ends one ends a chunk early, once the chunk is half full. */
+    private static final int BOUNDARY_SPACING = 4;
+
+    /**
+     * Stages of the pipeline.
+     */
+    public enum Stage {
+        /** Chunks of the document are summarized. */
+        MAP,
+        /** Partial summaries are combined. */
+        REDUCE
+    }
+
+    /**
+     * Progress of a summarization, reported every time a prompt completes.
+     *
+     * @param stage     The current stage.
+     * @param level     The reduction level, 0 for the map stage.
+     * @param completed The number of completed prompts of the level.
+     * @param total     The number of prompts of the level.
+     * @param cached    The number of prompts of the level answered from the cache.
+     */
+    public record Progress(Stage stage, int level, int completed, int total, int cached) {}
+
+    private final Ollama ollama;
+    private final String model;
+    private final PromptTemplate mapPrompt;
+    private final PromptTemplate reducePrompt;
+    private final int chunkTokens;
+    private final int overlapTokens;
+    private final int fanIn;
+    private final int parallelism;
+    private final SummaryCache cache;
+
+    /**
+     * Constructs a new Summarizer with the provided configuration.
+     *
+     * @param builder The builder object containing the configuration details.
+     */
+    private Summarizer(Builder builder) {
+        this.ollama = builder.ollama;
+        this.model = builder.model == null ? builder.ollama.getDefaultModel() : builder.model;
+        this.mapPrompt = builder.mapPrompt;
+        this.reducePrompt = builder.reducePrompt;
+        this.chunkTokens = builder.chunkTokens;
+        this.overlapTokens = builder.overlapTokens;
+        this.fanIn = builder.fanIn;
+        this.parallelism = builder.parallelism;
+        this.cache = builder.cache;
+    }
+
+    /**
+     * Summarizes a document.
+     *
+     * @param document The document.
+     * @return The summary.
+     * @throws RuntimeException If any of the requests fails.
+     */
+    public String summarize(String document) {
+        return summarize(document, progress -> {});
+    }
+
+    /**
+     * Summarizes a document, reporting progress on the calling thread.
+     *
+     * @param document The document.
+     * @param progress Receives the progress every time a prompt completes.
+     * @return The summary.
+     * @throws RuntimeException If any of the requests fails.
+     */
+    public String summarize(String document, Consumer<Progress> progress) {
+        List<String> chunks = chunk(document);
+        log.info("Summarizing a document of " + chunks.size() + " chunks with " + model + ".");
+        List<String> partials = run(Stage.MAP, 0, mapPrompt, chunks, progress);
+        for (int level = 1; partials.size() > 1; level++)
+            partials = run(Stage.REDUCE, level, reducePrompt, group(partials), progress);
+        return partials.isEmpty() ? "" : partials.get(0);
+    }
+
+    /**
+     * Splits a document into chunks, each starting with the end of the previous one, so that every
+     * chunk rendered into the map prompt fits in the chunk size. Chunks end at paragraph breaks
+     * where possible.
+     *
+     * @param document The document.
+     * @return The chunks, in document order.
+     */
+    public List<String> chunk(String document) {
+        TokenEstimator estimator = ollama.getTokenEstimator();
+        int budget = chunkTokens - overlapTokens - templateTokens(estimator, mapPrompt);
+        int maxUnits = Math.max(1, (int) (budget / estimator.ratio(model)));
+        List<String> bodies = new ArrayList<>();
+        StringBuilder body = new StringBuilder();
+        int units = 0;
+        for (String piece : pieces(document, maxUnits)) {
+            int pieceUnits = TokenEstimator.units(piece);
+            if (units > 0 && units + pieceUnits > maxUnits) {
+                bodies.add(body.toString());
+                body.setLength(0);
+                units = 0;
+            }
+            body.append(piece);
+            units += pieceUnits;
+            if (units >= maxUnits / 2 && Math.floorMod(piece.strip().hashCode(), BOUNDARY_SPACING) == 0) {
+                bodies.add(body.toString());
+                body.setLength(0);
+                units = 0;
+            }
+        }
+        if (!body.toString().isBlank()) bodies.add(body.toString());
+
+        List<String> chunks = new ArrayList<>(bodies.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            String chunk = bodies.get(i).strip();
+            if (i > 0 && overlapTokens > 0) chunk = overlap(estimator, bodies.get(i - 1)) + chunk;
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits a document into paragraphs, and paragraphs larger than a chunk into runs of words.
+     *
+     * @param document The document.
+     * @param maxUnits The maximum units of a piece.
+     * @return The pieces, which concatenate back into the document.
+     */
+    private static List<String> pieces(String document, int maxUnits) {
+        List<String> pieces = new ArrayList<>();
+        Matcher paragraphs = PARAGRAPH_BREAK.matcher(document);
+        int start = 0;
+        while (start < document.length()) {
+            int end = paragraphs.find() ? paragraphs.end() : document.length();
+            String paragraph = document.substring(start, end);
+            start = end;
+            if (TokenEstimator.units(paragraph) <= maxUnits) {
+                pieces.add(paragraph);
+                continue;
+            }
+            StringBuilder run = new StringBuilder();
+            int units = 0;
+            Matcher words = WORD.matcher(paragraph);
+            while (words.find()) {
+                int wordUnits = TokenEstimator.units(words.group());
+                if (units > 0 && units + wordUnits > maxUnits) {
+                    pieces.add(run.toString());
+                    run.setLength(0);
+                    units = 0;
+                }
+                run.append(words.group());
+                units += wordUnits;
+            }
+            if (run.length() > 0) pieces.add(run.toString());
+        }
+        return pieces;
+    }
+
+    /**
+     * Returns the end of a chunk to repeat at the start of the next one, starting at a word.
+     *
+     * @param estimator The token estimator.
+     * @param previous  The previous chunk.
+     * @return The overlap, followed by a paragraph break.
+     */
+    private String overlap(TokenEstimator estimator, String previous) {
+        String tail = estimator.trim(model, previous.strip(), overlapTokens);
+        int word = tail.length() < previous.strip().length() ? tail.indexOf(' ') + 1 : 0;
+        String overlap = tail.substring(word).strip();
+        return overlap.isEmpty() ? "" : overlap + "\n\n";
+    }
+
+    /**
+     * Groups partial summaries so every group rendered into the reduce prompt fits in a chunk, with
+     * at most the fan in per group. Every group but the last holds at least two summaries, so every
+     * level shrinks. A summary left over at the end joins the last group if it fits there.
+     *
+     * @param partials The partial summaries.
+     * @return The groups, each joined into the text of one reduce prompt.
+     */
+    private List<String> group(List<String> partials) {
+        TokenEstimator estimator = ollama.getTokenEstimator();
+        int budget = chunkTokens - templateTokens(estimator, reducePrompt);
+        List<String> groups = new ArrayList<>();
+        StringBuilder group = new StringBuilder();
+        int size = 0;
+        int tokens = 0;
+        int lastSize = 0;
+        int lastTokens = 0;
+        for (int i = 0; i < partials.size(); i++) {
+            String partial = partials.get(i);
+            int partialTokens = estimator.estimate(model, partial);
+            if (size >= 2 && (size == fanIn || tokens + partialTokens > budget)) {
+                groups.add(group.toString());
+                group.setLength(0);
+                lastSize = size;
+                lastTokens = tokens;
+                size = 0;
+                tokens = 0;
+            }
+            if (size > 0) group.append("\n\n");
+            group.append(partial);
+            size++;
+            tokens += partialTokens;
+        }
+        if (size == 1 && !groups.isEmpty() && lastSize < fanIn && lastTokens + tokens <= budget) groups.set(groups.size() - 1, groups.get(groups.size() - 1) + "\n\n" + group);
+        else groups.add(group.toString());
+        return groups;
+    }
+
+    /**
+     * Estimates the tokens a prompt template adds around its text.
+     *
+     * @param estimator The token estimator.
+     * @param template  The prompt template.
+     * @return The estimated tokens of the template rendered with an empty text.
+     */
+    private int templateTokens(TokenEstimator estimator, PromptTemplate template) {
+        return estimator.estimate(model, template.render(Map.of("text", "")));
+    }
+
+    /**
+     * Runs the prompts of a level in parallel, answering from the cache where possible.
+     *
+     * @param stage    The stage.
+     * @param level    The level.
+     * @param template The prompt template.
+     * @param inputs   The texts of the prompts.
+     * @param progress Receives the progress.
+     * @return The outputs, in input order.
+     * @throws RuntimeException If any of the requests fails. The remaining requests are cancelled.
+     */
+    private List<String> run(Stage stage, int level, PromptTemplate template, List<String> inputs, Consumer<Progress> progress) {
+        String[] outputs = new String[inputs.size()];
+        List<Callable<Integer>> requests = new ArrayList<>();
+        RequestScheduler.Scope scope = RequestScheduler.current();
+        int cached = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            String prompt = template.render(Map.of("text", inputs.get(i)));
+            String key = SummaryCache.key(model, prompt);
+            outputs[i] = cache == null ? null : cache.get(key);
+            if (outputs[i] != null) {
+                cached++;
+                continue;
+            }
+            int index = i;
+            requests.add(scope.wrap(() -> {
+                outputs[index] = ollama.inference(new InferenceModel.Builder()
+                        .model(model)
+                        .prompt(prompt)
+                        .build()).getResponse().strip();
+                if (cache != null) cache.put(key, outputs[index]);
+                return index;
+            }));
+        }
+        progress.accept(new Progress(stage, level, cached, inputs.size(), cached));
+        if (requests.isEmpty()) return List.of(outputs);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, requests.size()));
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        try {
+            for (Callable<Integer> request : requests) completion.submit(request);
+            for (int completed = cached; completed < inputs.size();) {
+                Future<Integer> result = completion.take();
+                result.get();
+                progress.accept(new Progress(stage, level, ++completed, inputs.size(), cached));
+            }
+            return List.of(outputs);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Builder class for constructing Summarizer objects.
+     */
+    public static class Builder {
+        private final Ollama ollama;
+        private String model;
+        private PromptTemplate mapPrompt = PromptTemplate.compile(
+                "Summarize the following part of a longer document. Keep every important fact, name and number.\n\n{{text}}");
+        private PromptTemplate reducePrompt = PromptTemplate.compile(
+                "The following are summaries of consecutive parts of one document. Combine them into a single summary, "
+                        + "keeping every important fact, name and number.\n\n{{text}}");
+        private int chunkTokens = 2000;
+        private int overlapTokens = 100;
+        private int fanIn = 8;
+        private int parallelism = 4;
+        private SummaryCache cache;
+
+        /**
+         * Constructs a builder for a client.
+         *
+         * @param ollama The client sending the prompts.
+         */
+        public Builder(Ollama ollama) {
+            this.ollama = ollama;
+        }
+
+        /**
+         * Sets the model.
+         *
+         * @param model The name of the model, the default model of the client if not set.
+         * @return The Builder object for method chaining.
+         */
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * Sets the prompt summarizing a chunk.
+         *
+         * @param mapPrompt The template of the prompt, with the chunk as {@code {{text}}}.
+         * @return The Builder object for method chaining.
+         */
+        public Builder mapPrompt(String mapPrompt) {
+            this.mapPrompt = PromptTemplate.compile(mapPrompt);
+            return this;
+        }
+
+        /**
+         * Sets the prompt combining partial summaries.
+         *
+         * @param reducePrompt The template of the prompt, with the partial summaries as {@code {{text}}}.
+         * @return The Builder object for method chaining.
+         */
+        public Builder reducePrompt(String reducePrompt) {
+            this.reducePrompt = PromptTemplate.compile(reducePrompt);
+            return this;
+        }
+
+        /**
+         * Sets the size of the prompts, a chunk or a group of partial summaries rendered into its
+         * template, which should leave room for the summary in the context of the model.
+         *
+         * @param chunkTokens The estimated tokens of a prompt, 2000 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder chunkTokens(int chunkTokens) {
+            this.chunkTokens = chunkTokens;
+            return this;
+        }
+
+        /**
+         * Sets the size of the end of a chunk repeated at the start of the next one.
+         *
+         * @param overlapTokens The estimated tokens of the overlap, 100 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder overlapTokens(int overlapTokens) {
+            this.overlapTokens = overlapTokens;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of partial summaries combined by one reduce prompt.
+         *
+         * @param fanIn The fan in, 8 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder fanIn(int fanIn) {
+            this.fanIn = fanIn;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of prompts sent at the same time.
+         *
+         * @param parallelism The parallelism, 4 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the cache of prompt outputs.
+         *
+         * @param cache The cache, or null to not cache outputs.
+         * @return The Builder object for method chaining.
+         */
+        public Builder cache(SummaryCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Builds the Summarizer.
+         *
+         * @return The constructed Summarizer.
+         * @throws IllegalArgumentException If a size is not positive, the overlap is not smaller
+         *                                  than half a chunk, or the fan in is less than 2.
+         */
+        public Summarizer build() {
+            if (chunkTokens <= 0 || parallelism <= 0 || overlapTokens < 0)
+                throw new IllegalArgumentException("Chunk size and parallelism must be positive.");
+            if (overlapTokens * 2 >= chunkTokens)
+                throw new IllegalArgumentException("Overlap must be smaller than half a chunk.");
+            if (fanIn < 2) throw new IllegalArgumentException("Fan in must be at least 2.");
+            if (!mapPrompt.getVariables().contains("text") || !reducePrompt.getVariables().contains("text"))
+                throw new IllegalArgumentException("Prompts must contain a {{text}} variable.");
+            return new Summarizer(this);
+        }
+    }
+}
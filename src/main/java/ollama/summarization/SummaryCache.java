@@ -0,0 +1,132 @@
+package ollama.summarization;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import utils.Printer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Caches the outputs of summarization prompts by the hash of the model and the rendered prompt.
+ * Re-running a summarization over an edited document only sends the prompts whose input changed.
+ * A cache backed by a file loads the entries of earlier runs and appends new ones as newline
+ * delimited JSON, so results survive restarts.
+ */
+public class SummaryCache implements Closeable {
+
+    private static final Printer log = new Printer(SummaryCache.class);
+
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    private final BufferedWriter writer;
+
+    /**
+     * Constructs an in-memory cache.
+     */
+    public SummaryCache() {
+        this.writer = null;
+    }
+
+    /**
+     * Constructs a cache backed by a file, loading the entries it already holds.
+     *
+     * @param file The cache file, created if it does not exist.
+     * @throws IOException If the file cannot be read or opened.
+     */
+    public SummaryCache(Path file) throws IOException {
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                for (String line; (line = reader.readLine()) != null;) {
+                    if (line.isBlank()) continue;
+                    JsonNode entry = mapper.readTree(line);
+                    entries.put(entry.get("key").asText(), entry.get("output").asText());
+                }
+            }
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Computes the key of a prompt.
+     *
+     * @param model  The model the prompt is sent to.
+     * @param prompt The rendered prompt.
+     * @return The hex encoded SHA-256 hash of the model and the prompt.
+     */
+    public static String key(String model, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(model).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return HexFormat.of().formatHex(digest.digest(prompt.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the cached output of a prompt.
+     *
+     * @param key The key of the prompt.
+     * @return The output, or null if the prompt is not cached.
+     */
+    public String get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches the output of a prompt. Failures to write the file are logged, so caching never
+     * fails a summarization.
+     *
+     * @param key    The key of the prompt.
+     * @param output The output.
+     */
+    public void put(String key, String output) {
+        if (entries.put(key, output) != null || writer == null) return;
+        synchronized (writer) {
+            try {
+                writer.write(mapper.createObjectNode().put("key", key).put("output", output).toString());
+                writer.newLine();
+                writer.flush();
+            }
+            catch (IOException e) {
+                log.warning("Could not cache summary: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached outputs.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Closes the cache file, if any.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer == null) return;
+        synchronized (writer) {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package ollama.tools;
+
+import ollama.Ollama;
+import ollama.models.chat.ChatModel;
+import ollama.models.chat.ChatResponse;
+import ollama.models.chat.Message;
+import ollama.models.chat.Tool;
+import ollama.models.chat.ToolCall;
+import ollama.scheduling.RequestScheduler;
+import ollama.utilities.JsonReaders;
+import utils.Printer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Runs a chat in which the model may call tools. Every step sends the conversation along with the
+ * tool definitions; the tool calls of the reply are executed in parallel, their results are added
+ * to the conversation as tool messages, and the next step is sent, until the model answers without
+ * calling tools or the step limit is reached. A model calling several independent tools at once
+ * therefore costs a single round trip, and the calls take as long as the slowest of them.
+ *
+ * <p> A failing tool, a call of an unknown tool or invalid arguments do not end the loop: the
+ * error is sent back as the result of the call, so the model can correct itself.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ToolLoop loop = new ToolLoop.Builder(ollama)
+ *                 .tool("get_weather", "Returns the current weather of a city.", WeatherQuery.class,
+ *                         query -> weatherService.current(query.city))
+ *                 .maxSteps(5)
+ *                 .build();
+ * ToolLoop.Result result = loop.run(new ChatModel("llama3.2", messages, false));
+ * </pre>
+ *
+ * @author Umut Ay Bora
+ * @version 0.0.6
+ */
+public class ToolLoop {
+
+    private static final Printer log = new Printer(ToolLoop.class);
+
+    /**
+     * The outcome of a tool loop.
+     *
+     * @param response The final response, answering without tool calls.
+     * @param messages The conversation, including the tool calls and their results but not the final reply.
+     * @param steps    The number of chat requests sent.
+     */
+    public record Result(ChatResponse response, List<Message> messages, int steps) {}
+
+    private final Ollama ollama;
+    private final Map<String, Handler<?>> handlers;
+    private final List<Tool> tools;
+    private final int maxSteps;
+    private final int parallelism;
+
+    /**
+     * Constructs a new ToolLoop with the provided configuration.
+     *
+     * @param builder The builder object containing the configuration details.
+     */
+    private ToolLoop(Builder builder) {
+        this.ollama = builder.ollama;
+        this.handlers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.handlers));
+        this.tools = builder.handlers.values().stream().map(handler -> handler.tool).toList();
+        this.maxSteps = builder.maxSteps;
+        this.parallelism = builder.parallelism;
+    }
+
+    /**
+     * Runs a chat until the model answers without calling tools. The requests are not streamed,
+     * so the model, format and keep alive of the prompt apply to every step.
+     *
+     * @param prompt The {@code ChatModel} containing the conversation. It is not modified.
+     * @return The final response and the conversation leading to it.
+     * @throws RuntimeException If a request fails, or the model still calls tools after the step limit.
+     */
+    public Result run(ChatModel prompt) {
+        String model = prompt.getModel() == null ? ollama.getDefaultModel() : prompt.getModel();
+        List<Message> messages = new ArrayList<>(prompt.getMessages());
+        for (int step = 1; step <= maxSteps; step++) {
+            ChatModel request = prompt.copy(model, new ArrayList<>(messages), false);
+            request.setTools(tools);
+            ChatResponse response = ollama.chat(request);
+            if (response.getChoices() == null || response.getChoices().isEmpty()) return new Result(response, messages, step);
+            List<ToolCall> calls = response.getChoices().get(0).getToolCalls();
+            if (calls.isEmpty()) return new Result(response, messages, step);
+
+            log.info("Step " + step + " calls " + calls.stream().map(ToolCall::getName).toList() + ".");
+            messages.add(response.getChoices().get(0).getMessage());
+            messages.addAll(execute(calls));
+        }
+        throw new RuntimeException("Model " + model + " still calls tools after " + maxSteps + " steps.");
+    }
+
+    /**
+     * Executes tool calls in parallel, within the request scope of the caller.
+     *
+     * @param calls The calls.
+     * @return One tool message per call, in call order.
+     */
+    List<Message> execute(List<ToolCall> calls) {
+        if (calls.size() == 1) return List.of(execute(calls.get(0)));
+        List<Callable<Message>> tasks = new ArrayList<>();
+        RequestScheduler.Scope scope = RequestScheduler.current();
+        for (ToolCall call : calls) tasks.add(scope.wrap(() -> execute(call)));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try {
+            List<Message> results = new ArrayList<>();
+            for (Future<Message> future : executor.invokeAll(tasks)) results.add(future.get());
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Executes a tool call, turning a failure into an error result.
+     *
+     * @param call The call.
+     * @return The tool message holding the result.
+     */
+    private Message execute(ToolCall call) {
+        Handler<?> handler = handlers.get(call.getName());
+        if (handler == null) return Message.tool(call, "Error: unknown tool " + call.getName() + ".");
+        try {
+            Object result = handler.call(call);
+            return Message.tool(call, result instanceof String text ? text : mapper.writeValueAsString(result));
+        }
+        catch (IOException | RuntimeException e) {
+            log.warning("Tool " + call.getName() + " failed: " + e.getMessage());
+            return Message.tool(call, "Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the tools offered to the model.
+     *
+     * @return The tool definitions.
+     */
+    public List<Tool> getTools() {
+        return tools;
+    }
+
+    /**
+     * A tool definition along with the function executing its calls.
+     *
+     * @param <T> The arguments type.
+     */
+    private record Handler<T>(Tool tool, Class<T> arguments, Function<T, ?> function) {
+
+        Object call(ToolCall call) throws IOException {
+            T value = JsonReaders.readerFor(arguments).readValue(call.getArguments());
+            return function.apply(value);
+        }
+    }
+
+    /**
+     * Builder class for constructing ToolLoop objects.
+     */
+    public static class Builder {
+        private final Ollama ollama;
+        private final Map<String, Handler<?>> handlers = new LinkedHashMap<>();
+        private int maxSteps = 8;
+        private int parallelism = 4;
+
+        /**
+         * Constructs a builder for a client.
+         *
+         * @param ollama The client sending the chat requests.
+         */
+        public Builder(Ollama ollama) {
+            this.ollama = ollama;
+        }
+
+        /**
+         * Adds a tool. Its arguments are described by the JSON schema of a class, with every field
+         * required, and are mapped onto an instance of the class for each call.
+         *
+         * @param name        The name the model calls the tool by.
+         * @param description What the tool does, which the model reads to decide when to call it.
+         * @param arguments   The class of the arguments.
+         * @param function    The function executing a call. A string result is sent as it is,
+         *                    any other result as JSON.
+         * @param <T>         The arguments type.
+         * @return The Builder object for method chaining.
+         */
+        public <T> Builder tool(String name, String description, Class<T> arguments, Function<T, ?> function) {
+            handlers.put(name, new Handler<>(Tool.of(name, description, arguments), arguments, function));
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chat requests of a run.
+         *
+         * @param maxSteps The step limit, 8 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder maxSteps(int maxSteps) {
+            this.maxSteps = maxSteps;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of tool calls executed at the same time.
+         *
+         * @param parallelism The parallelism, 4 by default.
+         * @return The Builder object for method chaining.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Builds the ToolLoop.
+         *
+         * @return The constructed ToolLoop.
+         * @throws IllegalArgumentException If no tool is added, or a setting is not positive.
+         */
+        public ToolLoop build() {
+            if (handlers.isEmpty()) throw new IllegalArgumentException("At least one tool must be added.");
+            if (maxSteps <= 0 || parallelism <= 0) throw new IllegalArgumentException("Step limit and parallelism must be positive.");
+            return new ToolLoop(this);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ollama.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event committed for every traced request. Phases that were not reached are recorded as -1.
+ */
+@Name("ollama.Request")
+@Label("Ollama Request")
+@Category("Ollama")
+@Description("Lifecycle of a request sent to an Ollama server")
+@StackTrace(false)
+class RequestEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Model")
+    String model;
+
+    @Label("Local Queue")
+    @Timespan
+    long localQueue;
+
+    @Label("Serialization")
+    @Timespan
+    long serialization;
+
+    @Label("Exchange")
+    @Timespan
+    long exchange;
+
+    @Label("Time To First Token")
+    @Timespan
+    long timeToFirstToken;
+
+    @Label("Decode")
+    @Timespan
+    long decode;
+
+    @Label("Response Mapping")
+    @Timespan
+    long responseMapping;
+
+    @Label("Server Model Load")
+    @Timespan
+    long serverModelLoad;
+
+    @Label("Server Prompt Evaluation")
+    @Timespan
+    long serverPromptEval;
+
+    @Label("Server Decode")
+    @Timespan
+    long serverDecode;
+
+    @Label("Server Total")
+    @Timespan
+    long serverTotal;
+
+    @Label("Prompt Tokens")
+    int promptTokens;
+
+    @Label("Output Tokens")
+    int outputTokens;
+
+    @Label("Failure")
+    String failure;
+}
@@ -0,0 +1,292 @@
+package ollama.tracing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lifecycle trace of a single request. Client side phases are recorded as nanosecond
+ * timestamps, and are combined with the durations the server reports for model loading,
+ * prompt evaluation and decoding.
+ *
+ * <p> The phases of a request are:
+ * <pre>
+ * STARTED -> DISPATCHED      local queueing
+ * DISPATCHED -> SERIALIZED   building the request and serializing its body
+ * SERIALIZED -> RESPONDED    connection, upload, server queueing and processing until the response arrives
+ * STARTED -> FIRST_TOKEN     time to first token, streamed requests only
+ * FIRST_TOKEN -> LAST_TOKEN  decoding, streamed requests only
+ * RESPONDED -> MAPPED        mapping the response into the requested type
+ * </pre>
+ */
+public class RequestTrace {
+
+    /**
+     * A point in the lifecycle of a request.
+     */
+    public enum Phase {
+        /** The request was issued by the caller. */
+        STARTED,
+        /** The request left the local queue. */
+        DISPATCHED,
+        /** The request body was serialized. */
+        SERIALIZED,
+        /** The response, or the response headers of a streamed request, arrived. */
+        RESPONDED,
+        /** The first chunk of a streamed response arrived. */
+        FIRST_TOKEN,
+        /** The last chunk of a streamed response arrived. */
+        LAST_TOKEN,
+        /** The response was mapped into the requested type. */
+        MAPPED,
+        /** The request finished. */
+        FINISHED
+    }
+
+    /**
+     * A timed phase, with wall clock timestamps as expected by tracing systems such as OpenTelemetry.
+     *
+     * @param name            The phase name.
+     * @param startEpochNanos The start of the phase, in nanoseconds since the epoch.
+     * @param endEpochNanos   The end of the phase, in nanoseconds since the epoch.
+     */
+    public record Span(String name, long startEpochNanos, long endEpochNanos) {}
+
+    private final String endpoint;
+    private final String model;
+    private final long startEpochNanos;
+    private final long[] marks = new long[Phase.values().length];
+    private final RequestEvent event = new RequestEvent();
+    private long loadDuration;
+    private long promptEvalDuration;
+    private long evalDuration;
+    private long totalDuration;
+    private int promptTokens;
+    private int outputTokens;
+    private Throwable failure;
+
+    /**
+     * Starts a trace.
+     *
+     * @param endpoint The endpoint of the request.
+     * @param model    The model of the request.
+     */
+    public RequestTrace(String endpoint, String model) {
+        this(endpoint, model, System.nanoTime());
+    }
+
+    /**
+     * Starts a trace at an earlier point in time, such as the moment a request was queued.
+     *
+     * @param endpoint The endpoint of the request.
+     * @param model    The model of the request.
+     * @param started  The {@link System#nanoTime()} at which the request was issued.
+     */
+    public RequestTrace(String endpoint, String model, long started) {
+        this.endpoint = endpoint;
+        this.model = model;
+        this.marks[Phase.STARTED.ordinal()] = started;
+        this.startEpochNanos = System.currentTimeMillis() * 1_000_000L - (System.nanoTime() - started);
+        event.begin();
+    }
+
+    /**
+     * Records that a phase was reached now. Phases reached earlier are kept, except for
+     * {@link Phase#LAST_TOKEN} which moves with every chunk.
+     *
+     * @param phase The phase reached.
+     * @return This trace, for method chaining.
+     */
+    public RequestTrace mark(Phase phase) {
+        if (marks[phase.ordinal()] == 0 || phase == Phase.LAST_TOKEN) marks[phase.ordinal()] = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * Records the durations and token counts reported by the server.
+     *
+     * @param loadDuration       The model load duration in nanoseconds.
+     * @param promptEvalDuration The prompt evaluation duration in nanoseconds.
+     * @param evalDuration       The decoding duration in nanoseconds.
+     * @param totalDuration      The total server side duration in nanoseconds.
+     * @param promptTokens       The number of prompt tokens evaluated.
+     * @param outputTokens       The number of tokens generated.
+     * @return This trace, for method chaining.
+     */
+    public RequestTrace server(long loadDuration, long promptEvalDuration, long evalDuration, long totalDuration,
+                               int promptTokens, int outputTokens) {
+        this.loadDuration = loadDuration;
+        this.promptEvalDuration = promptEvalDuration;
+        this.evalDuration = evalDuration;
+        this.totalDuration = totalDuration;
+        this.promptTokens = promptTokens;
+        this.outputTokens = outputTokens;
+        return this;
+    }
+
+    /**
+     * Records the failure of the request.
+     *
+     * @param failure The failure.
+     * @return This trace, for method chaining.
+     */
+    public RequestTrace fail(Throwable failure) {
+        this.failure = failure;
+        return this;
+    }
+
+    /**
+     * Returns the nanoseconds elapsed between two phases.
+     *
+     * @param from The earlier phase.
+     * @param to   The later phase.
+     * @return The elapsed nanoseconds, or -1 if either phase was not reached.
+     */
+    public long between(Phase from, Phase to) {
+        long start = marks[from.ordinal()];
+        long end = marks[to.ordinal()];
+        return start == 0 || end == 0 ? -1 : end - start;
+    }
+
+    /**
+     * Returns the duration of each phase that was reached, in nanoseconds. Server side durations are
+     * included when the server reported them, along with the time spent in the network and in the server
+     * queue, which is the part of the exchange not covered by the server total.
+     *
+     * @return The phase durations by name, in lifecycle order.
+     */
+    public Map<String, Long> breakdown() {
+        Map<String, Long> breakdown = new LinkedHashMap<>();
+        put(breakdown, "local_queue", between(Phase.STARTED, Phase.DISPATCHED));
+        put(breakdown, "serialization", between(Phase.DISPATCHED, Phase.SERIALIZED));
+        put(breakdown, "exchange", between(Phase.SERIALIZED, Phase.RESPONDED));
+        put(breakdown, "time_to_first_token", between(Phase.STARTED, Phase.FIRST_TOKEN));
+        put(breakdown, "decode", between(Phase.FIRST_TOKEN, Phase.LAST_TOKEN));
+        put(breakdown, "response_mapping", between(Phase.RESPONDED, Phase.MAPPED));
+        put(breakdown, "total", between(Phase.STARTED, Phase.FINISHED));
+        if (totalDuration > 0) {
+            long end = marks[Phase.LAST_TOKEN.ordinal()] != 0 ? marks[Phase.LAST_TOKEN.ordinal()] : marks[Phase.RESPONDED.ordinal()];
+            long start = marks[Phase.SERIALIZED.ordinal()];
+            if (start != 0 && end != 0) put(breakdown, "network_and_server_queue", Math.max(0, end - start - totalDuration));
+            breakdown.put("server_model_load", loadDuration);
+            breakdown.put("server_prompt_eval", promptEvalDuration);
+            breakdown.put("server_decode", evalDuration);
+            breakdown.put("server_total", totalDuration);
+        }
+        return breakdown;
+    }
+
+    /**
+     * Returns the client side phases as spans with wall clock timestamps.
+     *
+     * @return The spans of the phases that were reached.
+     */
+    public List<Span> spans() {
+        List<Span> spans = new ArrayList<>();
+        span(spans, "local_queue", Phase.STARTED, Phase.DISPATCHED);
+        span(spans, "serialization", Phase.DISPATCHED, Phase.SERIALIZED);
+        span(spans, "exchange", Phase.SERIALIZED, Phase.RESPONDED);
+        span(spans, "time_to_first_token", Phase.STARTED, Phase.FIRST_TOKEN);
+        span(spans, "decode", Phase.FIRST_TOKEN, Phase.LAST_TOKEN);
+        span(spans, "response_mapping", Phase.RESPONDED, Phase.MAPPED);
+        return spans;
+    }
+
+    /**
+     * Returns the attributes of the request, named after the OpenTelemetry semantic conventions
+     * for generative AI where one exists.
+     *
+     * @return The request attributes.
+     */
+    public Map<String, Object> attributes() {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("gen_ai.system", "ollama");
+        attributes.put("gen_ai.request.model", model);
+        attributes.put("gen_ai.usage.input_tokens", promptTokens);
+        attributes.put("gen_ai.usage.output_tokens", outputTokens);
+        attributes.put("url.path", endpoint);
+        if (failure != null) attributes.put("error.type", failure.getClass().getName());
+        return attributes;
+    }
+
+    /**
+     * Marks the trace finished and commits its JFR event, if the event is enabled.
+     */
+    void finish() {
+        mark(Phase.FINISHED);
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.endpoint = endpoint;
+        event.model = model;
+        event.localQueue = between(Phase.STARTED, Phase.DISPATCHED);
+        event.serialization = between(Phase.DISPATCHED, Phase.SERIALIZED);
+        event.exchange = between(Phase.SERIALIZED, Phase.RESPONDED);
+        event.timeToFirstToken = between(Phase.STARTED, Phase.FIRST_TOKEN);
+        event.decode = between(Phase.FIRST_TOKEN, Phase.LAST_TOKEN);
+        event.responseMapping = between(Phase.RESPONDED, Phase.MAPPED);
+        event.serverModelLoad = loadDuration;
+        event.serverPromptEval = promptEvalDuration;
+        event.serverDecode = evalDuration;
+        event.serverTotal = totalDuration;
+        event.promptTokens = promptTokens;
+        event.outputTokens = outputTokens;
+        event.failure = failure == null ? null : failure.toString();
+        event.commit();
+    }
+
+    /**
+     * Returns the endpoint of the request.
+     *
+     * @return The endpoint.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the model of the request.
+     *
+     * @return The model name.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the start of the request in nanoseconds since the epoch.
+     *
+     * @return The start timestamp.
+     */
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    /**
+     * Returns the failure of the request.
+     *
+     * @return The failure, or null if the request succeeded.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(endpoint).append(" ").append(model).append(":");
+        breakdown().forEach((name, nanos) -> builder.append(" ").append(name).append("=").append(nanos / 1_000_000.0).append("ms"));
+        return builder.toString();
+    }
+
+    private static void put(Map<String, Long> breakdown, String name, long nanos) {
+        if (nanos >= 0) breakdown.put(name, nanos);
+    }
+
+    private void span(List<Span> spans, String name, Phase from, Phase to) {
+        long start = marks[from.ordinal()];
+        long end = marks[to.ordinal()];
+        if (start == 0 || end == 0) return;
+        long origin = marks[Phase.STARTED.ordinal()];
+        spans.add(new Span(name, startEpochNanos + (start - origin), startEpochNanos + (end - origin)));
+    }
+}
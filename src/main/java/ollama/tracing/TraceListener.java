@@ -0,0 +1,26 @@
+package ollama.tracing;
+
+/**
+ * Receives every finished request trace, for example to export it as OpenTelemetry spans.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ollama.getTracer().addListener(trace -&gt; {
+ *     Span span = tracer.spanBuilder(trace.getEndpoint())
+ *             .setStartTimestamp(trace.getStartEpochNanos(), TimeUnit.NANOSECONDS)
+ *             .startSpan();
+ *     trace.attributes().forEach((key, value) -&gt; span.setAttribute(key, String.valueOf(value)));
+ *     ...
+ * });
+ * </pre>
+ */
+@FunctionalInterface
+public interface TraceListener {
+
+    /**
+     * Called once a traced request finished, on the thread that finished it.
+     *
+     * @param trace The finished trace.
+     */
+    void onTrace(RequestTrace trace);
+}
@@ -0,0 +1,137 @@
+package ollama.tracing;
+
+import okhttp3.Request;
+import ollama.streaming.StreamListener;
+import utils.Printer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Creates request traces and hands the finished ones to the registered listeners.
+ * A disabled tracer creates no traces at all, so tracing costs nothing unless it is enabled.
+ */
+public class Tracer {
+
+    private static final Printer log = new Printer(Tracer.class);
+
+    private final List<TraceListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled;
+
+    /**
+     * Constructs a tracer.
+     *
+     * @param enabled True to trace requests.
+     */
+    public Tracer(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts a trace, if tracing is enabled.
+     *
+     * @param endpoint The endpoint of the request.
+     * @param model    The model of the request.
+     * @return The trace, or null if tracing is disabled.
+     */
+    public RequestTrace start(String endpoint, String model) {
+        return enabled ? new RequestTrace(endpoint, model) : null;
+    }
+
+    /**
+     * Finishes a trace, committing its JFR event and passing it to the listeners.
+     *
+     * @param trace The trace, ignored if null.
+     */
+    public void finish(RequestTrace trace) {
+        if (trace == null) return;
+        trace.finish();
+        for (TraceListener listener : listeners) {
+            try {
+                listener.onTrace(trace);
+            }
+            catch (RuntimeException e) {
+                log.warning("Trace listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Creates a stream listener tracing one subscription, if tracing is enabled.
+     *
+     * @param endpoint The endpoint of the request.
+     * @param model    The model of the request.
+     * @param onChunk  Records the server side durations carried by a chunk, if any.
+     * @param <T>      The chunk type.
+     * @return The listener, or null if tracing is disabled.
+     */
+    public <T> StreamListener<T> stream(String endpoint, String model, BiConsumer<RequestTrace, T> onChunk) {
+        RequestTrace trace = start(endpoint, model);
+        if (trace == null) return null;
+        return new StreamListener<>() {
+            @Override
+            public void onStart() {
+                trace.mark(RequestTrace.Phase.DISPATCHED);
+            }
+
+            @Override
+            public void onRequest(Request request) {
+                trace.mark(RequestTrace.Phase.SERIALIZED);
+            }
+
+            @Override
+            public void onResponse(int code) {
+                trace.mark(RequestTrace.Phase.RESPONDED);
+            }
+
+            @Override
+            public void onChunk(T chunk) {
+                trace.mark(RequestTrace.Phase.FIRST_TOKEN).mark(RequestTrace.Phase.LAST_TOKEN);
+                onChunk.accept(trace, chunk);
+            }
+
+            @Override
+            public void onEnd(Throwable failure) {
+                if (failure != null) trace.fail(failure);
+                finish(trace);
+            }
+        };
+    }
+
+    /**
+     * Registers a listener of finished traces.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(TraceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener of finished traces.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(TraceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Checks if requests are traced.
+     *
+     * @return True if tracing is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables tracing.
+     *
+     * @param enabled True to trace requests.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
@@ -0,0 +1,96 @@
+package ollama.utilities;
+
+import ollama.models.chat.ChatModel;
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A chat template made of a fixed message prefix, such as a system prompt, followed by one
+ * templated message. The prefix messages are shared by every rendered {@code ChatModel} rather
+ * than copied, so they must not be modified after the template is created.
+ *
+ * <p> Example usage:
+ * <pre>
+ * ChatTemplate template = ChatTemplate.of(
+ *         "You are a sentiment classifier.",
+ *         "Classify the following review:\n{{review}}"
+ * );
+ * ChatResponse response = ollama.chat(template.render("gemma3:27b", Map.of("review", review)));
+ * </pre>
+ */
+public class ChatTemplate {
+
+    /** Messages shared by every rendered conversation. */
+    private final List<Message> prefix;
+
+    /** Role of the templated message. */
+    private final Role role;
+
+    /** Template of the message following the prefix. */
+    private final PromptTemplate template;
+
+    /**
+     * Constructs a chat template.
+     *
+     * @param prefix   The messages shared by every rendered conversation.
+     * @param role     The role of the templated message.
+     * @param template The template of the message following the prefix.
+     */
+    public ChatTemplate(List<Message> prefix, Role role, PromptTemplate template) {
+        this.prefix = List.copyOf(prefix);
+        this.role = role;
+        this.template = template;
+    }
+
+    /**
+     * Creates a chat template out of a system prompt and a user message template.
+     *
+     * @param systemPrompt The system prompt.
+     * @param userTemplate The user message template, with variables written as {@code {{name}}}.
+     * @return The chat template.
+     */
+    public static ChatTemplate of(String systemPrompt, String userTemplate) {
+        return new ChatTemplate(
+                List.of(new Message(Role.system, systemPrompt)),
+                Role.user,
+                PromptTemplate.compile(userTemplate)
+        );
+    }
+
+    /**
+     * Renders a conversation. The returned {@code ChatModel} owns its message list and can be
+     * extended, while the prefix messages inside it are shared.
+     *
+     * @param model  The model name, or null to use the default model of the client.
+     * @param values The variable values.
+     * @return A new {@code ChatModel}.
+     */
+    public ChatModel render(String model, Map<String, ?> values) {
+        List<Message> messages = new ArrayList<>(prefix.size() + 1);
+        messages.addAll(prefix);
+        messages.add(template.message(role, values));
+        return new ChatModel(model, messages, false);
+    }
+
+    /**
+     * Returns the shared message prefix.
+     *
+     * @return An unmodifiable list of the prefix messages.
+     */
+    public List<Message> getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the template of the message following the prefix.
+     *
+     * @return The message template.
+     */
+    public PromptTemplate getTemplate() {
+        return template;
+    }
+}
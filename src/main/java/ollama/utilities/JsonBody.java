@@ -0,0 +1,112 @@
+package ollama.utilities;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * A JSON request body, gzip compressed on the fly if it is at least as large as a threshold.
+ * The JSON is serialized once; compression streams it into the connection without buffering the
+ * compressed body, so it can be written again if the request is retried.
+ */
+public class JsonBody extends RequestBody {
+
+    /**
+     * Media type of JSON bodies.
+     */
+    public static final MediaType JSON = MediaType.get("application/json; charset=UTF-8");
+
+    private final Buffer json;
+    private final boolean compressed;
+
+    private JsonBody(Buffer json, int compressionThreshold) {
+        this.json = json;
+        this.compressed = compressionThreshold > 0 && json.size() >= compressionThreshold;
+    }
+
+    /**
+     * Serializes a value into a JSON body.
+     *
+     * @param value                The value to serialize.
+     * @param compressionThreshold The minimum size in bytes of compressed bodies, or 0 to never compress.
+     * @return The body.
+     * @throws RuntimeException If the value cannot be serialized.
+     */
+    public static JsonBody of(Object value, int compressionThreshold) {
+        Buffer json = new Buffer();
+        try {
+            mapper.writeValue(json.outputStream(), value);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new JsonBody(json, compressionThreshold);
+    }
+
+    /**
+     * Creates a body out of serialized JSON. The buffer is owned by the body afterwards.
+     *
+     * @param json                 The serialized JSON.
+     * @param compressionThreshold The minimum size in bytes of compressed bodies, or 0 to never compress.
+     * @return The body.
+     */
+    public static JsonBody of(Buffer json, int compressionThreshold) {
+        return new JsonBody(json, compressionThreshold);
+    }
+
+    /**
+     * Checks if the body is sent compressed.
+     *
+     * @return True if the body is gzip compressed.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Returns the headers describing the encoding of the body.
+     *
+     * @return A {@code Content-Encoding} header if the body is compressed, no headers otherwise.
+     */
+    public Map<String, String> headers() {
+        return compressed ? Map.of("Content-Encoding", "gzip") : Map.of();
+    }
+
+    /**
+     * Returns the uncompressed JSON.
+     *
+     * @return The JSON string.
+     */
+    public String utf8() {
+        return json.clone().readUtf8();
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        return compressed ? -1 : json.size();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (!compressed) {
+            sink.writeAll(json.clone());
+            return;
+        }
+        BufferedSink gzip = Okio.buffer(new GzipSink(sink));
+        gzip.writeAll(json.clone());
+        gzip.close();
+    }
+}
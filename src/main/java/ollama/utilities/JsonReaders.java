@@ -0,0 +1,85 @@
+package ollama.utilities;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import utils.Printer;
+
+import java.io.IOException;
+
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Prebuilt Jackson readers, one per target type, for the response types parsed on every request.
+ * Readers are built once from a copy of the shared mapper, so deserializers are resolved once per
+ * type rather than looked up on every call. The copy keeps the configuration of the shared mapper,
+ * so typed results are as strict about unknown properties as they are when read with the mapper.
+ *
+ * <p> If {@code com.fasterxml.jackson.module:jackson-module-blackbird} is on the classpath, it is
+ * registered on the copy, replacing reflective field access with generated accessors. Use the
+ * Blackbird version matching the Jackson version on the classpath.
+ */
+public class JsonReaders {
+
+    private static final Printer log = new Printer(JsonReaders.class);
+
+    /** Class name of the optional Blackbird module. */
+    private static final String BLACKBIRD = "com.fasterxml.jackson.module.blackbird.BlackbirdModule";
+
+    /** Mapper the readers are built from. */
+    private static final ObjectMapper readerMapper = readerMapper();
+
+    /** Readers per target type. */
+    private static final ClassValue<ObjectReader> readers = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return readerMapper.readerFor(type);
+        }
+    };
+
+    /**
+     * Returns the prebuilt reader of a type.
+     *
+     * @param type The target type.
+     * @return The reader.
+     */
+    public static ObjectReader readerFor(Class<?> type) {
+        return readers.get(type);
+    }
+
+    /**
+     * Parses a JSON string into a type.
+     *
+     * @param json The JSON string.
+     * @param type The target type.
+     * @param <T>  The target type.
+     * @return The parsed value.
+     * @throws IOException If the JSON cannot be parsed into the type.
+     */
+    public static <T> T read(String json, Class<T> type) throws IOException {
+        return readers.get(type).readValue(json);
+    }
+
+    /**
+     * Checks if the Blackbird module is registered.
+     *
+     * @return True if readers use generated accessors.
+     */
+    public static boolean isBlackbirdEnabled() {
+        return readerMapper.getRegisteredModuleIds().stream().anyMatch(id -> id.toString().contains("Blackbird"));
+    }
+
+    private static ObjectMapper readerMapper() {
+        ObjectMapper copy = mapper.copy();
+        try {
+            copy.registerModule((Module) Class.forName(BLACKBIRD).getDeclaredConstructor().newInstance());
+        }
+        catch (ClassNotFoundException ignored) {
+            // Blackbird is optional
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            log.warning("Could not register Blackbird, falling back to reflection: " + e);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,140 @@
+package ollama.utilities;
+
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A prompt template which is parsed once into literal and variable segments and rendered many times.
+ * Variables are written as {@code {{name}}}. Rendering appends the segments into a builder which is
+ * reused per thread, so the only allocation per render is the resulting string.
+ *
+ * <p> Example usage:
+ * <pre>
+ * PromptTemplate template = PromptTemplate.compile("Classify the following review:\n{{review}}");
+ * InferenceModel prompt = new InferenceModel.Builder()
+ *                 .model("gemma3:27b")
+ *                 .prompt(template.render(Map.of("review", review)))
+ *                 .build();
+ * </pre>
+ */
+public class PromptTemplate {
+
+    /** Reusable render buffer, one per thread. */
+    private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    /** Largest buffer kept for reuse, larger ones are dropped after rendering. */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    /** Literal segments. {@code literals[i]} precedes {@code variables[i]}, the last literal closes the template. */
+    private final String[] literals;
+
+    /** Variable names, in order of appearance. */
+    private final String[] variables;
+
+    /** Total length of the literal segments, used to presize renders. */
+    private final int literalLength;
+
+    private PromptTemplate(String[] literals, String[] variables) {
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses a template into segments.
+     *
+     * @param template The template text, with variables written as {@code {{name}}}.
+     * @return The compiled template.
+     * @throws IllegalArgumentException If a variable is not closed or has an empty name.
+     */
+    public static PromptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int position = 0;
+        int start;
+        while ((start = template.indexOf("{{", position)) >= 0) {
+            int end = template.indexOf("}}", start + 2);
+            if (end < 0)
+                throw new IllegalArgumentException("Unclosed variable at index " + start + ".");
+            String name = template.substring(start + 2, end).trim();
+            if (name.isEmpty())
+                throw new IllegalArgumentException("Empty variable name at index " + start + ".");
+            literals.add(template.substring(position, start));
+            variables.add(name);
+            position = end + 2;
+        }
+        literals.add(template.substring(position));
+        return new PromptTemplate(literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+
+    /**
+     * Appends the rendered template to a target.
+     *
+     * @param target The builder to append to.
+     * @param values The variable values.
+     * @return The target, for method chaining.
+     * @throws IllegalArgumentException If a variable has no value.
+     */
+    public StringBuilder renderTo(StringBuilder target, Map<String, ?> values) {
+        for (int i = 0; i < variables.length; i++) {
+            target.append(literals[i]);
+            Object value = values.get(variables[i]);
+            if (value == null && !values.containsKey(variables[i]))
+                throw new IllegalArgumentException("No value for variable '" + variables[i] + "'.");
+            if (value instanceof CharSequence sequence) target.append(sequence);
+            else target.append(value);
+        }
+        return target.append(literals[variables.length]);
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param values The variable values.
+     * @return The rendered text.
+     * @throws IllegalArgumentException If a variable has no value.
+     */
+    public String render(Map<String, ?> values) {
+        if (variables.length == 0) return literals[0];
+        StringBuilder target = buffer.get();
+        target.setLength(0);
+        target.ensureCapacity(literalLength + 64 * variables.length);
+        try {
+            return renderTo(target, values).toString();
+        }
+        finally {
+            if (target.capacity() > MAX_RETAINED_CAPACITY) buffer.remove();
+        }
+    }
+
+    /**
+     * Renders the template into a chat message.
+     *
+     * @param role   The role of the message.
+     * @param values The variable values.
+     * @return A new message holding the rendered text.
+     */
+    public Message message(Role role, Map<String, ?> values) {
+        return new Message(role, render(values));
+    }
+
+    /**
+     * Returns the distinct variable names of the template, in order of appearance.
+     *
+     * @return The variable names.
+     */
+    public Set<String> getVariables() {
+        Set<String> names = new LinkedHashSet<>();
+        Collections.addAll(names, variables);
+        return names;
+    }
+}
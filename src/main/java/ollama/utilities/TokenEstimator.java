@@ -0,0 +1,282 @@
+package ollama.utilities;
+
+import ollama.models.chat.Message;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A fast, allocation-free local estimator of prompt token counts.
+ * Text is scanned once and split into rough units: every run of up to four letters or digits,
+ * every symbol, and every non-latin character counts as one unit. Units are converted into tokens
+ * with a ratio and a fixed overhead for the chat template kept per model family, fitted to the
+ * {@code prompt_eval_count} values the server reports. Until a family has been observed a few
+ * times, the default ratio is used without overhead.
+ *
+ * <p> Example usage:
+ * <pre>
+ * TokenEstimator estimator = new TokenEstimator();
+ * int tokens = estimator.estimate("gemma3:27b", prompt);
+ * estimator.observe("gemma3:27b", TokenEstimator.units(prompt), response.getPromptEvalCount());
+ * </pre>
+ */
+public class TokenEstimator {
+
+    /** Estimated tokens added around every chat message by the chat template. */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    /** Length of a letter or digit run counted as one unit. */
+    private static final int RUN_LENGTH = 4;
+
+    /** Weight of a new observation in the moving fit of a family. */
+    private static final double SMOOTHING = 0.2;
+
+    /** Observations of a family needed before its fit replaces the default ratio. */
+    private static final int MIN_SAMPLES = 3;
+
+    /** Factor by which an observation may differ from the fit before it is ignored as an outlier. */
+    private static final double OUTLIER = 2;
+
+    /** Squared coefficient of variation of the prompt sizes needed to fit the overhead. */
+    private static final double MIN_SPREAD = 0.01;
+
+    /** Tokens per unit used before a family has been observed. */
+    private final double defaultRatio;
+
+    /** Calibrations per model family. */
+    private final ConcurrentHashMap<String, Calibration> families = new ConcurrentHashMap<>();
+
+    /** Calibrations per model name, resolved to their family once. */
+    private final ConcurrentHashMap<String, Calibration> models = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an estimator which assumes one token per unit until calibrated.
+     */
+    public TokenEstimator() {
+        this(1.0);
+    }
+
+    /**
+     * Constructs an estimator with a given uncalibrated ratio.
+     *
+     * @param defaultRatio Tokens per unit used before a family has been observed.
+     */
+    public TokenEstimator(double defaultRatio) {
+        this.defaultRatio = defaultRatio;
+    }
+
+    /**
+     * Counts the units of a text.
+     *
+     * @param text The text to scan.
+     * @return The number of units.
+     */
+    public static int units(CharSequence text) {
+        if (text == null) return 0;
+        int units = 0;
+        int run = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 ? Character.isLetterOrDigit(c) : c < 0x0300) {
+                if (run++ % RUN_LENGTH == 0) units++;
+            }
+            else {
+                run = 0;
+                if (!Character.isWhitespace(c) && !Character.isLowSurrogate(c)) units++;
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Counts the units of a conversation, including the per message overhead.
+     *
+     * @param messages The messages to scan.
+     * @return The number of units.
+     */
+    public static int units(List<Message> messages) {
+        int units = 0;
+        for (Message message : messages) units += units(message.getContent()) + MESSAGE_OVERHEAD;
+        return units;
+    }
+
+    /**
+     * Estimates the token count of a text for a model.
+     *
+     * @param model The model name.
+     * @param text  The text to estimate.
+     * @return The estimated token count.
+     */
+    public int estimate(String model, CharSequence text) {
+        return toTokens(model, units(text));
+    }
+
+    /**
+     * Estimates the token count of a conversation for a model.
+     *
+     * @param model    The model name.
+     * @param messages The messages to estimate.
+     * @return The estimated token count.
+     */
+    public int estimate(String model, List<Message> messages) {
+        return toTokens(model, units(messages));
+    }
+
+    /**
+     * Converts a unit count into an estimated token count for a model.
+     *
+     * @param model The model name.
+     * @param units The number of units.
+     * @return The estimated token count.
+     */
+    public int toTokens(String model, int units) {
+        return (int) Math.ceil(units * ratio(model) + overhead(model));
+    }
+
+    /**
+     * Returns the longest suffix of a text estimated to fit in a token budget.
+     * The start of the text is dropped, which matches how the server truncates oversized prompts.
+     *
+     * @param model     The model name.
+     * @param text      The text to trim.
+     * @param maxTokens The token budget.
+     * @return The trimmed text, or the text itself if it already fits.
+     */
+    public String trim(String model, String text, int maxTokens) {
+        int maxUnits = (int) Math.max(0, (maxTokens - overhead(model)) / ratio(model));
+        int units = 0;
+        int run = 0;
+        for (int i = text.length() - 1; i >= 0; i--) {
+            char c = text.charAt(i);
+            if (c < 0x80 ? Character.isLetterOrDigit(c) : c < 0x0300) {
+                if (run++ % RUN_LENGTH == 0) units++;
+            }
+            else {
+                run = 0;
+                if (!Character.isWhitespace(c) && !Character.isHighSurrogate(c)) units++;
+            }
+            if (units > maxUnits) {
+                int start = i + 1;
+                if (start < text.length() && Character.isLowSurrogate(text.charAt(start))) start++;
+                return text.substring(start);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Calibrates the family of a model with a token count reported by the server. Once the family
+     * is calibrated, observations more than twice or less than half the current estimate are
+     * ignored: lower ones come from prompts partially served from the server side prompt cache,
+     * and higher ones from unusual prompts. Only a cache can explain lower counts, so repeated
+     * higher ones mean the fit is off, and restart the calibration.
+     *
+     * @param model       The model name.
+     * @param units       The number of units of the prompt that was sent.
+     * @param tokenCount  The prompt token count reported by the server.
+     */
+    public void observe(String model, int units, int tokenCount) {
+        if (model == null || units <= 0 || tokenCount <= 0) return;
+        Calibration calibration = calibration(model);
+        synchronized (calibration) {
+            Fit fit = calibration.fit;
+            if (fit != null) {
+                double estimated = fit.overhead() + units * fit.ratio();
+                if (tokenCount < estimated / OUTLIER) return;
+                if (tokenCount > estimated * OUTLIER) {
+                    if (++calibration.outliers < MIN_SAMPLES) return;
+                    calibration.reset();
+                }
+            }
+            calibration.add(units, tokenCount);
+        }
+    }
+
+    /**
+     * Returns the tokens per unit ratio of the family of a model.
+     *
+     * @param model The model name.
+     * @return The calibrated ratio, or the default ratio if the family has not been calibrated.
+     */
+    public double ratio(String model) {
+        if (model == null) return defaultRatio;
+        Fit fit = calibration(model).fit;
+        return fit == null ? defaultRatio : fit.ratio();
+    }
+
+    /**
+     * Returns the fixed tokens the chat template adds to every prompt of the family of a model.
+     *
+     * @param model The model name.
+     * @return The calibrated overhead, or 0 if the family has not been calibrated.
+     */
+    public double overhead(String model) {
+        if (model == null) return 0;
+        Fit fit = calibration(model).fit;
+        return fit == null ? 0 : fit.overhead();
+    }
+
+    /**
+     * Resolves the model family from a model name, e.g. {@code gemma3} for {@code gemma3:27b}.
+     *
+     * @param model The model name.
+     * @return The model family.
+     */
+    public static String family(String model) {
+        int tag = model.indexOf(':');
+        String name = tag < 0 ? model : model.substring(0, tag);
+        int namespace = name.lastIndexOf('/');
+        return namespace < 0 ? name : name.substring(namespace + 1);
+    }
+
+    private Calibration calibration(String model) {
+        return models.computeIfAbsent(model, name -> families.computeIfAbsent(family(name), family -> new Calibration()));
+    }
+
+    /**
+     * Tokens of a prompt of a model family, as a fixed overhead plus a ratio per unit.
+     */
+    private record Fit(double ratio, double overhead) {}
+
+    /**
+     * Calibration of a model family: an exponentially weighted least squares fit of the reported
+     * token counts over the unit counts of the prompts.
+     */
+    private static class Calibration {
+        volatile Fit fit;
+        int samples;
+        int outliers;
+        double weight;
+        double units;
+        double tokens;
+        double unitsSquared;
+        double unitsTokens;
+
+        void add(double x, double y) {
+            double keep = 1 - SMOOTHING;
+            weight = weight * keep + 1;
+            units = units * keep + x;
+            tokens = tokens * keep + y;
+            unitsSquared = unitsSquared * keep + x * x;
+            unitsTokens = unitsTokens * keep + x * y;
+            outliers = 0;
+            if (++samples < MIN_SAMPLES) return;
+
+            double spread = weight * unitsSquared - units * units;
+            double overhead = fit == null ? 0 : fit.overhead();
+            if (spread > MIN_SPREAD * units * units) {
+                double ratio = (weight * unitsTokens - units * tokens) / spread;
+                overhead = (tokens - ratio * units) / weight;
+            }
+            if (overhead < 0 || tokens - overhead * weight <= 0) overhead = 0;
+            fit = new Fit((tokens - overhead * weight) / units, overhead);
+        }
+
+        void reset() {
+            fit = null;
+            samples = 0;
+            outliers = 0;
+            weight = units = tokens = unitsSquared = unitsTokens = 0;
+        }
+    }
+}
@@ -5,6 +5,11 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static utils.mapping.MappingUtilities.Json.Schema.generateSchema;
 import static utils.mapping.MappingUtilities.Json.mapper;
 import static utils.reflection.ReflectionUtilities.getAllFieldNames;
@@ -14,6 +19,11 @@ import static utils.reflection.ReflectionUtilities.getAllFieldNames;
  */
 public class Utilities {
 
+    /**
+     * Schemas generated by {@link #getCachedSchema(Class, String...)}, per class and required fields.
+     */
+    private static final Map<List<Object>, JsonNode> schemas = new ConcurrentHashMap<>();
+
     /**
      * Generates a JSON schema for the given class, with optional required fields.
      *
@@ -35,6 +45,21 @@ public class Utilities {
                         mapper.valueToTree(schema);
     }
 
+    /**
+     * Returns the JSON schema of a class, generating it only the first time it is requested with the
+     * same required fields. The returned node is shared between callers and must not be modified;
+     * use {@link #getSchema(Class, String...)} to get a schema which can be modified.
+     *
+     * @param clazz The class for which the JSON schema should be generated.
+     * @param requiredFields A varargs array of field names to mark as "required", as in {@link #getSchema(Class, String...)}.
+     * @param <T> The generic class type.
+     * @return A shared {@code JsonNode} representing the generated schema.
+     */
+    public static <T> JsonNode getCachedSchema(Class<T> clazz, String... requiredFields) {
+        List<Object> key = Arrays.asList(clazz, requiredFields == null ? null : List.of(requiredFields));
+        return schemas.computeIfAbsent(key, ignored -> getSchema(clazz, requiredFields));
+    }
+
     /**
      * Adds required fields to the "required" property of a JSON schema.
      *
@@ -0,0 +1,102 @@
+package ollama;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import ollama.models.chat.ChatBatch;
+import ollama.models.chat.ChatModel;
+import ollama.models.chat.ChatResponse;
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Unit tests of chat batches sent through the client.
+ */
+public class ChatBatchRequestTest {
+
+    @Test
+    public void bodiesMatchTheSerializedConversation() throws IOException {
+        ChatBatch batch = new ChatBatch.Builder()
+                .prefix(List.of(new Message(Role.system, "Classify the sentiment."), new Message(Role.user, "I love it."),
+                        new Message(Role.assistant, "positive")))
+                .suffix(List.of(new Message(Role.user, "Not again \"this\".")))
+                .suffix(List.of(new Message(Role.user, "Great!"), new Message(Role.assistant, "positive"), new Message(Role.user, "Sure?")))
+                .build();
+        Buffer head = Ollama.head(batch, "llama3.2");
+        for (int i = 0; i < batch.size(); i++) {
+            JsonNode expected = mapper.valueToTree(new ChatModel("llama3.2", batch.messages(i), false));
+            assertEquals(expected, mapper.readTree(Ollama.body(batch, head, i).readUtf8()));
+        }
+        assertEquals(expectedHead(batch), head.readUtf8());
+    }
+
+    @Test
+    public void bodiesWithoutPrefixAreValid() throws IOException {
+        ChatBatch batch = new ChatBatch.Builder().inputs(List.of("a", "b")).build();
+        Buffer head = Ollama.head(batch, "llama3.2");
+        JsonNode expected = mapper.valueToTree(new ChatModel("llama3.2", batch.messages(1), false));
+        assertEquals(expected, mapper.readTree(Ollama.body(batch, head, 1).readUtf8()));
+    }
+
+    @Test
+    public void firstRequestIsSentAloneAndResponsesKeepInputOrder() {
+        FakeOllama ollama = new FakeOllama();
+        ChatBatch batch = new ChatBatch.Builder()
+                .system("Classify the sentiment.")
+                .inputs(List.of("c", "a", "d", "b"))
+                .build();
+
+        List<ChatResponse> responses = ollama.chat(batch);
+
+        assertEquals(List.of("c", "a", "d", "b"), responses.stream().map(response -> response.getChoices().get(0).getMessage().getContent()).toList());
+        assertEquals(batch.order().get(0), ollama.sent.get(0));
+        assertEquals("llama3.2", ollama.models.get(0));
+        assertTrue(ollama.othersWaitedForTheFirst);
+    }
+
+    private static String expectedHead(ChatBatch batch) throws IOException {
+        StringBuilder head = new StringBuilder("{\"model\":\"llama3.2\",\"stream\":false,\"messages\":[");
+        for (int i = 0; i < batch.getPrefix().size(); i++) {
+            if (i > 0) head.append(',');
+            head.append(mapper.writeValueAsString(batch.getPrefix().get(i)));
+        }
+        return head.toString();
+    }
+
+    /**
+     * A client answering every request of a batch with its last message, and recording the order
+     * the requests were sent in.
+     */
+    private static class FakeOllama extends Ollama {
+
+        final List<Integer> sent = new CopyOnWriteArrayList<>();
+        final List<String> models = new CopyOnWriteArrayList<>();
+        private final CountDownLatch first = new CountDownLatch(1);
+        volatile boolean othersWaitedForTheFirst = true;
+
+        FakeOllama() {
+            super("http://localhost:11434");
+            setDefaultModel("llama3.2");
+        }
+
+        @Override
+        ChatResponse chat(ChatBatch batch, String model, Buffer head, int index, Map<String, String> headers) {
+            if (!sent.isEmpty() && first.getCount() > 0) othersWaitedForTheFirst = false;
+            sent.add(index);
+            models.add(model);
+            List<Message> messages = batch.messages(index);
+            first.countDown();
+            return new ChatResponse(null, 0, model, List.of(new ChatResponse.Choice(0, "stop", messages.get(messages.size() - 1))), "chat.completion", null);
+        }
+    }
+}
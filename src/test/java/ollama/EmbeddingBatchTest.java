@@ -0,0 +1,86 @@
+package ollama;
+
+import ollama.models.embedding.EmbeddingModel;
+import ollama.models.embedding.EmbeddingResponse;
+import ollama.tracing.RequestTrace;
+import org.junit.Test;
+import retrofit2.Call;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of embedding batches split across several requests.
+ */
+public class EmbeddingBatchTest {
+
+    @Test
+    public void splitBatchesAreMergedInInputOrder() {
+        Ollama ollama = new FakeOllama(-1);
+        float[][] embeddings = ollama.embed(inputs(10));
+        assertEquals(10, embeddings.length);
+        for (int i = 0; i < 10; i++) assertEquals(i, embeddings[i][0], 0.0);
+    }
+
+    @Test
+    public void batchesMissingEmbeddingsFail() {
+        Ollama ollama = new FakeOllama(4);
+        try {
+            ollama.embed(inputs(10));
+            fail("Merged a batch missing an embedding.");
+        }
+        catch (RuntimeException e) {
+            assertEquals("Expected 3 embeddings but received 2.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void singleRequestsMissingEmbeddingsFail() {
+        try {
+            new FakeOllama(0).embed(inputs(2));
+            fail("Returned a response missing an embedding.");
+        }
+        catch (RuntimeException e) {
+            assertEquals("Expected 2 embeddings but received 1.", e.getMessage());
+        }
+    }
+
+    private static List<String> inputs(int count) {
+        return IntStream.range(0, count).mapToObj(String::valueOf).toList();
+    }
+
+    /**
+     * A client embedding every input as a vector holding its number, which drops the embedding of
+     * one input.
+     */
+    private static class FakeOllama extends Ollama {
+        private final int dropped;
+
+        FakeOllama(int dropped) {
+            super("http://localhost:11434");
+            this.dropped = dropped;
+            setDefaultModel("nomic-embed-text");
+            setEmbeddingBatchSize(3);
+        }
+
+        @Override
+        Call<EmbeddingResponse> embedCall(EmbeddingModel request, Map<String, String> headers) {
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        <T> T execute(Call<T> call, Object body, Map<String, String> headers, RequestTrace trace) {
+            List<String> input = ((EmbeddingModel) body).getInput();
+            float[][] embeddings = input.stream()
+                    .filter(text -> Integer.parseInt(text) != dropped)
+                    .map(text -> new float[]{Integer.parseInt(text)})
+                    .toArray(float[][]::new);
+            return (T) new EmbeddingResponse("model", embeddings, 0, 0, 0);
+        }
+    }
+}
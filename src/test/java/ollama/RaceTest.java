@@ -0,0 +1,79 @@
+package ollama;
+
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import ollama.sampling.RaceStats;
+import ollama.streaming.Generation;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of racing models, against a client answering locally.
+ */
+public class RaceTest {
+
+    private static final InferenceModel PROMPT = new InferenceModel.Builder().model("ignored").prompt("hi").build();
+
+    @Test
+    public void firstAcceptedAnswerWinsAndTheOthersAreCancelled() {
+        FakeOllama ollama = new FakeOllama(Map.of("small", "wrong", "medium", "right"));
+
+        InferenceResponse response = ollama.race(PROMPT, List.of("small", "medium", "large"), answer -> answer.getResponse().equals("right"));
+
+        assertEquals("medium", response.getModel());
+        assertTrue(ollama.generations.get("large").isCancelled());
+        RaceStats stats = ollama.getRaceStats();
+        assertEquals(new RaceStats.ModelStats(1, 0, 1, 0, stats.get("small").latencyMillis(), 0, 0), stats.get("small"));
+        assertEquals(1, stats.get("medium").wins());
+        assertEquals(1, stats.get("large").races());
+        assertEquals(0, stats.get("large").wins() + stats.get("large").rejected());
+    }
+
+    @Test
+    public void failuresAreRecordedAndRaisedWithoutAWinner() {
+        FakeOllama ollama = new FakeOllama(Map.of("small", FakeOllama.FAILURE, "large", "wrong"));
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> ollama.race(PROMPT, List.of("small", "large"), answer -> false));
+
+        assertEquals("None of small, large gave an acceptable answer.", e.getMessage());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(1, ollama.getRaceStats().get("small").failures());
+        assertEquals(1, ollama.getRaceStats().get("large").rejected());
+        assertThrows(IllegalArgumentException.class, () -> ollama.race(PROMPT, List.of(), answer -> true));
+    }
+
+    /**
+     * A client answering every model at once with its text, failing it if the text is
+     * {@link #FAILURE}, or leaving it running if the model has no text.
+     */
+    private static class FakeOllama extends Ollama {
+        static final String FAILURE = "failure";
+
+        final Map<String, Generation<InferenceResponse>> generations = new HashMap<>();
+        private final Map<String, String> answers;
+
+        FakeOllama(Map<String, String> answers) {
+            super("http://localhost:11434");
+            this.answers = answers;
+        }
+
+        @Override
+        public synchronized Generation<InferenceResponse> inferenceAsync(InferenceModel prompt) {
+            Generation<InferenceResponse> generation = new Generation<>(prompt.getModel(), getCancellationStats(), InferenceResponse::getResponse, (last, text) -> last);
+            generations.put(prompt.getModel(), generation);
+            String answer = answers.get(prompt.getModel());
+            if (FAILURE.equals(answer)) generation.completeExceptionally(new IllegalStateException("Model crashed."));
+            else if (answer != null)
+                generation.complete(new InferenceResponse(prompt.getModel(), null, answer, true, "stop", null, 0, 0, 0, 0, 1, 0));
+            return generation;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ollama;
+
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import ollama.sampling.Aggregation;
+import ollama.streaming.Generation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of sampling a request with several seeds, against a client answering locally.
+ */
+public class SamplingTest {
+
+    private static final String MODEL = "gemma3:27b";
+
+    @Test
+    public void promptsWithoutATemperatureAreSampledAtTheSamplingTemperature() {
+        FakeOllama ollama = new FakeOllama(seed -> "answer");
+        InferenceModel prompt = new InferenceModel.Builder().model(MODEL).prompt("hi").options(new InferenceModel.Options(42)).build();
+        ollama.sample(prompt, 3, Aggregation.firstValid());
+        for (InferenceModel.Options options : ollama.options)
+            assertEquals(Ollama.SAMPLING_TEMPERATURE, options.getTemperature(), 0.0);
+        assertEquals(List.of(42, 43, 44), ollama.options.stream().map(InferenceModel.Options::getSeed).toList());
+
+        ollama = new FakeOllama(seed -> "answer");
+        ollama.sample(new InferenceModel.Builder(prompt).options(new InferenceModel.Options(0.3, 7)).build(), 2, Aggregation.firstValid());
+        assertEquals(0.3, ollama.options.get(0).getTemperature(), 0.0);
+    }
+
+    @Test
+    public void majorityDecidesAtTheQuorumAndCancelsTheRemainingSamples() {
+        FakeOllama ollama = new FakeOllama(seed -> switch (seed) {
+            case 0, 2 -> "a";
+            case 1 -> "b";
+            default -> null;
+        });
+        InferenceModel prompt = new InferenceModel.Builder().model(MODEL).prompt("hi").build();
+
+        assertEquals("a", ollama.sample(prompt, 5, Aggregation.majority(2)));
+
+        assertEquals(5, ollama.generations.size());
+        assertFalse(ollama.generations.get(2).isCancelled());
+        assertTrue(ollama.generations.get(3).isCancelled());
+        assertTrue(ollama.generations.get(4).isCancelled());
+        assertEquals(2, ollama.getCancellationStats().getCancellations());
+    }
+
+    @Test
+    public void majorityWithoutAQuorumTakesTheMostVotedSample() {
+        Aggregation<String> majority = Aggregation.majority(3);
+        assertNull(majority.decide(List.of("b", "a", "a"), 5));
+        assertEquals("a", majority.decide(List.of("b", "a", "a", "a"), 5));
+        assertEquals("a", majority.finish(List.of("b", "a", "a")));
+        assertEquals("b", majority.finish(List.of("b", "a", "a", "b")));
+
+        FakeOllama ollama = new FakeOllama(seed -> seed % 2 == 0 ? "even" : "odd");
+        assertEquals("even", ollama.sample(new InferenceModel.Builder().model(MODEL).prompt("hi").build(), 3, Aggregation.majority(3)));
+    }
+
+    @Test
+    public void quorumMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> Aggregation.majority(0));
+    }
+
+    @Test
+    public void bestDecidesAtTheThreshold() {
+        Aggregation<String> best = Aggregation.best(String::length, 4);
+        assertNull(best.decide(List.of("ab", "abc"), 3));
+        assertEquals("abcd", best.decide(List.of("ab", "abcd"), 3));
+        assertEquals("abc", best.finish(List.of("ab", "abc", "xyz")));
+    }
+
+    @Test
+    public void invalidAndFailedSamplesAreSkipped() {
+        FakeOllama ollama = new FakeOllama(seed -> switch (seed) {
+            case 0 -> FakeOllama.FAILURE;
+            case 1 -> "not a number";
+            case 2 -> "2";
+            default -> null;
+        });
+        InferenceModel prompt = new InferenceModel.Builder().model(MODEL).prompt("hi").build();
+
+        Integer sample = ollama.sample(prompt, 4, SamplingTest::number, Aggregation.firstValid());
+
+        assertEquals(Integer.valueOf(2), sample);
+        assertTrue(ollama.generations.get(3).isCancelled());
+    }
+
+    @Test
+    public void samplingFailsWithoutAValidSample() {
+        FakeOllama ollama = new FakeOllama(seed -> seed == 0 ? FakeOllama.FAILURE : "not a number");
+        InferenceModel prompt = new InferenceModel.Builder().model(MODEL).prompt("hi").build();
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> ollama.sample(prompt, 3, SamplingTest::number, Aggregation.firstValid()));
+        assertEquals("None of the 3 samples is valid.", e.getMessage());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertThrows(IllegalArgumentException.class, () -> ollama.sample(prompt, 0, Aggregation.firstValid()));
+    }
+
+    private static Integer number(String text) {
+        try {
+            return Integer.valueOf(text);
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A client answering every sample at once with the text of its seed, failing it if the text is
+     * {@link #FAILURE}, or leaving it running if the text is null.
+     */
+    static class FakeOllama extends Ollama {
+        static final String FAILURE = "failure";
+
+        final List<InferenceModel.Options> options = new ArrayList<>();
+        final List<Generation<InferenceResponse>> generations = new ArrayList<>();
+        private final IntFunction<String> answers;
+
+        FakeOllama(IntFunction<String> answers) {
+            super("http://localhost:11434");
+            this.answers = answers;
+        }
+
+        @Override
+        public synchronized Generation<InferenceResponse> inferenceAsync(InferenceModel prompt) {
+            options.add(prompt.getOptions());
+            Generation<InferenceResponse> generation = new Generation<>(prompt.getModel(), getCancellationStats(), InferenceResponse::getResponse, (last, text) -> last);
+            generations.add(generation);
+            String answer = answers.apply(prompt.getOptions().getSeed());
+            if (FAILURE.equals(answer)) generation.completeExceptionally(new IllegalStateException("Model crashed."));
+            else if (answer != null)
+                generation.complete(new InferenceResponse(prompt.getModel(), null, answer, true, "stop", null, 0, 0, 0, 0, 1, 0));
+            return generation;
+        }
+    }
+}
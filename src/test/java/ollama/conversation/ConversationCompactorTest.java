@@ -0,0 +1,139 @@
+package ollama.conversation;
+
+import ollama.Ollama;
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+import ollama.models.chat.ToolCall;
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import ollama.utilities.TokenEstimator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the conversation compactor.
+ */
+public class ConversationCompactorTest {
+
+    @Test
+    public void keptMessagesStartAtAUserTurn() throws IOException {
+        FakeOllama ollama = new FakeOllama();
+        ConversationCompactor compactor = new ConversationCompactor.Builder(ollama).maxTokens(1).keepRecent(2).build();
+        ToolCall call = new ToolCall();
+        try (ConversationStore store = open()) {
+            store.append("a", List.of(
+                    new Message(Role.system, "Be brief."),
+                    new Message(Role.user, "first question"),
+                    new Message(Role.assistant, "first answer"),
+                    new Message(Role.user, "look it up"),
+                    new Message(Role.assistant, null),
+                    Message.tool(call, "tool result"),
+                    new Message(Role.assistant, "second answer")));
+
+            assertTrue(compactor.compact(store, "a"));
+
+            List<Message> messages = store.messages("a");
+            assertEquals(List.of(Role.system, Role.system, Role.user, Role.assistant, Role.tool, Role.assistant), roles(messages));
+            assertEquals("Be brief.", messages.get(0).getContent());
+            assertTrue(ConversationCompactor.isSummary(messages.get(1)));
+            assertEquals("look it up", messages.get(2).getContent());
+        }
+    }
+
+    @Test
+    public void onlyUserAndAssistantTurnsAreTranscribed() throws IOException {
+        FakeOllama ollama = new FakeOllama();
+        ConversationCompactor compactor = new ConversationCompactor.Builder(ollama).maxTokens(1).keepRecent(1).build();
+        try (ConversationStore store = open()) {
+            store.append("a", List.of(
+                    new Message(Role.user, "first question"),
+                    new Message(Role.system, "mid conversation instruction"),
+                    new Message(Role.assistant, null),
+                    Message.tool(new ToolCall(), "tool result"),
+                    new Message(Role.assistant, "first answer"),
+                    new Message(Role.user, "second question")));
+
+            assertTrue(compactor.compact(store, "a"));
+
+            String prompt = ollama.prompts.get(0);
+            assertTrue(prompt.contains("user: first question"));
+            assertTrue(prompt.contains("assistant: first answer"));
+            assertFalse(prompt.contains("mid conversation instruction"));
+            assertFalse(prompt.contains("tool result"));
+            assertFalse(prompt.contains("assistant: null"));
+        }
+    }
+
+    @Test
+    public void noUserTurnToCutAtLeavesTheConversation() throws IOException {
+        FakeOllama ollama = new FakeOllama();
+        ConversationCompactor compactor = new ConversationCompactor.Builder(ollama).maxTokens(1).keepRecent(1).build();
+        try (ConversationStore store = open()) {
+            store.append("a", List.of(
+                    new Message(Role.user, "question"),
+                    new Message(Role.assistant, null),
+                    Message.tool(new ToolCall(), "tool result"),
+                    new Message(Role.assistant, "answer")));
+
+            assertFalse(compactor.compact(store, "a"));
+            assertEquals(4, store.size("a"));
+            assertTrue(ollama.prompts.isEmpty());
+        }
+    }
+
+    @Test
+    public void thresholdIsEstimatedForTheChatModel() throws IOException {
+        FakeOllama ollama = new FakeOllama();
+        List<String> estimated = new ArrayList<>();
+        ollama.setTokenEstimator(new TokenEstimator() {
+            @Override
+            public int estimate(String model, List<Message> messages) {
+                estimated.add(model);
+                return super.estimate(model, messages);
+            }
+        });
+        ConversationCompactor compactor = new ConversationCompactor.Builder(ollama).maxTokens(100_000).build();
+        try (ConversationStore store = open()) {
+            store.append("a", new Message(Role.user, "hello"));
+
+            assertFalse(compactor.compact(store, "a", "llama3.1:70b"));
+            assertFalse(compactor.compact(store, "a"));
+            assertEquals(List.of("llama3.1:70b", "default-model"), estimated);
+        }
+    }
+
+    private static ConversationStore open() throws IOException {
+        return new ConversationStore(Files.createTempDirectory("conversations"), 4096, false);
+    }
+
+    private static List<Role> roles(List<Message> messages) {
+        return messages.stream().map(Message::getRole).toList();
+    }
+
+    /**
+     * An Ollama client summarizing every conversation into the same text.
+     */
+    static class FakeOllama extends Ollama {
+
+        final List<String> prompts = new ArrayList<>();
+
+        FakeOllama() {
+            super("http://localhost:11434");
+            setDefaultModel("default-model");
+        }
+
+        @Override
+        public InferenceResponse inference(InferenceModel prompt) {
+            prompts.add(prompt.getPrompt());
+            return new InferenceResponse(prompt.getModel(), null, "summary", true, "stop", null, 0, 0, 0, 0, 1, 0);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package ollama.conversation;
+
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the conversation store.
+ */
+public class ConversationStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Test
+    public void appendedMessagesAreReadInOrder() throws IOException {
+        try (ConversationStore store = open(Files.createTempDirectory("conversations"))) {
+            store.append("a", new Message(Role.user, "first"));
+            store.append("a", List.of(new Message(Role.assistant, "second"), new Message(Role.user, "third")));
+            assertEquals(List.of("first", "second", "third"), contents(store.messages("a")));
+            assertEquals(List.of("second", "third"), contents(store.recent("a", 2)));
+            assertEquals(3, store.size("a"));
+            assertFalse(store.contains("b"));
+        }
+    }
+
+    @Test
+    public void reopeningReplaysTheLog() throws IOException {
+        Path directory = Files.createTempDirectory("conversations");
+        try (ConversationStore store = open(directory)) {
+            store.append("a", new Message(Role.user, "first"));
+            store.append("b", new Message(Role.user, "other"));
+            store.replace("a", List.of(new Message(Role.system, "summary")));
+            store.append("a", new Message(Role.user, "second"));
+            store.delete("b");
+        }
+        try (ConversationStore store = open(directory)) {
+            assertEquals(List.of("summary", "second"), contents(store.messages("a")));
+            assertFalse(store.contains("b"));
+            assertEquals(1, store.getConversationCount());
+        }
+    }
+
+    @Test
+    public void tornRecordIsDroppedAndOverwritten() throws IOException {
+        Path directory = Files.createTempDirectory("conversations");
+        try (ConversationStore store = open(directory)) {
+            store.append("a", new Message(Role.user, "first"));
+        }
+        Path segment = segments(directory).get(0);
+        int second = read(segment, 0, 4).getInt();
+        try (ConversationStore store = open(directory)) {
+            store.append("a", new Message(Role.user, "second"));
+        }
+        ByteBuffer corrupted = read(segment, second + 30, 1);
+        corrupted.put(0, (byte) (corrupted.get(0) ^ 0xFF));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(corrupted, second + 30);
+        }
+
+        try (ConversationStore store = open(directory)) {
+            assertEquals(List.of("first"), contents(store.messages("a")));
+            store.append("a", new Message(Role.user, "third"));
+        }
+        try (ConversationStore store = open(directory)) {
+            assertEquals(List.of("first", "third"), contents(store.messages("a")));
+        }
+    }
+
+    @Test
+    public void recordsRollOverToNewSegments() throws IOException {
+        Path directory = Files.createTempDirectory("conversations");
+        String text = "x".repeat(500);
+        try (ConversationStore store = open(directory)) {
+            for (int i = 0; i < 40; i++) store.append("a", new Message(Role.user, text + i));
+        }
+        assertTrue(segments(directory).size() > 1);
+        try (ConversationStore store = open(directory)) {
+            List<String> messages = contents(store.messages("a"));
+            assertEquals(40, messages.size());
+            assertEquals(text + 0, messages.get(0));
+            assertEquals(text + 39, messages.get(39));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messagesLargerThanASegmentAreRejected() throws IOException {
+        try (ConversationStore store = open(Files.createTempDirectory("conversations"))) {
+            store.append("a", new Message(Role.user, "x".repeat(SEGMENT_SIZE)));
+        }
+    }
+
+    @Test
+    public void replacePrefixKeepsTheLaterMessages() throws IOException {
+        try (ConversationStore store = open(Files.createTempDirectory("conversations"))) {
+            for (int i = 0; i < 5; i++) store.append("a", new Message(Role.user, "m" + i));
+            ConversationStore.Snapshot snapshot = store.snapshot("a");
+            store.append("a", new Message(Role.user, "m5"));
+            assertFalse(store.replacePrefix("a", snapshot.version(), 6, List.of(new Message(Role.system, "summary"))));
+            assertTrue(store.replacePrefix("a", snapshot.version(), 3, List.of(new Message(Role.system, "summary"))));
+            assertEquals(List.of("summary", "m3", "m4", "m5"), contents(store.messages("a")));
+            assertFalse(store.replacePrefix("b", store.snapshot("b").version(), 1, List.of()));
+        }
+    }
+
+    @Test
+    public void replacePrefixRefusesAChangedConversation() throws IOException {
+        try (ConversationStore store = open(Files.createTempDirectory("conversations"))) {
+            List<Message> messages = List.of(new Message(Role.user, "m0"), new Message(Role.user, "m1"));
+            store.append("a", messages);
+            long replaced = store.snapshot("a").version();
+            store.replace("a", messages);
+            assertFalse(store.replacePrefix("a", replaced, 1, List.of(new Message(Role.system, "summary"))));
+
+            long deleted = store.snapshot("a").version();
+            store.delete("a");
+            store.append("a", messages);
+            assertFalse(store.replacePrefix("a", deleted, 1, List.of(new Message(Role.system, "summary"))));
+
+            long compacted = store.snapshot("a").version();
+            store.compact();
+            assertFalse(store.replacePrefix("a", compacted, 1, List.of(new Message(Role.system, "summary"))));
+            assertEquals(List.of("m0", "m1"), contents(store.messages("a")));
+        }
+    }
+
+    @Test
+    public void compactionDropsGarbageAndSurvivesReopening() throws IOException {
+        Path directory = Files.createTempDirectory("conversations");
+        String text = "y".repeat(300);
+        try (ConversationStore store = open(directory)) {
+            for (int i = 0; i < 30; i++) store.replace("a", List.of(new Message(Role.user, text + i)));
+            for (int i = 0; i < 10; i++) store.append("b", new Message(Role.user, "b" + i));
+            store.append("c", new Message(Role.user, "deleted"));
+            store.delete("c");
+            List<Path> before = segments(directory);
+            assertTrue(store.getGarbageRatio() > 0.5);
+
+            store.compact();
+            assertEquals(0, store.getGarbageRatio(), 0.0);
+            assertTrue(segments(directory).stream().noneMatch(before::contains));
+            assertFalse(Files.exists(directory.resolve("compaction")));
+            store.append("b", new Message(Role.user, "after"));
+        }
+        try (ConversationStore store = open(directory)) {
+            assertEquals(List.of("y".repeat(300) + 29), contents(store.messages("a")));
+            assertEquals(11, store.size("b"));
+            assertEquals("after", store.recent("b", 1).get(0).getContent());
+            assertFalse(store.contains("c"));
+        }
+    }
+
+    @Test
+    public void uncommittedCompactionIsDiscarded() throws IOException {
+        Path directory = interruptedCompaction(false);
+        try (ConversationStore store = open(directory)) {
+            assertEquals(List.of("stale"), contents(store.messages("b")));
+            assertFalse(store.contains("a"));
+        }
+        assertEquals(List.of(directory.resolve("00000000.log")), segments(directory));
+    }
+
+    @Test
+    public void committedCompactionIsFinishedWhenOpened() throws IOException {
+        Path directory = interruptedCompaction(true);
+        try (ConversationStore store = open(directory)) {
+            assertEquals(List.of("hello"), contents(store.messages("a")));
+            assertFalse(store.contains("b"));
+        }
+        assertEquals(List.of(directory.resolve("00000001.log")), segments(directory));
+        assertFalse(Files.exists(directory.resolve("compaction")));
+    }
+
+    /**
+     * Builds a log holding conversation "b" and the new segment of a compaction holding conversation
+     * "a", as left by a crash before or after the compaction was committed.
+     */
+    private static Path interruptedCompaction(boolean committed) throws IOException {
+        Path compacted = Files.createTempDirectory("conversations");
+        Files.createFile(compacted.resolve("00000001.log"));
+        try (ConversationStore store = open(compacted)) {
+            store.replace("a", List.of(new Message(Role.user, "hello")));
+        }
+        Path directory = Files.createTempDirectory("conversations");
+        try (ConversationStore store = open(directory)) {
+            store.append("b", new Message(Role.user, "stale"));
+        }
+        Files.copy(compacted.resolve("00000001.log"), directory.resolve("00000001.compacting"));
+        if (committed) Files.writeString(directory.resolve("compaction"), "1");
+        return directory;
+    }
+
+    private static ConversationStore open(Path directory) throws IOException {
+        return new ConversationStore(directory, SEGMENT_SIZE, false);
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        return messages.stream().map(Message::getContent).toList();
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.filter(file -> file.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static ByteBuffer read(Path file, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(buffer, position);
+        }
+        return buffer.flip();
+    }
+}
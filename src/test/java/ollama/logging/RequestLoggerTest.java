@@ -0,0 +1,81 @@
+package ollama.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import ollama.models.chat.ChatModel;
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+import ollama.utilities.JsonBody;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Unit tests of the asynchronous request logger.
+ */
+public class RequestLoggerTest {
+
+    @Test
+    public void closeWritesEveryBufferedEntry() throws Exception {
+        Path file = Files.createTempFile("requests", ".ndjson");
+        RequestLogger logger = new RequestLogger(10_000, 1, 1000, file);
+        for (int i = 0; i < 5000; i++) logger.request("api/generate", "prompt " + i);
+        logger.close();
+        assertEquals(5000, Files.readAllLines(file).size());
+        assertEquals(0, logger.getDropped());
+    }
+
+    @Test
+    public void bodiesAreCopiedWhenLogged() throws Exception {
+        Path file = Files.createTempFile("requests", ".ndjson");
+        RequestLogger logger = new RequestLogger(16, 1, 1000, file);
+        List<Message> messages = new ArrayList<>(List.of(new Message(Role.user, "first")));
+        ChatModel chat = new ChatModel("model", messages, false);
+        logger.request("api/chat", chat);
+        messages.add(new Message(Role.user, "second"));
+        chat.setModel("other");
+        logger.close();
+
+        JsonNode entry = mapper.readTree(Files.readAllLines(file).get(0));
+        assertEquals("model", entry.path("body").path("model").asText());
+        assertEquals(1, entry.path("body").path("messages").size());
+    }
+
+    @Test
+    public void requestBodiesAreLoggedFromTheirSerializedJson() throws Exception {
+        Path file = Files.createTempFile("requests", ".ndjson");
+        RequestLogger logger = new RequestLogger(16, 1, 10, file);
+        String json = "{\"model\":\"model\",\"prompt\":\"" + "x".repeat(100) + "\",\"images\":[\"aGVsbG8=\",\"d29ybGQ=\"]}";
+        logger.request("api/generate", RequestBody.create(json, JsonBody.JSON));
+        logger.request("api/generate", JsonBody.of(new Buffer().writeUtf8(json), 1));
+        logger.close();
+
+        for (String line : Files.readAllLines(file)) {
+            JsonNode body = mapper.readTree(line).path("body");
+            assertEquals("model", body.path("model").asText());
+            assertEquals("xxxxxxxxxx...(90 more chars)", body.path("prompt").asText());
+            assertEquals("[2 elements, 16 chars redacted]", body.path("images").asText());
+        }
+        assertEquals(2, Files.readAllLines(file).size());
+    }
+
+    @Test
+    public void loggersAreSharedPerFileUntilClosed() throws Exception {
+        Path file = Files.createTempFile("requests", ".ndjson");
+        RequestLogger first = RequestLogger.forFile(file, 16, 1, 1000);
+        assertSame(first, RequestLogger.forFile(file.getParent().resolve(".").resolve(file.getFileName()), 16, 1, 1000));
+        first.close();
+        RequestLogger second = RequestLogger.forFile(file, 16, 1, 1000);
+        assertNotSame(first, second);
+        second.close();
+    }
+}
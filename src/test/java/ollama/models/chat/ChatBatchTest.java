@@ -0,0 +1,33 @@
+package ollama.models.chat;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of chat batches.
+ */
+public class ChatBatchTest {
+
+    @Test
+    public void suffixesAreOrderedByTheirMessages() {
+        ChatBatch batch = new ChatBatch.Builder()
+                .system("Classify the sentiment.")
+                .inputs(List.of("c", "a", "b", "a"))
+                .build();
+        assertEquals(List.of(1, 3, 2, 0), batch.order());
+    }
+
+    @Test
+    public void messagesWithoutContentAreOrderedFirst() {
+        Message toolCalls = new Message();
+        toolCalls.setRole(Role.assistant);
+        ChatBatch batch = new ChatBatch.Builder()
+                .suffix(List.of(new Message(Role.user, "weather"), new Message(Role.assistant, "sunny")))
+                .suffix(List.of(new Message(Role.user, "weather"), toolCalls))
+                .build();
+        assertEquals(List.of(1, 0), batch.order());
+    }
+}
@@ -0,0 +1,63 @@
+package ollama.models.chat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Unit tests of tool calls.
+ */
+public class ToolCallTest {
+
+    @Test
+    public void objectArgumentsOfTheNativeEndpointAreReadAsTheyAre() throws IOException {
+        ToolCall call = mapper.readValue("{\"function\":{\"name\":\"get_weather\",\"arguments\":{\"city\":\"Paris\"}}}", ToolCall.class);
+        assertEquals("get_weather", call.getName());
+        assertNull(call.getId());
+        assertEquals("Paris", call.getArguments().get("city").asText());
+    }
+
+    @Test
+    public void stringArgumentsOfTheOpenAiEndpointAreDecoded() throws IOException {
+        ToolCall call = mapper.readValue("{\"id\":\"call_1\",\"type\":\"function\","
+                + "\"function\":{\"name\":\"get_weather\",\"arguments\":\"{\\\"city\\\":\\\"Paris\\\"}\"}}", ToolCall.class);
+        assertEquals("call_1", call.getId());
+        assertEquals("Paris", call.getArguments().get("city").asText());
+        assertTrue(call.getFunction().getArguments().isTextual());
+        JsonNode sentBack = mapper.valueToTree(call);
+        assertTrue(sentBack.get("function").get("arguments").isTextual());
+    }
+
+    @Test
+    public void missingArgumentsAreEmpty() throws IOException {
+        ToolCall call = mapper.readValue("{\"function\":{\"name\":\"now\"}}", ToolCall.class);
+        assertTrue(call.getArguments().isObject());
+        assertEquals(0, call.getArguments().size());
+        assertNull(new ToolCall().getName());
+        assertEquals(0, new ToolCall().getArguments().size());
+    }
+
+    @Test
+    public void invalidArgumentsFail() throws IOException {
+        ToolCall call = mapper.readValue("{\"function\":{\"name\":\"get_weather\",\"arguments\":\"{city: Paris\"}}", ToolCall.class);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, call::getArguments);
+        assertEquals("Invalid arguments for tool get_weather: {city: Paris", e.getMessage());
+    }
+
+    @Test
+    public void toolMessagesAnswerTheirCall() throws IOException {
+        ToolCall call = mapper.readValue("{\"id\":\"call_1\",\"function\":{\"name\":\"get_weather\"}}", ToolCall.class);
+        Message message = Message.tool(call, "Sunny");
+        assertEquals(Role.tool, message.getRole());
+        assertEquals("call_1", message.getToolCallId());
+        assertEquals("get_weather", message.getToolName());
+        assertEquals("Sunny", message.getContent());
+    }
+}
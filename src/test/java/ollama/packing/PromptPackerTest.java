@@ -0,0 +1,163 @@
+package ollama.packing;
+
+import ollama.Ollama;
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of the prompt packer, against a client answering packed prompts locally.
+ */
+public class PromptPackerTest {
+
+    /**
+     * The result type of the packed prompts.
+     */
+    public static class Tag {
+        public String tag;
+    }
+
+    @Test
+    public void cutOffResponsesAreSplitInHalves() throws Exception {
+        FakeOllama ollama = new FakeOllama(count -> count > 4 ? cutOff() : results(count, -1));
+        List<CompletableFuture<Tag>> tags = submit(ollama, 8);
+        for (int i = 0; i < 8; i++) assertEquals("t" + (i % 4), tags.get(i).get(5, TimeUnit.SECONDS).tag);
+        assertEquals(List.of(8, 4, 4), sorted(ollama.packed));
+        assertEquals(0, ollama.singles.size());
+    }
+
+    @Test
+    public void missingResultsAreSentOnTheirOwn() throws Exception {
+        FakeOllama ollama = new FakeOllama(count -> results(count, 2));
+        List<CompletableFuture<Tag>> tags = submit(ollama, 4);
+        assertEquals("t1", tags.get(1).get(5, TimeUnit.SECONDS).tag);
+        assertEquals("single", tags.get(2).get(5, TimeUnit.SECONDS).tag);
+        assertEquals(List.of(4), ollama.packed);
+        assertEquals(1, ollama.singles.size());
+    }
+
+    @Test
+    public void failedRequestsFailTheBatchWithoutSplitting() throws Exception {
+        FakeOllama ollama = new FakeOllama(count -> {
+            throw new RuntimeException("Connection refused.");
+        });
+        List<CompletableFuture<Tag>> tags = submit(ollama, 8);
+        for (CompletableFuture<Tag> tag : tags) {
+            try {
+                tag.get(5, TimeUnit.SECONDS);
+                fail("The batch should have failed.");
+            }
+            catch (ExecutionException e) {
+                assertEquals("Connection refused.", e.getCause().getMessage());
+            }
+        }
+        assertEquals(List.of(8), ollama.packed);
+        assertEquals(0, ollama.singles.size());
+    }
+
+    @Test
+    public void oversizedBatchesAreSplitBeforeSending() throws Exception {
+        FakeOllama ollama = new FakeOllama(count -> results(count, -1));
+        ollama.setMaxPromptTokens(400);
+        List<CompletableFuture<Tag>> tags = new ArrayList<>();
+        try (PromptPacker<Tag> packer = packer(ollama)) {
+            for (int i = 0; i < 8; i++) tags.add(packer.submit("Tag review " + i + ": " + "word ".repeat(120)));
+        }
+        for (CompletableFuture<Tag> tag : tags) tag.get(5, TimeUnit.SECONDS);
+        assertTrue("Every packed prompt fits: " + ollama.estimates, ollama.estimates.stream().allMatch(tokens -> tokens <= 400));
+        assertEquals(8, ollama.packed.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    private static List<CompletableFuture<Tag>> submit(FakeOllama ollama, int count) {
+        List<CompletableFuture<Tag>> tags = new ArrayList<>();
+        try (PromptPacker<Tag> packer = packer(ollama)) {
+            for (int i = 0; i < count; i++) tags.add(packer.submit("Tag review " + i));
+        }
+        return tags;
+    }
+
+    private static PromptPacker<Tag> packer(Ollama ollama) {
+        return new PromptPacker.Builder<>(ollama, Tag.class)
+                .model("llama3.2")
+                .window(Duration.ofMinutes(1))
+                .maxItems(32)
+                .maxTokens(100_000)
+                .build();
+    }
+
+    private static List<Integer> sorted(List<Integer> values) {
+        List<Integer> sorted = new ArrayList<>(values);
+        sorted.sort((a, b) -> b - a);
+        return sorted;
+    }
+
+    private static InferenceResponse cutOff() {
+        return response("{\"results\":[{\"id\":0", "length");
+    }
+
+    /**
+     * Answers every task of a packed prompt with a tag named after its position, except one.
+     */
+    private static InferenceResponse results(int count, int missing) {
+        StringBuilder results = new StringBuilder("{\"results\":[");
+        for (int i = 0; i < count; i++) {
+            if (i == missing) continue;
+            if (results.charAt(results.length() - 1) != '[') results.append(',');
+            results.append("{\"id\":").append(i).append(",\"result\":{\"tag\":\"t").append(i).append("\"}}");
+        }
+        return response(results.append("]}").toString(), "stop");
+    }
+
+    private static InferenceResponse response(String text, String doneReason) {
+        return new InferenceResponse("llama3.2", null, text, true, doneReason, null, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * A client answering packed prompts with a function of their task count, and single prompts with a fixed tag.
+     */
+    static class FakeOllama extends Ollama {
+        private static final Pattern TASK = Pattern.compile("(?m)^Task \\d+:");
+        final IntFunction<InferenceResponse> answer;
+        final List<Integer> packed = new CopyOnWriteArrayList<>();
+        final List<Integer> estimates = new CopyOnWriteArrayList<>();
+        final List<String> singles = new CopyOnWriteArrayList<>();
+
+        FakeOllama(IntFunction<InferenceResponse> answer) {
+            super("http://localhost:11434");
+            this.answer = answer;
+        }
+
+        @Override
+        public InferenceResponse inference(InferenceModel prompt) {
+            int count = 0;
+            for (Matcher matcher = TASK.matcher(prompt.getPrompt()); matcher.find();) count++;
+            packed.add(count);
+            estimates.add(getTokenEstimator().estimate(prompt.getModel(), prompt.getPrompt()));
+            return answer.apply(count);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T inference(InferenceModel prompt, Class<T> responseType, String... requiredFields) {
+            singles.add(prompt.getPrompt());
+            Tag tag = new Tag();
+            tag.tag = "single";
+            return (T) tag;
+        }
+    }
+}
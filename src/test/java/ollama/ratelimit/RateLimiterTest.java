@@ -0,0 +1,45 @@
+package ollama.ratelimit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests of the registry of shared rate limiters.
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void limitersAreSharedPerCredential() {
+        RateLimiter limiter = RateLimiter.forRequest("Bearer shared", 10, 0);
+        assertSame(limiter, RateLimiter.forRequest("Bearer shared", 10, 0));
+        assertSame(limiter, RateLimiter.forKey("Bearer shared", 10, 0));
+        assertNull(RateLimiter.forRequest("Bearer unlimited", 0, 0));
+    }
+
+    @Test
+    public void idleRequestLimitersExpire() {
+        RateLimiter limiter = RateLimiter.forRequest("Bearer idle", 10, 0);
+        RateLimiter.sweep(System.nanoTime());
+        assertSame(limiter, RateLimiter.forRequest("Bearer idle", 10, 0));
+        RateLimiter.sweep(System.nanoTime() + RateLimiter.EXPIRY);
+        assertNotSame(limiter, RateLimiter.forRequest("Bearer idle", 10, 0));
+    }
+
+    @Test
+    public void limitersWhichHaveNotRecoveredAreKept() {
+        RateLimiter limiter = RateLimiter.forRequest("Bearer busy", 0, 60);
+        limiter.settle(0, 1000);
+        RateLimiter.sweep(System.nanoTime() + RateLimiter.EXPIRY);
+        assertSame(limiter, RateLimiter.forRequest("Bearer busy", 0, 60));
+    }
+
+    @Test
+    public void limitersHeldByClientsAreKept() {
+        RateLimiter limiter = RateLimiter.forKey("Bearer client", 10, 0);
+        RateLimiter.sweep(System.nanoTime() + RateLimiter.EXPIRY);
+        assertSame(limiter, RateLimiter.forRequest("Bearer client", 10, 0));
+    }
+}
@@ -0,0 +1,61 @@
+package ollama.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the token bucket and the settlement of rate limiter reservations.
+ */
+public class TokenBucketTest {
+
+    /** A period long enough for refills to be negligible during a test. */
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+    @Test
+    public void reservationsWithinCapacityDoNotWait() {
+        TokenBucket bucket = new TokenBucket(100, HOUR);
+        assertEquals(0, bucket.reserve(60));
+        assertEquals(0, bucket.reserve(40));
+    }
+
+    @Test
+    public void overdraftWaitsForTheDebtToRefill() {
+        TokenBucket bucket = new TokenBucket(100, HOUR);
+        bucket.reserve(100);
+        long wait = bucket.reserve(50);
+        assertTrue("Waits about half a period, not " + wait, Math.abs(wait - HOUR / 2) < TimeUnit.SECONDS.toNanos(1));
+        assertTrue("Later reservations queue behind the debt", bucket.reserve(10) > wait);
+    }
+
+    @Test
+    public void adjustmentsReturnTokensUpToTheCapacity() {
+        TokenBucket bucket = new TokenBucket(100, HOUR);
+        bucket.reserve(80);
+        bucket.adjust(-500);
+        assertEquals(0, bucket.reserve(100));
+        assertTrue(bucket.reserve(1) > 0);
+    }
+
+    @Test
+    public void settlingWithTheEstimateKeepsTheReservation() {
+        RateLimiter limiter = new RateLimiter(0, 6000);
+        limiter.acquire(6000);
+        limiter.settle(6000, 6000);
+        long start = System.nanoTime();
+        limiter.acquire(5);
+        assertTrue("The bucket stays drained", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void settlingWithLowerUsageGivesTokensBack() {
+        RateLimiter limiter = new RateLimiter(0, 6000);
+        limiter.acquire(6000);
+        limiter.settle(6000, 600);
+        limiter.acquire(5000);
+        assertEquals(0, limiter.getThrottled());
+    }
+}
@@ -0,0 +1,123 @@
+package ollama.replay;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import ollama.models.inference.InferenceResponse;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Unit tests of calls answered from recorded exchanges.
+ */
+public class ReplayCallTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void bufferedBodiesAreMappedToTheResponseType() throws IOException {
+        Exchange exchange = exchange(200, 0, "{\"model\":\"gemma3:27b\",\"response\":\"hello\",\"done\":true}", null, null);
+        Response<InferenceResponse> response = new ReplayCall<InferenceResponse>(exchange, InferenceResponse.class, 1).execute();
+        assertTrue(response.isSuccessful());
+        assertEquals("hello", response.body().getResponse());
+        assertEquals("gemma3:27b", response.body().getModel());
+    }
+
+    @Test
+    public void unsuccessfulExchangesReturnTheirErrorBody() throws IOException {
+        Exchange exchange = exchange(429, 0, null, "{\"error\":\"slow down\"}", null);
+        Response<InferenceResponse> response = new ReplayCall<InferenceResponse>(exchange, InferenceResponse.class, 1).execute();
+        assertEquals(429, response.code());
+        assertNull(response.body());
+        assertEquals("{\"error\":\"slow down\"}", response.errorBody().string());
+    }
+
+    @Test
+    public void streamedExchangesReplayTheirLines() throws IOException {
+        List<Exchange.Chunk> chunks = List.of(new Exchange.Chunk(0, "{\"response\":\"a\"}"), new Exchange.Chunk(0, "{\"response\":\"b\"}"));
+        Exchange exchange = exchange(200, 0, null, null, chunks);
+        Response<ResponseBody> response = new ReplayCall<ResponseBody>(exchange, ResponseBody.class, 1).execute();
+        try (ResponseBody body = response.body()) {
+            assertEquals("{\"response\":\"a\"}\n{\"response\":\"b\"}\n", body.string());
+        }
+    }
+
+    @Test
+    public void callsExecuteOnlyOnce() throws IOException {
+        Call<InferenceResponse> call = new ReplayCall<>(exchange(200, 0, null, null, null), InferenceResponse.class, 1);
+        call.execute();
+        assertTrue(call.isExecuted());
+        assertFalse(call.clone().isExecuted());
+        try {
+            call.execute();
+            fail("Executed twice.");
+        }
+        catch (IllegalStateException expected) {}
+    }
+
+    @Test
+    public void latencyIsScaledBySpeed() throws IOException {
+        Call<InferenceResponse> call = new ReplayCall<>(exchange(200, 10 * SECOND, null, null, null), InferenceResponse.class, 100);
+        long start = System.nanoTime();
+        call.execute();
+        long elapsed = System.nanoTime() - start;
+        assertTrue("Waited " + elapsed + " ns", elapsed >= SECOND / 10 && elapsed < 5 * SECOND);
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void timeoutShorterThanTheLatencyFails() throws IOException {
+        Call<InferenceResponse> call = new ReplayCall<>(exchange(200, 60 * SECOND, null, null, null), InferenceResponse.class, 1);
+        call.timeout().timeout(50, TimeUnit.MILLISECONDS);
+        call.execute();
+    }
+
+    @Test
+    public void cancellingEndsTheWait() throws Exception {
+        Call<InferenceResponse> call = new ReplayCall<>(exchange(200, 60 * SECOND, null, null, null), InferenceResponse.class, 1);
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException ignored) {}
+            call.cancel();
+        });
+        canceller.start();
+        long start = System.nanoTime();
+        try {
+            call.execute();
+            fail("Completed a cancelled call.");
+        }
+        catch (IOException expected) {
+            assertTrue(call.isCanceled());
+            assertTrue(System.nanoTime() - start < 5 * SECOND);
+        }
+        canceller.join();
+    }
+
+    @Test
+    public void requestsRebuildTheRecordedRequest() throws IOException {
+        Exchange get = exchange(200, 0, null, null, null);
+        assertEquals("GET", new ReplayCall<>(get, Object.class, 1).request().method());
+
+        Exchange post = new Exchange("generate", "api/generate", mapper.readTree("{\"prompt\":\"hi\"}"), 200, 0, null, null, null);
+        Request request = new ReplayCall<>(post, Object.class, 1).request();
+        assertEquals("POST", request.method());
+        assertEquals("/api/generate", request.url().encodedPath());
+    }
+
+    private static Exchange exchange(int status, long latency, String body, String error, List<Exchange.Chunk> chunks) throws IOException {
+        return new Exchange("generate", "api/generate", null, status, latency, body, error, chunks);
+    }
+}
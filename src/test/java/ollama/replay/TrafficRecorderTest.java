@@ -0,0 +1,141 @@
+package ollama.replay;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.Timeout;
+import ollama.OllamaServices;
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Unit tests of recording traffic and replaying the recording.
+ */
+public class TrafficRecorderTest {
+
+    /** A response with formatting and a field the response type does not know. */
+    private static final String BODY = "{ \"model\": \"gemma3:27b\", \"response\": \"hello\", \"done\": true, \"unknown\": [1, 2] }";
+
+    @Test
+    public void bufferedResponsesAreRecordedAsReceived() throws IOException {
+        Path file = Files.createTempFile("traffic", ".ndjson");
+        List<String> sent = new ArrayList<>();
+        InferenceModel prompt = new InferenceModel.Builder().model("gemma3:27b").prompt("hi").build();
+        try (TrafficRecorder recorder = new TrafficRecorder(server(sent), file)) {
+            Response<InferenceResponse> response = recorder.services().generate(prompt).execute();
+            assertEquals("hello", response.body().getResponse());
+        }
+
+        assertEquals("POST api/generate " + mapper.writeValueAsString(prompt), sent.get(0));
+        Exchange exchange = Exchange.fromJson(mapper.readTree(Files.readAllLines(file).get(0)));
+        assertEquals(BODY, exchange.body());
+        assertEquals("generate", exchange.method());
+        assertEquals(mapper.valueToTree(prompt), exchange.request());
+
+        TrafficReplayer replayer = new TrafficReplayer(file, Double.POSITIVE_INFINITY);
+        assertEquals("hello", replayer.services().generate(prompt).execute().body().getResponse());
+    }
+
+    @Test
+    public void recordingsWithJsonBodiesAreStillRead() throws IOException {
+        Exchange exchange = Exchange.fromJson(mapper.readTree(
+                "{\"method\":\"generate\",\"endpoint\":\"api/generate\",\"status\":200,\"latency\":0,\"request\":null,\"body\":{\"response\":\"hello\"}}"
+        ));
+        assertEquals("{\"response\":\"hello\"}", exchange.body());
+    }
+
+    @Test
+    public void rawCallsArePassedThrough() throws IOException {
+        Path file = Files.createTempFile("traffic", ".ndjson");
+        List<String> sent = new ArrayList<>();
+        try (TrafficRecorder recorder = new TrafficRecorder(server(sent), file)) {
+            assertEquals(BODY, recorder.services().get("api/tags", Map.of()).execute().body().string());
+        }
+        assertEquals(List.of("GET api/tags"), sent);
+        assertTrue(Files.readAllLines(file).isEmpty());
+    }
+
+    /**
+     * Services answering every raw call with {@link #BODY}, and recording the requests they receive.
+     */
+    private static OllamaServices server(List<String> sent) {
+        return (OllamaServices) Proxy.newProxyInstance(
+                OllamaServices.class.getClassLoader(),
+                new Class<?>[]{OllamaServices.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("get")) sent.add("GET " + args[0]);
+                    else if (method.getName().equals("post")) {
+                        Buffer body = new Buffer();
+                        ((RequestBody) args[2]).writeTo(body);
+                        sent.add("POST " + args[0] + " " + body.readUtf8());
+                    }
+                    else throw new UnsupportedOperationException(method.getName());
+                    return new RawCall();
+                }
+        );
+    }
+
+    /**
+     * A call answering with {@link #BODY}.
+     */
+    private static class RawCall implements Call<ResponseBody> {
+        private boolean executed;
+
+        @Override
+        public Response<ResponseBody> execute() {
+            executed = true;
+            return Response.success(ResponseBody.create(BODY, MediaType.get("application/json")));
+        }
+
+        @Override
+        public void enqueue(Callback<ResponseBody> callback) {
+            callback.onResponse(this, execute());
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public void cancel() {}
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+
+        @Override
+        public Call<ResponseBody> clone() {
+            return new RawCall();
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost:11434/").build();
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+    }
+}
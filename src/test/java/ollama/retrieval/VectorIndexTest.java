@@ -0,0 +1,124 @@
+package ollama.retrieval;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the in-process vector index.
+ */
+public class VectorIndexTest {
+
+    @Test
+    public void matchesAreSortedBestFirst() {
+        VectorIndex index = new VectorIndex("model", 2, VectorIndex.Metric.DOT);
+        index.add("east", new float[]{1, 0});
+        index.add("north", new float[]{0, 1});
+        index.add("north-east", new float[]{2, 2});
+        List<VectorIndex.Match> matches = index.search(new float[]{1, 0.5f}, 2);
+        assertEquals(List.of("north-east", "east"), matches.stream().map(VectorIndex.Match::document).toList());
+        assertEquals(3, matches.get(0).score(), 1e-6);
+    }
+
+    @Test
+    public void cosineIgnoresTheLengthOfVectors() {
+        VectorIndex index = new VectorIndex("model", 2, VectorIndex.Metric.COSINE);
+        index.add("short", new float[]{1, 1});
+        index.add("long", new float[]{10, 0});
+        VectorIndex.Match best = index.search(new float[]{3, 3}, 1).get(0);
+        assertEquals("short", best.document());
+        assertEquals(1, best.score(), 1e-6);
+    }
+
+    @Test
+    public void largeKReturnsEveryVector() {
+        VectorIndex index = new VectorIndex("model", 3, VectorIndex.Metric.DOT);
+        for (int i = 0; i < 40; i++) index.add("doc " + i, new float[]{i, 1, 0});
+        assertEquals(40, index.size());
+        assertEquals(40, index.search(new float[]{1, 0, 0}, Integer.MAX_VALUE).size());
+        assertEquals("doc 39", index.search(new float[]{1, 0, 0}, 1).get(0).document());
+        assertTrue(index.search(new float[]{1, 0, 0}, 0).isEmpty());
+    }
+
+    @Test
+    public void parallelScanFindsTheSameMatchesAsAFullScan() {
+        int dimensions = 16;
+        VectorIndex index = new VectorIndex("model", dimensions, VectorIndex.Metric.DOT);
+        Random random = new Random(42);
+        float[][] vectors = new float[20_000][dimensions];
+        for (int i = 0; i < vectors.length; i++) {
+            for (int d = 0; d < dimensions; d++) vectors[i][d] = random.nextFloat() - 0.5f;
+            index.add("doc " + i, vectors[i]);
+        }
+        float[] query = vectors[1234].clone();
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < vectors.length; i++) {
+            float score = 0;
+            for (int d = 0; d < dimensions; d++) score += query[d] * vectors[i][d];
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        List<VectorIndex.Match> matches = index.search(query, 10);
+        assertEquals(10, matches.size());
+        assertEquals(best, matches.get(0).index());
+        for (int i = 1; i < matches.size(); i++) assertTrue(matches.get(i - 1).score() >= matches.get(i).score());
+    }
+
+    @Test
+    public void savedIndexLoadsBack() throws IOException {
+        VectorIndex index = new VectorIndex("nomic-embed-text", 3, VectorIndex.Metric.COSINE);
+        index.add("first", new float[]{1, 2, 3});
+        index.add("second", new float[]{-1, 0, 4});
+        Path file = Files.createTempFile("index", ".bin");
+        index.save(file);
+
+        VectorIndex loaded = VectorIndex.load(file);
+        assertEquals("nomic-embed-text", loaded.getModel());
+        assertEquals(VectorIndex.Metric.COSINE, loaded.getMetric());
+        assertEquals(2, loaded.size());
+        VectorIndex.Match expected = index.search(new float[]{-1, 0, 4}, 1).get(0);
+        VectorIndex.Match actual = loaded.search(new float[]{-1, 0, 4}, 1).get(0);
+        assertEquals(expected, actual);
+        loaded.add("third", new float[]{0, 1, 0});
+        assertEquals(3, loaded.size());
+    }
+
+    @Test
+    public void emptyIndexLoadsBack() throws IOException {
+        Path file = Files.createTempFile("index", ".bin");
+        new VectorIndex("model", 4, VectorIndex.Metric.DOT).save(file);
+        VectorIndex loaded = VectorIndex.load(file);
+        assertEquals(0, loaded.size());
+        assertTrue(loaded.search(new float[4], 3).isEmpty());
+    }
+
+    @Test
+    public void growthStopsAtTheLargestArray() {
+        assertEquals(32, VectorIndex.grow(16, 768));
+        int maxSize = (Integer.MAX_VALUE - 8) / 768;
+        assertEquals(maxSize, VectorIndex.grow(2_000_000, 768));
+        assertEquals(1, VectorIndex.grow(0, Integer.MAX_VALUE - 8));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fullIndexRejectsVectors() {
+        VectorIndex.grow((Integer.MAX_VALUE - 8) / 768, 768);
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedFileIsRejected() throws IOException {
+        Path file = Files.createTempFile("index", ".bin");
+        Files.write(file, new byte[]{0x4F, 0x56, 0x49, 0x58, 0, 0, 0, 0, 0, 0, 3, 0, 0x7F, 0, 0, 0, 0, 0, 0, 0});
+        VectorIndex.load(file);
+    }
+}
@@ -0,0 +1,188 @@
+package ollama.routing;
+
+import ollama.Ollama;
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the model router, against nodes answering locally.
+ */
+public class ModelRouterTest {
+
+    private static final InferenceModel PROMPT = new InferenceModel.Builder().model("ignored").prompt("hi").build();
+
+    @Test
+    public void timeToFirstTokenIsPredictedFromTheMeasurements() {
+        FakeNode node = new FakeNode("http://small:11434");
+        ModelRouter router = new ModelRouter.Builder().route("llama3.2:3b", node, 1).build();
+        ModelRouter.Route route = router.getRoutes().get(0);
+
+        assertEquals(0, router.predict(1000).get(0).timeToFirstTokenMillis(), 0.0);
+        router.inference(PROMPT);
+
+        ModelRouter.RouteStats stats = router.getStats(route);
+        assertEquals(1, stats.requests());
+        assertEquals(0, stats.inFlight());
+        assertEquals(50, stats.loadMillis(), 1e-9);
+        assertEquals(1000, stats.promptTokensPerSecond(), 1e-9);
+        assertEquals(100, stats.tokensPerSecond(), 1e-9);
+        RoutingPolicy.Candidate candidate = router.predict(1000).get(0);
+        assertEquals(50 + stats.overheadMillis() + 1000, candidate.timeToFirstTokenMillis(), 1e-9);
+        assertEquals(100, candidate.tokensPerSecond(), 1e-9);
+        assertEquals("llama3.2:3b", node.models.get(0));
+    }
+
+    @Test
+    public void requestsInFlightDelayThePrediction() throws InterruptedException {
+        FakeNode node = new FakeNode("http://small:11434");
+        node.delayMillis = 20;
+        ModelRouter router = new ModelRouter.Builder().route("llama3.2:3b", node, 1).build();
+        router.inference(PROMPT);
+        double idle = router.predict(0).get(0).timeToFirstTokenMillis();
+        double duration = router.getStats(router.getRoutes().get(0)).durationMillis();
+
+        node.blocked = new CountDownLatch(1);
+        Thread request = new Thread(() -> router.inference(PROMPT));
+        request.start();
+        while (router.getStats(router.getRoutes().get(0)).inFlight() == 0) Thread.onSpinWait();
+        double busy = router.predict(0).get(0).timeToFirstTokenMillis();
+        node.blocked.countDown();
+        request.join();
+
+        assertEquals(idle + duration, busy, 1e-9);
+        assertTrue(busy >= idle + 20);
+    }
+
+    @Test
+    public void policyPicksAmongThePredictions() {
+        FakeNode slow = new FakeNode("http://slow:11434");
+        slow.loadMillis = 500;
+        FakeNode fast = new FakeNode("http://fast:11434");
+        ModelRouter router = new ModelRouter.Builder()
+                .route("llama3.3:70b", slow, 1)
+                .route("llama3.2:3b", fast, 10)
+                .probeInterval(null)
+                .build();
+        router.inference(PROMPT);
+        router.inference(PROMPT);
+        assertEquals(1, slow.models.size());
+        assertEquals(1, fast.models.size());
+
+        router.inference(PROMPT);
+        assertEquals(2, fast.models.size());
+
+        RoutingPolicy cheapest = RoutingPolicy.cheapest();
+        assertEquals(slow, cheapest.choose(router.predict(100)).route().node());
+        assertEquals(fast, cheapest.maxTimeToFirstToken(Duration.ofMillis(300)).choose(router.predict(100)).route().node());
+    }
+
+    @Test
+    public void failedRoutesCoolDown() throws InterruptedException {
+        FakeNode cheap = new FakeNode("http://cheap:11434");
+        cheap.failing = true;
+        FakeNode expensive = new FakeNode("http://expensive:11434");
+        ModelRouter router = new ModelRouter.Builder()
+                .route("llama3.2:3b", cheap, 1)
+                .route("llama3.3:70b", expensive, 10)
+                .policy(RoutingPolicy.cheapest())
+                .cooldown(Duration.ofMillis(50))
+                .probeInterval(null)
+                .build();
+
+        assertThrows(IllegalStateException.class, () -> router.inference(PROMPT));
+        assertEquals(1, router.getStats(router.getRoutes().get(0)).failures());
+        router.inference(PROMPT);
+        assertEquals(1, expensive.models.size());
+
+        Thread.sleep(60);
+        cheap.failing = false;
+        router.inference(PROMPT);
+        assertEquals(2, cheap.models.size());
+    }
+
+    @Test
+    public void routesCoolingDownAreUsedWhenNoOtherIsLeft() {
+        FakeNode node = new FakeNode("http://small:11434");
+        node.failing = true;
+        ModelRouter router = new ModelRouter.Builder().route("llama3.2:3b", node, 1).cooldown(Duration.ofMinutes(1)).build();
+        assertThrows(IllegalStateException.class, () -> router.inference(PROMPT));
+        node.failing = false;
+        router.inference(PROMPT);
+        assertEquals(2, node.models.size());
+    }
+
+    @Test
+    public void idleRoutesAreProbed() throws InterruptedException {
+        FakeNode cheap = new FakeNode("http://cheap:11434");
+        cheap.failing = true;
+        FakeNode expensive = new FakeNode("http://expensive:11434");
+        ModelRouter router = new ModelRouter.Builder()
+                .route("llama3.2:3b", cheap, 1)
+                .route("llama3.3:70b", expensive, 10)
+                .policy(RoutingPolicy.cheapest())
+                .cooldown(Duration.ofMillis(20))
+                .probeInterval(Duration.ofMillis(30))
+                .build();
+        assertThrows(IllegalStateException.class, () -> router.inference(PROMPT));
+        cheap.failing = false;
+        router.inference(PROMPT);
+        assertEquals(1, expensive.models.size());
+
+        Thread.sleep(40);
+        router.inference(PROMPT);
+        assertEquals(2, expensive.models.size());
+        router.inference(PROMPT);
+        assertEquals(2, expensive.models.size());
+        assertEquals(2, cheap.models.size());
+    }
+
+    @Test
+    public void unknownRoutesHaveNoStats() {
+        ModelRouter router = new ModelRouter.Builder().route("llama3.2:3b", new FakeNode("http://small:11434"), 1).build();
+        ModelRouter.Route unknown = new ModelRouter.Route("llama3.2:3b", new FakeNode("http://other:11434"), 1);
+        assertThrows(IllegalArgumentException.class, () -> router.getStats(unknown));
+        assertThrows(IllegalArgumentException.class, () -> new ModelRouter.Builder().build());
+    }
+
+    /**
+     * A node answering every request with fixed timings: 100 prompt tokens evaluated in 100 ms and
+     * 10 tokens generated in 100 ms, after the load time.
+     */
+    private static class FakeNode extends Ollama {
+        final List<String> models = new CopyOnWriteArrayList<>();
+        volatile long loadMillis = 50;
+        volatile long delayMillis;
+        volatile boolean failing;
+        volatile CountDownLatch blocked;
+
+        FakeNode(String baseUrl) {
+            super(baseUrl);
+        }
+
+        @Override
+        public InferenceResponse inference(InferenceModel prompt) {
+            models.add(prompt.getModel());
+            if (failing) throw new IllegalStateException("Node is down.");
+            try {
+                Thread.sleep(delayMillis);
+                if (blocked != null) blocked.await();
+            }
+            catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            long load = loadMillis * 1_000_000;
+            return new InferenceResponse(prompt.getModel(), null, "answer", true, "stop", null,
+                    load + 200_000_000, load, 100, 100_000_000, 10, 100_000_000);
+        }
+    }
+}
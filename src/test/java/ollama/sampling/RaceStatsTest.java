@@ -0,0 +1,64 @@
+package ollama.sampling;
+
+import ollama.models.inference.InferenceResponse;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of the race statistics.
+ */
+public class RaceStatsTest {
+
+    @Test
+    public void racesAreCountedPerModel() {
+        RaceStats stats = new RaceStats();
+        for (int i = 0; i < 4; i++) {
+            stats.entered("small");
+            stats.entered("large");
+        }
+        stats.answered("small", 100_000_000, response(0, 0, 0, 0), true);
+        stats.answered("small", 100_000_000, response(0, 0, 0, 0), false);
+        stats.answered("small", 100_000_000, response(0, 0, 0, 0), true);
+        stats.failed("small");
+        stats.answered("large", 100_000_000, response(0, 0, 0, 0), true);
+
+        RaceStats.ModelStats small = stats.get("small");
+        assertEquals(4, small.races());
+        assertEquals(2, small.wins());
+        assertEquals(1, small.rejected());
+        assertEquals(1, small.failures());
+        assertEquals(0.5, small.winRate(), 0.0);
+        assertEquals(0.25, stats.get("large").winRate(), 0.0);
+        assertEquals(List.of("large", "small"), List.copyOf(stats.getAll().keySet()));
+    }
+
+    @Test
+    public void modelsWhichNeverRacedHaveNoMetrics() {
+        RaceStats.ModelStats stats = new RaceStats().get("unknown");
+        assertEquals(new RaceStats.ModelStats(0, 0, 0, 0, 0, 0, 0), stats);
+        assertEquals(0, stats.winRate(), 0.0);
+    }
+
+    @Test
+    public void latenciesAndThroughputsAreMovingAverages() {
+        RaceStats stats = new RaceStats();
+        stats.answered("small", 100_000_000, response(50, 500_000_000, 200, 100_000_000), true);
+        RaceStats.ModelStats first = stats.get("small");
+        assertEquals(100, first.latencyMillis(), 1e-9);
+        assertEquals(100, first.tokensPerSecond(), 1e-9);
+        assertEquals(2000, first.promptTokensPerSecond(), 1e-9);
+
+        stats.answered("small", 200_000_000, response(20, 1_000_000_000, 0, 0), true);
+        RaceStats.ModelStats second = stats.get("small");
+        assertEquals(100 + 0.2 * (200 - 100), second.latencyMillis(), 1e-9);
+        assertEquals(100 + 0.2 * (20 - 100), second.tokensPerSecond(), 1e-9);
+        assertEquals(2000, second.promptTokensPerSecond(), 1e-9);
+    }
+
+    private static InferenceResponse response(int evalCount, long evalDuration, int promptEvalCount, long promptEvalDuration) {
+        return new InferenceResponse("small", null, "answer", true, "stop", null, 0, 0, promptEvalCount, promptEvalDuration, evalCount, evalDuration);
+    }
+}
@@ -0,0 +1,166 @@
+package ollama.scheduling;
+
+import ollama.scheduling.RequestScheduler.Permit;
+import ollama.scheduling.RequestScheduler.Priority;
+import ollama.scheduling.RequestScheduler.Scope;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of the request scheduler.
+ */
+public class RequestSchedulerTest {
+
+    @Test
+    public void requestsWithinTheLimitAreDispatchedAtOnce() {
+        RequestScheduler scheduler = new RequestScheduler(2, 10);
+        Permit first = scheduler.acquire(scope(Priority.NORMAL, "a"), 10);
+        Permit second = scheduler.enqueue(scope(Priority.NORMAL, "a"), 10);
+        Permit third = scheduler.enqueue(scope(Priority.NORMAL, "a"), 10);
+        assertTrue(second.isDispatched());
+        assertFalse(third.isDispatched());
+        first.close();
+        assertTrue(third.isDispatched());
+        assertEquals(2, scheduler.getInFlight());
+    }
+
+    @Test
+    public void higherPrioritiesGoFirst() {
+        RequestScheduler scheduler = new RequestScheduler(1, 10);
+        Permit running = scheduler.acquire(scope(Priority.NORMAL, "a"), 10);
+        Permit batch = scheduler.enqueue(scope(Priority.BATCH, "a"), 10);
+        Permit interactive = scheduler.enqueue(scope(Priority.INTERACTIVE, "a"), 10);
+        running.close();
+        assertTrue(interactive.isDispatched());
+        assertFalse(batch.isDispatched());
+        interactive.close();
+        assertTrue(batch.isDispatched());
+    }
+
+    @Test
+    public void tenantsShareAPriorityByWeight() {
+        RequestScheduler scheduler = new RequestScheduler(1, 20);
+        scheduler.setWeight("heavy", 2);
+        Permit running = scheduler.acquire(scope(Priority.NORMAL, "x"), 1);
+        Permit[] light = new Permit[4];
+        Permit[] heavy = new Permit[4];
+        for (int i = 0; i < 4; i++) light[i] = scheduler.enqueue(scope(Priority.NORMAL, "light"), 100);
+        for (int i = 0; i < 4; i++) heavy[i] = scheduler.enqueue(scope(Priority.NORMAL, "heavy"), 100);
+
+        StringBuilder order = new StringBuilder();
+        Permit current = running;
+        for (int step = 0; step < 6; step++) {
+            current.close();
+            current = null;
+            for (int i = 0; i < 4; i++) {
+                if (light[i].isDispatched() && order.indexOf("L" + i) < 0) { order.append("L").append(i); current = light[i]; }
+                if (heavy[i].isDispatched() && order.indexOf("H" + i) < 0) { order.append("H").append(i); current = heavy[i]; }
+            }
+        }
+        // The heavy tenant finishes its requests in half the virtual time, so it goes twice as often.
+        assertEquals("H0L0H1H2L1H3", order.toString());
+    }
+
+    @Test
+    public void finishTimesOfPastTenantsAreForgotten() {
+        RequestScheduler scheduler = new RequestScheduler(1, 1000);
+        for (int round = 0; round < 10; round++) {
+            Permit running = scheduler.acquire(scope(Priority.NORMAL, "x"), 1);
+            Permit[] permits = new Permit[100];
+            for (int i = 0; i < 100; i++) permits[i] = scheduler.enqueue(scope(Priority.NORMAL, "tenant-" + round + "-" + i), 10);
+            assertEquals(100, scheduler.getTrackedTenants());
+            running.close();
+            for (Permit permit : permits) permit.close();
+            assertEquals(0, scheduler.getTrackedTenants());
+        }
+
+        Permit running = scheduler.acquire(scope(Priority.NORMAL, "x"), 1);
+        Permit withdrawn = scheduler.enqueue(scope(Priority.NORMAL, "withdrawn"), 10);
+        withdrawn.close();
+        assertEquals(0, scheduler.getTrackedTenants());
+        running.close();
+    }
+
+    @Test
+    public void fullQueuePreemptsTheLatestLowerPriorityRequest() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1, 2);
+        Permit running = scheduler.acquire(scope(Priority.NORMAL, "a"), 10);
+        Permit older = scheduler.enqueue(scope(Priority.BATCH, "a"), 10);
+        Permit latest = scheduler.enqueue(scope(Priority.BATCH, "a"), 10);
+        Permit interactive = scheduler.enqueue(scope(Priority.INTERACTIVE, "a"), 10);
+        try {
+            latest.await();
+            fail("The latest batch request should have been preempted.");
+        }
+        catch (RejectedExecutionException expected) {
+            assertEquals(1, scheduler.getStats(Priority.BATCH).preempted());
+        }
+        try {
+            scheduler.enqueue(scope(Priority.BATCH, "a"), 10);
+            fail("A full queue without lower priorities should reject.");
+        }
+        catch (RejectedExecutionException expected) {
+            assertEquals(2, scheduler.getQueueDepth());
+        }
+        running.close();
+        assertTrue(interactive.isDispatched());
+        assertFalse(older.isDispatched());
+    }
+
+    @Test
+    public void closingAQueuedPermitWithdrawsItAndWakesItsWaiter() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1, 10);
+        Permit running = scheduler.acquire(scope(Priority.NORMAL, "a"), 10);
+        Permit queued = scheduler.enqueue(scope(Priority.NORMAL, "a"), 10);
+        CompletableFuture<Permit> waiter = CompletableFuture.supplyAsync(queued::await);
+        Thread.sleep(50);
+        queued.close();
+        try {
+            waiter.get(5, TimeUnit.SECONDS);
+            fail("The waiter should have been cancelled.");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CancellationException);
+        }
+        assertEquals(0, scheduler.getQueueDepth());
+        running.close();
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void interruptedWaiterLeavesTheQueue() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1, 10);
+        Permit running = scheduler.acquire(scope(Priority.NORMAL, "a"), 10);
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.acquire(RequestScheduler.current(), 10);
+            }
+            catch (RuntimeException expected) {
+                // interrupted
+            }
+        });
+        thread.start();
+        while (scheduler.getQueueDepth() == 0) Thread.sleep(5);
+        thread.interrupt();
+        thread.join(5000);
+        assertEquals(0, scheduler.getQueueDepth());
+        running.close();
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    private static Scope scope(Priority priority, String tenant) {
+        try (Scope scope = RequestScheduler.scope(priority, tenant)) {
+            return scope;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ollama.streaming;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A call answering with a fixed streamed body, counting its executions and cancellations.
+ */
+class FakeCall implements Call<ResponseBody> {
+
+    final String body;
+    final AtomicInteger executions;
+    final AtomicInteger cancellations;
+    private volatile boolean executed;
+    private volatile boolean canceled;
+
+    FakeCall(String... lines) {
+        this(String.join("\n", lines), new AtomicInteger(), new AtomicInteger());
+    }
+
+    private FakeCall(String body, AtomicInteger executions, AtomicInteger cancellations) {
+        this.body = body;
+        this.executions = executions;
+        this.cancellations = cancellations;
+    }
+
+    @Override
+    public Response<ResponseBody> execute() {
+        executed = true;
+        executions.incrementAndGet();
+        return Response.success(ResponseBody.create(body, MediaType.get("application/x-ndjson")));
+    }
+
+    @Override
+    public void enqueue(Callback<ResponseBody> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        cancellations.incrementAndGet();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public Call<ResponseBody> clone() {
+        return new FakeCall(body, executions, cancellations);
+    }
+
+    @Override
+    public Request request() {
+        return new Request.Builder().url("http://localhost:11434/api/generate").build();
+    }
+
+    @Override
+    public Timeout timeout() {
+        return Timeout.NONE;
+    }
+}
@@ -0,0 +1,183 @@
+package ollama.streaming;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of generation handles and cancellation statistics.
+ */
+public class GenerationTest {
+
+    @Test
+    public void completedGenerationAggregatesTheChunks() throws Exception {
+        CancellationStats stats = new CancellationStats();
+        Generation<String> generation = generation(stats);
+        Subscription subscription = new Subscription();
+        generation.onSubscribe(subscription);
+        generation.onNext("Hel");
+        generation.onNext("");
+        generation.onNext("lo");
+        generation.onComplete();
+
+        assertEquals("Hello", generation.get());
+        assertEquals(2, generation.getTokens());
+        assertEquals(Long.MAX_VALUE, subscription.requested);
+        assertEquals(1, stats.getCompletions());
+        assertEquals(2.0, stats.getAverageTokens("llama3.2"), 0.0);
+    }
+
+    @Test
+    public void cancellingAbortsTheStreamAndRecordsTheSavedTokens() {
+        CancellationStats stats = new CancellationStats();
+        stats.completed("llama3.2", 10);
+        Generation<String> generation = generation(stats);
+        Subscription subscription = new Subscription();
+        generation.onSubscribe(subscription);
+        generation.onNext("a");
+        generation.onNext("b");
+        generation.onNext("c");
+
+        assertTrue(generation.cancel(true));
+        assertFalse(generation.cancel(true));
+        assertTrue(subscription.cancelled);
+        assertEquals(7, generation.getTokensSaved());
+        assertEquals(1, stats.getCancellations());
+        assertEquals(3, stats.getTokensGenerated());
+        assertEquals(7, stats.getTokensSaved());
+
+        generation.onComplete();
+        assertTrue(generation.isCancelled());
+        assertEquals(1, stats.getCompletions());
+    }
+
+    @Test
+    public void cancellingBeforeSubscribingCancelsTheSubscription() {
+        Generation<String> generation = generation(new CancellationStats());
+        generation.cancel(true);
+        Subscription subscription = new Subscription();
+        generation.onSubscribe(subscription);
+        assertTrue(subscription.cancelled);
+        assertEquals(0, subscription.requested);
+    }
+
+    @Test
+    public void interruptingTheWaitingThreadCancels() throws InterruptedException {
+        CancellationStats stats = new CancellationStats();
+        Generation<String> generation = generation(stats);
+        Subscription subscription = new Subscription();
+        generation.onSubscribe(subscription);
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            waiting.countDown();
+            try {
+                generation.get();
+            }
+            catch (InterruptedException | ExecutionException e) {
+                thrown.set(e);
+            }
+        });
+        thread.start();
+        waiting.await();
+        while (thread.getState() != Thread.State.WAITING) Thread.onSpinWait();
+        thread.interrupt();
+        thread.join();
+
+        assertTrue(thrown.get() instanceof InterruptedException);
+        assertTrue(generation.isCancelled());
+        assertTrue(subscription.cancelled);
+        assertEquals(1, stats.getCancellations());
+    }
+
+    @Test
+    public void deadlineIsRecordedAsACancellation() throws InterruptedException {
+        CancellationStats stats = new CancellationStats();
+        stats.completed("llama3.2", 5);
+        Generation<String> generation = generation(stats);
+        generation.onSubscribe(new Subscription());
+        generation.onNext("a");
+        generation.onError(new Deadline.ExceededException("Deadline of 1s passed."));
+
+        try {
+            generation.get();
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Deadline.ExceededException);
+        }
+        assertEquals(1, stats.getCancellations());
+        assertEquals(4, generation.getTokensSaved());
+    }
+
+    @Test
+    public void otherErrorsAreNotCancellations() {
+        CancellationStats stats = new CancellationStats();
+        Generation<String> generation = generation(stats);
+        generation.onSubscribe(new Subscription());
+        generation.onError(new IllegalStateException("Connection reset."));
+        assertTrue(generation.isCompletedExceptionally());
+        assertEquals(0, stats.getCancellations());
+    }
+
+    @Test
+    public void emptyStreamFails() {
+        Generation<String> generation = generation(new CancellationStats());
+        generation.onSubscribe(new Subscription());
+        generation.onComplete();
+        try {
+            generation.join();
+            fail();
+        }
+        catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void savingsFollowTheMovingAverageOfCompletions() {
+        CancellationStats stats = new CancellationStats();
+        assertEquals(0, stats.cancelled("llama3.2", 4));
+        stats.completed("llama3.2", 100);
+        stats.completed("llama3.2", 200);
+        assertEquals(110.0, stats.getAverageTokens("llama3.2"), 1e-9);
+        assertEquals(60, stats.cancelled("llama3.2", 50));
+        assertEquals(0, stats.cancelled("llama3.2", 500));
+        assertEquals(0, stats.cancelled(null, 1));
+        assertEquals(60, stats.getTokensSaved());
+        assertEquals(555, stats.getTokensGenerated());
+        assertEquals(4, stats.getCancellations());
+    }
+
+    private static Generation<String> generation(CancellationStats stats) {
+        return new Generation<>("llama3.2", stats, chunk -> chunk, (last, content) -> content);
+    }
+
+    /**
+     * A subscription recording the demand and the cancellation.
+     */
+    private static class Subscription implements Flow.Subscription {
+
+        volatile long requested;
+        volatile boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
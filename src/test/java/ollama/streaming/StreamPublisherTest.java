@@ -0,0 +1,198 @@
+package ollama.streaming;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the streaming publisher, against a fake call.
+ */
+public class StreamPublisherTest {
+
+    @Test
+    public void chunksAreDeliveredOnDemand() throws InterruptedException {
+        StreamPublisher<String> publisher = new StreamPublisher<>(new FakeCall("a", "", "b", "c"), line -> line.isEmpty() ? null : line);
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertEquals(List.of("a", "b", "c"), recorder.chunks);
+        assertEquals(List.of("complete"), recorder.signals);
+    }
+
+    @Test
+    public void timeQueuedBeforeTheCallDoesNotCountTowardsDeadlines() throws InterruptedException {
+        Deadline deadline = new Deadline.Builder().firstToken(Duration.ofMillis(100)).total(Duration.ofMillis(200)).build();
+        StreamPublisher<String> publisher = new StreamPublisher<>(new FakeCall("a", "b"), line -> line, deadline)
+                .listener(() -> new StreamListener<>() {
+                    @Override
+                    public void onStart() {
+                        sleep(400);
+                    }
+                });
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertEquals(List.of("a", "b"), recorder.chunks);
+        assertEquals(List.of("complete"), recorder.signals);
+    }
+
+    @Test
+    public void passedDeadlineCancelsTheCallAndFailsTheSubscriber() throws InterruptedException {
+        FakeCall call = new FakeCall("a", "b");
+        Deadline deadline = new Deadline.Builder().total(Duration.ofMillis(100)).build();
+        StreamPublisher<String> publisher = new StreamPublisher<>(call, line -> line, deadline);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertEquals(List.of("error ExceededException"), recorder.signals);
+        assertEquals(1, call.cancellations.get());
+    }
+
+    @Test
+    public void failingOnCompleteIsNotFollowedByOnError() throws InterruptedException {
+        StreamPublisher<String> publisher = new StreamPublisher<>(new FakeCall("a"), line -> line);
+        Recorder recorder = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onComplete() {
+                super.onComplete();
+                throw new IllegalStateException("Subscriber failed.");
+            }
+        };
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertEquals(List.of("complete"), recorder.signals);
+    }
+
+    @Test
+    public void invalidDemandFailsOnceAndCancelsTheCall() throws InterruptedException {
+        FakeCall call = new FakeCall("a", "b", "c");
+        StreamPublisher<String> publisher = new StreamPublisher<>(call, line -> line);
+        Recorder recorder = new Recorder(1) {
+            @Override
+            public void onNext(String chunk) {
+                chunks.add(chunk);
+                subscription.request(0);
+            }
+        };
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertEquals(List.of("a"), recorder.chunks);
+        assertEquals(List.of("error IllegalArgumentException"), recorder.signals);
+        assertEquals(1, call.cancellations.get());
+    }
+
+    @Test
+    public void listenerEndsWithTheSignalledOutcome() throws InterruptedException {
+        List<Throwable> ends = new CopyOnWriteArrayList<>();
+        StreamPublisher<String> publisher = new StreamPublisher<>(new FakeCall("a", "b"), line -> line)
+                .listener(() -> new StreamListener<>() {
+                    @Override
+                    public void onEnd(Throwable failure) {
+                        ends.add(failure == null ? new Throwable("none") : failure);
+                    }
+                });
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertEquals(1, ends.size());
+        assertEquals("none", ends.get(0).getMessage());
+    }
+
+    @Test
+    public void cancellingWhileStartingNotifiesTheListener() throws InterruptedException {
+        FakeCall call = new FakeCall("a");
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch ended = new CountDownLatch(1);
+        StreamPublisher<String> publisher = new StreamPublisher<>(call, line -> line)
+                .listener(() -> new StreamListener<>() {
+                    @Override
+                    public void onStart() {
+                        try {
+                            released.await();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        throw new IllegalStateException("Withdrawn from the queue.");
+                    }
+
+                    @Override
+                    public void onCancel() {
+                        released.countDown();
+                    }
+
+                    @Override
+                    public void onEnd(Throwable failure) {
+                        ended.countDown();
+                    }
+                });
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+        recorder.subscription.cancel();
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+        assertEquals(0, call.executions.get());
+        assertTrue(recorder.signals.isEmpty());
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A subscriber recording the chunks and terminal signals it receives.
+     */
+    static class Recorder implements Flow.Subscriber<String> {
+        final List<String> chunks = new CopyOnWriteArrayList<>();
+        final List<String> signals = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final long batch;
+        Flow.Subscription subscription;
+
+        Recorder(long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (batch > 0) subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(String chunk) {
+            chunks.add(chunk);
+            if (batch == 1) subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            signals.add("error " + throwable.getClass().getSimpleName());
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+            terminated.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Terminated", terminated.await(5, TimeUnit.SECONDS));
+            // Leaves time for a second, illegal terminal signal to show up.
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package ollama.summarization;
+
+import ollama.Ollama;
+import ollama.models.inference.InferenceModel;
+import ollama.models.inference.InferenceResponse;
+import ollama.utilities.TokenEstimator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the map-reduce summarizer.
+ */
+public class SummarizerTest {
+
+    private static final String LONG_PROMPT = "Summarize the following part of a longer document. "
+            + "Keep every important fact, name and number, and leave out anything a reader could infer. ".repeat(4)
+            + "\n\n{{text}}";
+
+    @Test
+    public void mapPromptsFitInAChunk() {
+        FakeOllama ollama = new FakeOllama(prompt -> "short summary");
+        Summarizer summarizer = new Summarizer.Builder(ollama)
+                .mapPrompt(LONG_PROMPT)
+                .chunkTokens(200)
+                .overlapTokens(20)
+                .build();
+
+        summarizer.summarize(document(60));
+
+        assertTrue(ollama.prompts.size() > 1);
+        for (String prompt : ollama.prompts) assertTrue(prompt, tokens(ollama, prompt) <= 200);
+    }
+
+    @Test
+    public void reducePromptsFitInAChunk() {
+        FakeOllama ollama = new FakeOllama(prompt -> "a partial summary of some words ".repeat(3));
+        Summarizer summarizer = new Summarizer.Builder(ollama)
+                .reducePrompt(LONG_PROMPT)
+                .chunkTokens(200)
+                .overlapTokens(20)
+                .build();
+
+        summarizer.summarize(document(60));
+
+        List<String> reductions = ollama.prompts.stream().filter(prompt -> prompt.contains("a partial summary")).toList();
+        assertTrue(reductions.size() > 1);
+        for (String prompt : reductions) assertTrue(prompt, tokens(ollama, prompt) <= 200);
+    }
+
+    @Test
+    public void chunksCoverTheDocumentAndOverlap() {
+        FakeOllama ollama = new FakeOllama(prompt -> "summary");
+        Summarizer summarizer = new Summarizer.Builder(ollama).chunkTokens(100).overlapTokens(10).build();
+        String document = document(40);
+
+        List<String> chunks = summarizer.chunk(document);
+
+        assertTrue(chunks.size() > 4);
+        List<String> words = List.of(document.split("\\s+"));
+        int next = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            List<String> chunk = List.of(chunks.get(i).split("\\s+"));
+            assertTrue(chunks.get(i), TokenEstimator.units(chunks.get(i)) <= 100);
+            int start = words.indexOf(chunk.get(0));
+            if (i > 0) {
+                assertTrue("Chunk " + i + " does not overlap the previous one.", start < next);
+                assertTrue(chunks.get(i - 1).endsWith(String.join(" ", words.subList(start, next))));
+            }
+            assertEquals(words.subList(start, start + chunk.size()), chunk);
+            next = start + chunk.size();
+        }
+        assertEquals(words.size(), next);
+    }
+
+    @Test
+    public void editsOnlyMoveNearbyChunkBoundaries() {
+        FakeOllama ollama = new FakeOllama(prompt -> "summary");
+        Summarizer summarizer = new Summarizer.Builder(ollama).chunkTokens(100).overlapTokens(10).build();
+        String document = document(60);
+        String edited = document.replace("word30x3 ", "edited word30x3 ");
+
+        List<String> before = summarizer.chunk(document);
+        List<String> after = summarizer.chunk(edited);
+
+        long changed = after.stream().filter(chunk -> !before.contains(chunk)).count();
+        assertTrue(after.size() > 8);
+        assertTrue("Changed " + changed + " chunks.", changed <= 3);
+    }
+
+    @Test
+    public void groupsHoldAtMostTheFanIn() {
+        AtomicInteger summaries = new AtomicInteger();
+        FakeOllama ollama = new FakeOllama(prompt -> "summary" + summaries.incrementAndGet());
+        Summarizer summarizer = new Summarizer.Builder(ollama).chunkTokens(100).overlapTokens(10).fanIn(3).build();
+        List<Summarizer.Progress> progress = new ArrayList<>();
+
+        String summary = summarizer.summarize(document(40), progress::add);
+
+        int chunks = summarizer.chunk(document(40)).size();
+        List<String> reductions = ollama.prompts.stream().filter(prompt -> prompt.startsWith("The following are summaries")).toList();
+        for (String prompt : reductions) {
+            long partials = Pattern.compile("summary\\d+").matcher(prompt).results().count();
+            assertTrue(prompt, partials >= 1 && partials <= 3);
+        }
+        assertEquals("summary" + summaries.get(), summary);
+        assertEquals(chunks + reductions.size(), ollama.prompts.size());
+
+        Summarizer.Progress last = progress.get(progress.size() - 1);
+        assertEquals(Summarizer.Stage.REDUCE, last.stage());
+        assertEquals(1, last.total());
+        assertEquals(1, last.completed());
+        assertEquals(new Summarizer.Progress(Summarizer.Stage.MAP, 0, chunks, chunks, 0),
+                progress.stream().filter(step -> step.stage() == Summarizer.Stage.MAP).reduce((first, second) -> second).orElseThrow());
+    }
+
+    @Test
+    public void shortDocumentsAreSummarizedByOnePrompt() {
+        FakeOllama ollama = new FakeOllama(prompt -> " summary ");
+        Summarizer summarizer = new Summarizer.Builder(ollama).build();
+        assertEquals("summary", summarizer.summarize(document(2)));
+        assertEquals(1, ollama.prompts.size());
+        assertEquals("", summarizer.summarize(""));
+    }
+
+    @Test
+    public void rerunsAfterAnEditOnlySendTheChangedPrompts() {
+        FakeOllama ollama = new FakeOllama(prompt -> "summary of " + SummaryCache.key(null, prompt).substring(0, 8));
+        Summarizer summarizer = new Summarizer.Builder(ollama)
+                .chunkTokens(100)
+                .overlapTokens(10)
+                .cache(new SummaryCache())
+                .build();
+        String document = document(60);
+        summarizer.summarize(document);
+        int sent = ollama.prompts.size();
+
+        ollama.prompts.clear();
+        List<Summarizer.Progress> progress = new ArrayList<>();
+        summarizer.summarize(document, progress::add);
+        assertTrue(ollama.prompts.isEmpty());
+        assertEquals(progress.get(0).total(), progress.get(0).cached());
+
+        ollama.prompts.clear();
+        summarizer.summarize(document.replace("word30x3 ", "edited word30x3 "));
+        assertTrue(ollama.prompts.size() + " of " + sent + " prompts sent.", ollama.prompts.size() < sent / 2);
+    }
+
+    @Test
+    public void fileCachesSurviveRestarts() throws IOException {
+        Path file = Files.createTempDirectory("summaries").resolve("summaries.ndjson");
+        String key = SummaryCache.key("llama3.2", "Summarize this.");
+        try (SummaryCache cache = new SummaryCache(file)) {
+            cache.put(key, "A summary\nover two lines.");
+            cache.put(key, "A summary\nover two lines.");
+        }
+        try (SummaryCache cache = new SummaryCache(file)) {
+            assertEquals("A summary\nover two lines.", cache.get(key));
+            assertEquals(1, cache.size());
+            assertEquals(1, Files.readAllLines(file).size());
+        }
+        assertNotEquals(key, SummaryCache.key("llama3.1", "Summarize this."));
+    }
+
+    /**
+     * Returns a document of paragraphs of distinct words.
+     */
+    static String document(int paragraphs) {
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < paragraphs; i++) {
+            for (int j = 0; j < 10; j++) document.append("word").append(i).append('x').append(j).append(' ');
+            document.append("\n\n");
+        }
+        return document.toString();
+    }
+
+    private static int tokens(Ollama ollama, String prompt) {
+        return ollama.getTokenEstimator().estimate(ollama.getDefaultModel(), prompt);
+    }
+
+    /**
+     * An Ollama client answering every prompt with a function of the prompt, and recording the prompts.
+     */
+    static class FakeOllama extends Ollama {
+
+        final List<String> prompts = new CopyOnWriteArrayList<>();
+        private final Function<String, String> answer;
+
+        FakeOllama(Function<String, String> answer) {
+            super("http://localhost:11434");
+            setDefaultModel("llama3.2");
+            this.answer = answer;
+        }
+
+        @Override
+        public InferenceResponse inference(InferenceModel prompt) {
+            prompts.add(prompt.getPrompt());
+            return new InferenceResponse(prompt.getModel(), null, answer.apply(prompt.getPrompt()), true, "stop", null, 0, 0, 0, 0, 1, 0);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ollama.tools;
+
+import ollama.Ollama;
+import ollama.models.chat.ChatModel;
+import ollama.models.chat.ChatResponse;
+import ollama.models.chat.Message;
+import ollama.models.chat.Role;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Unit tests of the tool loop, against a client answering locally.
+ */
+public class ToolLoopTest {
+
+    private static final ChatModel PROMPT = new ChatModel("llama3.2", List.of(new Message(Role.user, "Weather in Paris and Rome?")), false);
+
+    /**
+     * Arguments of the weather tool.
+     */
+    public static class WeatherQuery {
+        public String city;
+    }
+
+    @Test
+    public void toolCallsAreAnsweredUntilTheModelReplies() {
+        FakeOllama ollama = new FakeOllama(List.of(
+                calls("{\"id\":\"1\",\"function\":{\"name\":\"get_weather\",\"arguments\":{\"city\":\"Paris\"}}}",
+                        "{\"id\":\"2\",\"function\":{\"name\":\"get_weather\",\"arguments\":\"{\\\"city\\\":\\\"Rome\\\"}\"}}",
+                        "{\"id\":\"3\",\"function\":{\"name\":\"get_time\",\"arguments\":{}}}"),
+                reply("Sunny in Paris, rainy in Rome.")));
+        ToolLoop loop = new ToolLoop.Builder(ollama)
+                .tool("get_weather", "Returns the weather of a city.", WeatherQuery.class,
+                        query -> query.city.equals("Paris") ? "Sunny" : Map.of("sky", "rainy"))
+                .build();
+
+        ToolLoop.Result result = loop.run(PROMPT);
+
+        assertEquals(2, result.steps());
+        assertEquals("Sunny in Paris, rainy in Rome.", result.response().getChoices().get(0).getMessage().getContent());
+        List<Message> messages = result.messages();
+        assertEquals(List.of(Role.user, Role.assistant, Role.tool, Role.tool, Role.tool), messages.stream().map(Message::getRole).toList());
+        assertEquals(3, messages.get(1).getToolCalls().size());
+        assertEquals("Sunny", messages.get(2).getContent());
+        assertEquals("{\"sky\":\"rainy\"}", messages.get(3).getContent());
+        assertEquals("Error: unknown tool get_time.", messages.get(4).getContent());
+        assertEquals(List.of("1", "2", "3"), messages.subList(2, 5).stream().map(Message::getToolCallId).toList());
+
+        assertEquals(1, PROMPT.getMessages().size());
+        assertEquals(List.of(1, 5), ollama.requests.stream().map(request -> request.getMessages().size()).toList());
+        assertEquals("get_weather", ollama.requests.get(0).getTools().get(0).getFunction().getName());
+    }
+
+    @Test
+    public void failingToolsAndInvalidArgumentsAreSentBackAsErrors() {
+        FakeOllama ollama = new FakeOllama(List.of(
+                calls("{\"function\":{\"name\":\"get_weather\",\"arguments\":\"{city\"}}",
+                        "{\"function\":{\"name\":\"get_weather\",\"arguments\":{\"city\":\"Atlantis\"}}}",
+                        "{\"function\":{\"name\":\"get_weather\",\"arguments\":{\"town\":\"Paris\"}}}"),
+                reply("Sorry.")));
+        ToolLoop loop = new ToolLoop.Builder(ollama)
+                .tool("get_weather", "Returns the weather of a city.", WeatherQuery.class, query -> {
+                    throw new IllegalStateException("No weather in " + query.city + ".");
+                })
+                .build();
+
+        List<Message> results = loop.run(PROMPT).messages().subList(2, 5);
+
+        assertTrue(results.get(0).getContent(), results.get(0).getContent().startsWith("Error: Invalid arguments for tool get_weather"));
+        assertEquals("Error: No weather in Atlantis.", results.get(1).getContent());
+        assertTrue(results.get(2).getContent(), results.get(2).getContent().startsWith("Error: "));
+    }
+
+    @Test
+    public void callsOfAStepRunInParallel() {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        FakeOllama ollama = new FakeOllama(List.of(
+                calls("{\"function\":{\"name\":\"get_weather\",\"arguments\":{\"city\":\"Paris\"}}}",
+                        "{\"function\":{\"name\":\"get_weather\",\"arguments\":{\"city\":\"Rome\"}}}"),
+                reply("Done.")));
+        ToolLoop loop = new ToolLoop.Builder(ollama)
+                .tool("get_weather", "Returns the weather of a city.", WeatherQuery.class, query -> {
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                        return query.city;
+                    }
+                    catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                        throw new IllegalStateException("Calls did not run in parallel.");
+                    }
+                })
+                .build();
+
+        List<Message> results = loop.run(PROMPT).messages().subList(2, 4);
+
+        assertEquals(List.of("Paris", "Rome"), results.stream().map(Message::getContent).toList());
+    }
+
+    @Test
+    public void stepLimitEndsTheLoop() {
+        List<ChatResponse> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) responses.add(calls("{\"function\":{\"name\":\"get_weather\",\"arguments\":{\"city\":\"Paris\"}}}"));
+        FakeOllama ollama = new FakeOllama(responses);
+        ToolLoop loop = new ToolLoop.Builder(ollama)
+                .tool("get_weather", "Returns the weather of a city.", WeatherQuery.class, query -> "Sunny")
+                .maxSteps(3)
+                .build();
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> loop.run(PROMPT));
+
+        assertEquals("Model llama3.2 still calls tools after 3 steps.", e.getMessage());
+        assertEquals(3, ollama.requests.size());
+    }
+
+    @Test
+    public void loopsNeedToolsAndPositiveLimits() {
+        FakeOllama ollama = new FakeOllama(List.of());
+        assertThrows(IllegalArgumentException.class, () -> new ToolLoop.Builder(ollama).build());
+        assertThrows(IllegalArgumentException.class, () -> new ToolLoop.Builder(ollama)
+                .tool("get_weather", "Returns the weather of a city.", WeatherQuery.class, query -> "Sunny")
+                .maxSteps(0)
+                .build());
+    }
+
+    private static ChatResponse calls(String... calls) {
+        return response("{\"role\":\"assistant\",\"content\":\"\",\"tool_calls\":[" + String.join(",", calls) + "]}");
+    }
+
+    private static ChatResponse reply(String content) {
+        return response("{\"role\":\"assistant\",\"content\":\"" + content + "\"}");
+    }
+
+    private static ChatResponse response(String message) {
+        try {
+            Message reply = mapper.readValue(message, Message.class);
+            return new ChatResponse(null, 0, "llama3.2", List.of(new ChatResponse.Choice(0, "stop", reply)), "chat.completion", null);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A client answering the chat requests with the given responses in turn, and recording the requests.
+     */
+    private static class FakeOllama extends Ollama {
+        final List<ChatModel> requests = new ArrayList<>();
+        private final List<ChatResponse> responses;
+
+        FakeOllama(List<ChatResponse> responses) {
+            super("http://localhost:11434");
+            this.responses = responses;
+        }
+
+        @Override
+        public ChatResponse chat(ChatModel prompt) {
+            requests.add(prompt);
+            return responses.get(requests.size() - 1);
+        }
+    }
+}
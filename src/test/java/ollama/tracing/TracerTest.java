@@ -0,0 +1,170 @@
+package ollama.tracing;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import ollama.streaming.StreamListener;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of request tracing.
+ */
+public class TracerTest {
+
+    @Test
+    public void phasesAreTimedInLifecycleOrder() throws InterruptedException {
+        RequestTrace trace = new RequestTrace("api/generate", "llama3.2");
+        step(trace, RequestTrace.Phase.DISPATCHED);
+        step(trace, RequestTrace.Phase.SERIALIZED);
+        step(trace, RequestTrace.Phase.RESPONDED);
+        step(trace, RequestTrace.Phase.MAPPED);
+        trace.finish();
+
+        Map<String, Long> breakdown = trace.breakdown();
+        assertEquals(List.of("local_queue", "serialization", "exchange", "response_mapping", "total"), List.copyOf(breakdown.keySet()));
+        for (long nanos : breakdown.values()) assertTrue(nanos > 0);
+        assertEquals(-1, trace.between(RequestTrace.Phase.FIRST_TOKEN, RequestTrace.Phase.LAST_TOKEN));
+        assertEquals(breakdown.get("total").longValue(), trace.between(RequestTrace.Phase.STARTED, RequestTrace.Phase.FINISHED));
+    }
+
+    @Test
+    public void phasesKeepTheirFirstMarkButTheLastTokenMoves() throws InterruptedException {
+        RequestTrace trace = new RequestTrace("api/generate", "llama3.2");
+        step(trace, RequestTrace.Phase.FIRST_TOKEN);
+        trace.mark(RequestTrace.Phase.LAST_TOKEN);
+        long decode = trace.between(RequestTrace.Phase.FIRST_TOKEN, RequestTrace.Phase.LAST_TOKEN);
+        step(trace, RequestTrace.Phase.FIRST_TOKEN);
+        trace.mark(RequestTrace.Phase.LAST_TOKEN);
+
+        assertTrue(trace.between(RequestTrace.Phase.FIRST_TOKEN, RequestTrace.Phase.LAST_TOKEN) > decode);
+        assertTrue(trace.between(RequestTrace.Phase.STARTED, RequestTrace.Phase.FIRST_TOKEN) < trace.between(RequestTrace.Phase.STARTED, RequestTrace.Phase.LAST_TOKEN));
+    }
+
+    @Test
+    public void serverDurationsSplitTheExchange() throws InterruptedException {
+        RequestTrace trace = new RequestTrace("api/generate", "llama3.2");
+        step(trace, RequestTrace.Phase.SERIALIZED);
+        Thread.sleep(20);
+        trace.mark(RequestTrace.Phase.RESPONDED);
+        trace.server(1_000_000, 2_000_000, 3_000_000, 6_000_000, 12, 34);
+
+        Map<String, Long> breakdown = trace.breakdown();
+        long exchange = breakdown.get("exchange");
+        assertEquals(exchange - 6_000_000, breakdown.get("network_and_server_queue").longValue());
+        assertEquals(1_000_000, breakdown.get("server_model_load").longValue());
+        assertEquals(2_000_000, breakdown.get("server_prompt_eval").longValue());
+        assertEquals(3_000_000, breakdown.get("server_decode").longValue());
+        assertEquals(6_000_000, breakdown.get("server_total").longValue());
+        assertEquals(12, trace.attributes().get("gen_ai.usage.input_tokens"));
+        assertEquals(34, trace.attributes().get("gen_ai.usage.output_tokens"));
+        assertEquals("llama3.2", trace.attributes().get("gen_ai.request.model"));
+    }
+
+    @Test
+    public void spansAreOnTheWallClock() throws InterruptedException {
+        long before = System.currentTimeMillis() * 1_000_000L;
+        RequestTrace trace = new RequestTrace("api/chat", "llama3.2");
+        step(trace, RequestTrace.Phase.DISPATCHED);
+        step(trace, RequestTrace.Phase.SERIALIZED);
+        long after = System.currentTimeMillis() * 1_000_000L + 1_000_000L;
+
+        List<RequestTrace.Span> spans = trace.spans();
+        assertEquals(List.of("local_queue", "serialization"), spans.stream().map(RequestTrace.Span::name).toList());
+        assertEquals(spans.get(0).endEpochNanos(), spans.get(1).startEpochNanos());
+        assertTrue(spans.get(0).startEpochNanos() >= before - 1_000_000L);
+        assertTrue(spans.get(1).endEpochNanos() <= after);
+    }
+
+    @Test
+    public void disabledTracerCreatesNoTraces() {
+        Tracer tracer = new Tracer(false);
+        assertNull(tracer.start("api/generate", "llama3.2"));
+        assertNull(tracer.stream("api/generate", "llama3.2", (trace, chunk) -> {}));
+        tracer.finish(null);
+    }
+
+    @Test
+    public void streamedRequestsAreTracedAndHandedToTheListeners() {
+        Tracer tracer = new Tracer(true);
+        List<RequestTrace> traces = new ArrayList<>();
+        tracer.addListener(trace -> {
+            throw new IllegalStateException("Exporter is down.");
+        });
+        tracer.addListener(traces::add);
+
+        StreamListener<String> listener = tracer.stream("api/chat", "llama3.2", (trace, chunk) -> {
+            if (chunk.equals("last")) trace.server(0, 0, 0, 1, 3, 2);
+        });
+        listener.onStart();
+        listener.onRequest(null);
+        listener.onResponse(200);
+        listener.onChunk("first");
+        listener.onChunk("last");
+        listener.onEnd(null);
+
+        assertEquals(1, traces.size());
+        RequestTrace trace = traces.get(0);
+        assertEquals(List.of("local_queue", "serialization", "exchange", "time_to_first_token", "decode"),
+                trace.spans().stream().map(RequestTrace.Span::name).toList());
+        assertEquals(2, trace.attributes().get("gen_ai.usage.output_tokens"));
+        assertNull(trace.getFailure());
+    }
+
+    @Test
+    public void failuresAreRecorded() {
+        Tracer tracer = new Tracer(true);
+        List<RequestTrace> traces = new ArrayList<>();
+        tracer.addListener(traces::add);
+        StreamListener<String> listener = tracer.stream("api/chat", "llama3.2", (trace, chunk) -> {});
+        listener.onStart();
+        listener.onEnd(new IOException("Connection reset."));
+
+        assertTrue(traces.get(0).getFailure() instanceof IOException);
+        assertEquals(IOException.class.getName(), traces.get(0).attributes().get("error.type"));
+    }
+
+    @Test
+    public void finishedTracesCommitAJfrEvent() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("requests", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("ollama.Request").withoutThreshold();
+            recording.start();
+            Tracer tracer = new Tracer(true);
+            RequestTrace trace = tracer.start("api/generate", "llama3.2");
+            step(trace, RequestTrace.Phase.DISPATCHED);
+            trace.server(0, 0, 0, 5, 7, 9);
+            tracer.finish(trace);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("ollama.Request"))
+                .toList();
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("api/generate", event.getString("endpoint"));
+        assertEquals("llama3.2", event.getString("model"));
+        assertTrue(event.getDuration("localQueue").toNanos() > 0);
+        assertEquals(-1, event.getLong("serialization"));
+        assertEquals(7, event.getInt("promptTokens"));
+        assertEquals(9, event.getInt("outputTokens"));
+        assertNull(event.getString("failure"));
+    }
+
+    private static void step(RequestTrace trace, RequestTrace.Phase phase) throws InterruptedException {
+        Thread.sleep(2);
+        trace.mark(phase);
+    }
+}
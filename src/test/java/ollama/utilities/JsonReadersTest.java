@@ -0,0 +1,56 @@
+package ollama.utilities;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import ollama.streaming.ChunkParser;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static utils.mapping.MappingUtilities.Json.mapper;
+
+/**
+ * Unit tests of the prebuilt JSON readers.
+ */
+public class JsonReadersTest {
+
+    /**
+     * A typed result.
+     */
+    public static class Tag {
+        public String tag;
+    }
+
+    @Test
+    public void readersAreBuiltOncePerType() {
+        assertSame(JsonReaders.readerFor(Tag.class), JsonReaders.readerFor(Tag.class));
+    }
+
+    @Test
+    public void typedResultsAreAsStrictAsTheSharedMapper() throws IOException {
+        String json = "{\"tag\":\"news\",\"confidence\":0.9}";
+        if (!mapper.isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)) {
+            assertEquals("news", JsonReaders.read(json, Tag.class).tag);
+            return;
+        }
+        try {
+            JsonReaders.read(json, Tag.class);
+            fail("Unknown properties should be rejected like the shared mapper does.");
+        }
+        catch (UnrecognizedPropertyException expected) {
+            assertEquals("confidence", expected.getPropertyName());
+        }
+    }
+
+    @Test
+    public void streamedChunksIgnoreUnknownProperties() throws IOException {
+        String line = "{\"tag\":\"news\",\"added_by_a_newer_server\":true}";
+        assertEquals("news", ChunkParser.ndjson(Tag.class).parse(line).tag);
+        assertEquals("news", ChunkParser.sse(Tag.class).parse("data: " + line).tag);
+        assertNull(ChunkParser.sse(Tag.class).parse("data: [DONE]"));
+    }
+}
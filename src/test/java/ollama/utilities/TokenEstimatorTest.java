@@ -0,0 +1,72 @@
+package ollama.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the local token estimator and its calibration.
+ */
+public class TokenEstimatorTest {
+
+    private static final String MODEL = "gemma3:27b";
+
+    @Test
+    public void unitsCountRunsSymbolsAndNonLatinCharacters() {
+        assertEquals(4, TokenEstimator.units("hello world"));
+        assertEquals(3, TokenEstimator.units("a, b"));
+        assertEquals(2, TokenEstimator.units("日本"));
+        assertEquals(0, TokenEstimator.units((CharSequence) null));
+    }
+
+    @Test
+    public void defaultRatioIsUsedUntilEnoughSamples() {
+        TokenEstimator estimator = new TokenEstimator(0.5);
+        estimator.observe(MODEL, 100, 300);
+        estimator.observe(MODEL, 200, 600);
+        assertEquals(0.5, estimator.ratio(MODEL), 0.0);
+        assertEquals(50, estimator.toTokens(MODEL, 100));
+    }
+
+    @Test
+    public void calibrationFitsTheRatioAndTheTemplateOverhead() {
+        TokenEstimator estimator = new TokenEstimator();
+        for (int i = 0; i < 20; i++) {
+            int units = 100 + (i % 5) * 200;
+            estimator.observe(MODEL, units, 30 + units / 2);
+        }
+        assertEquals(0.5, estimator.ratio(MODEL), 0.01);
+        assertEquals(30, estimator.overhead(MODEL), 1);
+        assertEquals(1030, estimator.toTokens(MODEL, 2000), 5);
+        assertEquals(estimator.ratio(MODEL), estimator.ratio("gemma3:4b"), 0.0);
+    }
+
+    @Test
+    public void outliersOnEitherSideAreIgnored() {
+        TokenEstimator estimator = new TokenEstimator();
+        for (int i = 0; i < 10; i++) estimator.observe(MODEL, 100 + i * 50, 100 + i * 50);
+        double ratio = estimator.ratio(MODEL);
+        estimator.observe(MODEL, 1000, 50);
+        estimator.observe(MODEL, 1000, 5000);
+        assertEquals(ratio, estimator.ratio(MODEL), 0.0);
+    }
+
+    @Test
+    public void repeatedHigherCountsRestartTheCalibration() {
+        TokenEstimator estimator = new TokenEstimator();
+        for (int i = 0; i < 10; i++) estimator.observe(MODEL, 100 + i * 50, 100 + i * 50);
+        for (int i = 0; i < 6; i++) estimator.observe(MODEL, 100 + i * 50, 3 * (100 + i * 50));
+        assertEquals(3, estimator.ratio(MODEL), 0.1);
+    }
+
+    @Test
+    public void trimKeepsTheEndWithinTheBudget() {
+        TokenEstimator estimator = new TokenEstimator();
+        String text = "one two three four five six";
+        String trimmed = estimator.trim(MODEL, text, 3);
+        assertTrue(text.endsWith(trimmed));
+        assertTrue(estimator.estimate(MODEL, trimmed) <= 3);
+        assertEquals(text, estimator.trim(MODEL, text, 100));
+    }
+}